@@ -0,0 +1,271 @@
+/*====================================================================*\
+
+CloneTargetsDialog.java
+
+Class: clone-targets dialog.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.lang.invoke.MethodHandles;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javafx.geometry.HPos;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.geometry.VPos;
+
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+import javafx.stage.Window;
+
+import uk.blankaspect.ui.jfx.button.Buttons;
+
+import uk.blankaspect.ui.jfx.dialog.SimpleModalDialog;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: CLONE-TARGETS DIALOG
+
+
+/**
+ * This class implements a modal dialog in which the target volumes of a cloning operation may be selected.
+ */
+
+public class CloneTargetsDialog
+	extends SimpleModalDialog<CloneTargetsDialog.Result>
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The horizontal gap between adjacent columns of the control pane. */
+	private static final	double	CONTROL_PANE_H_GAP	= 6.0;
+
+	/** The vertical gap between adjacent rows of the control pane. */
+	private static final	double	CONTROL_PANE_V_GAP	= 10.0;
+
+	/** The padding around the control pane. */
+	private static final	Insets	CONTROL_PANE_PADDING	= new Insets(4.0, 8.0, 4.0, 8.0);
+
+	/** The vertical gap between adjacent check boxes of the target pane. */
+	private static final	double	TARGET_PANE_GAP	= 4.0;
+
+	/** Miscellaneous strings. */
+	private static final	String	TARGETS_STR			= "Targets";
+	private static final	String	UNBUFFERED_IO_STR	= "Unbuffered I/O";
+	private static final	String	VERIFY_STR			= "Verify targets after cloning";
+	private static final	String	CLONE_STR			= "Clone";
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	boolean	unbufferedIO;
+	private static	boolean	verify;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	Result	result;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a modal dialog in which the target volumes of a cloning operation may be selected.
+	 *
+	 * @param owner
+	 *          the window that will own this dialog, or {@code null} for a top-level dialog that has no owner.
+	 * @param title
+	 *          the title of the dialog.
+	 * @param volumeNames
+	 *          the names of the volumes from which a selection may be made.
+	 */
+
+	private CloneTargetsDialog(
+		Window				owner,
+		String				title,
+		Collection<String>	volumeNames)
+	{
+		// Call superclass constructor
+		super(owner, MethodHandles.lookup().lookupClass().getName(), null, title);
+
+		// Create control pane
+		GridPane controlPane = new GridPane();
+		controlPane.setHgap(CONTROL_PANE_H_GAP);
+		controlPane.setVgap(CONTROL_PANE_V_GAP);
+		controlPane.setAlignment(Pos.CENTER);
+		controlPane.setPadding(CONTROL_PANE_PADDING);
+
+		// Initialise column constraints
+		ColumnConstraints column = new ColumnConstraints();
+		column.setMinWidth(Region.USE_PREF_SIZE);
+		column.setHalignment(HPos.RIGHT);
+		column.setHgrow(Priority.NEVER);
+		controlPane.getColumnConstraints().add(column);
+
+		column = new ColumnConstraints();
+		column.setHalignment(HPos.LEFT);
+		column.setHgrow(Priority.ALWAYS);
+		controlPane.getColumnConstraints().add(column);
+
+		// Initialise row index
+		int row = 0;
+
+		// Check boxes: targets
+		List<CheckBox> targetCheckBoxes = new ArrayList<>();
+		VBox targetPane = new VBox(TARGET_PANE_GAP);
+		for (String volumeName : volumeNames)
+		{
+			CheckBox checkBox = new CheckBox(Utils.volumeDisplayName(volumeName));
+			checkBox.setUserData(volumeName);
+			targetCheckBoxes.add(checkBox);
+			targetPane.getChildren().add(checkBox);
+		}
+		Label targetsLabel = new Label(TARGETS_STR);
+		GridPane.setValignment(targetsLabel, VPos.TOP);
+		controlPane.addRow(row++, targetsLabel, targetPane);
+
+		// Check box: unbuffered I/O
+		CheckBox unbufferedIOCheckBox = new CheckBox(UNBUFFERED_IO_STR);
+		unbufferedIOCheckBox.setSelected(unbufferedIO);
+		controlPane.add(unbufferedIOCheckBox, 1, row++);
+
+		// Check box: verify
+		CheckBox verifyCheckBox = new CheckBox(VERIFY_STR);
+		verifyCheckBox.setSelected(verify);
+		controlPane.add(verifyCheckBox, 1, row++);
+
+		// Add control pane to content pane
+		addContent(controlPane);
+
+		// Button: clone
+		Button cloneButton = Buttons.hNoShrink(CLONE_STR);
+		cloneButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		cloneButton.setDisable(true);
+		cloneButton.setOnAction(event ->
+		{
+			List<String> targetNames = new ArrayList<>();
+			for (CheckBox checkBox : targetCheckBoxes)
+			{
+				if (checkBox.isSelected())
+					targetNames.add((String)checkBox.getUserData());
+			}
+			unbufferedIO = unbufferedIOCheckBox.isSelected();
+			verify = verifyCheckBox.isSelected();
+			result = new Result(targetNames, unbufferedIO, verify);
+			hide();
+		});
+		addButton(cloneButton, HPos.RIGHT);
+
+		// Enable 'clone' button when at least one target is selected
+		for (CheckBox checkBox : targetCheckBoxes)
+		{
+			checkBox.selectedProperty().addListener(observable ->
+					cloneButton.setDisable(targetCheckBoxes.stream().noneMatch(CheckBox::isSelected)));
+		}
+
+		// Button: cancel
+		Button cancelButton = Buttons.hNoShrink(CANCEL_STR);
+		cancelButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		cancelButton.setOnAction(event -> requestClose());
+		addButton(cancelButton, HPos.RIGHT);
+
+		// Fire 'cancel' button if Escape key is pressed; fire 'clone' button if Ctrl+Enter is pressed
+		setKeyFireButton(cancelButton, cloneButton);
+
+		// Request focus on first target when dialog is shown
+		if (!targetCheckBoxes.isEmpty())
+			setOnShown(event -> targetCheckBoxes.get(0).requestFocus());
+
+		// Apply new style sheet to scene
+		applyStyleSheet();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a modal dialog in which the target volumes of a cloning operation may be selected,
+	 * displays the dialog, and returns the result.
+	 *
+	 * @param  owner
+	 *           the window that will own this dialog, or {@code null} for a top-level dialog that has no owner.
+	 * @param  title
+	 *           the title of the dialog.
+	 * @param  volumeNames
+	 *           the names of the volumes from which a selection may be made.
+	 * @return the result of the dialog, if it was accepted; {@code null} otherwise.
+	 */
+
+	public static Result show(
+		Window				owner,
+		String				title,
+		Collection<String>	volumeNames)
+	{
+		return new CloneTargetsDialog(owner, title, volumeNames).showDialog();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods : overriding methods
+////////////////////////////////////////////////////////////////////////
+
+	@Override
+	protected Result getResult()
+	{
+		return result;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT OF DIALOG
+
+
+	public record Result(
+		List<String>	volumeNames,
+		boolean			unbufferedIO,
+		boolean			verify)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,139 @@
+/*====================================================================*\
+
+ClusterRunCoalescer.java
+
+Class: coalescer of clusters into read requests.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.function.IntUnaryOperator;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: COALESCER OF CLUSTERS INTO READ REQUESTS
+
+
+/**
+ * This class provides methods that group a list of clusters, sorted in ascending order of index, into read requests
+ * for an ascending sweep over a volume.  Consecutive clusters of the list are read with a single request while the gap
+ * between them is no longer than {@link #MAX_GAP_LENGTH} and the request is no longer than a maximum length, so that
+ * the device sees a short sequence of large forward-moving reads rather than one read per cluster.  The clusters of
+ * the gaps are read and discarded.
+ */
+
+public class ClusterRunCoalescer
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The default maximum length (in bytes) of a single read request of a sweep. */
+	public static final		int		MAX_READ_LENGTH	= 1 << 20;
+
+	/** The maximum length (in bytes) of a gap between clusters that is read rather than skipped. */
+	public static final		int		MAX_GAP_LENGTH	= 64 << 10;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private ClusterRunCoalescer()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Returns the end of the read request that starts with the specified element of a list of clusters.  The length of
+	 * the request is limited to {@link #MAX_READ_LENGTH}.
+	 *
+	 * @param  start
+	 *           the index of the first element of the list that will be read by the request.
+	 * @param  numElements
+	 *           the number of elements in the list.
+	 * @param  clusterIndices
+	 *           a function that returns the index of the cluster of the element of the list at a given position.  The
+	 *           cluster indices must not decrease from one element to the next.
+	 * @param  bytesPerCluster
+	 *           the number of bytes in a cluster.
+	 * @return the index of the element of the list after the last element that will be read by the request.
+	 */
+
+	public static int requestEnd(
+		int					start,
+		int					numElements,
+		IntUnaryOperator	clusterIndices,
+		int					bytesPerCluster)
+	{
+		return requestEnd(start, numElements, clusterIndices, bytesPerCluster, MAX_READ_LENGTH);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the end of the read request that starts with the specified element of a list of clusters.  The request
+	 * always includes the cluster of the first element, even if it is longer than the specified maximum length.
+	 *
+	 * @param  start
+	 *           the index of the first element of the list that will be read by the request.
+	 * @param  numElements
+	 *           the number of elements in the list.
+	 * @param  clusterIndices
+	 *           a function that returns the index of the cluster of the element of the list at a given position.  The
+	 *           cluster indices must not decrease from one element to the next.
+	 * @param  bytesPerCluster
+	 *           the number of bytes in a cluster.
+	 * @param  maxReadLength
+	 *           the maximum length (in bytes) of the request.
+	 * @return the index of the element of the list after the last element that will be read by the request.
+	 */
+
+	public static int requestEnd(
+		int					start,
+		int					numElements,
+		IntUnaryOperator	clusterIndices,
+		int					bytesPerCluster,
+		int					maxReadLength)
+	{
+		// Extend request while the gap to the next cluster is small enough and the request is not too long
+		int maxGap = MAX_GAP_LENGTH / bytesPerCluster;
+		int firstIndex = clusterIndices.applyAsInt(start);
+		int lastIndex = firstIndex;
+		int end = start;
+		while (++end < numElements)
+		{
+			int index = clusterIndices.applyAsInt(end);
+			if ((index - lastIndex - 1 > maxGap) || ((long)(index - firstIndex + 1) * bytesPerCluster > maxReadLength))
+				break;
+			lastIndex = index;
+		}
+		return end;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,703 @@
+/*====================================================================*\
+
+ContentHasher.java
+
+Class: hasher of the contents of files.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: HASHER OF THE CONTENTS OF FILES
+
+
+/**
+ * This class provides a method that computes the SHA-256 hash of the content of each file of a list of files of a FAT32
+ * volume.
+ * <p>
+ * The files are read in ascending order of their first clusters.  The extents of consecutive files that lie close to
+ * each other on the volume are coalesced into a single read request of up to {@link #BUFFER_SIZE} bytes, so a volume
+ * that contains many small files is read in a few large requests rather than one request per file.  The volume
+ * supports only one I/O stream, so data are read on the calling thread; the hashing is done on the common {@link
+ * ForkJoinPool}, concurrently with the reads.  The pieces of a single file are hashed in order, but different files
+ * are hashed in parallel.
+ * </p>
+ * <p>
+ * The hash of each file is passed to a handler on the calling thread, in the order in which the files were read.  The
+ * number of files whose hashes are pending is bounded, as is the number of read buffers, so the memory that is used
+ * does not depend on the number of files.  A file whose cluster chain is invalid or ends before the end of the file is
+ * not read; the handler is passed a {@code null} hash for it, and the remaining files are hashed as usual.
+ * </p>
+ */
+
+public class ContentHasher
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The length of a read buffer, which is the maximum length of a single read request. */
+	private static final	int		BUFFER_SIZE	= 1 << 22;	// 4 MiB
+
+	/** The maximum number of files whose hashes may be pending before the calling thread waits for the oldest. */
+	private static final	int		MAX_NUM_PENDING_FILES	= 1 << 12;
+
+	/** The interval (in milliseconds) between successive checks for cancellation while waiting for a buffer. */
+	private static final	long	QUEUE_POLL_INTERVAL	= 100;
+
+	/** The minimum interval (in nanoseconds) between successive updates of the throughput in the task message. */
+	private static final	long	MESSAGE_UPDATE_INTERVAL	= 500_000_000L;
+
+	/** The name of the digest algorithm that is used to hash the contents of files. */
+	private static final	String	DIGEST_NAME	= "SHA-256";
+
+	/** Miscellaneous strings. */
+	private static final	String	THROUGHPUT_STR	= "%s (%.1f MB/s)";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	DIGEST_NOT_SUPPORTED =
+				"The '%s' digest algorithm is not supported by this version of Java.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	/** The volume that contains the files. */
+	private	Fat32Volume				volume;
+
+	/** The handler of the hashes of files. */
+	private	IHashHandler			handler;
+
+	/** The message of the task, to which the throughput is appended. */
+	private	String					message;
+
+	/** The status of the task that is hashing the files. */
+	private	ITaskStatus				taskStatus;
+
+	/** The number of bytes in a sector of the volume. */
+	private	int						bytesPerSector;
+
+	/** The number of bytes in a cluster of the volume. */
+	private	int						bytesPerCluster;
+
+	/** The maximum number of sectors between the extents of files that are read rather than skipped. */
+	private	int						maxGapNumSectors;
+
+	/** The read buffers that are not in use. */
+	private	BlockingQueue<byte[]>	freeBuffers;
+
+	/** The files whose hashes have not yet been passed to the handler, in the order in which they were read. */
+	private	Deque<PendingFile>		pendingFiles;
+
+	/** The pieces of files that will be read in the next read request. */
+	private	List<Piece>				pieces;
+
+	/** The index of the first sector of the next read request. */
+	private	long					batchStartSectorIndex;
+
+	/** The index of the sector after the last sector of the next read request. */
+	private	long					batchEndSectorIndex;
+
+	/** The total length of the files. */
+	private	long					totalNumBytes;
+
+	/** The number of bytes of file data that have been read. */
+	private	long					numBytesRead;
+
+	/** The progress of the task, discretised to limit the frequency of updates. */
+	private	DiscretisedValue		discreteProgress;
+
+	/** The time at which hashing started. */
+	private	long					startTime;
+
+	/** The time at which the task message was last updated. */
+	private	long					messageTime;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a hasher of the contents of files.
+	 *
+	 * @param volume
+	 *          the volume that contains the files.
+	 * @param handler
+	 *          the handler of the hashes of files.
+	 * @param message
+	 *          the message of the task.
+	 * @param totalNumBytes
+	 *          the total length of the files.
+	 * @param taskStatus
+	 *          the status of the task that is hashing the files.
+	 */
+
+	private ContentHasher(
+		Fat32Volume		volume,
+		IHashHandler	handler,
+		String			message,
+		long			totalNumBytes,
+		ITaskStatus		taskStatus)
+	{
+		// Initialise instance variables
+		this.volume = volume;
+		this.handler = handler;
+		this.message = message;
+		this.totalNumBytes = totalNumBytes;
+		this.taskStatus = taskStatus;
+		bytesPerSector = volume.getBytesPerSector();
+		bytesPerCluster = volume.getBytesPerCluster();
+		maxGapNumSectors = ClusterRunCoalescer.MAX_GAP_LENGTH / bytesPerSector;
+		pendingFiles = new ArrayDeque<>();
+		pieces = new ArrayList<>();
+		discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+		startTime = System.nanoTime();
+		messageTime = startTime;
+
+		// Create pool of buffers
+		int numBuffers = 2 * Runtime.getRuntime().availableProcessors() + 2;
+		freeBuffers = new ArrayBlockingQueue<>(numBuffers);
+		for (int i = 0; i < numBuffers; i++)
+			freeBuffers.add(new byte[BUFFER_SIZE]);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the content of each of the specified files, hashes it, and passes the hash to the specified handler.  The
+	 * files are read, and their hashes passed to the handler, in ascending order of their first clusters.
+	 *
+	 * @param  volume
+	 *           the volume that contains the files.
+	 * @param  files
+	 *           the files whose contents will be hashed.
+	 * @param  handler
+	 *           the handler that will be passed the hash of each file on the calling thread.
+	 * @param  message
+	 *           the message of the task, to which the throughput will be appended as the files are read.
+	 * @param  taskStatus
+	 *           the status of the task that is hashing the files.
+	 * @return the number of bytes of file data that were read, or -1 if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 */
+
+	public static long hash(
+		Fat32Volume					volume,
+		List<Fat32Directory.Entry>	files,
+		IHashHandler				handler,
+		String						message,
+		ITaskStatus					taskStatus)
+		throws VolumeException
+	{
+		// Update task message; reset progress
+		taskStatus.setMessage(message);
+		taskStatus.setProgress(0.0);
+
+		// Sort files by index of first cluster
+		files = new ArrayList<>(files);
+		files.sort(Comparator.comparingInt(Fat32Directory.Entry::getClusterIndex));
+
+		// Get total number of bytes to read
+		long totalNumBytes = 0;
+		for (Fat32Directory.Entry file : files)
+			totalNumBytes += file.getFileLength();
+
+		// Read and hash files
+		ContentHasher hasher = new ContentHasher(volume, handler, message, totalNumBytes, taskStatus);
+		try
+		{
+			// Open volume for reading
+			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+			// Read files
+			for (Fat32Directory.Entry file : files)
+			{
+				if (!hasher.addFile(file))
+					return -1;
+			}
+
+			// Read last batch of pieces
+			if (!hasher.readBatch())
+				return -1;
+		}
+		catch (InterruptedException e)
+		{
+			return -1;
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+
+		// Pass hashes of remaining files to handler
+		hasher.deliverHashes(0);
+
+		// Return number of bytes read
+		return hasher.numBytesRead;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a new instance of the digest that is used to hash the contents of files.
+	 *
+	 * @return a new instance of the digest that is used to hash the contents of files.
+	 * @throws VolumeException
+	 *           if the digest algorithm is not supported.
+	 */
+
+	public static MessageDigest createDigest()
+		throws VolumeException
+	{
+		try
+		{
+			return MessageDigest.getInstance(DIGEST_NAME);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new VolumeException(ErrorMsg.DIGEST_NOT_SUPPORTED, e, DIGEST_NAME);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the runs of consecutive clusters that contain the data of the specified file.
+	 *
+	 * @param  volume
+	 *           the volume that contains the file.
+	 * @param  entry
+	 *           the entry of the file.
+	 * @return the runs of clusters of the file, or {@code null} if the cluster chain of the file is invalid or ends
+	 *         before the end of the file.
+	 */
+
+	private static List<Fat32Fat.Run> runs(
+		Fat32Volume				volume,
+		Fat32Directory.Entry	entry)
+	{
+		// Get number of clusters in file
+		int bytesPerCluster = volume.getBytesPerCluster();
+		long numClusters = (entry.getFileLength() + bytesPerCluster - 1) / bytesPerCluster;
+
+		// Coalesce consecutive clusters into runs
+		List<Fat32Fat.Run> runs = new ArrayList<>();
+		try
+		{
+			int numChainClusters = volume.getFat().forEachExtent(entry.getClusterIndex(), (int)numClusters,
+					(startIndex, length) -> runs.add(new Fat32Fat.Run(startIndex, length)));
+			if (numChainClusters < numClusters)
+				return null;
+		}
+		catch (VolumeException | IllegalArgumentException e)
+		{
+			return null;
+		}
+		return runs;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Adds the pieces of the specified file to the pending read requests, reading the volume as batches of pieces
+	 * become full.
+	 *
+	 * @param  file
+	 *           the file whose pieces will be added.
+	 * @return {@code true} if the pieces of the file were added; {@code false} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws InterruptedException
+	 *           if the calling thread was interrupted while it was waiting for a free buffer.
+	 */
+
+	private boolean addFile(
+		Fat32Directory.Entry	file)
+		throws VolumeException, InterruptedException
+	{
+		// Add file to list of pending files
+		PendingFile pendingFile = new PendingFile(file, createDigest());
+		pendingFiles.addLast(pendingFile);
+
+		// Add pieces of file to batch; mark file as unreadable if its cluster chain is broken
+		long fileLength = file.getFileLength();
+		List<Fat32Fat.Run> runs = (fileLength > 0) ? runs(volume, file) : List.of();
+		if (runs == null)
+			pendingFile.unreadable = true;
+		else
+		{
+			long filePosition = 0;
+			for (Fat32Fat.Run run : runs)
+			{
+				long sectorIndex = volume.clusterIndexToSectorIndex(run.startIndex());
+				long remaining = Math.min((long)run.length() * bytesPerCluster, fileLength - filePosition);
+				while (remaining > 0)
+				{
+					int length = (int)Math.min(remaining, BUFFER_SIZE);
+					if (!addPiece(pendingFile, sectorIndex, length))
+						return false;
+					sectorIndex += (length + bytesPerSector - 1) / bytesPerSector;
+					filePosition += length;
+					remaining -= length;
+				}
+			}
+		}
+
+		// If too many files are pending, read batch so that the oldest file can be waited for
+		if ((pendingFiles.size() > MAX_NUM_PENDING_FILES) && !readBatch())
+			return false;
+
+		// Pass hashes of completed files to handler
+		deliverHashes(MAX_NUM_PENDING_FILES);
+
+		// Indicate that pieces of file were added
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds the specified piece of a file to the batch of pieces of the next read request.  If the piece is not within
+	 * reach of the batch, the batch is read first.
+	 *
+	 * @param  file
+	 *           the file to which the piece belongs.
+	 * @param  sectorIndex
+	 *           the index of the first sector of the piece.
+	 * @param  length
+	 *           the length of the piece.
+	 * @return {@code true} if the piece was added; {@code false} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws InterruptedException
+	 *           if the calling thread was interrupted while it was waiting for a free buffer.
+	 */
+
+	private boolean addPiece(
+		PendingFile	file,
+		long		sectorIndex,
+		int			length)
+		throws VolumeException, InterruptedException
+	{
+		// Read batch if piece cannot be appended to it
+		long endSectorIndex = sectorIndex + (length + bytesPerSector - 1) / bytesPerSector;
+		if (!pieces.isEmpty()
+				&& ((sectorIndex < batchEndSectorIndex)
+						|| (sectorIndex - batchEndSectorIndex > maxGapNumSectors)
+						|| ((endSectorIndex - batchStartSectorIndex) * bytesPerSector > BUFFER_SIZE)))
+		{
+			if (!readBatch())
+				return false;
+		}
+
+		// Append piece to batch
+		if (pieces.isEmpty())
+			batchStartSectorIndex = sectorIndex;
+		batchEndSectorIndex = endSectorIndex;
+		pieces.add(new Piece(file, (int)((sectorIndex - batchStartSectorIndex) * bytesPerSector), length));
+		++file.numUnreadPieces;
+
+		// Indicate that piece was added
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the current batch of pieces of files in a single request, and submits each piece for hashing after the
+	 * preceding pieces of its file.
+	 *
+	 * @return {@code true} if the batch was read; {@code false} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws InterruptedException
+	 *           if the calling thread was interrupted while it was waiting for a free buffer.
+	 */
+
+	private boolean readBatch()
+		throws VolumeException, InterruptedException
+	{
+		// Test for empty batch
+		if (pieces.isEmpty())
+			return true;
+
+		// Get free buffer
+		byte[] buffer = null;
+		while (buffer == null)
+		{
+			if (taskStatus.isCancelled())
+				return false;
+			buffer = freeBuffers.poll(QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+
+		// Read batch
+		volume.seekSector(batchStartSectorIndex);
+		try
+		{
+			volume.read(buffer, 0, (int)((batchEndSectorIndex - batchStartSectorIndex) * bytesPerSector));
+		}
+		catch (VolumeException e)
+		{
+			freeBuffers.add(buffer);
+			throw e;
+		}
+
+		// Hash each piece after preceding pieces of its file; release buffer when all pieces have been hashed
+		byte[] data = buffer;
+		AtomicInteger numUnhashedPieces = new AtomicInteger(pieces.size());
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		for (Piece piece : pieces)
+		{
+			PendingFile file = piece.file();
+			file.tail = file.tail.thenRunAsync(() ->
+			{
+				try
+				{
+					file.digest.update(data, piece.offset(), piece.length());
+				}
+				finally
+				{
+					if (numUnhashedPieces.decrementAndGet() == 0)
+						freeBuffers.add(data);
+				}
+			}, pool);
+			--file.numUnreadPieces;
+			numBytesRead += piece.length();
+		}
+		pieces.clear();
+
+		// Update progress
+		double progress = (totalNumBytes == 0) ? 1.0 : (double)numBytesRead / (double)totalNumBytes;
+		if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+			taskStatus.setProgress(progress);
+
+		// Update throughput in task message
+		long time = System.nanoTime();
+		if (time - messageTime >= MESSAGE_UPDATE_INTERVAL)
+		{
+			messageTime = time;
+			taskStatus.setMessage(String.format(THROUGHPUT_STR, message,
+												Utils.megabytesPerSecond(numBytesRead, time - startTime)));
+		}
+
+		// Indicate that batch was read
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Passes the hashes of the oldest pending files whose pieces have all been read to the handler.  The hash of a
+	 * file is waited for if more than the specified number of files are pending; otherwise, files are passed to the
+	 * handler only while their hashes are complete.
+	 *
+	 * @param maxNumPendingFiles
+	 *          the number of files that may remain pending.
+	 */
+
+	private void deliverHashes(
+		int	maxNumPendingFiles)
+	{
+		while (!pendingFiles.isEmpty())
+		{
+			// Stop at first file that has unread pieces or whose hash is incomplete and need not be waited for
+			PendingFile file = pendingFiles.peekFirst();
+			if ((file.numUnreadPieces > 0)
+					|| ((pendingFiles.size() <= maxNumPendingFiles) && !file.tail.isDone()))
+				break;
+
+			// Wait for hash of file; pass it to handler
+			file.tail.join();
+			pendingFiles.removeFirst();
+			handler.invoke(file.entry, file.unreadable ? null : file.digest.digest());
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// INTERFACE: HANDLER OF THE HASH OF A FILE
+
+
+	/**
+	 * This functional interface defines the method that is passed the hash of the content of a file.
+	 */
+
+	@FunctionalInterface
+	public interface IHashHandler
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Handles the hash of the content of the specified file.
+		 *
+		 * @param file
+		 *          the file.
+		 * @param hash
+		 *          the SHA-256 hash of the content of {@code file}, or {@code null} if the content could not be read
+		 *          because the cluster chain of the file is invalid or ends before the end of the file.
+		 */
+
+		void invoke(
+			Fat32Directory.Entry	file,
+			byte[]					hash);
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: PIECE OF A FILE
+
+
+	/**
+	 * This record encapsulates a piece of a file within the buffer of a read request.
+	 *
+	 * @param file
+	 *          the file to which the piece belongs.
+	 * @param offset
+	 *          the offset of the piece in the buffer.
+	 * @param length
+	 *          the length of the piece.
+	 */
+
+	private record Piece(
+		PendingFile	file,
+		int			offset,
+		int			length)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: FILE WHOSE HASH IS PENDING
+
+
+	/**
+	 * This class encapsulates the state of a file whose hash has not yet been passed to the handler.
+	 */
+
+	private static class PendingFile
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The entry of the file. */
+		private	Fat32Directory.Entry	entry;
+
+		/** The digest that hashes the content of the file. */
+		private	MessageDigest			digest;
+
+		/** The last hashing operation on the content of the file. */
+		private	CompletableFuture<Void>	tail;
+
+		/** The number of pieces of the file that have been added to a batch but not yet read. */
+		private	int						numUnreadPieces;
+
+		/** Flag: if {@code true}, the content of the file could not be read because its cluster chain is broken. */
+		private	boolean					unreadable;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a file whose hash is pending.
+		 *
+		 * @param entry
+		 *          the entry of the file.
+		 * @param digest
+		 *          the digest that will hash the content of the file.
+		 */
+
+		private PendingFile(
+			Fat32Directory.Entry	entry,
+			MessageDigest			digest)
+		{
+			// Initialise instance variables
+			this.entry = entry;
+			this.digest = digest;
+			tail = CompletableFuture.completedFuture(null);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
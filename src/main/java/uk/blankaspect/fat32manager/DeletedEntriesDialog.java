@@ -18,12 +18,20 @@ package uk.blankaspect.fat32manager;
 // IMPORTS
 
 
+import java.nio.file.Path;
+
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import javafx.beans.binding.Bindings;
+
+import javafx.beans.property.ReadOnlyObjectProperty;
+
 import javafx.collections.FXCollections;
 
+import javafx.concurrent.Task;
+
 import javafx.geometry.HPos;
 
 import javafx.scene.control.Button;
@@ -34,14 +42,25 @@ import javafx.stage.Window;
 import uk.blankaspect.common.basictree.AbstractNode;
 import uk.blankaspect.common.basictree.MapNode;
 
+import uk.blankaspect.common.logging.Logger;
+
+import uk.blankaspect.common.message.MessageConstants;
+
 import uk.blankaspect.driveio.VolumeException;
 
 import uk.blankaspect.fat32manager.Fat32Directory.Entry;
 
 import uk.blankaspect.ui.jfx.button.Buttons;
 
+import uk.blankaspect.ui.jfx.dialog.ConfirmationDialog;
 import uk.blankaspect.ui.jfx.dialog.DialogState;
+import uk.blankaspect.ui.jfx.dialog.NotificationDialog;
 import uk.blankaspect.ui.jfx.dialog.SimpleModalDialog;
+import uk.blankaspect.ui.jfx.dialog.SimpleProgressDialog;
+
+import uk.blankaspect.ui.jfx.image.MessageIcon32;
+
+import uk.blankaspect.ui.jfx.locationchooser.LocationChooser;
 
 //----------------------------------------------------------------------
 
@@ -61,8 +80,19 @@ public class DeletedEntriesDialog
 	private static final	double	TABLE_VIEW_HEIGHT	= 506.0;
 
 	/** Miscellaneous strings. */
-	private static final	String	DELETED_ENTRIES_STR	= "Deleted entries";
-	private static final	String	VIEW_CLUSTER_STR	= "View cluster";
+	private static final	String	ELLIPSIS_STR			= "...";
+	private static final	String	DELETED_ENTRIES_STR		= "Deleted entries";
+	private static final	String	VIEW_CLUSTER_STR		= "View cluster";
+	private static final	String	RECOVER_STR				= "Recover";
+	private static final	String	RECOVER_FILE_STR		= "Recover file";
+	private static final	String	RECOVER_ALL_STR			= "Recover all";
+	private static final	String	NOTHING_RECOVERABLE_STR	=
+			"No file can be recovered: the first cluster of each file has been reused.";
+	private static final	String	CONFIRM_RECOVER_STR		=
+			"Files : %,d\nRecoverable bytes : %,d of %,d\nEstimated intact : %.1f%%\n\n"
+				+ "Do you want to recover the files?";
+	private static final	String	RECOVERED_STR			=
+			"Files recovered : %,d\nBytes copied : %,d\nTime : %.1f s (%.1f MB/s)";
 
 ////////////////////////////////////////////////////////////////////////
 //  Class variables
@@ -78,9 +108,21 @@ public class DeletedEntriesDialog
 		Window						owner,
 		Fat32Directory				directory0,
 		List<Fat32Directory.Entry>	entries)
+	{
+		this(owner, DELETED_ENTRIES_STR + " - " + directory0.getPathname(), directory0, entries, false);
+	}
+
+	//------------------------------------------------------------------
+
+	public DeletedEntriesDialog(
+		Window						owner,
+		String						title,
+		Fat32Directory				directory0,
+		List<Fat32Directory.Entry>	entries,
+		boolean						preservePaths)
 	{
 		// Call superclass constructor
-		super(owner, DELETED_ENTRIES_STR + " - " + directory0.getPathname(), state.locator(), state.getSize());
+		super(owner, title, state.locator(), state.getSize());
 
 		// Set properties
 		setResizable(true);
@@ -126,6 +168,25 @@ public class DeletedEntriesDialog
 		// Set table view as content of dialog
 		setContent(tableView);
 
+		// Create button: recover file
+		Button recoverFileButton = Buttons.hNoShrink(RECOVER_FILE_STR + ELLIPSIS_STR);
+		recoverFileButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		recoverFileButton.setOnAction(event ->
+				recover(RECOVER_FILE_STR, directory0.getVolume(),
+						List.of(tableView.getSelectionModel().getSelectedItem()), preservePaths));
+		ReadOnlyObjectProperty<Entry> selectedEntry = tableView.getSelectionModel().selectedItemProperty();
+		recoverFileButton.disableProperty().bind(Bindings.createBooleanBinding(() ->
+				(selectedEntry.get() == null) || !selectedEntry.get().isFile(), selectedEntry));
+		addButton(recoverFileButton, HPos.LEFT);
+
+		// Create button: recover all
+		Button recoverAllButton = Buttons.hNoShrink(RECOVER_ALL_STR + ELLIPSIS_STR);
+		recoverAllButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		recoverAllButton.setOnAction(event ->
+				recover(RECOVER_ALL_STR, directory0.getVolume(), entries, preservePaths));
+		recoverAllButton.setDisable(entries.stream().noneMatch(Entry::isFile));
+		addButton(recoverAllButton, HPos.LEFT);
+
 		// Create button: close
 		Button closeButton = Buttons.hNoShrink(CLOSE_STR);
 		closeButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
@@ -164,6 +225,112 @@ public class DeletedEntriesDialog
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	private void recover(
+		String						title,
+		Fat32Volume					volume,
+		List<Fat32Directory.Entry>	entries,
+		boolean						preservePaths)
+	{
+		// Estimate clusters of files; exclude files whose first cluster has been reused
+		List<DeletedFileRecovery.Candidate> candidates = DeletedFileRecovery.analyse(volume, entries).stream()
+				.filter(candidate -> candidate.score() > 0.0)
+				.toList();
+		if (candidates.isEmpty())
+		{
+			NotificationDialog.show(this, title, MessageIcon32.ALERT.get(), NOTHING_RECOVERABLE_STR);
+			return;
+		}
+
+		// Confirm recovery
+		long numRecoverableBytes = 0;
+		long numBytes = 0;
+		double score = 0.0;
+		for (DeletedFileRecovery.Candidate candidate : candidates)
+		{
+			numRecoverableBytes += candidate.numRecoverableBytes();
+			numBytes += candidate.entry().getFileLength();
+			score += candidate.score() * (double)candidate.entry().getFileLength();
+		}
+		score = (numBytes == 0) ? 1.0 : score / (double)numBytes;
+		String message = String.format(CONFIRM_RECOVER_STR, candidates.size(), numRecoverableBytes, numBytes,
+									   score * 100.0);
+		if (!ConfirmationDialog.show(this, title, MessageIcon32.QUESTION.get(), message, RECOVER_STR))
+			return;
+
+		// Display dialog to choose output directory
+		LocationChooser directoryChooser = LocationChooser.forDirectories();
+		directoryChooser.setDialogTitle(title);
+		directoryChooser.setDialogStateKey();
+		Path outDirectory = directoryChooser.showSelectDialog(this);
+		if (outDirectory == null)
+			return;
+
+		// Log description of task
+		Logger.INSTANCE.info(title + " " + candidates.stream().map(candidate -> candidate.entry().getPathname())
+								.toList() + " -> " + outDirectory);
+
+		// Create task to recover files
+		Task<FileExtractor.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected FileExtractor.Result call()
+				throws Exception
+			{
+				// Recover files
+				FileExtractor.Result result = DeletedFileRecovery.recover(volume, candidates, outDirectory,
+																		  preservePaths, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create message
+				FileExtractor.Result result = getValue();
+				String message = outDirectory + MessageConstants.LABEL_SEPARATOR
+						+ String.format(RECOVERED_STR, result.numFiles(), result.numBytes(),
+										(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond());
+
+				// Log message
+				Logger.INSTANCE.info(message);
+
+				// Report result
+				NotificationDialog.show(DeletedEntriesDialog.this, getTitle(), MessageIcon32.INFORMATION.get(),
+										message);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(DeletedEntriesDialog.this);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(this, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		Fat32ManagerApp.executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Member classes : non-inner classes
 ////////////////////////////////////////////////////////////////////////
@@ -0,0 +1,206 @@
+/*====================================================================*\
+
+DeletedEntryPurger.java
+
+Class: eraser of the deleted entries of a tree of directories.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: ERASER OF THE DELETED ENTRIES OF A TREE OF DIRECTORIES
+
+
+/**
+ * This class provides a method that erases the deleted entries of a directory of a FAT32 volume and, optionally, of
+ * all its subdirectories.
+ * <p>
+ * The entries of each directory are compacted by {@link Fat32Directory#eraseDeletedEntries(byte[], byte[], boolean)},
+ * which marks the slots of the live entries in a bit set and copies each run of live slots with a single array copy,
+ * so the time taken is linear in the size of the directory.  All the directories are read and written in a single
+ * session of the volume, each of them once, with a pair of buffers that are allocated once for the largest directory
+ * and reused for every directory.
+ * </p>
+ */
+
+public class DeletedEntryPurger
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** Miscellaneous strings. */
+	private static final	String	READING_DIRECTORIES_STR	= "Reading directories";
+	private static final	String	ERASING_ENTRIES_STR		= "Erasing deleted entries";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private DeletedEntryPurger()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Erases the deleted entries of the specified directory and, optionally, of all its subdirectories, and returns a
+	 * list of the directories from which entries were erased.
+	 *
+	 * @param  directory
+	 *           the directory whose deleted entries will be erased.
+	 * @param  recursive
+	 *           if {@code true}, the deleted entries of all the subdirectories of {@code directory} will also be
+	 *           erased.
+	 * @param  taskStatus
+	 *           the status of the task that is erasing the entries.
+	 * @return a list of the directories from which deleted entries were erased, in the order in which they were
+	 *         processed.  If the task is cancelled, the list contains the directories that were processed before
+	 *         cancellation.
+	 * @throws VolumeException
+	 *           if an error occurred when reading or writing a directory.
+	 */
+
+	public static List<DirectoryPurge> purge(
+		Fat32Directory	directory,
+		boolean			recursive,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Initialise list of results
+		List<DirectoryPurge> results = new ArrayList<>();
+
+		// Collect directories
+		taskStatus.setMessage(READING_DIRECTORIES_STR);
+		taskStatus.setProgress(-1.0);
+		List<Fat32Directory> directories = new ArrayList<>();
+		if (recursive)
+		{
+			// Read unread subdirectories of tree
+			DirectoryTreeLoader.load(directory, null, taskStatus);
+			if (taskStatus.isCancelled())
+				return results;
+
+			// Collect directories of tree depth-first
+			Deque<Fat32Directory> stack = new ArrayDeque<>();
+			stack.push(directory);
+			while (!stack.isEmpty())
+			{
+				Fat32Directory dir = stack.pop();
+				directories.add(dir);
+				List<Fat32Directory> children = dir.getChildren();
+				for (int i = children.size() - 1; i >= 0; i--)
+					stack.push(children.get(i));
+			}
+		}
+		else
+			directories.add(directory);
+
+		// Allocate buffers for largest directory
+		int maxLength = 0;
+		for (Fat32Directory dir : directories)
+			maxLength = Math.max(maxLength, dir.getDataLength());
+		byte[] inBuffer = new byte[maxLength];
+		byte[] outBuffer = new byte[maxLength];
+
+		// Erase deleted entries of directories in a single session
+		Fat32Volume volume = directory.getVolume();
+		taskStatus.setMessage(ERASING_ENTRIES_STR);
+		try
+		{
+			// Open volume for reading and writing
+			volume.open(Volume.Access.READ_WRITE, volume.isUnbufferedIO());
+
+			// Erase deleted entries of each directory
+			for (int i = 0; i < directories.size(); i++)
+			{
+				// Stop if task has been cancelled
+				if (taskStatus.isCancelled())
+					break;
+
+				// Erase deleted entries
+				Fat32Directory dir = directories.get(i);
+				Fat32Directory.Purge purge = dir.eraseDeletedEntries(inBuffer, outBuffer, false);
+				if (purge.numSlots() > 0)
+					results.add(new DirectoryPurge(dir, purge.numEntries(), purge.numBytes()));
+
+				// Update progress
+				taskStatus.setProgress((double)(i + 1) / (double)directories.size());
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+
+		// Return results
+		return results;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: ERASURE OF THE DELETED ENTRIES OF A DIRECTORY
+
+
+	/**
+	 * This record encapsulates the result of erasing the deleted entries of a directory.
+	 *
+	 * @param directory
+	 *          the directory.
+	 * @param numEntries
+	 *          the number of deleted entries that were erased.
+	 * @param numBytes
+	 *          the number of bytes of directory slots that were reclaimed, including the slots of the long-filename
+	 *          entries of deleted entries.
+	 */
+
+	public record DirectoryPurge(
+		Fat32Directory	directory,
+		int				numEntries,
+		int				numBytes)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,449 @@
+/*====================================================================*\
+
+DeletedFileRecovery.java
+
+Class: recovery of deleted files.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: RECOVERY OF DELETED FILES
+
+
+/**
+ * This class provides methods that estimate the clusters of deleted files and copy them to the host file system.
+ * <p>
+ * When a file is deleted, the first byte of its directory entry is overwritten and the entries of its cluster chain in
+ * the FAT are set to zero; the first cluster and the length of the file remain in the entry.  The clusters of a deleted
+ * file are therefore estimated by assuming that the file was contiguous: starting at the first cluster, consecutive
+ * clusters are taken until the length of the file is reached, and clusters that are now allocated to other files are
+ * skipped.  The result of the estimate is scored according to how much of the file could be found and how many
+ * allocated clusters had to be skipped.
+ * </p>
+ * <p>
+ * A volume-wide scan reads the clusters of every directory sequentially, because a volume supports only one I/O stream,
+ * while the decoding of the deleted entries and the estimation of their clusters is done on a pool of worker threads.
+ * </p>
+ */
+
+public class DeletedFileRecovery
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The suffix of the name of a worker thread. */
+	private static final	String	WORKER_THREAD_NAME_SUFFIX	= "deletedFileScanner";
+
+	/** Miscellaneous strings. */
+	private static final	String	FINDING_DIRECTORIES_STR		= "Finding directories";
+	private static final	String	SCANNING_DIRECTORIES_STR	= "Scanning directories";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private DeletedFileRecovery()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Estimates the clusters of the specified deleted file, and returns the estimate.
+	 *
+	 * @param  volume
+	 *           the volume that contains the file.
+	 * @param  entry
+	 *           the deleted entry of the file.
+	 * @return the estimate of the clusters of the file.
+	 */
+
+	public static Candidate analyse(
+		Fat32Volume				volume,
+		Fat32Directory.Entry	entry)
+	{
+		// Get number of clusters in file
+		Fat32Fat fat = volume.getFat();
+		int bytesPerCluster = volume.getBytesPerCluster();
+		long fileLength = entry.getFileLength();
+		int numClusters = (int)((fileLength + bytesPerCluster - 1) / bytesPerCluster);
+
+		// Take unused clusters from first cluster until file is complete
+		List<Fat32Fat.Run> runs = new ArrayList<>();
+		int numFound = 0;
+		int numSkipped = 0;
+		int index = entry.getClusterIndex();
+		boolean firstClusterUnused = (index >= Fat32Fat.MIN_CLUSTER_INDEX) && (index < fat.getLength())
+																			&& (fat.get(index) == 0);
+		if ((numClusters > 0) && (index >= Fat32Fat.MIN_CLUSTER_INDEX))
+		{
+			int startIndex = -1;
+			while ((numFound < numClusters) && (index < fat.getLength()))
+			{
+				if (fat.get(index) == 0)
+				{
+					if (startIndex < 0)
+						startIndex = index;
+					++numFound;
+				}
+				else
+				{
+					if (startIndex >= 0)
+					{
+						runs.add(new Fat32Fat.Run(startIndex, index - startIndex));
+						startIndex = -1;
+					}
+					++numSkipped;
+				}
+				++index;
+			}
+			if (startIndex >= 0)
+				runs.add(new Fat32Fat.Run(startIndex, index - startIndex));
+		}
+
+		// Score estimate: nothing is recoverable if first cluster has been reused
+		double score = 1.0;
+		if (numClusters > 0)
+			score = firstClusterUnused ? (double)numFound / (double)(numClusters + numSkipped) : 0.0;
+
+		// Return estimate
+		return new Candidate(entry, runs, numClusters, numSkipped,
+							 Math.min(fileLength, (long)numFound * bytesPerCluster), score);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Estimates the clusters of the deleted files among the specified entries, and returns the estimates.
+	 *
+	 * @param  volume
+	 *           the volume that contains the files.
+	 * @param  entries
+	 *           the deleted entries.  Entries that are not files are ignored.
+	 * @return the estimates of the clusters of the files.
+	 */
+
+	public static List<Candidate> analyse(
+		Fat32Volume					volume,
+		List<Fat32Directory.Entry>	entries)
+	{
+		List<Candidate> candidates = new ArrayList<>();
+		for (Fat32Directory.Entry entry : entries)
+		{
+			if (entry.isFile())
+				candidates.add(analyse(volume, entry));
+		}
+		return candidates;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Finds the deleted files in all the directories of the specified volume, estimates their clusters and returns the
+	 * result.
+	 *
+	 * @param  volume
+	 *           the volume that will be scanned.
+	 * @param  taskStatus
+	 *           the status of the task that is scanning the volume.
+	 * @return the result of the scan, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading a directory.
+	 */
+
+	public static ScanResult scanVolume(
+		Fat32Volume	volume,
+		ITaskStatus	taskStatus)
+		throws VolumeException
+	{
+		// Update task message
+		taskStatus.setMessage(FINDING_DIRECTORIES_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Collect directories of volume
+		List<Fat32Directory> directories = new ArrayList<>();
+		try
+		{
+			DirectoryTreeLoader.load(volume.getRootDir(), null, taskStatus);
+			addDirectories(volume.getRootDir(), directories, taskStatus);
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Update task message
+		taskStatus.setMessage(SCANNING_DIRECTORIES_STR);
+		taskStatus.setProgress(0.0);
+
+		// Create pool of worker threads
+		int[] threadIndex = { 0 };
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable ->
+				DaemonFactory.create(DeletedFileRecovery.class.getSimpleName() + "-" + WORKER_THREAD_NAME_SUFFIX + "-"
+										+ ++threadIndex[0], runnable));
+
+		// Read directories sequentially; find and analyse their deleted entries on worker threads
+		List<String> messages = Collections.synchronizedList(new ArrayList<>());
+		List<Future<List<Candidate>>> futures = new ArrayList<>();
+		try
+		{
+			// Open volume for reading
+			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+			// Read directories
+			for (int i = 0; i < directories.size(); i++)
+			{
+				// Test whether task has been cancelled
+				if (taskStatus.isCancelled())
+					return null;
+
+				// Read clusters of directory
+				Fat32Directory directory = directories.get(i);
+				byte[] data = directory.readData(false);
+
+				// Find and analyse deleted entries
+				futures.add(executor.submit(() -> analyse(volume, directory.findDeletedEntries(data, messages))));
+
+				// Update progress
+				taskStatus.setProgress((double)(i + 1) / (double)directories.size());
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+
+			// Shut down worker threads after they have finished
+			executor.shutdown();
+		}
+
+		// Collect results in order of directories
+		List<Candidate> candidates = new ArrayList<>();
+		try
+		{
+			for (Future<List<Candidate>> future : futures)
+				candidates.addAll(future.get());
+		}
+		catch (InterruptedException e)
+		{
+			executor.shutdownNow();
+			return null;
+		}
+		catch (ExecutionException e)
+		{
+			if (e.getCause() instanceof VolumeException volumeException)
+				throw volumeException;
+			throw new RuntimeException(e.getCause());
+		}
+
+		// Return result
+		return new ScanResult(candidates, new ArrayList<>(messages), directories.size());
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Copies the estimated clusters of the specified deleted files from the volume to the specified directory of the
+	 * host file system, and returns the result.  Characters of a filename that are not valid on the host are replaced,
+	 * and a suffix is appended to a filename that has already been used in the same output directory.
+	 *
+	 * @param  volume
+	 *           the volume that contains the files.
+	 * @param  candidates
+	 *           the estimates of the clusters of the deleted files.
+	 * @param  outDirectory
+	 *           the directory of the host file system to which the files will be copied.
+	 * @param  preservePaths
+	 *           if {@code true}, each file is copied to a subdirectory of {@code outDirectory} that corresponds to the
+	 *           directory of the volume that contained it.
+	 * @param  taskStatus
+	 *           the status of the task that is recovering the files.
+	 * @return the result of the recovery, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing a file or creating a directory.
+	 */
+
+	public static FileExtractor.Result recover(
+		Fat32Volume		volume,
+		List<Candidate>	candidates,
+		Path			outDirectory,
+		boolean			preservePaths,
+		ITaskStatus		taskStatus)
+		throws VolumeException, FileException
+	{
+		// Create list of files to copy
+		Set<Path> locations = new HashSet<>();
+		List<FileExtractor.RunFile> files = new ArrayList<>();
+		for (Candidate candidate : candidates)
+		{
+			// Get output directory of file
+			Path directory = outDirectory;
+			if (preservePaths)
+			{
+				List<String> names = candidate.entry().getDirectory().getNames();
+				for (String name : names.subList(1, names.size()))
+					directory = directory.resolve(Utils.toHostFilename(name));
+			}
+
+			// Get unique location of file
+			String filename = Utils.toHostFilename(candidate.entry().getName());
+			Path location = directory.resolve(filename);
+			for (int i = 1; !locations.add(location); i++)
+			{
+				int index = filename.lastIndexOf(Fat32Directory.EXTENSION_SEPARATOR_CHAR);
+				location = directory.resolve((index <= 0) ? filename + "~" + i
+														  : filename.substring(0, index) + "~" + i
+																+ filename.substring(index));
+			}
+
+			// Add file to list
+			files.add(new FileExtractor.RunFile(candidate.entry(), location, candidate.runs()));
+		}
+
+		// Copy files
+		return FileExtractor.extractRuns(volume, files, taskStatus);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds the specified directory and its regular subdirectories, in depth-first order, to the specified list.
+	 *
+	 * @param directory
+	 *          the directory.
+	 * @param directories
+	 *          the list to which directories will be added.
+	 * @param taskStatus
+	 *          the status of the task that is scanning the volume.
+	 */
+
+	private static void addDirectories(
+		Fat32Directory			directory,
+		List<Fat32Directory>	directories,
+		ITaskStatus				taskStatus)
+	{
+		directories.add(directory);
+		for (Fat32Directory child : directory.getChildren())
+		{
+			if (taskStatus.isCancelled())
+				break;
+			if (child.getEntryInParent().isRegularDirectory())
+				addDirectories(child, directories, taskStatus);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: CANDIDATE FOR RECOVERY
+
+
+	/**
+	 * This record encapsulates the estimated clusters of a deleted file.
+	 *
+	 * @param entry
+	 *          the deleted entry of the file.
+	 * @param runs
+	 *          the estimated runs of clusters of the file, in order.
+	 * @param numClusters
+	 *          the number of clusters that the file occupied.
+	 * @param numSkippedClusters
+	 *          the number of allocated clusters that were skipped.
+	 * @param numRecoverableBytes
+	 *          the number of bytes of the file that are contained in {@code runs}.
+	 * @param score
+	 *          an estimate, from 0 to 1, of the fraction of the file that can be recovered intact.
+	 */
+
+	public record Candidate(
+		Fat32Directory.Entry	entry,
+		List<Fat32Fat.Run>		runs,
+		int						numClusters,
+		int						numSkippedClusters,
+		long					numRecoverableBytes,
+		double					score)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: RESULT OF VOLUME SCAN
+
+
+	/**
+	 * This record encapsulates the result of a scan of a volume for deleted files.
+	 *
+	 * @param candidates
+	 *          the estimates of the clusters of the deleted files that were found.
+	 * @param messages
+	 *          the messages about invalid fields of deleted entries.
+	 * @param numDirectories
+	 *          the number of directories that were scanned.
+	 */
+
+	public record ScanResult(
+		List<Candidate>	candidates,
+		List<String>	messages,
+		int				numDirectories)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,213 @@
+/*====================================================================*\
+
+DirectorySorter.java
+
+Class: sorter of the entries of a tree of directories.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: SORTER OF THE ENTRIES OF A TREE OF DIRECTORIES
+
+
+/**
+ * This class provides a method that sorts the entries of a directory of a FAT32 volume and, optionally, of all its
+ * subdirectories by name.
+ * <p>
+ * The operation has two phases:
+ * </p>
+ * <ol>
+ *   <li>The new order of the entries of each directory is computed in memory, in parallel across directories, with
+ *       {@link Fat32Directory#getEntriesSortedByName(boolean)}, which compares precomputed keys rather than folding
+ *       the case of names on every comparison.  Directories whose entries are already in order are omitted.</li>
+ *   <li>The directories that are out of order are rewritten in a single session of the volume, in ascending order of
+ *       their first clusters, with a pair of buffers that are allocated once for the largest directory.</li>
+ * </ol>
+ */
+
+public class DirectorySorter
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** Miscellaneous strings. */
+	private static final	String	READING_DIRECTORIES_STR	= "Reading directories";
+	private static final	String	SORTING_ENTRIES_STR		= "Sorting entries";
+	private static final	String	WRITING_DIRECTORIES_STR	= "Writing directories";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private DirectorySorter()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Sorts the entries of the specified directory and, optionally, of all its subdirectories by name, and returns the
+	 * number of directories that were rewritten.
+	 *
+	 * @param  directory
+	 *           the directory whose entries will be sorted.
+	 * @param  recursive
+	 *           if {@code true}, the entries of all the subdirectories of {@code directory} will also be sorted.
+	 * @param  ignoreCase
+	 *           if {@code true}, the letter case of names will be ignored when they are compared.
+	 * @param  taskStatus
+	 *           the status of the task that is sorting the entries.
+	 * @return the number of directories that were rewritten.  If the task is cancelled, the directories that were
+	 *         rewritten before cancellation remain sorted.
+	 * @throws VolumeException
+	 *           if an error occurred when reading or writing a directory.
+	 */
+
+	public static int sort(
+		Fat32Directory	directory,
+		boolean			recursive,
+		boolean			ignoreCase,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Collect directories
+		taskStatus.setMessage(READING_DIRECTORIES_STR);
+		taskStatus.setProgress(-1.0);
+		List<Fat32Directory> directories = new ArrayList<>();
+		if (recursive)
+		{
+			// Read unread subdirectories of tree
+			DirectoryTreeLoader.load(directory, null, taskStatus);
+			if (taskStatus.isCancelled())
+				return 0;
+
+			// Collect directories of tree
+			Deque<Fat32Directory> stack = new ArrayDeque<>();
+			stack.push(directory);
+			while (!stack.isEmpty())
+			{
+				Fat32Directory dir = stack.pop();
+				directories.add(dir);
+				for (Fat32Directory child : dir.getChildren())
+					stack.push(child);
+			}
+		}
+		else
+			directories.add(directory);
+
+		// Sort entries of directories in memory, in parallel; omit directories that are already in order
+		taskStatus.setMessage(SORTING_ENTRIES_STR);
+		List<Reordering> reorderings = directories.parallelStream()
+				.map(dir -> new Reordering(dir, dir.getEntriesSortedByName(ignoreCase)))
+				.filter(reordering -> reordering.entries() != null)
+				.sorted(Comparator.comparingInt(reordering -> reordering.directory().getClusterIndex()))
+				.toList();
+		if (reorderings.isEmpty() || taskStatus.isCancelled())
+			return 0;
+
+		// Allocate buffers for largest directory
+		int maxLength = 0;
+		for (Reordering reordering : reorderings)
+			maxLength = Math.max(maxLength, reordering.directory().getDataLength());
+		byte[] inBuffer = new byte[maxLength];
+		byte[] outBuffer = new byte[maxLength];
+
+		// Rewrite directories in ascending order of first cluster in a single session
+		Fat32Volume volume = directory.getVolume();
+		taskStatus.setMessage(WRITING_DIRECTORIES_STR);
+		taskStatus.setProgress(0.0);
+		int numSorted = 0;
+		try
+		{
+			// Open volume for reading and writing
+			volume.open(Volume.Access.READ_WRITE, volume.isUnbufferedIO());
+
+			// Rewrite each directory
+			for (Reordering reordering : reorderings)
+			{
+				// Stop if task has been cancelled
+				if (taskStatus.isCancelled())
+					break;
+
+				// Rewrite directory with entries in new order
+				reordering.directory().reorderEntries(reordering.entries(), inBuffer, outBuffer, false);
+
+				// Update progress
+				taskStatus.setProgress((double)++numSorted / (double)reorderings.size());
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+
+		// Return number of directories that were rewritten
+		return numSorted;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: NEW ORDER OF THE ENTRIES OF A DIRECTORY
+
+
+	/**
+	 * This record associates a directory with its entries in a new order.
+	 *
+	 * @param directory
+	 *          the directory.
+	 * @param entries
+	 *          the entries of {@code directory} in their new order, or {@code null} if they are already in order.
+	 */
+
+	private record Reordering(
+		Fat32Directory				directory,
+		List<Fat32Directory.Entry>	entries)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -1153,7 +1153,7 @@ public class DirectoryTableView
 		LENGTH
 		(
 			"Length",
-			"Length of file",
+			"Length of file, or total length of files of directory tree if its disk usage has been computed",
 			HPos.RIGHT,
 			TextUtils.textWidth(Utils.formatDecimal(0xFF_FFFF_FFFFL))
 		)
@@ -1162,7 +1162,19 @@ public class DirectoryTableView
 			protected String getValueString(
 				Fat32Directory.Entry	entry)
 			{
-				return (entry.isDirectory() || entry.isVolumeLabel()) ? "" : Utils.formatDecimal(entry.getFileLength());
+				Long length = getLength(entry);
+				return (length == null) ? "" : Utils.formatDecimal(length);
+			}
+
+			//----------------------------------------------------------
+
+			private Long getLength(
+				Fat32Directory.Entry	entry)
+			{
+				if (entry.isFile())
+					return entry.getFileLength();
+				Fat32Directory.Usage usage = entry.getUsage();
+				return (usage == null) ? null : usage.logicalBytes();
 			}
 
 			//----------------------------------------------------------
@@ -1176,8 +1188,7 @@ public class DirectoryTableView
 				column.setCellValueFactory(features ->
 				{
 					Fat32Directory.Entry entry = features.getValue();
-					Long value = (entry.isDirectory() || entry.isVolumeLabel()) ? null : entry.getFileLength();
-					return new ReadOnlyObjectWrapper<>(value);
+					return new ReadOnlyObjectWrapper<>(getLength(entry));
 				});
 				return column;
 			}
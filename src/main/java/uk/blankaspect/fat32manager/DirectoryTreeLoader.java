@@ -0,0 +1,346 @@
+/*====================================================================*\
+
+DirectoryTreeLoader.java
+
+Class: loader of a tree of directories.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import uk.blankaspect.common.logging.Logger;
+
+import uk.blankaspect.common.task.ICancellable;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: LOADER OF A TREE OF DIRECTORIES
+
+
+/**
+ * This class provides a method that reads all the unread subdirectories of a directory of a FAT32 volume.
+ * <p>
+ * The tree is read one level at a time, because the locations of the directories of a level are known only when
+ * their parents have been parsed.  The cluster chains of the unread directories of a level are collected from the FAT,
+ * the clusters of all the chains are sorted by index (and therefore by sector), and the clusters are then read from
+ * the volume in a single session as one ascending sweep.  Clusters that are adjacent or separated by a small gap are
+ * coalesced into a single request, so that the device sees a short sequence of large forward-moving reads rather than
+ * a random walk over the tree.
+ * </p>
+ * <p>
+ * The volume supports only one I/O stream, so the reads themselves are sequential, but each directory is parsed on
+ * the common work-stealing {@link ForkJoinPool} as soon as its last cluster has been read, concurrently with the rest
+ * of the sweep.
+ * </p>
+ * <p>
+ * The children of a directory are attached to it only when all of them have been read, so a tree that is loaded
+ * partially because of cancellation or an error is still consistent: the unread parts are read on demand by {@link
+ * Fat32Directory#getChildren()}.
+ * </p>
+ */
+
+public class DirectoryTreeLoader
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The separator between messages that are written to the log. */
+	private static final	String	MESSAGE_SEPARATOR	= "\n----\n";
+
+	/** Miscellaneous strings. */
+	private static final	String	ERRORS_READING_TREE_STR	= "errors reading directory tree of";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	INTERRUPTED =
+				"The reading of the directory tree was interrupted.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private DirectoryTreeLoader()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Reads the subdirectories of the specified directory, at all depths, whose children have not already been read,
+	 * and returns the number of directories that were read.  Directories that have already been read are not read
+	 * again.
+	 *
+	 * @param  directory
+	 *           the directory whose subtree will be read.
+	 * @param  messages
+	 *           the list to which messages about invalid directory entries will be added.  If it is {@code null}, the
+	 *           messages are written to the log.
+	 * @param  cancellable
+	 *           the object that is polled to determine whether the operation has been cancelled.
+	 * @return the number of directories that were read.
+	 * @throws VolumeException
+	 *           if an error occurred when reading or parsing a directory, or if the calling thread was interrupted
+	 *           while it was waiting for a directory to be parsed.
+	 */
+
+	public static int load(
+		Fat32Directory	directory,
+		List<String>	messages,
+		ICancellable	cancellable)
+		throws VolumeException
+	{
+		// Initialise list of messages that may be added to by several threads
+		List<String> messages0 = Collections.synchronizedList(new ArrayList<>());
+
+		// Read tree one level at a time
+		Fat32Volume volume = directory.getVolume();
+		int numDirectories = 0;
+		try
+		{
+			List<Fat32Directory> level = List.of(directory);
+			while (!level.isEmpty() && !cancellable.isCancelled())
+			{
+				// Create unread children of directories of level
+				List<Fat32Directory> parents = new ArrayList<>();
+				List<List<Fat32Directory>> parentChildren = new ArrayList<>();
+				List<Fat32Directory> unread = new ArrayList<>();
+				List<Fat32Directory> nextLevel = new ArrayList<>();
+				for (Fat32Directory dir : level)
+				{
+					if (dir.areChildrenRead())
+						nextLevel.addAll(dir.getChildren());
+					else
+					{
+						List<Fat32Directory> children = dir.createChildren();
+						parents.add(dir);
+						parentChildren.add(children);
+						unread.addAll(children);
+						nextLevel.addAll(children);
+					}
+				}
+
+				// Read clusters of unread directories in a single sweep; parse each directory on a worker thread
+				List<Future<?>> futures = new ArrayList<>();
+				if (!unread.isEmpty())
+					sweep(volume, unread, messages0, futures, cancellable);
+
+				// Wait for directories to be parsed
+				for (Future<?> future : futures)
+				{
+					try
+					{
+						future.get();
+					}
+					catch (ExecutionException e)
+					{
+						if (e.getCause() instanceof VolumeException volumeException)
+							throw volumeException;
+						throw new RuntimeException(e.getCause());
+					}
+					catch (InterruptedException e)
+					{
+						Thread.currentThread().interrupt();
+						throw new VolumeException(ErrorMsg.INTERRUPTED, e);
+					}
+				}
+				numDirectories += futures.size();
+
+				// Stop if task was cancelled, leaving children of this level unattached
+				if (futures.size() < unread.size())
+					break;
+
+				// Attach children to their parents
+				for (int i = 0; i < parents.size(); i++)
+					parents.get(i).setChildren(parentChildren.get(i));
+
+				// Proceed to next level
+				level = nextLevel;
+			}
+		}
+		finally
+		{
+			// Report messages
+			if (messages != null)
+				messages.addAll(messages0);
+			else if (!messages0.isEmpty())
+			{
+				Logger.INSTANCE.error(DirectoryTreeLoader.class.getSimpleName() + ".load : " + ERRORS_READING_TREE_STR
+										+ " " + directory.getPathname() + MESSAGE_SEPARATOR
+										+ String.join(MESSAGE_SEPARATOR, messages0));
+			}
+		}
+
+		// Return number of directories that were read
+		return numDirectories;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the clusters of the specified directories from the volume in ascending order of cluster index, coalescing
+	 * nearby clusters into single requests, and submits each directory for parsing when all its clusters have been
+	 * read.
+	 *
+	 * @param  volume
+	 *           the volume that contains the directories.
+	 * @param  directories
+	 *           the directories that will be read.
+	 * @param  messages
+	 *           the list to which messages about invalid directory entries will be added.
+	 * @param  futures
+	 *           the list to which the pending results of parsing the directories will be added.
+	 * @param  cancellable
+	 *           the object that is polled to determine whether the operation has been cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 */
+
+	private static void sweep(
+		Fat32Volume				volume,
+		List<Fat32Directory>	directories,
+		List<String>			messages,
+		List<Future<?>>			futures,
+		ICancellable			cancellable)
+		throws VolumeException
+	{
+		// Collect clusters of directories
+		Fat32Fat fat = volume.getFat();
+		int bytesPerCluster = volume.getBytesPerCluster();
+		int numDirectories = directories.size();
+		byte[][] buffers = new byte[numDirectories][];
+		int[] numPendingClusters = new int[numDirectories];
+		List<Cluster> clusters = new ArrayList<>();
+		for (int i = 0; i < numDirectories; i++)
+		{
+			int dirIndex = i;
+			int firstClusterIndex = clusters.size();
+			fat.forEachCluster(directories.get(i).getClusterIndex(), index ->
+			{
+				int offset = (clusters.size() - firstClusterIndex) * bytesPerCluster;
+				clusters.add(new Cluster(index, dirIndex, offset));
+			});
+			int numClusters = clusters.size() - firstClusterIndex;
+			buffers[i] = new byte[numClusters * bytesPerCluster];
+			numPendingClusters[i] = numClusters;
+		}
+
+		// Sort clusters by index
+		clusters.sort(Comparator.comparingInt(Cluster::index));
+
+		// Read clusters
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		try
+		{
+			// Open volume for reading
+			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+			// Read runs of clusters
+			int i = 0;
+			while ((i < clusters.size()) && !cancellable.isCancelled())
+			{
+				// Find extent of request
+				int start = i;
+				i = ClusterRunCoalescer.requestEnd(start, clusters.size(), j -> clusters.get(j).index(), bytesPerCluster);
+				int firstIndex = clusters.get(start).index();
+				int lastIndex = clusters.get(i - 1).index();
+
+				// Read extent
+				byte[] buffer = new byte[(lastIndex - firstIndex + 1) * bytesPerCluster];
+				volume.seekSector(volume.clusterIndexToSectorIndex(firstIndex));
+				volume.read(buffer, 0, buffer.length);
+
+				// Distribute clusters to directories; parse each directory that is complete
+				for (int j = start; j < i; j++)
+				{
+					Cluster cluster = clusters.get(j);
+					int dirIndex = cluster.dirIndex();
+					System.arraycopy(buffer, (cluster.index() - firstIndex) * bytesPerCluster, buffers[dirIndex],
+									 cluster.offset(), bytesPerCluster);
+					if (--numPendingClusters[dirIndex] == 0)
+					{
+						Fat32Directory directory = directories.get(dirIndex);
+						byte[] data = buffers[dirIndex];
+						futures.add(pool.submit(() ->
+						{
+							directory.read(data, messages);
+							return null;
+						}));
+					}
+				}
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: CLUSTER OF A DIRECTORY
+
+
+	/**
+	 * This record encapsulates a cluster of a directory that is to be read.
+	 *
+	 * @param index
+	 *          the index of the cluster.
+	 * @param dirIndex
+	 *          the index of the directory in the list of directories that are being read.
+	 * @param offset
+	 *          the offset of the cluster within the data of the directory.
+	 */
+
+	private record Cluster(
+		int	index,
+		int	dirIndex,
+		int	offset)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,486 @@
+/*====================================================================*\
+
+DuplicateFinder.java
+
+Class: finder of files with identical contents.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.security.MessageDigest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: FINDER OF FILES WITH IDENTICAL CONTENTS
+
+
+/**
+ * This class provides a method that finds the files in a tree of directories of a FAT32 volume that have identical
+ * contents.
+ * <p>
+ * The candidates are narrowed in three stages so that as little data as possible is read from the volume:
+ * </p>
+ * <ol>
+ *   <li>The files are grouped by length, which is known from their directory entries.  A file whose length is unique
+ *       cannot have a duplicate and is not read at all.</li>
+ *   <li>The first cluster of each remaining file is read and hashed, and the files of each group are regrouped by that
+ *       hash.  The first clusters are read in a single ascending sweep over the volume, with nearby clusters coalesced
+ *       into single requests.  For a file that occupies a single cluster, the hash of the first cluster is the hash
+ *       of its whole content.</li>
+ *   <li>The whole content of each file that still has a candidate duplicate is read and hashed by {@link
+ *       ContentHasher}, which coalesces the extents of nearby files into single requests.</li>
+ * </ol>
+ * <p>
+ * The volume supports only one I/O stream, so data are read on the calling thread; the hashing is done on the common
+ * {@link ForkJoinPool}, concurrently with the reads.  Pieces of a single file are hashed in order, but different files
+ * are hashed in parallel.
+ * </p>
+ */
+
+public class DuplicateFinder
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** Miscellaneous strings. */
+	private static final	String	COLLECTING_FILES_STR			= "Collecting files";
+	private static final	String	COMPARING_FIRST_CLUSTERS_STR	= "Comparing first clusters";
+	private static final	String	COMPARING_CONTENTS_STR			= "Comparing contents";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private DuplicateFinder()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Finds the files in the specified directory and its subdirectories that have identical contents, and returns the
+	 * result.  Empty files are ignored.
+	 *
+	 * @param  directory
+	 *           the directory at the root of the tree that will be searched.
+	 * @param  taskStatus
+	 *           the status of the task that is finding the duplicates.
+	 * @return the result of the search, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 */
+
+	public static Result find(
+		Fat32Directory	directory,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Update task message
+		taskStatus.setMessage(COLLECTING_FILES_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Read unread subdirectories of tree
+		long startTime = System.nanoTime();
+		DirectoryTreeLoader.load(directory, null, taskStatus);
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Group files by length
+		Map<Long, List<Fat32Directory.Entry>> lengthGroups = new HashMap<>();
+		int numFiles = 0;
+		Deque<Fat32Directory> stack = new ArrayDeque<>();
+		stack.push(directory);
+		try
+		{
+			while (!stack.isEmpty())
+			{
+				Fat32Directory dir = stack.pop();
+				for (Fat32Directory.Entry entry : dir.getEntries())
+				{
+					if (entry.isFile() && (entry.getFileLength() > 0))
+					{
+						lengthGroups.computeIfAbsent(entry.getFileLength(), key -> new ArrayList<>()).add(entry);
+						++numFiles;
+					}
+				}
+				for (Fat32Directory child : dir.getChildren())
+					stack.push(child);
+			}
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+
+		// Regroup candidates by hash of first cluster
+		Fat32Volume volume = directory.getVolume();
+		int bytesPerCluster = volume.getBytesPerCluster();
+		Map<String, List<Fat32Directory.Entry>> groups =
+				hashFirstClusters(volume, candidates(lengthGroups.values()), taskStatus);
+		if (groups == null)
+			return null;
+		long numBytesRead = 0;
+		for (List<Fat32Directory.Entry> group : groups.values())
+		{
+			for (Fat32Directory.Entry entry : group)
+				numBytesRead += Math.min(entry.getFileLength(), bytesPerCluster);
+		}
+
+		// Regroup candidates that are longer than one cluster by hash of content
+		List<Fat32Directory.Entry> multiClusterCandidates = new ArrayList<>();
+		for (List<Fat32Directory.Entry> group : candidates(groups.values()))
+		{
+			if (group.get(0).getFileLength() > bytesPerCluster)
+				multiClusterCandidates.addAll(group);
+		}
+		groups.values().removeIf(group -> group.get(0).getFileLength() > bytesPerCluster);
+		if (!multiClusterCandidates.isEmpty())
+		{
+			Map<String, List<Fat32Directory.Entry>> contentGroups =
+					hashContents(volume, multiClusterCandidates, taskStatus);
+			if (contentGroups == null)
+				return null;
+			groups.putAll(contentGroups);
+			for (Fat32Directory.Entry entry : multiClusterCandidates)
+				numBytesRead += entry.getFileLength();
+		}
+
+		// Create sets of duplicates, largest waste first
+		List<DuplicateSet> sets = new ArrayList<>();
+		for (List<Fat32Directory.Entry> group : candidates(groups.values()))
+		{
+			long length = group.get(0).getFileLength();
+			long allocatedLength = (length + bytesPerCluster - 1) / bytesPerCluster * bytesPerCluster;
+			group.sort(Comparator.comparing(Fat32Directory.Entry::getPathname));
+			sets.add(new DuplicateSet(length, group, (long)(group.size() - 1) * allocatedLength));
+		}
+		sets.sort(Comparator.comparingLong(DuplicateSet::wastedBytes).reversed());
+
+		// Return result
+		return new Result(sets, numFiles, numBytesRead, System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the groups of the specified groups that have more than one member.
+	 *
+	 * @param  groups
+	 *           the groups that will be filtered.
+	 * @return the groups of {@code groups} that have more than one member.
+	 */
+
+	private static List<List<Fat32Directory.Entry>> candidates(
+		Iterable<List<Fat32Directory.Entry>>	groups)
+	{
+		List<List<Fat32Directory.Entry>> candidates = new ArrayList<>();
+		for (List<Fat32Directory.Entry> group : groups)
+		{
+			if (group.size() > 1)
+				candidates.add(group);
+		}
+		return candidates;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the key of a group of files that have the specified length and hash.
+	 *
+	 * @param  length
+	 *           the length of the files.
+	 * @param  hash
+	 *           the hash of the files.
+	 * @return the key of the group.
+	 */
+
+	private static String key(
+		long	length,
+		byte[]	hash)
+	{
+		return length + ":" + HexFormat.of().formatHex(hash);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the first cluster of each file of the specified groups in a single ascending sweep, hashes the content of
+	 * the file in that cluster, and returns the files grouped by length and hash.
+	 *
+	 * @param  volume
+	 *           the volume that contains the files.
+	 * @param  lengthGroups
+	 *           the groups of files of equal length.
+	 * @param  taskStatus
+	 *           the status of the task that is finding the duplicates.
+	 * @return the files of {@code lengthGroups} grouped by length and hash of the first cluster, or {@code null} if
+	 *         the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 */
+
+	private static Map<String, List<Fat32Directory.Entry>> hashFirstClusters(
+		Fat32Volume							volume,
+		List<List<Fat32Directory.Entry>>	lengthGroups,
+		ITaskStatus							taskStatus)
+		throws VolumeException
+	{
+		// Update task message; reset progress
+		taskStatus.setMessage(COMPARING_FIRST_CLUSTERS_STR);
+		taskStatus.setProgress(0.0);
+
+		// Sort files by index of first cluster
+		List<Fat32Directory.Entry> files = new ArrayList<>();
+		for (List<Fat32Directory.Entry> group : lengthGroups)
+			files.addAll(group);
+		files.sort(Comparator.comparingInt(Fat32Directory.Entry::getClusterIndex));
+
+		// Read first clusters; hash each one on a worker thread
+		int bytesPerCluster = volume.getBytesPerCluster();
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		List<Future<byte[]>> futures = new ArrayList<>();
+		try
+		{
+			// Open volume for reading
+			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+			// Read runs of first clusters
+			DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+			int i = 0;
+			while (i < files.size())
+			{
+				// Test for cancellation
+				if (taskStatus.isCancelled())
+					return null;
+
+				// Find extent of request
+				int start = i;
+				i = ClusterRunCoalescer.requestEnd(start, files.size(), j -> files.get(j).getClusterIndex(),
+												   bytesPerCluster);
+				int firstIndex = files.get(start).getClusterIndex();
+				int lastIndex = files.get(i - 1).getClusterIndex();
+
+				// Read extent
+				byte[] buffer = new byte[(lastIndex - firstIndex + 1) * bytesPerCluster];
+				volume.seekSector(volume.clusterIndexToSectorIndex(firstIndex));
+				volume.read(buffer, 0, buffer.length);
+
+				// Hash first cluster of each file of extent
+				for (int j = start; j < i; j++)
+				{
+					Fat32Directory.Entry file = files.get(j);
+					int offset = (file.getClusterIndex() - firstIndex) * bytesPerCluster;
+					int length = (int)Math.min(file.getFileLength(), bytesPerCluster);
+					MessageDigest digest = ContentHasher.createDigest();
+					futures.add(pool.submit(() ->
+					{
+						digest.update(buffer, offset, length);
+						return digest.digest();
+					}));
+				}
+
+				// Update progress
+				double progress = (double)i / (double)files.size();
+				if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+					taskStatus.setProgress(progress);
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+
+		// Group files by length and hash
+		Map<String, List<Fat32Directory.Entry>> groups = new HashMap<>();
+		for (int i = 0; i < files.size(); i++)
+		{
+			Fat32Directory.Entry file = files.get(i);
+			groups.computeIfAbsent(key(file.getFileLength(), getHash(futures.get(i))),
+								   key -> new ArrayList<>()).add(file);
+		}
+		return groups;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the whole content of each of the specified files, hashes it, and returns the files grouped by length and
+	 * hash.
+	 *
+	 * @param  volume
+	 *           the volume that contains the files.
+	 * @param  files
+	 *           the files whose contents will be hashed.
+	 * @param  taskStatus
+	 *           the status of the task that is finding the duplicates.
+	 * @return the files grouped by length and hash of content, or {@code null} if the task was cancelled.  Files whose
+	 *         cluster chains are broken are omitted.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 */
+
+	private static Map<String, List<Fat32Directory.Entry>> hashContents(
+		Fat32Volume					volume,
+		List<Fat32Directory.Entry>	files,
+		ITaskStatus					taskStatus)
+		throws VolumeException
+	{
+		// Hash contents of files; group files by length and hash, omitting files that cannot be read
+		Map<String, List<Fat32Directory.Entry>> groups = new HashMap<>();
+		long numBytesRead = ContentHasher.hash(volume, files, (file, hash) ->
+		{
+			if (hash != null)
+				groups.computeIfAbsent(key(file.getFileLength(), hash), key -> new ArrayList<>()).add(file);
+		}, COMPARING_CONTENTS_STR, taskStatus);
+		return (numBytesRead < 0) ? null : groups;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for the specified hash to be computed, and returns it.
+	 *
+	 * @param  future
+	 *           the pending hash.
+	 * @return the hash.
+	 */
+
+	private static byte[] getHash(
+		Future<byte[]>	future)
+	{
+		try
+		{
+			return future.get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException(e.getCause());
+		}
+		catch (InterruptedException e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of a search for duplicate files.
+	 *
+	 * @param duplicateSets
+	 *          the sets of files with identical contents, in descending order of wasted space.
+	 * @param numFiles
+	 *          the number of non-empty files that were examined.
+	 * @param numBytesRead
+	 *          the number of bytes of file data that were read from the volume.
+	 * @param nanoseconds
+	 *          the time taken by the search.
+	 */
+
+	public record Result(
+		List<DuplicateSet>	duplicateSets,
+		int					numFiles,
+		long				numBytesRead,
+		long				nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the total number of bytes of the clusters that are occupied by redundant copies of files.
+		 *
+		 * @return the total number of bytes of the clusters that are occupied by redundant copies of files.
+		 */
+
+		public long wastedBytes()
+		{
+			return duplicateSets.stream().mapToLong(DuplicateSet::wastedBytes).sum();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: SET OF DUPLICATE FILES
+
+
+	/**
+	 * This record encapsulates a set of files with identical contents.
+	 *
+	 * @param length
+	 *          the length of each file.
+	 * @param entries
+	 *          the entries of the files, in order of pathname.
+	 * @param wastedBytes
+	 *          the number of bytes of the clusters that are occupied by all but one of the files.
+	 */
+
+	public record DuplicateSet(
+		long						length,
+		List<Fat32Directory.Entry>	entries,
+		long						wastedBytes)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -27,17 +27,28 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import java.util.stream.Collectors;
 
+import java.util.zip.CRC32;
+
 import uk.blankaspect.common.bitarray.BitUtils;
 
+
 import uk.blankaspect.common.logging.Logger;
 
 import uk.blankaspect.common.number.NumberCodec;
@@ -160,6 +171,16 @@ public class Fat32Directory
 	private static final	int		LFN_MIN_INDEX	= 1;
 	private static final	int		LFN_MAX_INDEX	= 20;
 
+	private static final	char	LFN_PADDING_CHAR	= '\uFFFF';
+
+	public static final		int		MAX_NAME_LENGTH	= 255;
+
+	public static final		int		MAX_NUM_ENTRIES	= 1 << 16;
+
+	private static final	String	SHORT_NAME_SPECIAL_CHARS		= "!#$%&'()-@^_`{}~";
+	private static final	char	SHORT_NAME_REPLACEMENT_CHAR		= '_';
+	private static final	char	SHORT_NAME_NUMERIC_TAIL_PREFIX	= '~';
+
 	private static final	int		LFN_STEM_CASE_MASK		= 1 << 3;
 	private static final	int		LFN_EXTENSION_CASE_MASK	= 1 << 4;
 
@@ -181,6 +202,7 @@ public class Fat32Directory
 	private static final	int		YEAR_FIELD_LENGTH	= 7;
 
 	private static final	int		BASE_YEAR	= 1980;
+	private static final	int		MAX_YEAR	= BASE_YEAR + (1 << YEAR_FIELD_LENGTH) - 1;
 
 	private static final	int		MIN_CENTISECOND	= 0;
 	private static final	int		MAX_CENTISECOND	= 199;
@@ -247,12 +269,17 @@ public class Fat32Directory
 //  Instance variables
 ////////////////////////////////////////////////////////////////////////
 
-	private	Fat32Volume				volume;
-	private	Fat32Directory			parent;
-	private	Entry					entryInParent;
-	private	int						clusterIndex;
-	private	List<Fat32Directory>	children;
-	private	List<Entry>				entries;
+	private	Fat32Volume					volume;
+	private	Fat32Directory				parent;
+	private	Entry						entryInParent;
+	private	int							clusterIndex;
+	private	List<Fat32Directory>		children;
+	private	List<Entry>					entries;
+	private	List<byte[]>				entryChunks;
+	private	Map<String, Entry>			entryIndex;
+	private	Map<Entry, Fat32Directory>	subdirectoryIndex;
+	private	int[]						clusterChecksums;
+	private	Usage						usage;
 
 ////////////////////////////////////////////////////////////////////////
 //  Constructors
@@ -273,6 +300,7 @@ public class Fat32Directory
 		this.entryInParent = entryInParent;
 		clusterIndex = (entryInParent == null) ? volume.getRootDirClusterIndex() : entryInParent.getClusterIndex();
 		entries = new ArrayList<>();
+		entryChunks = new ArrayList<>();
 	}
 
 	//------------------------------------------------------------------
@@ -337,6 +365,279 @@ public class Fat32Directory
 
 	//------------------------------------------------------------------
 
+	public static void setCreationTime(
+		LocalDateTime	dateTime,
+		byte[]			buffer,
+		int				offset)
+	{
+		// Set date
+		NumberCodec.uIntToBytesLE(encodeDate(dateTime.toLocalDate()), buffer, offset + CREATION_DATE_OFFSET,
+								  CREATION_DATE_LENGTH);
+
+		// Set time
+		NumberCodec.uIntToBytesLE(encodeTime(dateTime), buffer, offset + CREATION_TIME_OFFSET, CREATION_TIME_LENGTH);
+
+		// Set centiseconds
+		int centisecond = dateTime.getSecond() % 2 * 100 + dateTime.getNano() / 10_000_000;
+		NumberCodec.uIntToBytesLE(centisecond, buffer, offset + CREATION_TIME_CS_OFFSET, CREATION_TIME_CS_LENGTH);
+	}
+
+	//------------------------------------------------------------------
+
+	public static void setAccessDate(
+		LocalDate	date,
+		byte[]		buffer,
+		int			offset)
+	{
+		NumberCodec.uIntToBytesLE(encodeDate(date), buffer, offset + ACCESS_DATE_OFFSET, ACCESS_DATE_LENGTH);
+	}
+
+	//------------------------------------------------------------------
+
+	public static int findEndOfEntries(
+		byte[]	data)
+	{
+		return findEndOfEntries(data, data.length);
+	}
+
+	//------------------------------------------------------------------
+
+	public static int findEndOfEntries(
+		byte[]	data,
+		int		length)
+	{
+		int numEntries = length / Entry.SIZE;
+		for (int i = 0; i < numEntries; i++)
+		{
+			if ((data[i * Entry.SIZE] & 0xFF) == END_OF_DIRECTORY)
+				return i;
+		}
+		return numEntries;
+	}
+
+	//------------------------------------------------------------------
+
+	public static String createShortName(
+		String				name,
+		Collection<String>	shortNames)
+	{
+		// Remove spaces and leading dots
+		String str = name.replace(" ", "");
+		int start = 0;
+		while ((start < str.length()) && (str.charAt(start) == EXTENSION_SEPARATOR_CHAR))
+			++start;
+		str = str.substring(start);
+
+		// Split name into stem and extension at last separator; remove other separators from stem
+		int index = str.lastIndexOf(EXTENSION_SEPARATOR_CHAR);
+		String stem = toShortNameChars((index < 0) ? str : str.substring(0, index).replace(EXTENSION_SEPARATOR, ""));
+		String extension = toShortNameChars((index < 0) ? "" : str.substring(index + 1));
+		if (stem.isEmpty())
+			stem = Character.toString(SHORT_NAME_REPLACEMENT_CHAR);
+
+		// If name was converted without loss, use it if it is not already in use
+		String shortExtension = truncate(extension, SHORT_NAME_EXTENSION_LENGTH);
+		String shortName = joinShortName(truncate(stem, SHORT_NAME_LENGTH), shortExtension);
+		if (shortName.equalsIgnoreCase(name) && !shortNames.contains(shortName))
+			return shortName;
+
+		// Append numeric tail to stem
+		for (int i = 1; ; i++)
+		{
+			String tail = SHORT_NAME_NUMERIC_TAIL_PREFIX + Integer.toString(i);
+			shortName = joinShortName(truncate(stem, SHORT_NAME_LENGTH - tail.length()) + tail,
+									  shortExtension);
+			if (!shortNames.contains(shortName))
+				return shortName;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public static byte[] createEntry(
+		String				name,
+		String				shortName,
+		Collection<Attr>	attrs,
+		int					clusterIndex,
+		long				fileLength,
+		LocalDateTime		creationTime,
+		LocalDateTime		lastModificationTime,
+		LocalDate			accessDate)
+	{
+		// Allocate buffer for long-filename entries and short-filename entry
+		int numLfnEntries = name.equals(shortName)
+								? 0
+								: (name.length() + LFN_CHARS_PER_ENTRY - 1) / LFN_CHARS_PER_ENTRY;
+		byte[] buffer = new byte[(numLfnEntries + 1) * Entry.SIZE];
+
+		// Set fields of short-filename entry
+		int offset = numLfnEntries * Entry.SIZE;
+		int index = shortName.lastIndexOf(EXTENSION_SEPARATOR_CHAR);
+		if ((index <= 0) || shortName.equals(SPECIAL_DIRECTORY_NAME_PARENT))
+			index = shortName.length();
+		Utils.stringToBytes(shortName.substring(0, index), buffer, offset + SHORT_NAME_OFFSET, SHORT_NAME_LENGTH);
+		Utils.stringToBytes((index < shortName.length()) ? shortName.substring(index + 1) : "", buffer,
+							offset + SHORT_NAME_EXTENSION_OFFSET, SHORT_NAME_EXTENSION_LENGTH);
+		setAttributes(attrs, buffer, offset);
+		setClusterIndex(clusterIndex, buffer, offset);
+		NumberCodec.uLongToBytesLE(fileLength, buffer, offset + FILE_LENGTH_OFFSET, FILE_LENGTH_LENGTH);
+		setCreationTime(clampDateTime(creationTime), buffer, offset);
+		setLastModificationTime(clampDateTime(lastModificationTime), buffer, offset);
+		setAccessDate(clampDateTime(accessDate.atStartOfDay()).toLocalDate(), buffer, offset);
+
+		// Set long-filename entries
+		if (numLfnEntries > 0)
+		{
+			// Calculate checksum of short filename
+			int checksum = 0;
+			int j = offset + SHORT_NAME_OFFSET;
+			for (int i = 0; i < SHORT_NAME_LENGTH + SHORT_NAME_EXTENSION_LENGTH; i++)
+				checksum = (((checksum << 7) & 0x80) | ((checksum >> 1) & 0x7F)) + buffer[j++];
+			checksum &= 0xFF;
+
+			// Set entries in reverse order of their parts of the long filename
+			char[] lfnChars = new char[LFN_CHARS_PER_ENTRY];
+			for (int i = 0; i < numLfnEntries; i++)
+			{
+				// Get characters of part of long filename; terminate and pad last part
+				int lfnIndex = numLfnEntries - i;
+				int charIndex = (lfnIndex - 1) * LFN_CHARS_PER_ENTRY;
+				for (int k = 0; k < LFN_CHARS_PER_ENTRY; k++)
+				{
+					int ci = charIndex + k;
+					lfnChars[k] = (ci < name.length())
+										? name.charAt(ci)
+										: (ci == name.length()) ? LFN_END_CHAR : LFN_PADDING_CHAR;
+				}
+
+				// Set fields of entry
+				offset = i * Entry.SIZE;
+				buffer[offset] = (byte)((i == 0) ? lfnIndex | LFN_FIRST_ENTRY_MASK : lfnIndex);
+				NumberCodec.uIntToBytesLE(LFN_ATTRS, buffer, offset + ATTRIBUTES_OFFSET, ATTRIBUTES_LENGTH);
+				NumberCodec.uIntToBytesLE(LFN_TYPE, buffer, offset + LFN_TYPE_OFFSET, LFN_TYPE_LENGTH);
+				NumberCodec.uIntToBytesLE(checksum, buffer, offset + LFN_CHECKSUM_OFFSET, LFN_CHECKSUM_LENGTH);
+				int lfnOffset = 0;
+				lfnOffset = setLfnChars(lfnChars, lfnOffset, buffer, offset + LFN_CHARS1_OFFSET, LFN_CHARS1_LENGTH);
+				lfnOffset = setLfnChars(lfnChars, lfnOffset, buffer, offset + LFN_CHARS2_OFFSET, LFN_CHARS2_LENGTH);
+				lfnOffset = setLfnChars(lfnChars, lfnOffset, buffer, offset + LFN_CHARS3_OFFSET, LFN_CHARS3_LENGTH);
+			}
+		}
+
+		// Return entries
+		return buffer;
+	}
+
+	//------------------------------------------------------------------
+
+	private static String toShortNameChars(
+		String	str)
+	{
+		char[] chars = str.toUpperCase().toCharArray();
+		for (int i = 0; i < chars.length; i++)
+		{
+			char ch = chars[i];
+			if (!(((ch >= 'A') && (ch <= 'Z')) || ((ch >= '0') && (ch <= '9'))
+					|| (SHORT_NAME_SPECIAL_CHARS.indexOf(ch) >= 0)))
+				chars[i] = SHORT_NAME_REPLACEMENT_CHAR;
+		}
+		return new String(chars);
+	}
+
+	//------------------------------------------------------------------
+
+	private static String truncate(
+		String	str,
+		int		length)
+	{
+		return (str.length() > length) ? str.substring(0, length) : str;
+	}
+
+	//------------------------------------------------------------------
+
+	private static String joinShortName(
+		String	stem,
+		String	extension)
+	{
+		return extension.isEmpty() ? stem : stem + EXTENSION_SEPARATOR + extension;
+	}
+
+	//------------------------------------------------------------------
+
+	private static int setLfnChars(
+		char[]	inBuffer,
+		int		inOffset,
+		byte[]	outBuffer,
+		int		outOffset,
+		int		length)
+	{
+		for (int i = 0; i < length; i += Character.BYTES)
+			NumberCodec.uIntToBytesLE(inBuffer[inOffset++], outBuffer, outOffset + i, Character.BYTES);
+		return inOffset;
+	}
+
+	//------------------------------------------------------------------
+
+	private static LocalDateTime clampDateTime(
+		LocalDateTime	dateTime)
+	{
+		if (dateTime.getYear() < BASE_YEAR)
+			return LocalDateTime.of(BASE_YEAR, MIN_MONTH, MIN_DAY, MIN_HOUR, MIN_MINUTE);
+		if (dateTime.getYear() > MAX_YEAR)
+			return LocalDateTime.of(MAX_YEAR, MAX_MONTH, MAX_DAY, MAX_HOUR, MAX_MINUTE, MAX_SECOND);
+		return dateTime;
+	}
+
+	//------------------------------------------------------------------
+
+	private static int encodeDate(
+		LocalDate	date)
+	{
+		int value = 0;
+		value = BitUtils.setBitField(value, date.getDayOfMonth(), DAY_FIELD_SHIFT, DAY_FIELD_LENGTH);
+		value = BitUtils.setBitField(value, date.getMonthValue(), MONTH_FIELD_SHIFT, MONTH_FIELD_LENGTH);
+		value = BitUtils.setBitField(value, date.getYear() - BASE_YEAR, YEAR_FIELD_SHIFT, YEAR_FIELD_LENGTH);
+		return value;
+	}
+
+	//------------------------------------------------------------------
+
+	private static int encodeTime(
+		LocalDateTime	dateTime)
+	{
+		int value = 0;
+		value = BitUtils.setBitField(value, dateTime.getSecond() / 2, SECOND_FIELD_SHIFT, SECOND_FIELD_LENGTH);
+		value = BitUtils.setBitField(value, dateTime.getMinute(), MINUTE_FIELD_SHIFT, MINUTE_FIELD_LENGTH);
+		value = BitUtils.setBitField(value, dateTime.getHour(), HOUR_FIELD_SHIFT, HOUR_FIELD_LENGTH);
+		return value;
+	}
+
+	//------------------------------------------------------------------
+
+	private int[] getClusterChecksums(
+		byte[]	data)
+	{
+		int bytesPerCluster = volume.getBytesPerCluster();
+		int[] checksums = new int[data.length / bytesPerCluster];
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < checksums.length; i++)
+		{
+			crc.reset();
+			crc.update(data, i * bytesPerCluster, bytesPerCluster);
+			checksums[i] = (int)crc.getValue();
+		}
+		return checksums;
+	}
+
+	//------------------------------------------------------------------
+
+	private static String indexKey(
+		String	name)
+	{
+		return name.toUpperCase(Locale.ROOT);
+	}
+
+	//------------------------------------------------------------------
+
 	private static String getShortName(
 		byte[]	buffer,
 		int		offset,
@@ -355,20 +656,6 @@ public class Fat32Directory
 
 	//------------------------------------------------------------------
 
-	private static int getLfnChars(
-		byte[]	inBuffer,
-		int		inOffset,
-		int		length,
-		char[]	outBuffer,
-		int		outOffset)
-	{
-		for (int i = 0; i < length; i += Character.BYTES)
-			outBuffer[outOffset++] = (char)NumberCodec.bytesToUIntLE(inBuffer, inOffset + i, Character.BYTES);
-		return outOffset;
-	}
-
-	//------------------------------------------------------------------
-
 	private static String dateToString(
 		int	year,
 		int	month,
@@ -558,12 +845,42 @@ public class Fat32Directory
 	public Entry findEntry(
 		String	name)
 	{
-		for (Entry entry : entries)
+		// Look up entry in index
+		Entry entry = findEntryIgnoreCase(name);
+
+		// If names differ in case, search for exact match
+		if ((entry != null) && !name.equals(entry.getName()))
+		{
+			entry = null;
+			for (Entry entry0 : entries)
+			{
+				if (name.equals(entry0.getName()))
+				{
+					entry = entry0;
+					break;
+				}
+			}
+		}
+		return entry;
+	}
+
+	//------------------------------------------------------------------
+
+	public Entry findEntryIgnoreCase(
+		String	name)
+	{
+		// Create index of entries
+		Map<String, Entry> index = entryIndex;
+		if (index == null)
 		{
-			if (name.equals(entry.getName()))
-				return entry;
+			index = new HashMap<>(entries.size() * 4 / 3 + 1);
+			for (Entry entry : entries)
+				index.putIfAbsent(indexKey(entry.getName()), entry);
+			entryIndex = index;
 		}
-		return null;
+
+		// Look up entry
+		return index.get(indexKey(name));
 	}
 
 	//------------------------------------------------------------------
@@ -572,9 +889,10 @@ public class Fat32Directory
 		Entry	entry)
 	{
 		Fat32Directory directory = null;
-		if (entry.name.equals(SPECIAL_DIRECTORY_NAME_THIS))
+		String name = entry.getName();
+		if (name.equals(SPECIAL_DIRECTORY_NAME_THIS))
 			directory = this;
-		else if (entry.name.equals(SPECIAL_DIRECTORY_NAME_PARENT))
+		else if (name.equals(SPECIAL_DIRECTORY_NAME_PARENT))
 			directory = getParent();
 		else
 			directory = getSubdirectory(entry);
@@ -586,12 +904,60 @@ public class Fat32Directory
 	public Fat32Directory getSubdirectory(
 		Entry	entry)
 	{
-		for (Fat32Directory child : getChildren())
+		// Create index of subdirectories
+		List<Fat32Directory> children = getChildren();
+		Map<Entry, Fat32Directory> index = subdirectoryIndex;
+		if (index == null)
 		{
-			if (child.entryInParent == entry)
-				return child;
+			index = new IdentityHashMap<>(children.size());
+			for (Fat32Directory child : children)
+				index.put(child.entryInParent, child);
+			subdirectoryIndex = index;
 		}
-		return null;
+
+		// Look up subdirectory
+		return index.get(entry);
+	}
+
+	//------------------------------------------------------------------
+
+	public Fat32Directory resolvePath(
+		String	pathname)
+	{
+		// Start at root directory if pathname is absolute
+		Fat32Directory directory = this;
+		if (pathname.startsWith(NAME_SEPARATOR))
+			directory = volume.getRootDir();
+
+		// Descend through elements of pathname
+		for (String name : pathname.split(NAME_SEPARATOR))
+		{
+			// Ignore empty elements and references to the current directory
+			if (name.isEmpty() || name.equals(SPECIAL_DIRECTORY_NAME_THIS))
+				continue;
+
+			// Case: parent directory
+			if (name.equals(SPECIAL_DIRECTORY_NAME_PARENT))
+			{
+				if (directory.isRoot())
+					return null;
+				directory = directory.parent;
+			}
+
+			// Case: subdirectory
+			else
+			{
+				Entry entry = directory.findEntryIgnoreCase(name);
+				if ((entry == null) || !entry.isRegularDirectory())
+					return null;
+				directory = directory.getSubdirectory(entry);
+				if (directory == null)
+					return null;
+			}
+		}
+
+		// Return directory
+		return directory;
 	}
 
 	//------------------------------------------------------------------
@@ -719,180 +1085,482 @@ public class Fat32Directory
 		List<String>	messages)
 		throws VolumeException
 	{
-		// Read directory clusters
-		byte[] buffer = readData();
-
 		// Invalidate list of children
-		children = null;
-
-		// Parse entries
-		parse(buffer, buffer.length / Entry.SIZE, messages);
-	}
-
-	//------------------------------------------------------------------
-
-	public byte[] readData()
-		throws VolumeException
-	{
-		return readData(true);
-	}
+		setChildren(null);
 
-	//------------------------------------------------------------------
+		// Initialise parser
+		EntryParser parser = new EntryParser(messages);
 
-	public byte[] readData(
-		boolean	openClose)
-		throws VolumeException
-	{
-		// Get FAT
+		// Allocate buffer for one cluster
 		Fat32Fat fat = volume.getFat();
-
-		// Allocate buffer for directory
 		int bytesPerCluster = volume.getBytesPerCluster();
-		byte[] buffer = new byte[fat.clusterCount(clusterIndex) * bytesPerCluster];
+		byte[] buffer = new byte[bytesPerCluster];
 
 		// Open volume for reading
-		if (openClose)
-			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+		volume.open(Volume.Access.READ, volume.isUnbufferedIO());
 
-		// Read directory
+		// Read and parse directory one cluster at a time
+		int[] checksums = new int[fat.clusterCount(clusterIndex)];
 		try
 		{
-			int offset = 0;
+			CRC32 crc = new CRC32();
+			int index = 0;
 			Fat32Fat.IndexIterator it = fat.indexIterator(clusterIndex);
 			while (it.hasNext())
 			{
-				// Seek cluster
+				// Read cluster
 				volume.seekSector(volume.clusterIndexToSectorIndex(it.next()));
+				volume.read(buffer, 0, bytesPerCluster);
 
-				// Read cluster
-				volume.read(buffer, offset, bytesPerCluster);
-				offset += bytesPerCluster;
+				// Update checksum of cluster
+				crc.reset();
+				crc.update(buffer);
+				checksums[index++] = (int)crc.getValue();
+
+				// Parse entries of cluster
+				parser.parse(buffer, 0, bytesPerCluster);
 			}
 		}
 		finally
 		{
 			// Close volume
-			if (openClose)
-				volume.close();
+			volume.close();
 		}
 
-		// Return buffer
-		return buffer;
+		// Update checksums of clusters
+		clusterChecksums = checksums;
 	}
 
 	//------------------------------------------------------------------
 
-	public void readChildren(
+	public void read(
+		byte[]			data,
 		List<String>	messages)
 		throws VolumeException
 	{
-		// Initialise list of children
-		children = new ArrayList<>();
-
-		// Read subdirectories
-		for (Entry entry : entries)
-		{
-			if (entry.isRegularDirectory())
-			{
-				// Create directory
-				Fat32Directory directory = new Fat32Directory(volume, this, entry);
+		// Invalidate list of children
+		setChildren(null);
 
-				// Read directory
-				directory.read(messages);
+		// Parse entries
+		parse(data, messages);
 
-				// Add directory to list of children
-				children.add(directory);
-			}
-		}
+		// Update checksums of clusters
+		clusterChecksums = getClusterChecksums(data);
 	}
 
 	//------------------------------------------------------------------
 
-	public void readTree(
-		List<String>	messages,
-		ICancellable	taskStatus)
+	public void read(
+		byte[]			entryData,
+		int[]			clusterChecksums,
+		List<String>	messages)
 		throws VolumeException
 	{
-		if (!taskStatus.isCancelled())
-		{
-			// Read this directory
-			read(messages);
-
-			// Initialise list of children
-			children = new ArrayList<>();
+		// Invalidate list of children
+		setChildren(null);
 
-			// Read subdirectories
-			for (Entry entry : entries)
-			{
-				// Test whether task has been cancelled
-				if (taskStatus.isCancelled())
-					break;
+		// Parse entries
+		parse(entryData, messages);
 
-				// If entry is regular directory, read directory and its subdirectories
-				if (entry.isRegularDirectory())
-				{
-					// Create directory
-					Fat32Directory directory = new Fat32Directory(volume, this, entry);
+		// Set checksums of clusters
+		this.clusterChecksums = clusterChecksums;
+	}
 
-					// Add directory to list of children
-					children.add(directory);
+	//------------------------------------------------------------------
 
-					// Read directory and its subdirectories
-					directory.readTree(messages, taskStatus);
-				}
-			}
+	public byte[] getEntryData()
+	{
+		// Concatenate chunks of entry data
+		byte[] data = new byte[entryChunks.stream().mapToInt(chunk -> chunk.length).sum()];
+		int offset = 0;
+		for (byte[] chunk : entryChunks)
+		{
+			System.arraycopy(chunk, 0, data, offset, chunk.length);
+			offset += chunk.length;
 		}
+		return data;
 	}
 
 	//------------------------------------------------------------------
 
-	public void writeData(
-		byte[]	data,
-		int		offset)
-		throws VolumeException
+	public int[] getClusterChecksums()
 	{
-		writeData(data, offset, true);
+		return clusterChecksums;
 	}
 
 	//------------------------------------------------------------------
 
-	public void writeData(
-		byte[]	data,
-		int		offset,
-		boolean	openClose)
+	public boolean refresh(
+		List<String>	messages)
 		throws VolumeException
 	{
-		// Validate arguments
-		if (data == null)
-			throw new IllegalArgumentException("Null data");
-		if ((offset < 0) || (offset > data.length))
-			throw new IllegalArgumentException("Offset out of bounds: " + offset);
-
-		// Get FAT
-		Fat32Fat fat = volume.getFat();
+		// Read directory clusters
+		byte[] data = readData();
+
+		// If no cluster has changed since directory was last read, update cluster counts of entries and stop
+		int[] checksums = getClusterChecksums(data);
+		if (Arrays.equals(checksums, clusterChecksums))
+		{
+			Fat32Fat fat = volume.getFat();
+			for (Entry entry : entries)
+			{
+				if (entry.isDirectory() && (entry.clusterIndex > 0))
+				{
+					int numClusters = fat.clusterCount(entry.clusterIndex);
+					if (entry.numClusters != numClusters)
+					{
+						entry.numClusters = numClusters;
+						invalidateUsage();
+					}
+				}
+			}
+			return false;
+		}
+
+		// Index old entries by their index
+		Map<Integer, Entry> oldEntries = new HashMap<>(entries.size() * 4 / 3 + 1);
+		for (Entry entry : entries)
+			oldEntries.put(entry.index, entry);
+
+		// Parse entries
+		parse(data, messages);
+		clusterChecksums = checksums;
+
+		// Replace each new entry whose records are unchanged with the old entry, updated from the new entry
+		for (int i = 0; i < entries.size(); i++)
+		{
+			Entry entry = entries.get(i);
+			Entry oldEntry = oldEntries.get(entry.index);
+			if ((oldEntry != null) && oldEntry.hasSameRecords(entry))
+			{
+				oldEntry.data = entry.data;
+				oldEntry.offset = entry.offset;
+				oldEntry.clusterIndex = entry.clusterIndex;
+				oldEntry.numClusters = entry.numClusters;
+				entries.set(i, oldEntry);
+			}
+		}
+
+		// Merge subdirectories: keep those whose entries are retained; read those whose entries are new
+		if (children != null)
+		{
+			Map<Entry, Fat32Directory> oldChildren = new IdentityHashMap<>(children.size());
+			for (Fat32Directory child : children)
+				oldChildren.put(child.entryInParent, child);
+
+			List<Fat32Directory> children = new ArrayList<>();
+			for (Entry entry : entries)
+			{
+				if (entry.isRegularDirectory())
+				{
+					Fat32Directory directory = oldChildren.get(entry);
+					if (directory == null)
+					{
+						directory = new Fat32Directory(volume, this, entry);
+						directory.read(messages);
+					}
+					children.add(directory);
+				}
+			}
+			setChildren(children);
+		}
+
+		// Indicate that directory has changed
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	public int refreshTree(
+		List<String>	messages)
+		throws VolumeException
+	{
+		// Refresh this directory
+		int numChanged = refresh(messages) ? 1 : 0;
+
+		// Refresh subdirectories whose children have been read; other subdirectories are read on demand
+		if (children != null)
+		{
+			for (Fat32Directory child : children)
+			{
+				if (child.children == null)
+				{
+					if (child.refresh(messages))
+						++numChanged;
+				}
+				else
+					numChanged += child.refreshTree(messages);
+			}
+		}
+
+		// Return number of directories that changed
+		return numChanged;
+	}
+
+	//------------------------------------------------------------------
+
+	public byte[] readData()
+		throws VolumeException
+	{
+		return readData(true);
+	}
+
+	//------------------------------------------------------------------
+
+	public byte[] readData(
+		boolean	openClose)
+		throws VolumeException
+	{
+		// Allocate buffer for directory
+		byte[] buffer = new byte[getDataLength()];
+
+		// Read directory
+		readData(buffer, openClose);
+
+		// Return buffer
+		return buffer;
+	}
+
+	//------------------------------------------------------------------
+
+	public int getDataLength()
+		throws VolumeException
+	{
+		return volume.getFat().clusterCount(clusterIndex) * volume.getBytesPerCluster();
+	}
+
+	//------------------------------------------------------------------
+
+	public int readData(
+		byte[]	buffer,
+		boolean	openClose)
+		throws VolumeException
+	{
+		// Get FAT
+		Fat32Fat fat = volume.getFat();
+
+		// Test for buffer large enough for directory
+		int bytesPerCluster = volume.getBytesPerCluster();
+		if (fat.clusterCount(clusterIndex) * bytesPerCluster > buffer.length)
+			throw new IllegalArgumentException("Buffer too small");
+
+		// Open volume for reading
+		if (openClose)
+			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+		// Read directory one extent of consecutive clusters at a time
+		try
+		{
+			int[] offset = { 0 };
+			fat.forEachExtent(clusterIndex, (startIndex, numClusters) ->
+			{
+				// Seek first cluster of extent
+				volume.seekSector(volume.clusterIndexToSectorIndex(startIndex));
+
+				// Read extent
+				int length = numClusters * bytesPerCluster;
+				volume.read(buffer, offset[0], length);
+				offset[0] += length;
+			});
+
+			// Return length of data
+			return offset[0];
+		}
+		finally
+		{
+			// Close volume
+			if (openClose)
+				volume.close();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public void readChildren(
+		List<String>	messages)
+		throws VolumeException
+	{
+		// Initialise list of children
+		List<Fat32Directory> children = new ArrayList<>();
+
+		// Read subdirectories
+		for (Entry entry : entries)
+		{
+			if (entry.isRegularDirectory())
+			{
+				// Create directory
+				Fat32Directory directory = new Fat32Directory(volume, this, entry);
+
+				// Read directory
+				directory.read(messages);
+
+				// Add directory to list of children
+				children.add(directory);
+			}
+		}
+
+		// Set list of children
+		setChildren(children);
+	}
+
+	//------------------------------------------------------------------
+
+	public void readTree(
+		List<String>	messages,
+		ICancellable	taskStatus)
+		throws VolumeException
+	{
+		if (!taskStatus.isCancelled())
+		{
+			// Read this directory
+			read(messages);
+
+			// Read subdirectories
+			DirectoryTreeLoader.load(this, messages, taskStatus);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public boolean areChildrenRead()
+	{
+		return (children != null);
+	}
+
+	//------------------------------------------------------------------
+
+	public List<Fat32Directory> createChildren()
+	{
+		List<Fat32Directory> directories = new ArrayList<>();
+		for (Entry entry : entries)
+		{
+			if (entry.isRegularDirectory())
+				directories.add(new Fat32Directory(volume, this, entry));
+		}
+		return directories;
+	}
+
+	//------------------------------------------------------------------
+
+	public void setChildren(
+		List<Fat32Directory>	children)
+	{
+		this.children = children;
+		subdirectoryIndex = null;
+		invalidateUsage();
+	}
+
+	//------------------------------------------------------------------
+
+	public Usage getUsage()
+	{
+		return usage;
+	}
+
+	//------------------------------------------------------------------
+
+	public Usage getSubdirectoryUsage(
+		Entry	entry)
+	{
+		// Subdirectories have no usage if children have not been read
+		if (children == null)
+			return null;
+
+		// Look up subdirectory
+		Fat32Directory directory = getSubdirectory(entry);
+		return (directory == null) ? null : directory.usage;
+	}
+
+	//------------------------------------------------------------------
+
+	public Usage computeUsage(
+		ICancellable	cancellable)
+		throws VolumeException
+	{
+		// Read unread subdirectories of tree
+		DirectoryTreeLoader.load(this, null, cancellable);
+		if (cancellable.isCancelled())
+			return null;
+
+		// Compute usage of subtrees whose usage is not cached, bottom up
+		try
+		{
+			return ForkJoinPool.commonPool().invoke(new UsageTask(this));
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public void invalidateUsage()
+	{
+		Fat32Directory directory = this;
+		while ((directory != null) && (directory.usage != null))
+		{
+			directory.usage = null;
+			directory = directory.parent;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	public void writeData(
+		byte[]	data,
+		int		offset)
+		throws VolumeException
+	{
+		writeData(data, offset, true);
+	}
+
+	//------------------------------------------------------------------
+
+	public void writeData(
+		byte[]	data,
+		int		offset,
+		boolean	openClose)
+		throws VolumeException
+	{
+		// Validate arguments
+		if (data == null)
+			throw new IllegalArgumentException("Null data");
+		if ((offset < 0) || (offset > data.length))
+			throw new IllegalArgumentException("Offset out of bounds: " + offset);
+
+		// Get FAT
+		Fat32Fat fat = volume.getFat();
 
 		// Test for enough data
 		int bytesPerCluster = volume.getBytesPerCluster();
 		if (fat.clusterCount(clusterIndex) * bytesPerCluster > data.length - offset)
 			throw new IllegalArgumentException("Not enough data");
 
+		// Invalidate checksums of clusters: entries no longer necessarily reflect contents of directory
+		clusterChecksums = null;
+
+		// Invalidate usage of this directory and its ancestors
+		invalidateUsage();
+
 		// Open volume for writing
 		if (openClose)
 			volume.open(Volume.Access.WRITE, volume.isUnbufferedIO());
 
-		// Write directory
+		// Write directory one extent of consecutive clusters at a time
 		try
 		{
-			Fat32Fat.IndexIterator it = fat.indexIterator(clusterIndex);
-			while (it.hasNext())
+			int[] dataOffset = { offset };
+			fat.forEachExtent(clusterIndex, (startIndex, numClusters) ->
 			{
-				// Seek cluster
-				volume.seekSector(volume.clusterIndexToSectorIndex(it.next()));
+				// Seek first cluster of extent
+				volume.seekSector(volume.clusterIndexToSectorIndex(startIndex));
 
-				// Write cluster
-				volume.write(data, offset, bytesPerCluster);
-				offset += bytesPerCluster;
-			}
+				// Write extent
+				int length = numClusters * bytesPerCluster;
+				volume.write(data, dataOffset[0], length);
+				dataOffset[0] += length;
+			});
 		}
 		finally
 		{
@@ -908,29 +1576,99 @@ public class Fat32Directory
 		boolean	ignoreCase)
 		throws VolumeException
 	{
-		// Read directory clusters
-		byte[] inData = readData();
+		List<Entry> sortedEntries = getEntriesSortedByName(ignoreCase);
+		reorderEntries((sortedEntries == null) ? new ArrayList<>(entries) : sortedEntries, null, null, true);
+	}
 
-		// Sort entries by name
-		entries.sort(ignoreCase ? Entry.NAME_IGNORE_CASE_COMPARATOR : Entry.NAME_COMPARATOR);
+	//------------------------------------------------------------------
 
-		// Invalidate list of children
-		children = null;
+	public List<Entry> getEntriesSortedByName(
+		boolean	ignoreCase)
+	{
+		// Create sort keys, folding case of names once per entry
+		int numEntries = entries.size();
+		SortKey[] keys = new SortKey[numEntries];
+		for (int i = 0; i < numEntries; i++)
+		{
+			Entry entry = entries.get(i);
+			String name = entry.getName();
+			keys[i] = new SortKey(entry, entry.getKind().ordinal(), ignoreCase ? SortKey.foldCase(name) : name);
+		}
+
+		// Test whether entries are already in order
+		int i = 1;
+		while ((i < numEntries) && (SortKey.COMPARATOR.compare(keys[i - 1], keys[i]) <= 0))
+			++i;
+		if (i == numEntries)
+			return null;
+
+		// Sort keys
+		Arrays.sort(keys, SortKey.COMPARATOR);
+
+		// Return entries in sorted order
+		List<Entry> sortedEntries = new ArrayList<>(numEntries);
+		for (SortKey key : keys)
+			sortedEntries.add(key.entry());
+		return sortedEntries;
+	}
+
+	//------------------------------------------------------------------
+
+	public void reorderEntries(
+		List<Entry>	order,
+		byte[]		inBuffer,
+		byte[]		outBuffer,
+		boolean		openClose)
+		throws VolumeException
+	{
+		// Validate arguments
+		if (order.size() != entries.size())
+			throw new IllegalArgumentException("Entries do not match");
 
-		// Allocate buffer for new directory entries
-		byte[] outData = new byte[inData.length];
+		// Allocate buffers if they are absent or too small
+		int length = getDataLength();
+		if ((inBuffer == null) || (inBuffer.length < length))
+			inBuffer = new byte[length];
+		if ((outBuffer == null) || (outBuffer.length < length))
+			outBuffer = new byte[length];
+
+		// Read directory clusters
+		readData(inBuffer, openClose);
 
 		// Copy entry data in new order
+		Arrays.fill(outBuffer, 0, length, (byte)0);
 		int index = 0;
-		for (Entry entry : entries)
+		for (Entry entry : order)
 		{
-			System.arraycopy(inData, entry.index * Entry.SIZE, outData, index * Entry.SIZE, entry.length * Entry.SIZE);
+			System.arraycopy(inBuffer, entry.index * Entry.SIZE, outBuffer, index * Entry.SIZE,
+							 entry.length * Entry.SIZE);
 			entry.index = index;
 			index += entry.length;
 		}
 
+		// Replace entries; invalidate index of entries
+		entries.clear();
+		entries.addAll(order);
+		entryIndex = null;
+
+		// Reorder children to match entries; the children themselves are unchanged
+		if (children != null)
+		{
+			List<Fat32Directory> newChildren = new ArrayList<>(children.size());
+			for (Entry entry : entries)
+			{
+				if (entry.isRegularDirectory())
+				{
+					Fat32Directory child = getSubdirectory(entry);
+					if (child != null)
+						newChildren.add(child);
+				}
+			}
+			children = newChildren;
+		}
+
 		// Write directory clusters
-		writeData(outData, 0);
+		writeData(outBuffer, 0, openClose);
 	}
 
 	//------------------------------------------------------------------
@@ -938,37 +1676,71 @@ public class Fat32Directory
 	public int eraseDeletedEntries()
 		throws VolumeException
 	{
-		// Get list of indices of deleted entries
-		List<Integer> indices = findDeletedEntries(null).stream().map(Entry::getIndex).toList();
+		return eraseDeletedEntries(null, null, true).numEntries();
+	}
 
-		// If there are deleted entries, erase them
-		if (!indices.isEmpty())
-		{
-			// Read directory clusters
-			byte[] inData = readData();
+	//------------------------------------------------------------------
 
-			// Allocate buffer for new directory entries
-			byte[] outData = new byte[inData.length];
+	public Purge eraseDeletedEntries(
+		byte[]	inBuffer,
+		byte[]	outBuffer,
+		boolean	openClose)
+		throws VolumeException
+	{
+		// Allocate buffers if they are absent or too small
+		int length = getDataLength();
+		if ((inBuffer == null) || (inBuffer.length < length))
+			inBuffer = new byte[length];
+		if ((outBuffer == null) || (outBuffer.length < length))
+			outBuffer = new byte[length];
 
-			// Copy entries, omitting deleted entries
-			int index = 0;
-			for (Entry entry : entries)
-			{
-				if (!indices.contains(entry.index))
-				{
-					System.arraycopy(inData, entry.index * Entry.SIZE, outData, index * Entry.SIZE,
-									 entry.length * Entry.SIZE);
-					entry.index = index;
-					index += entry.length;
-				}
-			}
+		// Read directory clusters
+		readData(inBuffer, openClose);
+
+		// Mark slots of live entries
+		int numSlots = findEndOfEntries(inBuffer, length);
+		BitSet liveSlots = new BitSet(numSlots);
+		for (Entry entry : entries)
+			liveSlots.set(entry.index, entry.index + entry.length);
 
-			// Write directory clusters
-			writeData(outData, 0);
+		// Count deleted entries in slots that are not live; stop if there are none
+		int numFreeSlots = numSlots - liveSlots.cardinality();
+		if (numFreeSlots == 0)
+			return new Purge(0, 0);
+		int numDeletedEntries = 0;
+		for (int i = liveSlots.nextClearBit(0); i < numSlots; i = liveSlots.nextClearBit(i + 1))
+		{
+			int offset = i * Entry.SIZE;
+			int attrs = NumberCodec.bytesToUIntLE(inBuffer, offset + ATTRIBUTES_OFFSET, ATTRIBUTES_LENGTH);
+			if (((inBuffer[offset] & 0xFF) == DELETED_ENTRY) && (attrs != LFN_ATTRS))
+				++numDeletedEntries;
+		}
+
+		// Invalidate index of entries
+		entryIndex = null;
+
+		// Copy runs of live slots, omitting deleted entries; map old slot indices to new ones
+		Arrays.fill(outBuffer, 0, length, (byte)0);
+		int[] newIndices = new int[numSlots];
+		int outIndex = 0;
+		for (int start = liveSlots.nextSetBit(0); start >= 0; start = liveSlots.nextSetBit(start))
+		{
+			int end = liveSlots.nextClearBit(start);
+			System.arraycopy(inBuffer, start * Entry.SIZE, outBuffer, outIndex * Entry.SIZE,
+							 (end - start) * Entry.SIZE);
+			while (start < end)
+				newIndices[start++] = outIndex++;
 		}
 
-		// Return count of erased entries
-		return indices.size();
+		// Update indices of entries
+		for (Entry entry : entries)
+			entry.index = newIndices[entry.index];
+
+		// Write directory clusters
+		writeData(outBuffer, 0, openClose);
+
+		// Return counts of erased entries and reclaimed slots
+		return new Purge(numDeletedEntries, numFreeSlots);
 	}
 
 	//------------------------------------------------------------------
@@ -987,13 +1759,15 @@ public class Fat32Directory
 			// If entry is volume label, update it
 			if (entry.isVolumeLabel())
 			{
+				// Invalidate index of entries
+				entryIndex = null;
+
 				// Update name
-				entry.shortName = volumeLabel;
-				entry.name = volumeLabel;
+				Utils.stringToBytes(volumeLabel, entry.data, entry.offset + SHORT_NAME_OFFSET, VOLUME_LABEL_LENGTH);
 
 				// Update last modification time
 				if (lastModificationTime != null)
-					entry.lastModificationTime = lastModificationTime;
+					setLastModificationTime(lastModificationTime, entry.data, entry.offset);
 
 				// Read directory clusters
 				byte[] data = readData();
@@ -1023,377 +1797,97 @@ public class Fat32Directory
 		List<String>	messages)
 		throws VolumeException
 	{
-		// Read directory clusters
-		byte[] buffer = readData();
-
-		// Initialise list of deleted entries
-		List<Entry> deletedEntries = new ArrayList<>();
-
-		// Collect deleted entries
-		int numEntries = buffer.length / Entry.SIZE;
-		int index = 0;
-		try
-		{
-			Fat32Fat fat = volume.getFat();
-			Deque<String> filenameParts = new ArrayDeque<>();
-			char[] lfnChars = new char[LFN_CHARS_PER_ENTRY];
-			while (index < numEntries)
-			{
-				// Calculate offset of entry within buffer
-				int offset = index * Entry.SIZE;
-
-				// Get first byte of entry
-				int b = buffer[offset] & 0xFF;
-
-				// If no more entries, stop
-				if (b == END_OF_DIRECTORY)
-					break;
-
-				// If entry is deleted ...
-				if (b == DELETED_ENTRY)
-				{
-					// Get attributes
-					int attrs = NumberCodec.bytesToUIntLE(buffer, offset + ATTRIBUTES_OFFSET, ATTRIBUTES_LENGTH);
-
-					// Case: long-filename entry
-					if (attrs == LFN_ATTRS)
-					{
-						// Test type of long-filename entry
-						if (NumberCodec.bytesToUIntLE(buffer, offset + LFN_TYPE_OFFSET, LFN_TYPE_LENGTH) != LFN_TYPE)
-							throw new EntryException(ErrorMsg.UNRECOGNISED_LFN_TYPE);
-
-						// Get characters of long filename
-						int lfnOffset = 0;
-						lfnOffset = getLfnChars(buffer, offset + LFN_CHARS1_OFFSET, LFN_CHARS1_LENGTH, lfnChars,
-												lfnOffset);
-						lfnOffset = getLfnChars(buffer, offset + LFN_CHARS2_OFFSET, LFN_CHARS2_LENGTH, lfnChars,
-												lfnOffset);
-						lfnOffset = getLfnChars(buffer, offset + LFN_CHARS3_OFFSET, LFN_CHARS3_LENGTH, lfnChars,
-												lfnOffset);
-						String str = new String(lfnChars);
-
-						// Find end of long filename
-						int i = str.indexOf(LFN_END_CHAR);
-						if (i >= 0)
-							str = str.substring(0, i);
-
-						// Add part of long filename to list
-						filenameParts.addFirst(str);
-					}
-
-					// Case: normal entry (ie, not long filename)
-					else
-					{
-						// Initialise entry
-						Entry entry = new Entry(this);
-
-						// Get number of long-filename entries
-						int lfnNumEntries = filenameParts.size();
-
-						// Set length and index on entry
-						entry.length = lfnNumEntries + 1;
-						entry.index = index - lfnNumEntries;
-
-						// Set attributes on entry
-						entry.setAttributes(attrs);
-
-						// If there is a long filename, set it on entry
-						if (lfnNumEntries > 0)
-						{
-							entry.name = filenameParts.stream().collect(Collectors.joining());
-							filenameParts.clear();
-						}
-
-						// Get short-filename stem
-						String snStem = "?" + getShortName(buffer, offset + SHORT_NAME_OFFSET + 1,
-														   SHORT_NAME_LENGTH - 1);
-
-						// Get short-filename extension
-						String snExtension = getShortName(buffer, offset + SHORT_NAME_EXTENSION_OFFSET,
-														  SHORT_NAME_EXTENSION_LENGTH);
-
-						// Set short filename on entry
-						String separator = entry.isVolumeLabel() ? "" : EXTENSION_SEPARATOR;
-						entry.shortName = snExtension.isEmpty() ? snStem : snStem + separator + snExtension;
-
-						// If there is no explicit long filename, set long filename from short filename
-						if (entry.name == null)
-						{
-							int nameCase = NumberCodec.bytesToUIntLE(buffer, offset + NAME_CASE_OFFSET,
-																	 NAME_CASE_LENGTH);
-							entry.name = ((nameCase & LFN_STEM_CASE_MASK) == 0) ? snStem : snStem.toLowerCase();
-							if (!snExtension.isEmpty())
-							{
-								entry.name += separator + (((nameCase & LFN_EXTENSION_CASE_MASK) == 0)
-																   ? snExtension
-																   : snExtension.toLowerCase());
-							}
-						}
-
-						// Get file length and set it on entry
-						if (entry.isFile())
-						{
-							entry.fileLength = NumberCodec.bytesToULongLE(buffer, offset + FILE_LENGTH_OFFSET,
-																		  FILE_LENGTH_LENGTH);
-						}
-
-						// Case: entry is volume label
-						if (entry.isVolumeLabel())
-							decodeLastModificationDateTime(buffer, offset, entry, messages);
-
-						// Case: entry is not volume label
-						else
-						{
-							// Decode cluster index
-							try
-							{
-								decodeClusterIndex(buffer, offset, fat, entry);
-							}
-							catch (EntryException e)
-							{
-								addEntryMessage(entry, e.getMessage(), messages);
-							}
-
-							// Set sector index
-							if (entry.clusterIndex > 0)
-								entry.sectorIndex = volume.clusterIndexToSectorIndex(entry.clusterIndex);
-
-							// Decode creation date and time
-							decodeCreationDateTime(buffer, offset, entry, messages);
-
-							// Decode last modification date and time
-							decodeLastModificationDateTime(buffer, offset, entry, messages);
-
-							// Decode access date
-							decodeAccessDate(buffer, offset, entry, messages);
-						}
-
-						// Add entry to list
-						deletedEntries.add(entry);
-					}
-				}
-
-				// Increment entry index
-				++index;
-			}
-		}
-		catch (EntryException e)
-		{
-			throw new VolumeException(ErrorMsg.INVALID_DIRECTORY_ENTRY, e, getPathname(), index);
-		}
-
-		// Return list of deleted entries
-		return deletedEntries;
+		return findDeletedEntries(readData(), messages);
 	}
 
 	//------------------------------------------------------------------
 
-	private void parse(
+	public List<Entry> findDeletedEntries(
 		byte[]			buffer,
-		int				numEntries,
 		List<String>	messages)
 		throws VolumeException
 	{
-		// Clear entries
-		entries.clear();
+		// Initialise list of deleted entries
+		List<Entry> deletedEntries = new ArrayList<>();
 
-		// Parse entries
+		// Create packed store of entries, omitting unused entries at end of directory
+		int numEntries = findEndOfEntries(buffer);
+		byte[] store = Arrays.copyOf(buffer, numEntries * Entry.SIZE);
+
+		// Collect deleted entries
 		int index = 0;
 		try
 		{
 			Fat32Fat fat = volume.getFat();
-			Deque<String> filenameParts = new ArrayDeque<>();
-			boolean longFilename = false;
-			int lfnIndex = 0;
-			char[] lfnChars = new char[LFN_CHARS_PER_ENTRY];
+			int lfnNumEntries = 0;
 			while (index < numEntries)
 			{
 				// Calculate offset of entry within buffer
 				int offset = index * Entry.SIZE;
 
 				// Get first byte of entry
-				int b = buffer[offset] & 0xFF;
+				int b = store[offset] & 0xFF;
 
-				// If no more entries, stop
-				if (b == END_OF_DIRECTORY)
-					break;
-
-				// Case: long-filename entry
-				if (longFilename)
-				{
-					// Validate index of long-filename entry
-					if ((b & LFN_INDEX_MASK) != lfnIndex)
-						throw new EntryException(ErrorMsg.LFN_INDEX_OUT_OF_SEQUENCE);
-
-					// Test type of long-filename entry
-					if (NumberCodec.bytesToUIntLE(buffer, offset + LFN_TYPE_OFFSET, LFN_TYPE_LENGTH) != LFN_TYPE)
-						throw new EntryException(ErrorMsg.UNRECOGNISED_LFN_TYPE);
-
-					// Get characters of long filename
-					int lfnOffset = 0;
-					lfnOffset = getLfnChars(buffer, offset + LFN_CHARS1_OFFSET, LFN_CHARS1_LENGTH, lfnChars, lfnOffset);
-					lfnOffset = getLfnChars(buffer, offset + LFN_CHARS2_OFFSET, LFN_CHARS2_LENGTH, lfnChars, lfnOffset);
-					lfnOffset = getLfnChars(buffer, offset + LFN_CHARS3_OFFSET, LFN_CHARS3_LENGTH, lfnChars, lfnOffset);
-					String str = new String(lfnChars);
-
-					// Find end of long filename
-					int i = str.indexOf(LFN_END_CHAR);
-					if (i >= 0)
-						str = str.substring(0, i);
-
-					// Add part of long filename to list
-					filenameParts.addFirst(str);
-
-					// Decrement index of long-filename entry
-					if (--lfnIndex == 0)
-						longFilename = false;
-				}
-
-				// Case: normal entry (ie, not long filename)
-				else if (b != DELETED_ENTRY)
+				// If entry is deleted ...
+				if (b == DELETED_ENTRY)
 				{
 					// Get attributes
-					int attrs = NumberCodec.bytesToUIntLE(buffer, offset + ATTRIBUTES_OFFSET, ATTRIBUTES_LENGTH);
+					int attrs = NumberCodec.bytesToUIntLE(store, offset + ATTRIBUTES_OFFSET, ATTRIBUTES_LENGTH);
 
-					// Long-filename entry ...
+					// Case: long-filename entry
 					if (attrs == LFN_ATTRS)
 					{
-						if ((b & LFN_FIRST_ENTRY_MASK) == 0)
-							throw new EntryException(ErrorMsg.FIRST_ENTRY_OF_LFN_EXPECTED);
-
-						lfnIndex = b & LFN_INDEX_MASK;
-						if ((lfnIndex < LFN_MIN_INDEX) || (lfnIndex > LFN_MAX_INDEX))
-							throw new EntryException(ErrorMsg.LFN_INDEX_OUT_OF_BOUNDS);
+						// Test type of long-filename entry
+						if (NumberCodec.bytesToUIntLE(store, offset + LFN_TYPE_OFFSET, LFN_TYPE_LENGTH) != LFN_TYPE)
+							throw new EntryException(ErrorMsg.UNRECOGNISED_LFN_TYPE);
 
-						longFilename = true;
-						--index;
+						// Increment number of long-filename entries
+						++lfnNumEntries;
 					}
 
-					// Normal entry (ie, not long filename) ...
+					// Case: normal entry (ie, not long filename)
 					else
 					{
 						// Initialise entry
-						Entry entry = new Entry(this);
-
-						// Get number of long-filename entries
-						int lfnNumEntries = filenameParts.size();
-
-						// Set length and index on entry
-						entry.length = lfnNumEntries + 1;
-						entry.index = index - lfnNumEntries;
-
-						// Set attributes on entry
-						entry.setAttributes(attrs);
-
-						// If there is a long filename, set it on entry and verify checksum of short filename
-						if (lfnNumEntries > 0)
-						{
-							// Get long filename and set it on entry
-							entry.name = filenameParts.stream().collect(Collectors.joining());
-							filenameParts.clear();
-
-							// Calculate checksum of short filename
-							int checksum = 0;
-							int j = offset + SHORT_NAME_OFFSET;
-							for (int i = 0; i < SHORT_NAME_LENGTH + SHORT_NAME_EXTENSION_LENGTH; i++)
-								checksum = (((checksum << 7) & 0x80) | ((checksum >> 1) & 0x7F)) + buffer[j++];
-							checksum &= 0xFF;
-
-							// Verify checksum in each LFN entry
-							int currIndex = index;
-							index -= lfnNumEntries;
-							while (index < currIndex)
-							{
-								if (NumberCodec.bytesToUIntLE(buffer, index * Entry.SIZE + LFN_CHECKSUM_OFFSET,
-															  LFN_CHECKSUM_LENGTH) != checksum)
-									throw new EntryException(ErrorMsg.INCORRECT_SFN_CHECKSUM);
-								++index;
-							}
-						}
-
-						// Get short-filename stem
-						int snOffset = offset + SHORT_NAME_OFFSET;
-						if (b == DELETED_ENTRY_PLACEHOLDER)
-							buffer[snOffset] = (byte)DELETED_ENTRY;
-						String snStem = getShortName(buffer, snOffset, SHORT_NAME_LENGTH);
-						if (b == DELETED_ENTRY_PLACEHOLDER)
-							buffer[snOffset] = (byte)DELETED_ENTRY_PLACEHOLDER;
-
-						// Get short-filename extension
-						snOffset = offset + SHORT_NAME_EXTENSION_OFFSET;
-						String snExtension = getShortName(buffer, snOffset, SHORT_NAME_EXTENSION_LENGTH);
-
-						// Set short filename on entry
-						String separator = entry.isVolumeLabel() ? "" : EXTENSION_SEPARATOR;
-						entry.shortName = snExtension.isEmpty() ? snStem : snStem + separator + snExtension;
-
-						// If there is no explicit long filename, set long filename from short filename
-						if (entry.name == null)
-						{
-							int nameCase = NumberCodec.bytesToUIntLE(buffer, offset + NAME_CASE_OFFSET,
-																	 NAME_CASE_LENGTH);
-							entry.name = ((nameCase & LFN_STEM_CASE_MASK) == 0) ? snStem : snStem.toLowerCase();
-							if (!snExtension.isEmpty())
-							{
-								entry.name += separator + (((nameCase & LFN_EXTENSION_CASE_MASK) == 0)
-																				? snExtension
-																				: snExtension.toLowerCase());
-							}
-						}
-
-						// Get file length and set it on entry
-						if (entry.isFile())
-						{
-							entry.fileLength = NumberCodec.bytesToULongLE(buffer, offset + FILE_LENGTH_OFFSET,
-																		  FILE_LENGTH_LENGTH);
-						}
+						Entry entry = new Entry(this, store, offset, index - lfnNumEntries, lfnNumEntries + 1);
+						lfnNumEntries = 0;
 
 						// Case: entry is volume label
 						if (entry.isVolumeLabel())
-							decodeLastModificationDateTime(buffer, offset, entry, messages);
+							decodeLastModificationDateTime(store, offset, entry, messages);
 
 						// Case: entry is not volume label
 						else
 						{
 							// Decode cluster index
-							decodeClusterIndex(buffer, offset, fat, entry);
-
-							// Set number of clusters and sector index
-							if (entry.clusterIndex > 0)
+							try
+							{
+								decodeClusterIndex(store, offset, fat, entry);
+							}
+							catch (EntryException e)
 							{
-								// Count number of clusters
-								int numClusters = fat.clusterCount(entry.clusterIndex);
-
-								// If entry is file, validate file length against number of clusters
-								if (entry.isFile())
-								{
-									if (numClusters != NumberUtils.roundUpQuotientLong(entry.fileLength,
-																					   volume.getBytesPerCluster()))
-										throw new EntryException(ErrorMsg.INCONSISTENT_FILE_LENGTH, entry.getName());
-								}
-
-								// Set number of clusters on entry
-								entry.numClusters = numClusters;
-
-								// Set sector index on entry
-								entry.sectorIndex = volume.clusterIndexToSectorIndex(entry.clusterIndex);
+								addEntryMessage(entry, e.getMessage(), messages);
 							}
 
-							// Decode creation date and time
-							decodeCreationDateTime(buffer, offset, entry, messages);
+							// Validate creation date and time
+							decodeCreationDateTime(store, offset, entry, messages);
 
-							// Decode last modification date and time
-							decodeLastModificationDateTime(buffer, offset, entry, messages);
+							// Validate last modification date and time
+							decodeLastModificationDateTime(store, offset, entry, messages);
 
-							// Decode access date
-							decodeAccessDate(buffer, offset, entry, messages);
+							// Validate access date
+							decodeAccessDate(store, offset, entry, messages);
 						}
 
 						// Add entry to list
-						entries.add(entry);
+						deletedEntries.add(entry);
 					}
 				}
 
+				// Discard long-filename entries that are not followed by a deleted entry
+				else
+					lfnNumEntries = 0;
+
 				// Increment entry index
 				++index;
 			}
@@ -1402,12 +1896,23 @@ public class Fat32Directory
 		{
 			throw new VolumeException(ErrorMsg.INVALID_DIRECTORY_ENTRY, e, getPathname(), index);
 		}
-		finally
-		{
-			// Close volume
-			if (volume.isOpen())
-				volume.close();
-		}
+
+		// Return list of deleted entries
+		return deletedEntries;
+	}
+
+	//------------------------------------------------------------------
+
+	private void parse(
+		byte[]			buffer,
+		List<String>	messages)
+		throws VolumeException
+	{
+		// Parse buffer one cluster at a time
+		EntryParser parser = new EntryParser(messages);
+		int bytesPerCluster = volume.getBytesPerCluster();
+		for (int offset = 0; offset < buffer.length; offset += bytesPerCluster)
+			parser.parse(buffer, offset, Math.min(bytesPerCluster, buffer.length - offset));
 	}
 
 	//------------------------------------------------------------------
@@ -1423,8 +1928,8 @@ public class Fat32Directory
 		int clusterIndex = getClusterIndex(buffer, offset);
 
 		// Validate cluster index
-		if ((entry.isFile() && (entry.fileLength == 0))
-				|| (entry.name.equals(SPECIAL_DIRECTORY_NAME_PARENT) && (parent != null) && parent.isRoot()))
+		if ((entry.isFile() && (entry.getFileLength() == 0))
+				|| (entry.getName().equals(SPECIAL_DIRECTORY_NAME_PARENT) && (parent != null) && parent.isRoot()))
 		{
 			if (clusterIndex != 0)
 				throw new EntryException(ErrorMsg.CLUSTER_INDEX_ZERO_EXPECTED, clusterIndex);
@@ -1438,7 +1943,7 @@ public class Fat32Directory
 
 	//------------------------------------------------------------------
 
-	private void decodeCreationDateTime(
+	private LocalDateTime decodeCreationDateTime(
 		byte[]			buffer,
 		int				offset,
 		Entry			entry,
@@ -1457,10 +1962,10 @@ public class Fat32Directory
 		int minute = BitUtils.getBitField(time, MINUTE_FIELD_SHIFT, MINUTE_FIELD_LENGTH);
 		int hour = BitUtils.getBitField(time, HOUR_FIELD_SHIFT, HOUR_FIELD_LENGTH);
 
-		// Set date and time on entry
+		// Convert date and time
 		try
 		{
-			entry.creationTime = getDateTime(year, month, day, hour, minute, second, centisecond);
+			return getDateTime(year, month, day, hour, minute, second, centisecond);
 		}
 		catch (DateTimeException e)
 		{
@@ -1469,11 +1974,14 @@ public class Fat32Directory
 										  dateTimeToString(year, month, day, hour, minute, second)),
 							messages);
 		}
+
+		// Indicate invalid date and time
+		return null;
 	}
 
 	//------------------------------------------------------------------
 
-	private void decodeLastModificationDateTime(
+	private LocalDateTime decodeLastModificationDateTime(
 		byte[]			buffer,
 		int				offset,
 		Entry			entry,
@@ -1493,10 +2001,10 @@ public class Fat32Directory
 		int minute = BitUtils.getBitField(time, MINUTE_FIELD_SHIFT, MINUTE_FIELD_LENGTH);
 		int hour = BitUtils.getBitField(time, HOUR_FIELD_SHIFT, HOUR_FIELD_LENGTH);
 
-		// Set date and time on entry
+		// Convert date and time
 		try
 		{
-			entry.lastModificationTime = getDateTime(year, month, day, hour, minute, second, 0);
+			return getDateTime(year, month, day, hour, minute, second, 0);
 		}
 		catch (DateTimeException e)
 		{
@@ -1505,11 +2013,14 @@ public class Fat32Directory
 										  dateTimeToString(year, month, day, hour, minute, second)),
 							messages);
 		}
+
+		// Indicate invalid date and time
+		return null;
 	}
 
 	//------------------------------------------------------------------
 
-	private void decodeAccessDate(
+	private LocalDate decodeAccessDate(
 		byte[]			buffer,
 		int				offset,
 		Entry			entry,
@@ -1524,10 +2035,10 @@ public class Fat32Directory
 			int month = BitUtils.getBitField(date, MONTH_FIELD_SHIFT, MONTH_FIELD_LENGTH);
 			int year = BASE_YEAR + BitUtils.getBitField(date, YEAR_FIELD_SHIFT, YEAR_FIELD_LENGTH);
 
-			// Set date on entry
+			// Convert date
 			try
 			{
-				entry.accessDate = getDate(year, month, day);
+				return getDate(year, month, day);
 			}
 			catch (DateTimeException e)
 			{
@@ -1537,6 +2048,9 @@ public class Fat32Directory
 								messages);
 			}
 		}
+
+		// Indicate no date
+		return null;
 	}
 
 	//------------------------------------------------------------------
@@ -1676,94 +2190,310 @@ public class Fat32Directory
 		DIRECTORY,
 		ARCHIVE;
 
-		public static final	Attr[]	DISPLAYED_ATTRS	=
-		{
-			DIRECTORY,
-			VOLUME_LABEL,
-			SYSTEM,
-			HIDDEN,
-			READ_ONLY
-		};
+		public static final	Attr[]	DISPLAYED_ATTRS	=
+		{
+			DIRECTORY,
+			VOLUME_LABEL,
+			SYSTEM,
+			HIDDEN,
+			READ_ONLY
+		};
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Attr()
+		{
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		public static String attrsToString(
+			Collection<Attr>	attrs)
+		{
+			char[] chars = new char[values().length];
+			Arrays.fill(chars, '.');
+			for (int i = 0; i < chars.length; i++)
+			{
+				Attr attr = values()[i];
+				if (attrs.contains(attr))
+					chars[chars.length - i - 1] = attr.getIdChar();
+			}
+			return new String(chars);
+		}
+
+		//--------------------------------------------------------------
+
+		public static int attrsToBitArray(
+			Collection<Attr>	attrs)
+		{
+			int bits = 0;
+			for (Attr attr : Attr.values())
+			{
+				if (attrs.contains(attr))
+					bits |= 1 << attr.ordinal();
+			}
+			return bits;
+		}
+
+		//--------------------------------------------------------------
+
+		public static double getMaxIdCharWidth()
+		{
+			double maxWidth = 0.0;
+			for (Attr attr : DISPLAYED_ATTRS)
+			{
+				double width = TextUtils.textWidth(FontUtils.boldFont(), Character.toString(attr.getIdChar()));
+				if (maxWidth < width)
+					maxWidth = width;
+			}
+			return Math.ceil(maxWidth);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public String getKey()
+		{
+			return StringUtils.toCamelCase(name());
+		}
+
+		//--------------------------------------------------------------
+
+		public char getIdChar()
+		{
+			return name().charAt(0);
+		}
+
+		//--------------------------------------------------------------
+
+		private int getMask()
+		{
+			return 1 << ordinal();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: DISK USAGE OF A DIRECTORY TREE
+
+
+	public record Usage(
+		long			logicalBytes,
+		long			allocatedBytes,
+		int				numFiles,
+		int				numDirectories,
+		int				depth,
+		Fat32Directory	deepestDirectory)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public long slackBytes()
+		{
+			return allocatedBytes - logicalBytes;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: SORT KEY OF AN ENTRY
+
+
+	private record SortKey(
+		Entry	entry,
+		int		kind,
+		String	name)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	Comparator<SortKey>	COMPARATOR	=
+				Comparator.comparingInt(SortKey::kind).thenComparing(SortKey::name);
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		// Folds case as String.CASE_INSENSITIVE_ORDER does, so that comparing folded names with compareTo() orders
+		// them as that comparator would
+		private static String foldCase(
+			String	name)
+		{
+			char[] chars = name.toCharArray();
+			for (int i = 0; i < chars.length; i++)
+				chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+			return new String(chars);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: ERASURE OF DELETED ENTRIES
+
+
+	public record Purge(
+		int	numEntries,
+		int	numSlots)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public int numBytes()
+		{
+			return numSlots * Entry.SIZE;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: DISK-USAGE TASK
+
+
+	private static class UsageTask
+		extends RecursiveTask<Usage>
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	Fat32Directory	directory;
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
-		private Attr()
+		private UsageTask(
+			Fat32Directory	directory)
 		{
+			// Initialise instance variables
+			this.directory = directory;
 		}
 
 		//--------------------------------------------------------------
 
 	////////////////////////////////////////////////////////////////////
-	//  Class methods
+	//  Instance methods : overriding methods
 	////////////////////////////////////////////////////////////////////
 
-		public static String attrsToString(
-			Collection<Attr>	attrs)
+		@Override
+		protected Usage compute()
 		{
-			char[] chars = new char[values().length];
-			Arrays.fill(chars, '.');
-			for (int i = 0; i < chars.length; i++)
+			// Return cached usage
+			Usage usage = directory.usage;
+			if (usage != null)
+				return usage;
+
+			// Fork tasks for subdirectories whose usage is not cached
+			List<Fat32Directory> children = directory.getChildren();
+			List<UsageTask> tasks = new ArrayList<>();
+			for (Fat32Directory child : children)
 			{
-				Attr attr = values()[i];
-				if (attrs.contains(attr))
-					chars[chars.length - i - 1] = attr.getIdChar();
+				if (child.usage == null)
+				{
+					UsageTask task = new UsageTask(child);
+					task.fork();
+					tasks.add(task);
+				}
 			}
-			return new String(chars);
-		}
-
-		//--------------------------------------------------------------
 
-		public static int attrsToBitArray(
-			Collection<Attr>	attrs)
-		{
-			int bits = 0;
-			for (Attr attr : Attr.values())
+			// Sum usage of files of directory and clusters of directory itself
+			Fat32Volume volume = directory.volume;
+			long bytesPerCluster = volume.getBytesPerCluster();
+			long logicalBytes = 0;
+			long allocatedBytes = 0;
+			try
 			{
-				if (attrs.contains(attr))
-					bits |= 1 << attr.ordinal();
+				allocatedBytes = volume.getFat().clusterCount(directory.clusterIndex) * bytesPerCluster;
 			}
-			return bits;
-		}
-
-		//--------------------------------------------------------------
-
-		public static double getMaxIdCharWidth()
-		{
-			double maxWidth = 0.0;
-			for (Attr attr : DISPLAYED_ATTRS)
+			catch (VolumeException e)
 			{
-				double width = TextUtils.textWidth(FontUtils.boldFont(), Character.toString(attr.getIdChar()));
-				if (maxWidth < width)
-					maxWidth = width;
+				throw new WrappedVolumeException(e);
+			}
+			int numFiles = 0;
+			for (Entry entry : directory.entries)
+			{
+				if (entry.isFile())
+				{
+					logicalBytes += entry.getFileLength();
+					allocatedBytes += entry.numClusters * bytesPerCluster;
+					++numFiles;
+				}
 			}
-			return Math.ceil(maxWidth);
-		}
-
-		//--------------------------------------------------------------
-
-	////////////////////////////////////////////////////////////////////
-	//  Instance methods
-	////////////////////////////////////////////////////////////////////
-
-		public String getKey()
-		{
-			return StringUtils.toCamelCase(name());
-		}
 
-		//--------------------------------------------------------------
+			// Wait for subdirectories
+			for (UsageTask task : tasks)
+				task.join();
 
-		public char getIdChar()
-		{
-			return name().charAt(0);
-		}
+			// Add usage of subdirectories
+			int numDirectories = children.size();
+			int depth = 0;
+			Fat32Directory deepestDirectory = directory;
+			for (Fat32Directory child : children)
+			{
+				Usage childUsage = child.usage;
+				logicalBytes += childUsage.logicalBytes;
+				allocatedBytes += childUsage.allocatedBytes;
+				numFiles += childUsage.numFiles;
+				numDirectories += childUsage.numDirectories;
+				if (depth < childUsage.depth + 1)
+				{
+					depth = childUsage.depth + 1;
+					deepestDirectory = childUsage.deepestDirectory;
+				}
+			}
 
-		//--------------------------------------------------------------
+			// Cache usage
+			usage = new Usage(logicalBytes, allocatedBytes, numFiles, numDirectories, depth, deepestDirectory);
+			directory.usage = usage;
 
-		private int getMask()
-		{
-			return 1 << ordinal();
+			// Return usage
+			return usage;
 		}
 
 		//--------------------------------------------------------------
@@ -1772,10 +2502,6 @@ public class Fat32Directory
 
 	//==================================================================
 
-////////////////////////////////////////////////////////////////////////
-//  Member classes : non-inner classes
-////////////////////////////////////////////////////////////////////////
-
 
 	// CLASS: DIRECTORY ENTRY
 
@@ -1814,29 +2540,30 @@ public class Fat32Directory
 	////////////////////////////////////////////////////////////////////
 
 		private	Fat32Directory	directory;
+		private	byte[]			data;
+		private	int				offset;
 		private	int				index;
 		private	int				length;
-		private	String			name;
-		private	String			shortName;
-		private	EnumSet<Attr>	attributes;
-		private	long			fileLength;
-		private	LocalDateTime	creationTime;
-		private	LocalDateTime	lastModificationTime;
-		private	LocalDate		accessDate;
 		private	int				clusterIndex;
 		private	int				numClusters;
-		private	long			sectorIndex;
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
 	////////////////////////////////////////////////////////////////////
 
 		private Entry(
-			Fat32Directory	directory)
+			Fat32Directory	directory,
+			byte[]			data,
+			int				offset,
+			int				index,
+			int				length)
 		{
 			// Initialise instance variables
 			this.directory = directory;
-			attributes = EnumSet.noneOf(Attr.class);
+			this.data = data;
+			this.offset = offset;
+			this.index = index;
+			this.length = length;
 		}
 
 		//--------------------------------------------------------------
@@ -1878,11 +2605,11 @@ public class Fat32Directory
 			{
 				buffer.append(LENGTH_STR);
 				buffer.append(EQUALS_STR);
-				buffer.append(fileLength);
+				buffer.append(getFileLength());
 				buffer.append('\n');
 			}
 
-			if (creationTime != null)
+			if (getCreationTime() != null)
 			{
 				buffer.append(CREATION_TIME_STR);
 				buffer.append(EQUALS_STR);
@@ -1890,7 +2617,7 @@ public class Fat32Directory
 				buffer.append('\n');
 			}
 
-			if (lastModificationTime != null)
+			if (getLastModificationTime() != null)
 			{
 				buffer.append(LAST_MODIFICATION_TIME_STR);
 				buffer.append(EQUALS_STR);
@@ -1898,7 +2625,7 @@ public class Fat32Directory
 				buffer.append('\n');
 			}
 
-			if (accessDate != null)
+			if (getAccessDate() != null)
 			{
 				buffer.append(ACCESS_DATE_STR);
 				buffer.append(EQUALS_STR);
@@ -1920,7 +2647,7 @@ public class Fat32Directory
 
 				buffer.append(SECTOR_INDEX_STR);
 				buffer.append(EQUALS_STR);
-				buffer.append(sectorIndex);
+				buffer.append(getSectorIndex());
 				buffer.append('\n');
 			}
 
@@ -1964,7 +2691,32 @@ public class Fat32Directory
 
 		public String getName()
 		{
-			return (name == null) ? shortName : name;
+			// Case: long filename
+			if (length > 1)
+				return getLongName();
+
+			// Case: short filename; apply case flags to stem and extension
+			String stem = getShortNameStem();
+			String extension = Fat32Directory.getShortName(data, offset + SHORT_NAME_EXTENSION_OFFSET,
+														   SHORT_NAME_EXTENSION_LENGTH);
+			int nameCase = NumberCodec.bytesToUIntLE(data, offset + NAME_CASE_OFFSET, NAME_CASE_LENGTH);
+			String name = ((nameCase & LFN_STEM_CASE_MASK) == 0) ? stem : stem.toLowerCase();
+			if (!extension.isEmpty())
+			{
+				name += getExtensionSeparator()
+							+ (((nameCase & LFN_EXTENSION_CASE_MASK) == 0) ? extension : extension.toLowerCase());
+			}
+			return name;
+		}
+
+		//--------------------------------------------------------------
+
+		public String getShortName()
+		{
+			String stem = getShortNameStem();
+			String extension = Fat32Directory.getShortName(data, offset + SHORT_NAME_EXTENSION_OFFSET,
+														   SHORT_NAME_EXTENSION_LENGTH);
+			return extension.isEmpty() ? stem : stem + getExtensionSeparator() + extension;
 		}
 
 		//--------------------------------------------------------------
@@ -1983,46 +2735,53 @@ public class Fat32Directory
 
 		//--------------------------------------------------------------
 
+		public boolean isDeleted()
+		{
+			return (data[offset] & 0xFF) == DELETED_ENTRY;
+		}
+
+		//--------------------------------------------------------------
+
 		public boolean isDirectory()
 		{
-			return attributes.contains(Attr.DIRECTORY);
+			return hasAttribute(Attr.DIRECTORY);
 		}
 
 		//--------------------------------------------------------------
 
 		public boolean isRegularDirectory()
 		{
-			return attributes.contains(Attr.DIRECTORY) && !hasSpecialDirectoryName();
+			return hasAttribute(Attr.DIRECTORY) && !hasSpecialDirectoryName();
 		}
 
 		//--------------------------------------------------------------
 
 		public boolean isSpecialDirectory()
 		{
-			return attributes.contains(Attr.DIRECTORY) && hasSpecialDirectoryName();
+			return hasAttribute(Attr.DIRECTORY) && hasSpecialDirectoryName();
 		}
 
 		//--------------------------------------------------------------
 
 		public boolean isVolumeLabel()
 		{
-			return attributes.contains(Attr.VOLUME_LABEL);
+			return hasAttribute(Attr.VOLUME_LABEL);
 		}
 
 		//--------------------------------------------------------------
 
 		public boolean isFile()
 		{
-			return !(attributes.contains(Attr.DIRECTORY) || attributes.contains(Attr.VOLUME_LABEL));
+			return !(hasAttribute(Attr.DIRECTORY) || hasAttribute(Attr.VOLUME_LABEL));
 		}
 
 		//--------------------------------------------------------------
 
 		public Kind getKind()
 		{
-			return attributes.contains(Attr.VOLUME_LABEL)
+			return hasAttribute(Attr.VOLUME_LABEL)
 					? Kind.VOLUME_LABEL
-					: attributes.contains(Attr.DIRECTORY)
+					: hasAttribute(Attr.DIRECTORY)
 							? hasSpecialDirectoryName()
 									? Kind.SPECIAL_DIRECTORY
 									: Kind.DIRECTORY
@@ -2034,13 +2793,19 @@ public class Fat32Directory
 		public boolean hasAttribute(
 			Attr	attr)
 		{
-			return attributes.contains(attr);
+			return (data[offset + ATTRIBUTES_OFFSET] & attr.getMask()) != 0;
 		}
 
 		//--------------------------------------------------------------
 
 		public EnumSet<Attr> getAttributes()
 		{
+			EnumSet<Attr> attributes = EnumSet.noneOf(Attr.class);
+			for (Attr attr : Attr.values())
+			{
+				if (hasAttribute(attr))
+					attributes.add(attr);
+			}
 			return attributes;
 		}
 
@@ -2049,40 +2814,38 @@ public class Fat32Directory
 		public void setAttributes(
 			int	bits)
 		{
-			attributes.clear();
+			int mask = 0;
 			for (Attr attr : Attr.values())
-			{
-				if ((bits & attr.getMask()) != 0)
-					attributes.add(attr);
-			}
+				mask |= attr.getMask();
+			data[offset + ATTRIBUTES_OFFSET] = (byte)(bits & mask);
 		}
 
 		//--------------------------------------------------------------
 
 		public long getFileLength()
 		{
-			return fileLength;
+			return isFile() ? NumberCodec.bytesToULongLE(data, offset + FILE_LENGTH_OFFSET, FILE_LENGTH_LENGTH) : 0;
 		}
 
 		//--------------------------------------------------------------
 
 		public LocalDateTime getCreationTime()
 		{
-			return creationTime;
+			return isVolumeLabel() ? null : directory.decodeCreationDateTime(data, offset, this, null);
 		}
 
 		//--------------------------------------------------------------
 
 		public LocalDateTime getLastModificationTime()
 		{
-			return lastModificationTime;
+			return directory.decodeLastModificationDateTime(data, offset, this, null);
 		}
 
 		//--------------------------------------------------------------
 
 		public LocalDate getAccessDate()
 		{
-			return accessDate;
+			return isVolumeLabel() ? null : directory.decodeAccessDate(data, offset, this, null);
 		}
 
 		//--------------------------------------------------------------
@@ -2097,11 +2860,7 @@ public class Fat32Directory
 		public void setClusterIndex(
 			int	index)
 		{
-			// Update cluster index
 			clusterIndex = index;
-
-			// Update sector index
-			sectorIndex = directory.getVolume().clusterIndexToSectorIndex(index);
 		}
 
 		//--------------------------------------------------------------
@@ -2113,22 +2872,30 @@ public class Fat32Directory
 
 		//--------------------------------------------------------------
 
+		public Usage getUsage()
+		{
+			return isRegularDirectory() ? directory.getSubdirectoryUsage(this) : null;
+		}
+
+		//--------------------------------------------------------------
+
 		public long getSectorIndex()
 		{
-			return sectorIndex;
+			return (clusterIndex > 0) ? directory.getVolume().clusterIndexToSectorIndex(clusterIndex) : 0;
 		}
 
 		//--------------------------------------------------------------
 
 		public String getAttributeString()
 		{
-			return Attr.attrsToString(attributes);
+			return Attr.attrsToString(getAttributes());
 		}
 
 		//--------------------------------------------------------------
 
 		public String getCreationTimeString()
 		{
+			LocalDateTime creationTime = getCreationTime();
 			return (creationTime == null) ? "" : CREATION_TIME_FORMATTER.format(creationTime);
 		}
 
@@ -2136,6 +2903,7 @@ public class Fat32Directory
 
 		public String getLastModificationTimeString()
 		{
+			LocalDateTime lastModificationTime = getLastModificationTime();
 			return (lastModificationTime == null) ? "" : LAST_MODIFICATION_TIME_FORMATTER.format(lastModificationTime);
 		}
 
@@ -2143,14 +2911,101 @@ public class Fat32Directory
 
 		public String getAccessDateString()
 		{
+			LocalDate accessDate = getAccessDate();
 			return (accessDate == null) ? "" : ACCESS_DATE_FORMATTER.format(accessDate);
 		}
 
 		//--------------------------------------------------------------
 
+		private boolean hasSameRecords(
+			Entry	entry)
+		{
+			// Compare number of records
+			if (length != entry.length)
+				return false;
+
+			// Compare long-filename records and short-filename record
+			int numBytes = length * SIZE;
+			int start = offset + SIZE - numBytes;
+			int start0 = entry.offset + SIZE - numBytes;
+			return Arrays.equals(data, start, start + numBytes, entry.data, start0, start0 + numBytes);
+		}
+
+		//--------------------------------------------------------------
+
+		private String getLongName()
+		{
+			// Concatenate characters of long-filename entries, which precede short-filename entry in reverse order
+			StringBuilder buffer = new StringBuilder(LFN_CHARS_PER_ENTRY * (length - 1));
+			for (int i = 1; i < length; i++)
+			{
+				int lfnOffset = offset - i * SIZE;
+				if (!appendLfnChars(lfnOffset + LFN_CHARS1_OFFSET, LFN_CHARS1_LENGTH, buffer)
+						&& !appendLfnChars(lfnOffset + LFN_CHARS2_OFFSET, LFN_CHARS2_LENGTH, buffer))
+					appendLfnChars(lfnOffset + LFN_CHARS3_OFFSET, LFN_CHARS3_LENGTH, buffer);
+			}
+			return buffer.toString();
+		}
+
+		//--------------------------------------------------------------
+
+		private boolean appendLfnChars(
+			int				inOffset,
+			int				length,
+			StringBuilder	buffer)
+		{
+			for (int i = 0; i < length; i += Character.BYTES)
+			{
+				char ch = (char)NumberCodec.bytesToUIntLE(data, inOffset + i, Character.BYTES);
+				if (ch == LFN_END_CHAR)
+					return true;
+				buffer.append(ch);
+			}
+			return false;
+		}
+
+		//--------------------------------------------------------------
+
+		private String getShortNameStem()
+		{
+			// Case: deleted entry; first character is lost
+			int snOffset = offset + SHORT_NAME_OFFSET;
+			if (isDeleted())
+				return "?" + Fat32Directory.getShortName(data, snOffset + 1, SHORT_NAME_LENGTH - 1);
+
+			// Case: first character is placeholder for character that has the same value as deleted-entry marker
+			if ((data[snOffset] & 0xFF) == DELETED_ENTRY_PLACEHOLDER)
+			{
+				byte[] stem = Arrays.copyOfRange(data, snOffset, snOffset + SHORT_NAME_LENGTH);
+				stem[0] = (byte)DELETED_ENTRY;
+				return Fat32Directory.getShortName(stem, 0, SHORT_NAME_LENGTH);
+			}
+
+			// Case: normal stem
+			return Fat32Directory.getShortName(data, snOffset, SHORT_NAME_LENGTH);
+		}
+
+		//--------------------------------------------------------------
+
+		private String getExtensionSeparator()
+		{
+			return isVolumeLabel() ? "" : EXTENSION_SEPARATOR;
+		}
+
+		//--------------------------------------------------------------
+
 		private boolean hasSpecialDirectoryName()
 		{
-			return name.equals(SPECIAL_DIRECTORY_NAME_THIS) || name.equals(SPECIAL_DIRECTORY_NAME_PARENT);
+			// A special directory has a short filename of '.' or '..' and no long filename
+			int snOffset = offset + SHORT_NAME_OFFSET;
+			if ((length > 1) || (data[snOffset] != '.'))
+				return false;
+			for (int i = (data[snOffset + 1] == '.') ? 2 : 1; i < SHORT_NAME_LENGTH + SHORT_NAME_EXTENSION_LENGTH; i++)
+			{
+				if (data[snOffset + i] != ' ')
+					return false;
+			}
+			return true;
 		}
 
 		//--------------------------------------------------------------
@@ -2255,6 +3110,251 @@ public class Fat32Directory
 
 	//==================================================================
 
+////////////////////////////////////////////////////////////////////////
+//  Member classes : inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: DIRECTORY-ENTRY PARSER
+
+
+	/**
+	 * This class implements a parser of the entries of this directory that consumes the data of the directory one
+	 * chunk (typically a cluster) at a time.  The state of a long filename is carried across the boundaries between
+	 * chunks, and the entries of each chunk are added to the list of entries of the directory as soon as the chunk has
+	 * been parsed.
+	 * <p>
+	 * Each chunk is retained as part of the packed store of entries of the directory.  An entry whose records lie
+	 * within a single chunk is a view of that chunk; an entry whose long-filename records are in a preceding chunk is
+	 * a view of a copy of its own records.
+	 * </p>
+	 */
+
+	private class EntryParser
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	List<String>	messages;
+		private	Fat32Fat		fat;
+		private	int				index;
+		private	boolean			ended;
+		private	boolean			longFilename;
+		private	int				lfnIndex;
+		private	int				lfnNumEntries;
+		private	byte[]			lfnRecords;
+		private	byte[]			lfnChunk;
+		private	int				lfnOffset;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private EntryParser(
+			List<String>	messages)
+		{
+			// Initialise instance variables
+			this.messages = messages;
+			fat = volume.getFat();
+			lfnRecords = new byte[LFN_MAX_INDEX * Entry.SIZE];
+
+			// Clear entries, store of entries and index of entries
+			entries.clear();
+			entryChunks = new ArrayList<>();
+			entryIndex = null;
+
+			// Invalidate usage of directory and its ancestors
+			invalidateUsage();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private void parse(
+			byte[]	buffer,
+			int		offset,
+			int		length)
+			throws VolumeException
+		{
+			// If end of directory has been reached, ignore chunk
+			if (ended)
+				return;
+
+			// Find end of directory within chunk
+			int numRecords = length / Entry.SIZE;
+			int endIndex = 0;
+			while ((endIndex < numRecords) && ((buffer[offset + endIndex * Entry.SIZE] & 0xFF) != END_OF_DIRECTORY))
+				++endIndex;
+			if (endIndex < numRecords)
+				ended = true;
+			if (endIndex == 0)
+				return;
+
+			// Add records up to end of directory to store of entries
+			byte[] chunk = Arrays.copyOfRange(buffer, offset, offset + endIndex * Entry.SIZE);
+			entryChunks.add(chunk);
+
+			// Parse records
+			try
+			{
+				for (int i = 0; i < endIndex; i++)
+				{
+					// Calculate offset of record within chunk
+					int recOffset = i * Entry.SIZE;
+
+					// Get first byte of record
+					int b = chunk[recOffset] & 0xFF;
+
+					// Test for first record of long filename
+					if (!longFilename && (b != DELETED_ENTRY)
+							&& (NumberCodec.bytesToUIntLE(chunk, recOffset + ATTRIBUTES_OFFSET, ATTRIBUTES_LENGTH)
+									== LFN_ATTRS))
+					{
+						if ((b & LFN_FIRST_ENTRY_MASK) == 0)
+							throw new EntryException(ErrorMsg.FIRST_ENTRY_OF_LFN_EXPECTED);
+
+						lfnIndex = b & LFN_INDEX_MASK;
+						if ((lfnIndex < LFN_MIN_INDEX) || (lfnIndex > LFN_MAX_INDEX))
+							throw new EntryException(ErrorMsg.LFN_INDEX_OUT_OF_BOUNDS);
+
+						longFilename = true;
+						lfnNumEntries = 0;
+						lfnChunk = chunk;
+						lfnOffset = recOffset;
+					}
+
+					// Case: long-filename entry
+					if (longFilename)
+					{
+						// Validate index of long-filename entry
+						if ((b & LFN_INDEX_MASK) != lfnIndex)
+							throw new EntryException(ErrorMsg.LFN_INDEX_OUT_OF_SEQUENCE);
+
+						// Test type of long-filename entry
+						if (NumberCodec.bytesToUIntLE(chunk, recOffset + LFN_TYPE_OFFSET, LFN_TYPE_LENGTH) != LFN_TYPE)
+							throw new EntryException(ErrorMsg.UNRECOGNISED_LFN_TYPE);
+
+						// Retain record in case short-filename entry is in a later chunk
+						System.arraycopy(chunk, recOffset, lfnRecords, lfnNumEntries * Entry.SIZE, Entry.SIZE);
+						++lfnNumEntries;
+
+						// Decrement index of long-filename entry
+						if (--lfnIndex == 0)
+							longFilename = false;
+					}
+
+					// Case: normal entry (ie, not long filename)
+					else if (b != DELETED_ENTRY)
+					{
+						entries.add(createEntry(chunk, recOffset));
+					}
+
+					// Increment index of record
+					++index;
+				}
+			}
+			catch (EntryException e)
+			{
+				throw new VolumeException(ErrorMsg.INVALID_DIRECTORY_ENTRY, e, getPathname(), index);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		private Entry createEntry(
+			byte[]	chunk,
+			int		offset)
+			throws EntryException, VolumeException
+		{
+			// If long-filename records do not immediately precede short-filename record in chunk, copy records
+			byte[] data = chunk;
+			if ((lfnNumEntries > 0) && ((lfnChunk != chunk) || (lfnOffset != offset - lfnNumEntries * Entry.SIZE)))
+			{
+				int lfnLength = lfnNumEntries * Entry.SIZE;
+				data = new byte[lfnLength + Entry.SIZE];
+				System.arraycopy(lfnRecords, 0, data, 0, lfnLength);
+				System.arraycopy(chunk, offset, data, lfnLength, Entry.SIZE);
+				offset = lfnLength;
+			}
+
+			// Initialise entry
+			Entry entry = new Entry(Fat32Directory.this, data, offset, index - lfnNumEntries, lfnNumEntries + 1);
+
+			// If there is a long filename, verify checksum of short filename
+			if (lfnNumEntries > 0)
+			{
+				// Calculate checksum of short filename
+				int checksum = 0;
+				int j = offset + SHORT_NAME_OFFSET;
+				for (int i = 0; i < SHORT_NAME_LENGTH + SHORT_NAME_EXTENSION_LENGTH; i++)
+					checksum = (((checksum << 7) & 0x80) | ((checksum >> 1) & 0x7F)) + data[j++];
+				checksum &= 0xFF;
+
+				// Verify checksum in each LFN entry
+				for (int i = 0; i < lfnNumEntries; i++)
+				{
+					if (NumberCodec.bytesToUIntLE(lfnRecords, i * Entry.SIZE + LFN_CHECKSUM_OFFSET, LFN_CHECKSUM_LENGTH)
+							!= checksum)
+						throw new EntryException(ErrorMsg.INCORRECT_SFN_CHECKSUM);
+				}
+
+				// Reset number of long-filename entries
+				lfnNumEntries = 0;
+			}
+
+			// Case: entry is volume label
+			if (entry.isVolumeLabel())
+				decodeLastModificationDateTime(data, offset, entry, messages);
+
+			// Case: entry is not volume label
+			else
+			{
+				// Decode cluster index
+				decodeClusterIndex(data, offset, fat, entry);
+
+				// Set number of clusters
+				if (entry.clusterIndex > 0)
+				{
+					// Count number of clusters
+					int numClusters = fat.clusterCount(entry.clusterIndex);
+
+					// If entry is file, validate file length against number of clusters
+					if (entry.isFile())
+					{
+						if (numClusters != NumberUtils.roundUpQuotientLong(entry.getFileLength(),
+																		   volume.getBytesPerCluster()))
+							throw new EntryException(ErrorMsg.INCONSISTENT_FILE_LENGTH, entry.getName());
+					}
+
+					// Set number of clusters on entry
+					entry.numClusters = numClusters;
+				}
+
+				// Validate creation date and time
+				decodeCreationDateTime(data, offset, entry, messages);
+
+				// Validate last modification date and time
+				decodeLastModificationDateTime(data, offset, entry, messages);
+
+				// Validate access date
+				decodeAccessDate(data, offset, entry, messages);
+			}
+
+			// Return entry
+			return entry;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
 }
 
 //----------------------------------------------------------------------
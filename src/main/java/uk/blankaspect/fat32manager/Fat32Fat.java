@@ -18,6 +18,12 @@ package uk.blankaspect.fat32manager;
 // IMPORTS
 
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import java.util.zip.CRC32;
+
 import uk.blankaspect.common.number.NumberCodec;
 
 import uk.blankaspect.driveio.VolumeException;
@@ -47,6 +53,8 @@ public class Fat32Fat
 
 	private static final	int		CLUSTER_INDEX_MASK	= 0x0FFF_FFFF;
 
+	private static final	int		DIGEST_BLOCK_LENGTH	= 1 << 14;
+
 	private static final	String	FAT_NOT_INITIALISED_STR			= "FAT not initialised";
 	private static final	String	START_INDEX_OUT_OF_BOUNDS_STR	= "Start index out of bounds: ";
 
@@ -205,6 +213,34 @@ public class Fat32Fat
 
 	//------------------------------------------------------------------
 
+	public long getDigest()
+	{
+		// Check that FAT has been initialised
+		if (entries == null)
+			throw new IllegalStateException(FAT_NOT_INITIALISED_STR);
+
+		// Calculate CRC of entries in blocks
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[DIGEST_BLOCK_LENGTH * ENTRY_SIZE];
+		int index = 0;
+		while (index < entries.length)
+		{
+			int endIndex = Math.min(index + DIGEST_BLOCK_LENGTH, entries.length);
+			int offset = 0;
+			while (index < endIndex)
+			{
+				NumberCodec.uIntToBytesLE(entries[index++], buffer, offset, ENTRY_SIZE);
+				offset += ENTRY_SIZE;
+			}
+			crc.update(buffer, 0, offset);
+		}
+
+		// Combine CRC with number of entries
+		return ((long)entries.length << 32) | crc.getValue();
+	}
+
+	//------------------------------------------------------------------
+
 	public IndexIterator indexIterator(
 		int	startIndex)
 	{
@@ -297,6 +333,105 @@ public class Fat32Fat
 
 	//------------------------------------------------------------------
 
+	public void forEachCluster(
+		int					startIndex,
+		IClusterProcedure	procedure)
+		throws VolumeException
+	{
+		IndexIterator it = indexIterator(startIndex);
+		while (it.hasNext())
+			procedure.invoke(it.next());
+	}
+
+	//------------------------------------------------------------------
+
+	public int forEachExtent(
+		int					startIndex,
+		IExtentProcedure	procedure)
+		throws VolumeException
+	{
+		return forEachExtent(startIndex, Integer.MAX_VALUE, procedure);
+	}
+
+	//------------------------------------------------------------------
+
+	public int forEachExtent(
+		int					startIndex,
+		int					maxNumClusters,
+		IExtentProcedure	procedure)
+		throws VolumeException
+	{
+		// Initialise extent and number of clusters
+		int extentStartIndex = -1;
+		int extentLength = 0;
+		int numClusters = 0;
+
+		// Follow chain, coalescing runs of consecutive clusters into extents
+		IndexIterator it = indexIterator(startIndex);
+		while ((numClusters < maxNumClusters) && it.hasNext())
+		{
+			int index = it.next();
+			if (index == extentStartIndex + extentLength)
+				++extentLength;
+			else
+			{
+				if (extentLength > 0)
+					procedure.invoke(extentStartIndex, extentLength);
+				extentStartIndex = index;
+				extentLength = 1;
+			}
+			++numClusters;
+		}
+		if (extentLength > 0)
+			procedure.invoke(extentStartIndex, extentLength);
+
+		// Return number of clusters
+		return numClusters;
+	}
+
+	//------------------------------------------------------------------
+
+	public int fragmentCount(
+		int	startIndex)
+		throws VolumeException
+	{
+		// Check that FAT has been initialised
+		if (entries == null)
+			throw new IllegalStateException(FAT_NOT_INITIALISED_STR);
+
+		// Validate arguments
+		if ((startIndex < MIN_CLUSTER_INDEX) || (startIndex >= entries.length))
+			throw new IllegalArgumentException(START_INDEX_OUT_OF_BOUNDS_STR + startIndex);
+
+		// Follow chain, counting runs of consecutive clusters
+		int count = 1;
+		int index = startIndex;
+		int numClusters = 1;
+		while (!isEndOfChain(entries[index]))
+		{
+			// Get index of next cluster
+			int nextIndex = entries[index];
+
+			// Test for bad cluster
+			if (nextIndex == BAD_CLUSTER_INDEX)
+				throw new VolumeException(ErrorMsg.BAD_CLUSTER, Integer.toString(index));
+
+			// Test for invalid cluster index or a chain that is longer than the FAT (ie, a loop)
+			if ((nextIndex < MIN_CLUSTER_INDEX) || (nextIndex >= entries.length) || (++numClusters > entries.length))
+				throw new VolumeException(ErrorMsg.INVALID_CLUSTER_INDEX, startIndex, Integer.toString(index));
+
+			// Start a new fragment if clusters are not consecutive
+			if (nextIndex != index + 1)
+				++count;
+			index = nextIndex;
+		}
+
+		// Return number of fragments
+		return count;
+	}
+
+	//------------------------------------------------------------------
+
 	public int getNumUnusedClusters()
 	{
 		// Check that FAT has been initialised
@@ -317,6 +452,55 @@ public class Fat32Fat
 
 	//------------------------------------------------------------------
 
+	public BitSet getUsedClusters()
+	{
+		// Check that FAT has been initialised
+		if (entries == null)
+			throw new IllegalStateException(FAT_NOT_INITIALISED_STR);
+
+		// Set bits of clusters that are allocated to a file or directory
+		BitSet usedClusters = new BitSet(entries.length);
+		for (int i = MIN_CLUSTER_INDEX; i < entries.length; i++)
+		{
+			int entry = entries[i];
+			if ((entry != 0) && (entry != BAD_CLUSTER_INDEX))
+				usedClusters.set(i);
+		}
+
+		// Return used clusters
+		return usedClusters;
+	}
+
+	//------------------------------------------------------------------
+
+	public List<Run> getUnusedRuns()
+	{
+		// Check that FAT has been initialised
+		if (entries == null)
+			throw new IllegalStateException(FAT_NOT_INITIALISED_STR);
+
+		// Collect maximal runs of unused clusters
+		List<Run> runs = new ArrayList<>();
+		int index = MIN_CLUSTER_INDEX;
+		while (index < entries.length)
+		{
+			if (entries[index] == 0)
+			{
+				int startIndex = index;
+				while ((index < entries.length) && (entries[index] == 0))
+					++index;
+				runs.add(new Run(startIndex, index - startIndex));
+			}
+			else
+				++index;
+		}
+
+		// Return runs
+		return runs;
+	}
+
+	//------------------------------------------------------------------
+
 	public int findUnusedCluster(
 		int	startIndex)
 	{
@@ -382,6 +566,83 @@ public class Fat32Fat
 
 	//------------------------------------------------------------------
 
+////////////////////////////////////////////////////////////////////////
+//  Member interfaces
+////////////////////////////////////////////////////////////////////////
+
+
+	// INTERFACE: CLUSTER PROCEDURE
+
+
+	@FunctionalInterface
+	public interface IClusterProcedure
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		void invoke(
+			int	index)
+			throws VolumeException;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// INTERFACE: EXTENT PROCEDURE
+
+
+	@FunctionalInterface
+	public interface IExtentProcedure
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Methods
+	////////////////////////////////////////////////////////////////////
+
+		void invoke(
+			int	startIndex,
+			int	length)
+			throws VolumeException;
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RUN OF CONSECUTIVE CLUSTERS
+
+
+	public record Run(
+		int	startIndex,
+		int	length)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public int endIndex()
+		{
+			return startIndex + length;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
 ////////////////////////////////////////////////////////////////////////
 //  Member classes : inner classes
 ////////////////////////////////////////////////////////////////////////
@@ -447,7 +708,7 @@ public class Fat32Fat
 
 		//--------------------------------------------------------------
 
-		public Integer next()
+		public int next()
 			throws VolumeException
 		{
 			// Get index of next cluster
@@ -18,6 +18,8 @@ package uk.blankaspect.fat32manager;
 // IMPORTS
 
 
+import java.nio.file.Path;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
@@ -84,11 +86,15 @@ import uk.blankaspect.common.logging.LogLevel;
 
 import uk.blankaspect.common.message.MessageConstants;
 
+import uk.blankaspect.common.number.NumberUtils;
+
 import uk.blankaspect.common.resource.ResourceProperties;
 import uk.blankaspect.common.resource.ResourceUtils;
 
 import uk.blankaspect.common.string.StringUtils;
 
+import uk.blankaspect.common.task.ITaskStatus;
+
 import uk.blankaspect.common.thread.DaemonFactory;
 
 import uk.blankaspect.common.tree.TreeUtils;
@@ -106,6 +112,7 @@ import uk.blankaspect.ui.jfx.container.PropertiesPane;
 import uk.blankaspect.ui.jfx.dialog.ButtonInfo;
 import uk.blankaspect.ui.jfx.dialog.ConfirmationDialog;
 import uk.blankaspect.ui.jfx.dialog.ExceptionDialog;
+import uk.blankaspect.ui.jfx.dialog.MessageDialog;
 import uk.blankaspect.ui.jfx.dialog.MessageListDialog;
 import uk.blankaspect.ui.jfx.dialog.NotificationDialog;
 import uk.blankaspect.ui.jfx.dialog.SimpleProgressDialog;
@@ -115,6 +122,10 @@ import uk.blankaspect.ui.jfx.exec.ExecUtils;
 import uk.blankaspect.ui.jfx.image.ImageData;
 import uk.blankaspect.ui.jfx.image.MessageIcon32;
 
+import uk.blankaspect.ui.jfx.io.IOUtils;
+
+import uk.blankaspect.ui.jfx.locationchooser.LocationChooser;
+
 import uk.blankaspect.ui.jfx.scene.SceneUtils;
 
 import uk.blankaspect.ui.jfx.style.StyleManager;
@@ -154,6 +165,12 @@ public class Fat32ManagerApp
 	/** The name of the log file. */
 	private static final	String	LOG_FILENAME	= NAME_KEY + ".log";
 
+	/** The name of the directory that contains snapshots of the metadata of volumes. */
+	private static final	String	METADATA_CACHE_DIRECTORY_NAME	= "metadataCache";
+
+	/** The maximum total size (in bytes) of the snapshots of the metadata of volumes. */
+	private static final	long	METADATA_CACHE_MAX_SIZE	= 256L << 20;
+
 	/** The number of lines of a previous log file that are retained. */
 	private static final	int		LOG_NUM_RETAINED_LINES	= 10000;
 
@@ -181,6 +198,9 @@ public class Fat32ManagerApp
 	/** The key under which the state of the <i>erase unused cluster</i> dialog is saved. */
 	private static final	String	ERASE_UNUSED_CLUSTERS_DIALOG_KEY	= "eraseUnusedClusters";
 
+	/** The key under which the state of the <i>erase slack space</i> dialog is saved. */
+	private static final	String	ERASE_SLACK_SPACE_DIALOG_KEY	= "eraseSlackSpace";
+
 	/** The padding around the properties pane. */
 	private static final	Insets	PROPERTIES_PANE_PADDING	= new Insets(0.0, 2.0, 0.0, 2.0);
 
@@ -245,6 +265,112 @@ public class Fat32ManagerApp
 			"The total length of the cluster chains was %d.\nThe expected value was %d.";
 	private static final	String	ERASE_UNUSED_CLUSTERS_STR	= "Erase unused clusters";
 	private static final	String	UNUSED_CLUSTERS_ERASED_STR	= "All unused clusters were successfully erased.";
+	private static final	String	ERASE_SLACK_SPACE_STR		= "Erase slack space of files";
+	private static final	String	SLACK_SPACE_ERASED_STR		=
+			"Files with slack space : %,d\nSlack space : %,d bytes\nBytes erased : %,d\nClusters written : %,d\n"
+				+ "Invalid cluster chains : %,d\nTime : %.1f s";
+	private static final	String	SCAN_SURFACE_STR			= "Scan surface";
+	private static final	String	MARK_BAD_CLUSTERS_QUESTION_STR	=
+			"Every cluster of the volume will be read.\n"
+			+ "Do you want to mark unreadable unused clusters as bad in the FATs?";
+	private static final	String	SCAN_AND_MARK_STR			= "Scan and mark";
+	private static final	String	SCAN_ONLY_STR				= "Scan only";
+	private static final	String	SCAN_SUMMARY_STR			= "Clusters scanned : %,d in %.1f s (%.1f MB/s)";
+	private static final	String	SCAN_UNREADABLE_CLUSTERS_STR	= "Unreadable clusters : %,d";
+	private static final	String	SCAN_UNREADABLE_CLUSTER_STR	= "    %,d : %d unreadable sectors (%s)";
+	private static final	String	SCAN_CLUSTERS_MARKED_STR	= "Clusters marked as bad : %,d";
+	private static final	String	SCAN_AFFECTED_FILES_STR		= "Files and directories with unreadable clusters :";
+	private static final	String	SCAN_LATENCY_STR			= "Read latency of 1-MiB blocks by region (ms) :";
+	private static final	String	SCAN_REGION_HEADER_STR		= "%-23s %8s %9s";
+	private static final	String	SCAN_REGION_STR				= "%10d-%-12d %8.1f %9.1f";
+	private static final	String	SCAN_BUCKET_HEADER_STR		= " %7s";
+	private static final	String	SCAN_BUCKET_STR				= " %7d";
+	private static final	String	CLUSTERS_STR				= "Clusters";
+	private static final	String	MB_PER_S_STR				= "MB/s";
+	private static final	String	MAX_MS_STR					= "Max (ms)";
+	private static final	String	UNUSED_STR					= "unused";
+	private static final	String	ALLOCATED_STR				= "allocated";
+	private static final	String	ALREADY_BAD_STR				= "already marked as bad";
+	private static final	String	INDENT_STR					= "    ";
+	private static final	String	WRITE_IMAGE_STR				= "Write image";
+	private static final	String	IMAGE_WRITTEN_STR			=
+		"""
+		The image was written.
+		Bytes copied : %,d
+		Length of image : %,d
+		Time : %.1f s (%.1f MB/s)
+		SHA-256 of copied data : %s""";
+	private static final	String	BACK_UP_VOLUME_STR			= "Back up volume";
+	private static final	String	BACKUP_WRITTEN_STR			=
+		"""
+		The backup was written.
+		Bytes backed up : %,d
+		Length of backup file : %,d (compression ratio %.2f)
+		Chunks : %,d
+		Time : %.1f s (%.1f MB/s)""";
+	private static final	String	VERIFY_BACKUP_STR			= "Verify backup";
+	private static final	String	BACKUP_VALID_STR			=
+		"""
+		The backup is valid.
+		Volume label : %s
+		Capacity of volume : %,d bytes
+		Bytes backed up : %,d
+		Chunks : %,d
+		Time : %.1f s""";
+	private static final	String	BACKUP_INVALID_STR			=
+			"%,d of %,d chunks of the backup are invalid.\nFirst invalid chunk : %d";
+	private static final	String	RESTORE_BACKUP_STR			= "Restore backup";
+	private static final	String	NO_VOLUMES_TO_RESTORE_STR	= "No volumes are eligible to receive a backup.";
+	private static final	String	CONFIRM_RESTORE_STR			=
+			"All data on %s will be overwritten by the backup.\nDo you want to restore the backup?";
+	private static final	String	RESTORE_STR					= "Restore";
+	private static final	String	BACKUP_RESTORED_STR			=
+		"""
+		The backup was restored.
+		Bytes restored : %,d
+		Time : %.1f s (%.1f MB/s)""";
+	private static final	String	WRITE_MANIFEST_STR			= "Write hash manifest";
+	private static final	String	MANIFEST_WRITTEN_STR		=
+		"""
+		The manifest was written.
+		Files : %,d
+		Bytes hashed : %,d
+		Time : %.1f s (%.1f MB/s)""";
+	private static final	String	VERIFY_MANIFEST_STR			= "Verify hash manifest";
+	private static final	String	VERIFY_MANIFEST_DEEP_STR	= "Verify hash manifest (deep)";
+	private static final	String	MANIFEST_SUMMARY_STR		=
+			"Files in manifest : %,d\nFiles hashed : %,d\nBytes hashed : %,d\n"
+				+ "Files with changed metadata but unchanged content : %,d\nTime : %.1f s";
+	private static final	String	MANIFEST_MATCHED_STR		= "The files of the volume match the manifest.";
+	private static final	String	MISSING_FILES_STR			= "Files that are missing from the volume : %,d";
+	private static final	String	NEW_FILES_STR				= "Files that are not in the manifest : %,d";
+	private static final	String	MODIFIED_FILES_STR			= "Files that have been modified : %,d";
+	private static final	String	CORRUPT_FILES_STR			=
+			"Files whose content has changed but whose metadata has not, or that cannot be read : %,d";
+	private static final	String	UNREADABLE_FILES_STR		=
+			"Files that were omitted because their cluster chains are broken : %,d";
+	private static final	String	CLONE_VOLUME_STR			= "Clone volume";
+	private static final	String	CLONE_STR					= "Clone";
+	private static final	String	NO_VOLUMES_TO_CLONE_TO_STR	= "No volumes are eligible to receive a clone.";
+	private static final	String	CONFIRM_CLONE_STR			=
+			"All data on %s will be overwritten by the clone.\nDo you want to clone the volume?";
+	private static final	String	CLONED_STR					=
+			"Bytes cloned : %,d\nTime : %.1f s\nRead from source : %.1f MB/s";
+	private static final	String	CLONE_TARGET_STR			= "%s : written at %.1f MB/s";
+	private static final	String	CLONE_TARGET_VERIFIED_STR	= ", %s at %.1f MB/s";
+	private static final	String	VERIFIED_STR				= "verified";
+	private static final	String	VERIFICATION_FAILED_STR		= "VERIFICATION FAILED";
+	private static final	String	EXTRACT_CONTENTS_STR		= "Extract contents";
+	private static final	String	VERIFY_AGAINST_HOST_STR		= "Verify against host directory";
+	private static final	String	HOST_SUMMARY_STR			=
+			"Files : %,d\nFiles compared : %,d\nBytes compared : %,d\nTime : %.1f s (%.1f MB/s)";
+	private static final	String	HOST_MATCHED_STR			= "The directory matches the host directory.";
+	private static final	String	NOT_ON_HOST_STR				= "Files that are not in the host directory : %,d";
+	private static final	String	NOT_ON_VOLUME_STR			= "Files that are not on the volume : %,d";
+	private static final	String	DIFFERING_FILES_STR			= "Files that differ : %,d";
+	private static final	String	DIFFERENCE_STR				= "%-10s  %s";
+	private static final	String	IMPORT_FILES_STR			= "Import files";
+	private static final	String	IMPORT_DIRECTORY_STR		= "Import directory";
 	private static final	String	FORMAT_STR					= "Format";
 	private static final	String	FORMAT_VOLUME_STR			= "Format volume";
 	private static final	String	SEARCHING_FOR_VOLUMES_STR	= "Searching for volumes";
@@ -256,6 +382,7 @@ public class Fat32ManagerApp
 		"""
 		The operating system may not be able to detect the new format
 		unless you unmount or eject the volume.""";
+	private static final	String	FORMAT_PHASE_STR			= "%s: %,d bytes in %.3f s (%.1f MB/s)";
 	private static final	String	DETERMINING_NUM_SECTORS_STR	= "Determining the number of available sectors";
 	private static final	String	PROPERTIES_STR				= "Properties";
 	private static final	String	OF_STR						= " of ";
@@ -270,12 +397,37 @@ public class Fat32ManagerApp
 	private static final	String	VIEW_SECTOR_STR				= "View sector";
 	private static final	String	VIEW_CLUSTER_STR			= "View cluster";
 	private static final	String	VIEW_DELETED_ENTRIES_STR	= "View deleted entries";
+	private static final	String	DISK_USAGE_STR				= "Disk usage";
+	private static final	String	USAGE_SUMMARY_STR			=
+			"Files : %,d\nSubdirectories : %,d\nLength of files : %,d bytes\nAllocated space : %,d bytes\n"
+				+ "Slack space : %,d bytes\nDepth : %,d\nDeepest directory : %s";
+	private static final	String	USAGE_SUBDIRECTORY_STR		= "%,18d  %,18d  %s";
+	private static final	String	FIND_FILES_STR				= "Find files on volume";
+	private static final	String	FIND_DUPLICATE_FILES_STR	= "Find duplicate files on volume";
+	private static final	String	DUPLICATES_SUMMARY_STR		=
+			"Files examined : %,d\nFile data read : %,d bytes in %.1f s\nSets of duplicates : %,d\n"
+				+ "Wasted space : %,d bytes";
+	private static final	String	DUPLICATE_SET_STR			= "%,d files of %,d bytes : %,d bytes wasted";
+	private static final	String	FIND_DELETED_FILES_STR		= "Find deleted files on volume";
+	private static final	String	DELETED_FILES_STR			= "Deleted files";
 	private static final	String	ERASE_DELETED_ENTRIES_STR	= "Erase deleted entries";
 	private static final	String	ERASE_STR					= "Erase";
 	private static final	String	NO_DELETED_ENTRIES_STR		= "No deleted entries were found.";
-	private static final	String	NUM_ENTRIES_ERASED_STR		= "Number of deleted entries erased : ";
+	private static final	String	PURGE_SUMMARY_STR			=
+			"Deleted entries erased : %,d\nSpace reclaimed : %,d bytes\nDirectories modified : %,d";
+	private static final	String	DIRECTORY_PURGE_STR			= "%,8d  %,10d  %s";
 	private static final	String	DEFRAGMENT_FILES_STR		= "Defragment files";
 	private static final	String	DEFRAGMENT_STR				= "Defragment";
+	private static final	String	FRAGMENTATION_STR			= "Fragmentation statistics";
+	private static final	String	FRAGMENTATION_SUMMARY_STR	=
+			"Files : %,d\nFragmented files : %,d\nMean fragments per file : %.3f\nDirectories : %,d\n"
+				+ "Fragmented directories : %,d\nInvalid cluster chains : %,d\n\nFree clusters : %,d\n"
+				+ "Runs of free clusters : %,d\nLargest run of free clusters : %,d\n"
+				+ "Free-space fragmentation index : %.3f\n\nTime : %.3f s";
+	private static final	String	FRAGMENTS_PER_FILE_STR		= "Fragments per file";
+	private static final	String	MOST_FRAGMENTED_FILES_STR	= "Most fragmented files";
+	private static final	String	HISTOGRAM_BUCKET_STR		= "%12s : %,d";
+	private static final	String	FRAGMENTED_FILE_STR			= "%,8d  %s";
 	private static final	String	SEARCHING_FOR_FILES_STR		= "Searching for files";
 	private static final	String	DEFRAGMENTING_FILES_STR		= "Defragmenting files";
 	private static final	String	NO_FILES_TO_DEFRAGMENT_STR	= "There are no files to defragment.";
@@ -322,9 +474,15 @@ public class Fat32ManagerApp
 	private interface DialogKey
 	{
 		String	DEFRAGMENT_FILES		= "defragmentFiles";
+		String	DISK_USAGE				= "diskUsage";
 		String	ERASE_DELETED_ENTRIES	= "eraseDeletedEntries";
+		String	FIND_DUPLICATE_FILES	= "findDuplicateFiles";
+		String	FRAGMENTATION			= "fragmentation";
+		String	HASH_MANIFEST			= "hashManifest";
 		String	OPEN_VOLUME				= "openVolume";
+		String	SCAN_SURFACE			= "scanSurface";
 		String	SHOW_DELETED_ENTRIES	= "showDeletedEntries";
+		String	VERIFY_AGAINST_HOST		= "verifyAgainstHost";
 		String	VOLUME_PROPERTIES		= "volumeProperties";
 	}
 
@@ -392,6 +550,7 @@ public class Fat32ManagerApp
 	private	Map<String, Double>					tableViewColumnWidths;
 	private	Stage								primaryStage;
 	private	DirectoryPane						directoryPane;
+	private	MetadataCache						metadataCache;
 
 ////////////////////////////////////////////////////////////////////////
 //  Static initialiser
@@ -514,6 +673,8 @@ public class Fat32ManagerApp
 		preferences = new Preferences();
 		formatParams = new FormatParams();
 		volume = new SimpleObjectProperty<>();
+		metadataCache = new MetadataCache(AppAuxDirectory.resolve(NAME_KEY, getClass(), METADATA_CACHE_DIRECTORY_NAME),
+										  METADATA_CACHE_MAX_SIZE);
 		mainWindowState = new WindowState(false, true);
 		tableViewColumnWidths = new LinkedHashMap<>();
 		this.primaryStage = primaryStage;
@@ -802,6 +963,12 @@ public class Fat32ManagerApp
 	@Override
 	public void stop()
 	{
+		// Wait for background saves of snapshots; save snapshot of metadata of current volume
+		metadataCache.awaitSaves();
+		Fat32Volume volume = getVolume();
+		if (volume != null)
+			metadataCache.save(volume);
+
 		// Write 'terminating' message to log
 		Logger.INSTANCE.info(TERMINATING_STR + " " + SHORT_NAME);
 	}
@@ -814,10 +981,22 @@ public class Fat32ManagerApp
 
 	public void closeVolume()
 	{
+		closeVolume(true);
+	}
+
+	//------------------------------------------------------------------
+
+	public void closeVolume(
+		boolean	saveMetadata)
+	{
+		// Save snapshot of metadata of volume in background
+		Fat32Volume volume = getVolume();
+		if (saveMetadata && (volume != null))
+			metadataCache.saveInBackground(volume);
+
 		// Close volume
 		try
 		{
-			Fat32Volume volume = getVolume();
 			if (volume != null)
 				volume.close();
 		}
@@ -827,7 +1006,7 @@ public class Fat32ManagerApp
 		}
 
 		// Invalidate volume
-		volume.set(null);
+		this.volume.set(null);
 	}
 
 	//------------------------------------------------------------------
@@ -1173,6 +1352,54 @@ public class Fat32ManagerApp
 		menuItem.setOnAction(event -> onEraseUnusedClusters());
 		menu.getItems().add(menuItem);
 
+		// Add menu item: erase slack space of files
+		menuItem = new MenuItem(ERASE_SLACK_SPACE_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onEraseSlackSpace());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: scan surface
+		menuItem = new MenuItem(SCAN_SURFACE_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onScanSurface());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: write image
+		menuItem = new MenuItem(WRITE_IMAGE_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onWriteImage());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: back up volume
+		menuItem = new MenuItem(BACK_UP_VOLUME_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onBackUpVolume());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: write hash manifest
+		menuItem = new MenuItem(WRITE_MANIFEST_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onWriteManifest());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: verify hash manifest
+		menuItem = new MenuItem(VERIFY_MANIFEST_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onVerifyManifest(false));
+		menu.getItems().add(menuItem);
+
+		// Add menu item: verify hash manifest (deep)
+		menuItem = new MenuItem(VERIFY_MANIFEST_DEEP_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onVerifyManifest(true));
+		menu.getItems().add(menuItem);
+
+		// Add menu item: clone volume
+		menuItem = new MenuItem(CLONE_VOLUME_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onCloneVolume());
+		menu.getItems().add(menuItem);
+
 		// Add separator
 		menu.getItems().add(new SeparatorMenuItem());
 
@@ -1211,6 +1438,33 @@ public class Fat32ManagerApp
 		menuItem.setOnAction(event -> onSortEntriesByName());
 		menu.getItems().add(menuItem);
 
+		// Add menu item: extract contents
+		menuItem = new MenuItem(EXTRACT_CONTENTS_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event ->
+				getTableView().extractEntries(EXTRACT_CONTENTS_STR, getDirectory().getEntries().stream()
+						.filter(entry -> entry.isFile() || entry.isRegularDirectory())
+						.toList()));
+		menu.getItems().add(menuItem);
+
+		// Add menu item: verify against host directory
+		menuItem = new MenuItem(VERIFY_AGAINST_HOST_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onVerifyAgainstHost());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: import files
+		menuItem = new MenuItem(IMPORT_FILES_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> getTableView().importFiles(IMPORT_FILES_STR, false));
+		menu.getItems().add(menuItem);
+
+		// Add menu item: import directory
+		menuItem = new MenuItem(IMPORT_DIRECTORY_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> getTableView().importFiles(IMPORT_DIRECTORY_STR, true));
+		menu.getItems().add(menuItem);
+
 		// Add separator
 		menu.getItems().add(new SeparatorMenuItem());
 
@@ -1262,6 +1516,29 @@ public class Fat32ManagerApp
 		});
 		menu.getItems().add(menuItem);
 
+		// Add menu item: disk usage
+		menuItem = new MenuItem(DISK_USAGE_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onDiskUsage());
+		menu.getItems().add(menuItem);
+
+		// Add separator
+		menu.getItems().add(new SeparatorMenuItem());
+
+		// Add menu item: find files on volume
+		menuItem = new MenuItem(FIND_FILES_STR + ELLIPSIS_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event ->
+				FileSearchDialog.show(primaryStage, FIND_FILES_STR + " - " + Utils.volumeDisplayName(getVolume()),
+									  getVolume().getRootDir()));
+		menu.getItems().add(menuItem);
+
+		// Add menu item: find duplicate files on volume
+		menuItem = new MenuItem(FIND_DUPLICATE_FILES_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onFindDuplicateFiles());
+		menu.getItems().add(menuItem);
+
 		// Add separator
 		menu.getItems().add(new SeparatorMenuItem());
 
@@ -1271,6 +1548,12 @@ public class Fat32ManagerApp
 		menuItem.setOnAction(event -> onViewDeletedEntries());
 		menu.getItems().add(menuItem);
 
+		// Add menu item: find deleted files on volume
+		menuItem = new MenuItem(FIND_DELETED_FILES_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onFindDeletedFiles());
+		menu.getItems().add(menuItem);
+
 		// Add menu item: erase deleted entries
 		menuItem = new MenuItem(ERASE_DELETED_ENTRIES_STR + ELLIPSIS_STR);
 		menuItem.disableProperty().bind(volume.isNull());
@@ -1286,6 +1569,12 @@ public class Fat32ManagerApp
 		menuItem.setOnAction(event -> onDefragmentFiles());
 		menu.getItems().add(menuItem);
 
+		// Add menu item: fragmentation statistics
+		menuItem = new MenuItem(FRAGMENTATION_STR);
+		menuItem.disableProperty().bind(volume.isNull());
+		menuItem.setOnAction(event -> onShowFragmentation());
+		menu.getItems().add(menuItem);
+
 		// Create menu: view
 		menu = new Menu(VIEW_STR);
 		menuBar.getMenus().add(menu);
@@ -1304,6 +1593,19 @@ public class Fat32ManagerApp
 		menuItem.setOnAction(event -> onFormat());
 		menu.getItems().add(menuItem);
 
+		// Add separator
+		menu.getItems().add(new SeparatorMenuItem());
+
+		// Add menu item: verify backup
+		menuItem = new MenuItem(VERIFY_BACKUP_STR + ELLIPSIS_STR);
+		menuItem.setOnAction(event -> onVerifyBackup());
+		menu.getItems().add(menuItem);
+
+		// Add menu item: restore backup
+		menuItem = new MenuItem(RESTORE_BACKUP_STR + ELLIPSIS_STR);
+		menuItem.setOnAction(event -> onRestoreBackup());
+		menu.getItems().add(menuItem);
+
 		// Return menu bar
 		return menuBar;
 	}
@@ -1425,7 +1727,7 @@ public class Fat32ManagerApp
 		Logger.INSTANCE.info(title);
 
 		// Create task to format volume
-		Task<Void> task = new AbstractTask<>()
+		Task<List<Fat32Volume.FormatPhase>> task = new AbstractTask<>()
 		{
 			{
 				// Initialise task
@@ -1433,17 +1735,15 @@ public class Fat32ManagerApp
 			}
 
 			@Override
-			protected Void call()
+			protected List<Fat32Volume.FormatPhase> call()
 				throws Exception
 			{
 				// Format volume
-				Fat32Volume.format(name, result.getVolumeId(), result.getVolumeLabel(), result.getFormatterName(),
-								   bytesPerSector, startSector, numSectors, params.minNumReservedSectors(),
-								   result.getSectorsPerCluster(), params.sectorsPerFat(), volumeAccessor, unbufferedIO,
-								   createTaskStatus());
-
-				// Return nothing
-				return null;
+				return Fat32Volume.format(name, result.getVolumeId(), result.getVolumeLabel(),
+										  result.getFormatterName(), bytesPerSector, startSector, numSectors,
+										  params.minNumReservedSectors(), result.getSectorsPerCluster(),
+										  params.sectorsPerFat(), result.getFormatMode(), volumeAccessor, unbufferedIO,
+										  createTaskStatus());
 			}
 
 			@Override
@@ -1456,8 +1756,24 @@ public class Fat32ManagerApp
 					Fat32Volume volume = getVolume();
 					long capacity = (long)volume.getNumUnusedClusters() * volume.getBytesPerCluster();
 
-					// Show capacity in dialog
-					showMessageDialog(getTitle(), String.format(FORMATTED_STR, capacity), MessageIcon32.INFORMATION);
+					// Create description of throughput of each phase of format
+					StringBuilder phaseText = new StringBuilder(256);
+					for (Fat32Volume.FormatPhase phase : getValue())
+					{
+						if (!phaseText.isEmpty())
+							phaseText.append('\n');
+						phaseText.append(String.format(FORMAT_PHASE_STR, phase.name(), phase.numBytes(),
+													   (double)phase.nanoseconds() * 1.0e-9,
+													   phase.megabytesPerSecond()));
+					}
+
+					// Log throughput of phases
+					Logger.INSTANCE.info(phaseText.toString());
+
+					// Show capacity and throughput in dialog
+					String message = String.format(FORMATTED_STR, capacity) + MessageConstants.LABEL_SEPARATOR
+										+ phaseText;
+					showMessageDialog(getTitle(), message, MessageIcon32.INFORMATION);
 				});
 			}
 
@@ -1704,9 +2020,10 @@ public class Fat32ManagerApp
 						throw e;
 					}
 
-					// Read root directory
+					// Restore directories from snapshot of metadata; if there is no valid snapshot, read root directory
 					updateMessage(READING_ROOT_DIRECTORY_STR);
-					volume.getRootDir().read(messages);
+					if (!metadataCache.load(volume, messages))
+						volume.getRootDir().read(messages);
 
 					// Return result
 					return new Result(volume, messages);
@@ -1838,10 +2155,13 @@ public class Fat32ManagerApp
 				// Initialise result
 				List<Fat32Volume.InvalidCluster> invalidClusters = new ArrayList<>();
 
-				// Create list of invalid entries in cluster chains
+				// Read directory tree
 				Fat32Volume volume = getVolume();
-				int numClusters =
-						volume.validateClusterChains(volume.getRootDir(), invalidClusters, createTaskStatus());
+				ITaskStatus taskStatus = createTaskStatus();
+				DirectoryTreeLoader.load(volume.getRootDir(), null, taskStatus);
+
+				// Create list of invalid entries in cluster chains
+				int numClusters = volume.validateClusterChains(volume.getRootDir(), invalidClusters, taskStatus);
 
 				// If task has been cancelled, change state to 'cancelled'
 				hardCancel(false);
@@ -1954,6 +2274,279 @@ public class Fat32ManagerApp
 
 	//------------------------------------------------------------------
 
+	private void onEraseSlackSpace()
+	{
+		// Display dialog for filler value
+		Integer fillerValue = ErasureFillerValueDialog.show(primaryStage, ERASE_SLACK_SPACE_STR,
+															ERASE_SLACK_SPACE_DIALOG_KEY);
+		if (fillerValue == null)
+			return;
+
+		// Log title of task
+		String title = ERASE_SLACK_SPACE_STR;
+		Logger.INSTANCE.info(title);
+
+		// Create task to erase slack space of files
+		Task<SlackEraser.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+			}
+
+			@Override
+			protected SlackEraser.Result call()
+				throws Exception
+			{
+				// Erase slack space of files of volume
+				SlackEraser.Result result = SlackEraser.erase(getVolume(), fillerValue.byteValue(), createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create report
+				SlackEraser.Result result = getValue();
+				String report = String.format(SLACK_SPACE_ERASED_STR, result.numClusters(), result.numSlackBytes(),
+											  result.numBytesErased(), result.numClustersWritten(),
+											  result.numInvalidChains(), (double)result.nanoseconds() * 1.0e-9);
+
+				// Log report
+				Logger.INSTANCE.info(title + "\n" + report);
+
+				// Display report
+				showMessageDialog(getTitle(), report, MessageIcon32.INFORMATION);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private void onScanSurface()
+	{
+		// Display dialog to select whether unreadable unused clusters will be marked as bad
+		String title = SCAN_SURFACE_STR;
+		int choice = MessageDialog.show(primaryStage, title, MessageIcon32.QUESTION.get(),
+										MARK_BAD_CLUSTERS_QUESTION_STR,
+										ButtonInfo.allRight(SCAN_AND_MARK_STR, SCAN_ONLY_STR, CANCEL_STR));
+		if ((choice < 0) || (choice > 1))
+			return;
+		boolean markBadClusters = (choice == 0);
+
+		// Log title of task
+		Logger.INSTANCE.info(title);
+
+		// Create task to scan surface of volume
+		Task<Fat32Volume.SurfaceScanResult> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+			}
+
+			@Override
+			protected Fat32Volume.SurfaceScanResult call()
+				throws Exception
+			{
+				// Scan surface of volume
+				Fat32Volume.SurfaceScanResult result = getVolume().scanSurface(markBadClusters, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create report
+				String report = surfaceScanReport(getValue());
+
+				// Log report
+				Logger.INSTANCE.info(title + "\n" + report);
+
+				// Display report in dialog
+				TextAreaDialog.show(primaryStage, DialogKey.SCAN_SURFACE, title, report);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private String surfaceScanReport(
+		Fat32Volume.SurfaceScanResult	result)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		long numBytes = (long)result.numClustersScanned() * getVolume().getBytesPerCluster();
+		double seconds = (double)result.nanoseconds() * 1.0e-9;
+		buffer.append(String.format(SCAN_SUMMARY_STR, result.numClustersScanned(), seconds,
+									(seconds == 0.0) ? 0.0 : (double)numBytes / (seconds * (double)(1 << 20))));
+		buffer.append('\n');
+
+		// Append unreadable clusters
+		buffer.append(String.format(SCAN_UNREADABLE_CLUSTERS_STR, result.unreadableClusters().size()));
+		buffer.append('\n');
+		for (Fat32Volume.UnreadableCluster cluster : result.unreadableClusters())
+		{
+			String kind = (cluster.fatEntry() == 0)
+								? UNUSED_STR
+								: Fat32Fat.isBadCluster(cluster.fatEntry()) ? ALREADY_BAD_STR : ALLOCATED_STR;
+			buffer.append(String.format(SCAN_UNREADABLE_CLUSTER_STR, cluster.index(),
+										cluster.numUnreadableSectors(), kind));
+			buffer.append('\n');
+		}
+
+		// Append number of clusters marked as bad
+		buffer.append(String.format(SCAN_CLUSTERS_MARKED_STR, result.numClustersMarked()));
+		buffer.append('\n');
+
+		// Append affected files and directories
+		if (!result.affectedPathnames().isEmpty())
+		{
+			buffer.append(SCAN_AFFECTED_FILES_STR);
+			buffer.append('\n');
+			for (String pathname : result.affectedPathnames())
+			{
+				buffer.append(INDENT_STR);
+				buffer.append(pathname);
+				buffer.append('\n');
+			}
+		}
+
+		// Append header of latency histogram
+		buffer.append('\n');
+		buffer.append(SCAN_LATENCY_STR);
+		buffer.append('\n');
+		buffer.append(String.format(SCAN_REGION_HEADER_STR, CLUSTERS_STR, MB_PER_S_STR, MAX_MS_STR));
+		for (long bound : Fat32Volume.SCAN_LATENCY_BOUNDS)
+			buffer.append(String.format(SCAN_BUCKET_HEADER_STR, "<" + bound / 1_000_000L));
+		buffer.append(String.format(SCAN_BUCKET_HEADER_STR, ">="
+				+ Fat32Volume.SCAN_LATENCY_BOUNDS[Fat32Volume.SCAN_LATENCY_BOUNDS.length - 1] / 1_000_000L));
+		buffer.append('\n');
+
+		// Append latency histogram of each region
+		for (Fat32Volume.ScanRegion region : result.regions())
+		{
+			buffer.append(String.format(SCAN_REGION_STR, region.startClusterIndex(), region.endClusterIndex() - 1,
+										region.megabytesPerSecond(), (double)region.maxLatency() * 1.0e-6));
+			for (long count : region.latencyCounts())
+				buffer.append(String.format(SCAN_BUCKET_STR, count));
+			buffer.append('\n');
+		}
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void onWriteImage()
+	{
+		// Display dialog to choose image file
+		String title = WRITE_IMAGE_STR;
+		LocationChooser fileChooser = LocationChooser.forFiles();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setDialogStateKey();
+		Path file = fileChooser.showSaveDialog(primaryStage);
+		if ((file == null) || !IOUtils.replaceExistingFile(file, primaryStage, title))
+			return;
+
+		// Log title of task
+		Logger.INSTANCE.info(title + " " + file);
+
+		// Create task to write image of volume
+		Task<VolumeImager.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+			}
+
+			@Override
+			protected VolumeImager.Result call()
+				throws Exception
+			{
+				// Write image of volume
+				VolumeImager.Result result = VolumeImager.writeImage(getVolume(), file, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create message
+				VolumeImager.Result result = getValue();
+				String message = file + MessageConstants.LABEL_SEPARATOR
+						+ String.format(IMAGE_WRITTEN_STR, result.numBytesCopied(), result.imageLength(),
+										(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond(),
+										NumberUtils.bytesToHexString(result.digest()));
+
+				// Log message
+				Logger.INSTANCE.info(message);
+
+				// Display message in dialog
+				showMessageDialog(getTitle(), message, MessageIcon32.INFORMATION);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
 	private void onShowProperties()
 	{
 		Fat32Volume volume = getVolume();
@@ -2082,45 +2675,1017 @@ public class Fat32ManagerApp
 
 	//------------------------------------------------------------------
 
-	private void onEraseDeletedEntries()
+	private void onDiskUsage()
 	{
-		// Display dialog for recursive directory operation
-		Boolean recursive = DirectoryRecursionDialog.show(primaryStage, DialogKey.ERASE_DELETED_ENTRIES,
+		// Log title of task
+		String title = DISK_USAGE_STR;
+		Fat32Directory directory = getDirectory();
+		Logger.INSTANCE.info(title + " : " + directory.getPathname());
+
+		// Create task to compute disk usage of directory tree
+		Task<Fat32Directory.Usage> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected Fat32Directory.Usage call()
+				throws Exception
+			{
+				// Compute disk usage
+				Fat32Directory.Usage usage = directory.computeUsage(createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return usage
+				return usage;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Redraw table view to display total lengths of subdirectories
+				getTableView().refresh();
+
+				// Create report
+				String report = usageReport(directory, getValue());
+
+				// Display report in dialog
+				TextAreaDialog.show(primaryStage, DialogKey.DISK_USAGE, title + " - " + directory.getPathname(),
+									report);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private String usageReport(
+		Fat32Directory			directory,
+		Fat32Directory.Usage	usage)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		buffer.append(String.format(USAGE_SUMMARY_STR, usage.numFiles(), usage.numDirectories(), usage.logicalBytes(),
+									usage.allocatedBytes(), usage.slackBytes(), usage.depth(),
+									usage.deepestDirectory().getPathname()));
+		buffer.append('\n');
+
+		// Append usage of subdirectories in descending order of length of files
+		List<Fat32Directory> children = new ArrayList<>(directory.getChildren());
+		if (!children.isEmpty())
+		{
+			children.sort(Comparator.comparingLong((Fat32Directory child) -> child.getUsage().logicalBytes())
+									.reversed());
+			buffer.append('\n');
+			for (Fat32Directory child : children)
+			{
+				Fat32Directory.Usage childUsage = child.getUsage();
+				buffer.append(String.format(USAGE_SUBDIRECTORY_STR, childUsage.logicalBytes(),
+											childUsage.allocatedBytes(), child.getEntryInParent().getName()));
+				buffer.append('\n');
+			}
+		}
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void onVerifyAgainstHost()
+	{
+		// Display dialog to choose host directory
+		String title = VERIFY_AGAINST_HOST_STR;
+		LocationChooser directoryChooser = LocationChooser.forDirectories();
+		directoryChooser.setDialogTitle(title);
+		directoryChooser.setDialogStateKey();
+		Path hostDirectory = directoryChooser.showSelectDialog(primaryStage);
+		if (hostDirectory == null)
+			return;
+
+		// Log title of task
+		Fat32Directory directory = getDirectory();
+		Logger.INSTANCE.info(title + " : " + directory.getPathname() + " <-> " + hostDirectory);
+
+		// Create task to verify directory against host directory
+		Task<HostTreeVerifier.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected HostTreeVerifier.Result call()
+				throws Exception
+			{
+				// Verify directory against host directory
+				HostTreeVerifier.Result result = HostTreeVerifier.verify(directory, hostDirectory, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create report
+				HostTreeVerifier.Result result = getValue();
+				String report = hostVerificationReport(result);
+
+				// Log report
+				if (result.isMatch())
+					Logger.INSTANCE.info(title + "\n" + report);
+				else
+					Logger.INSTANCE.error(title + "\n" + report);
+
+				// Display report in dialog
+				TextAreaDialog.show(primaryStage, DialogKey.VERIFY_AGAINST_HOST,
+									title + " - " + directory.getPathname(), report);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private String hostVerificationReport(
+		HostTreeVerifier.Result	result)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		buffer.append(String.format(HOST_SUMMARY_STR, result.numFiles(), result.numFilesCompared(), result.numBytes(),
+									(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond()));
+		buffer.append("\n\n");
+
+		// Append outcome
+		if (result.isMatch())
+		{
+			buffer.append(HOST_MATCHED_STR);
+			buffer.append('\n');
+		}
+
+		// Append lists of files
+		appendPathnames(buffer, DIFFERING_FILES_STR, result.differences().stream()
+				.map(difference -> String.format(DIFFERENCE_STR, difference.reason(), difference.pathname()))
+				.toList());
+		appendPathnames(buffer, NOT_ON_HOST_STR, result.missingFiles());
+		appendPathnames(buffer, NOT_ON_VOLUME_STR, result.extraFiles());
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void onFindDuplicateFiles()
+	{
+		// Log title of task
+		String title = FIND_DUPLICATE_FILES_STR;
+		Fat32Volume volume = getVolume();
+		Logger.INSTANCE.info(title + " : " + Utils.volumeDisplayName(volume));
+
+		// Create task to find duplicate files in all directories of volume
+		Task<DuplicateFinder.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected DuplicateFinder.Result call()
+				throws Exception
+			{
+				// Find duplicate files
+				DuplicateFinder.Result result = DuplicateFinder.find(volume.getRootDir(), createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create report
+				String report = duplicatesReport(getValue());
+
+				// Log report
+				Logger.INSTANCE.info(title + "\n" + report);
+
+				// Display report in dialog
+				TextAreaDialog.show(primaryStage, DialogKey.FIND_DUPLICATE_FILES,
+									title + " - " + Utils.volumeDisplayName(volume), report);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private String duplicatesReport(
+		DuplicateFinder.Result	result)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		buffer.append(String.format(DUPLICATES_SUMMARY_STR, result.numFiles(), result.numBytesRead(),
+									(double)result.nanoseconds() * 1.0e-9, result.duplicateSets().size(),
+									result.wastedBytes()));
+		buffer.append('\n');
+
+		// Append sets of duplicates
+		for (DuplicateFinder.DuplicateSet set : result.duplicateSets())
+		{
+			buffer.append('\n');
+			buffer.append(String.format(DUPLICATE_SET_STR, set.entries().size(), set.length(), set.wastedBytes()));
+			buffer.append('\n');
+			for (Fat32Directory.Entry entry : set.entries())
+			{
+				buffer.append(INDENT_STR);
+				buffer.append(entry.getPathname());
+				buffer.append('\n');
+			}
+		}
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void onFindDeletedFiles()
+	{
+		// Log title of task
+		String title = FIND_DELETED_FILES_STR;
+		Fat32Volume volume = getVolume();
+		Logger.INSTANCE.info(title + " : " + Utils.volumeDisplayName(volume));
+
+		// Create task to find deleted files in all directories of volume
+		Task<DeletedFileRecovery.ScanResult> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected DeletedFileRecovery.ScanResult call()
+				throws Exception
+			{
+				// Find deleted files
+				DeletedFileRecovery.ScanResult result = DeletedFileRecovery.scanVolume(volume, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Get result of task
+				DeletedFileRecovery.ScanResult result = getValue();
+
+				// Display deleted files in dialog
+				List<Fat32Directory.Entry> entries = result.candidates().stream()
+						.map(DeletedFileRecovery.Candidate::entry)
+						.toList();
+				String dialogTitle = DELETED_FILES_STR + " - " + Utils.volumeDisplayName(volume);
+				DeletedEntriesDialog dialog =
+						new DeletedEntriesDialog(primaryStage, dialogTitle, volume.getRootDir(), entries, true);
+				if (!result.messages().isEmpty())
+				{
+					dialog.setOnShown(event ->
+					{
+						TextAreaDialog.show(dialog, DialogKey.SHOW_DELETED_ENTRIES, getTitle() + " : " + MESSAGES_STR,
+											String.join("\n\n", result.messages()));
+					});
+				}
+				dialog.showDialog();
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private void onEraseDeletedEntries()
+	{
+		// Display dialog for recursive directory operation
+		Boolean recursive = DirectoryRecursionDialog.show(primaryStage, DialogKey.ERASE_DELETED_ENTRIES,
 														  ERASE_DELETED_ENTRIES_STR, ERASE_STR);
 		if (recursive == null)
 			return;
 
 		// Log title of task
-		String title = ERASE_DELETED_ENTRIES_STR;
-		Logger.INSTANCE.info(title + " : " + getDirectory().getPathname());
+		String title = ERASE_DELETED_ENTRIES_STR;
+		Logger.INSTANCE.info(title + " : " + getDirectory().getPathname());
+
+		// Create task to erase deleted entries in current directory and, optionally, subdirectories
+		Fat32Directory directory = getDirectory();
+		Task<List<DeletedEntryPurger.DirectoryPurge>> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateMessage(SEARCHING_ENTRIES_STR);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected List<DeletedEntryPurger.DirectoryPurge> call()
+				throws Exception
+			{
+				// Erase deleted entries
+				List<DeletedEntryPurger.DirectoryPurge> results =
+						DeletedEntryPurger.purge(directory, recursive, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return results
+				return results;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Get result of task
+				List<DeletedEntryPurger.DirectoryPurge> results = getValue();
+
+				// Update table view
+				getTableView().refresh();
+
+				// If no entries were erased, report and stop ...
+				if (results.isEmpty())
+				{
+					NotificationDialog.show(primaryStage, ERASE_DELETED_ENTRIES_STR, MessageIcon32.INFORMATION.get(),
+											NO_DELETED_ENTRIES_STR);
+				}
+
+				// ... otherwise, report entries erased from each directory
+				else
+				{
+					// Create report
+					String report = purgeReport(results);
+
+					// Log report
+					Logger.INSTANCE.info(title + "\n" + report);
+
+					// Display report in dialog
+					TextAreaDialog.show(primaryStage, DialogKey.ERASE_DELETED_ENTRIES,
+										title + " - " + directory.getPathname(), report);
+				}
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private String purgeReport(
+		List<DeletedEntryPurger.DirectoryPurge>	results)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		int numEntries = 0;
+		long numBytes = 0;
+		for (DeletedEntryPurger.DirectoryPurge result : results)
+		{
+			numEntries += result.numEntries();
+			numBytes += result.numBytes();
+		}
+		buffer.append(String.format(PURGE_SUMMARY_STR, numEntries, numBytes, results.size()));
+		buffer.append("\n\n");
+
+		// Append results for directories
+		for (DeletedEntryPurger.DirectoryPurge result : results)
+		{
+			buffer.append(String.format(DIRECTORY_PURGE_STR, result.numEntries(), result.numBytes(),
+										result.directory().getPathname()));
+			buffer.append('\n');
+		}
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void onDefragmentFiles()
+	{
+		// Display dialog for recursive directory operation
+		Boolean recursive = DirectoryRecursionDialog.show(primaryStage, DialogKey.DEFRAGMENT_FILES,
+														  DEFRAGMENT_FILES_STR, DEFRAGMENT_STR);
+		if (recursive == null)
+			return;
+
+		// Log title of task
+		Logger.INSTANCE.info(DEFRAGMENT_FILES_STR + " : " + SEARCHING_FOR_FILES_STR);
+
+		// Declare record for result of task
+		record Result(
+			List<Fat32Directory.Entry>			entries,
+			List<Fat32Volume.InvalidCluster>	invalidClusters)
+		{ }
+
+		// Create task to create list of fragmented files
+		Task<Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(DEFRAGMENT_FILES_STR);
+				updateMessage(SEARCHING_FOR_FILES_STR);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected Result call()
+				throws Exception
+			{
+				// Initialise list of directory entries for files
+				List<Fat32Directory.Entry> entries = new ArrayList<>();
+
+				// Get current volume
+				Fat32Volume volume = getVolume();
+
+				// Create procedure to add fragmented files to list of directory entries
+				IProcedure1<Fat32Directory> addFiles = directory ->
+				{
+					for (Fat32Directory.Entry entry : directory.getEntries())
+					{
+						try
+						{
+							if (entry.isFile() && volume.isEntryFragmented(entry))
+								entries.add(entry);
+						}
+						catch (VolumeException e)
+						{
+							entries.add(entry);
+						}
+					}
+				};
+
+				// Populate list of directory entries for files
+				if (recursive)
+				{
+					TreeUtils.visitDepthFirst(getDirectory(), true, true, directory ->
+					{
+						addFiles.invoke(directory);
+						return true;
+					});
+				}
+				else
+					addFiles.invoke(getDirectory());
+
+				// Validate cluster chains
+				List<Fat32Volume.InvalidCluster> invalidClusters = new ArrayList<>();
+				volume.validateClusterChains(entries, invalidClusters, createTaskStatus());
+
+				// Sort directory entries in descending order of number of clusters
+				entries.sort(Comparator.comparing(Fat32Directory.Entry::getNumClusters).reversed());
+
+				// Return result
+				return new Result(entries, invalidClusters);
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Get result
+				Result result = getValue();
+
+				// Case: all clusters were valid
+				if (result.invalidClusters.isEmpty())
+				{
+					// If no files, report and stop ...
+					if (result.entries.isEmpty())
+					{
+						NotificationDialog.show(primaryStage, getTitle(), MessageIcon32.INFORMATION.get(),
+												NO_FILES_TO_DEFRAGMENT_STR);
+					}
+
+					// ... otherwise, defragment files
+					else
+					{
+						// Count total number of clusters in entries
+						int totalNumClusters =
+								result.entries.stream().mapToInt(Fat32Directory.Entry::getNumClusters).sum();
+
+						// Defragment files
+						defragmentFiles(result.entries.iterator(), new ArrayList<>(), 0, totalNumClusters);
+					}
+				}
+
+				// Case: invalid clusters
+				else
+				{
+					InvalidClusterDialog.show(primaryStage, getTitle() + " : " + INVALID_CLUSTERS_STR,
+											  result.invalidClusters);
+				}
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private void onShowFragmentation()
+	{
+		// Log title of task
+		String title = FRAGMENTATION_STR;
+		Fat32Volume volume = getVolume();
+		Logger.INSTANCE.info(title + " : " + Utils.volumeDisplayName(volume));
+
+		// Create task to compute fragmentation statistics of volume
+		Task<FragmentationAnalyser.Report> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected FragmentationAnalyser.Report call()
+				throws Exception
+			{
+				// Compute statistics
+				FragmentationAnalyser.Report report = FragmentationAnalyser.analyse(volume.getRootDir(),
+																					createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return statistics
+				return report;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create report
+				String report = fragmentationReport(getValue());
+
+				// Log report
+				Logger.INSTANCE.info(title + "\n" + report);
+
+				// Display report in dialog
+				TextAreaDialog.show(primaryStage, DialogKey.FRAGMENTATION,
+									title + " - " + Utils.volumeDisplayName(volume), report);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private String fragmentationReport(
+		FragmentationAnalyser.Report	report)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		buffer.append(String.format(FRAGMENTATION_SUMMARY_STR, report.numFiles(), report.numFragmentedFiles(),
+									report.meanFragmentsPerFile(), report.numDirectories(),
+									report.numFragmentedDirectories(), report.numInvalidChains(),
+									report.numFreeClusters(), report.numFreeRuns(), report.largestFreeRun(),
+									report.freeSpaceFragmentationIndex(), (double)report.nanoseconds() * 1.0e-9));
+		buffer.append("\n\n");
+
+		// Append histogram of fragments per file
+		buffer.append(FRAGMENTS_PER_FILE_STR);
+		buffer.append('\n');
+		int[] histogram = report.histogram();
+		for (int i = 0; i < histogram.length; i++)
+		{
+			int min = FragmentationAnalyser.histogramBucketMin(i);
+			int max = FragmentationAnalyser.histogramBucketMax(i);
+			String range = (max < 0) ? min + "+" : (min == max) ? Integer.toString(min) : min + "\u2013" + max;
+			buffer.append(INDENT_STR);
+			buffer.append(String.format(HISTOGRAM_BUCKET_STR, range, histogram[i]));
+			buffer.append('\n');
+		}
+
+		// Append most fragmented files
+		if (!report.worstFiles().isEmpty())
+		{
+			buffer.append('\n');
+			buffer.append(MOST_FRAGMENTED_FILES_STR);
+			buffer.append('\n');
+			for (FragmentationAnalyser.FragmentedFile file : report.worstFiles())
+			{
+				buffer.append(INDENT_STR);
+				buffer.append(String.format(FRAGMENTED_FILE_STR, file.numFragments(), file.entry().getPathname()));
+				buffer.append('\n');
+			}
+		}
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void onBackUpVolume()
+	{
+		// Display dialog to choose backup file
+		String title = BACK_UP_VOLUME_STR;
+		LocationChooser fileChooser = LocationChooser.forFiles();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setDialogStateKey();
+		Path file = fileChooser.showSaveDialog(primaryStage);
+		if ((file == null) || !IOUtils.replaceExistingFile(file, primaryStage, title))
+			return;
+
+		// Log title of task
+		Logger.INSTANCE.info(title + " " + file);
+
+		// Create task to write backup of volume
+		Task<VolumeBackup.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+			}
+
+			@Override
+			protected VolumeBackup.Result call()
+				throws Exception
+			{
+				// Write backup of volume
+				VolumeBackup.Result result = VolumeBackup.write(getVolume(), file, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create message
+				VolumeBackup.Result result = getValue();
+				String message = file + MessageConstants.LABEL_SEPARATOR
+						+ String.format(BACKUP_WRITTEN_STR, result.numBytes(), result.fileLength(),
+										result.compressionRatio(), result.numChunks(),
+										(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond());
+
+				// Log message
+				Logger.INSTANCE.info(message);
+
+				// Display message in dialog
+				showMessageDialog(getTitle(), message, MessageIcon32.INFORMATION);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private void onVerifyBackup()
+	{
+		// Display dialog to choose backup file
+		String title = VERIFY_BACKUP_STR;
+		LocationChooser fileChooser = LocationChooser.forFiles();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setDialogStateKey();
+		Path file = fileChooser.showOpenDialog(primaryStage);
+		if (file == null)
+			return;
+
+		// Log title of task
+		Logger.INSTANCE.info(title + " " + file);
+
+		// Create task to verify backup
+		Task<VolumeBackup.VerifyResult> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+			}
+
+			@Override
+			protected VolumeBackup.VerifyResult call()
+				throws Exception
+			{
+				// Verify backup
+				VolumeBackup.VerifyResult result = VolumeBackup.verify(file, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create message
+				VolumeBackup.VerifyResult result = getValue();
+				Fat32Volume.Params params = result.params();
+				boolean valid = result.invalidChunks().isEmpty();
+				String message = file + MessageConstants.LABEL_SEPARATOR
+						+ (valid
+								? String.format(BACKUP_VALID_STR, params.volumeLabel(),
+												params.numSectors() * params.bytesPerSector(), result.numBytes(),
+												result.numChunks(), (double)result.nanoseconds() * 1.0e-9)
+								: String.format(BACKUP_INVALID_STR, result.invalidChunks().size(),
+												result.numChunks(), result.invalidChunks().get(0)));
+
+				// Log message
+				if (valid)
+					Logger.INSTANCE.info(message);
+				else
+					Logger.INSTANCE.error(message);
+
+				// Display message in dialog
+				showMessageDialog(getTitle(), message, valid ? MessageIcon32.INFORMATION : MessageIcon32.ERROR);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(primaryStage);
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private void onRestoreBackup()
+	{
+		// Display dialog to choose backup file
+		String title = RESTORE_BACKUP_STR;
+		LocationChooser fileChooser = LocationChooser.forFiles();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setDialogStateKey();
+		Path file = fileChooser.showOpenDialog(primaryStage);
+		if (file == null)
+			return;
+
+		// Select target volume and restore backup to it
+		selectTargetVolume(title, NO_VOLUMES_TO_RESTORE_STR, selection ->
+		{
+			// Get name of target volume
+			String name = selection.volumeName();
+
+			// Confirm restoration
+			if (!ConfirmationDialog.show(primaryStage, title, MessageIcon32.QUESTION.get(),
+										 String.format(CONFIRM_RESTORE_STR, name), RESTORE_STR))
+				return;
+
+			// Log title of task
+			Logger.INSTANCE.info(title + " " + file + " -> " + name);
+
+			// Create task to restore backup
+			Task<VolumeBackup.Result> task = new AbstractTask<>()
+			{
+				{
+					// Initialise task
+					updateTitle(title);
+				}
+
+				@Override
+				protected VolumeBackup.Result call()
+					throws Exception
+				{
+					// Restore backup
+					VolumeBackup.Result result = VolumeBackup.restore(file, name, volumeAccessor,
+																	  selection.unbufferedIO(), createTaskStatus());
+
+					// If task has been cancelled, change state to 'cancelled'
+					hardCancel(false);
+
+					// Return result
+					return result;
+				}
+
+				@Override
+				protected void succeeded()
+				{
+					// Create message
+					VolumeBackup.Result result = getValue();
+					String message = name + MessageConstants.LABEL_SEPARATOR
+							+ String.format(BACKUP_RESTORED_STR, result.numBytes(),
+											(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond());
+
+					// Log message
+					Logger.INSTANCE.info(message);
+
+					// Display message in dialog
+					showMessageDialog(getTitle(), message, MessageIcon32.INFORMATION);
+				}
+
+				@Override
+				protected void failed()
+				{
+					// Display error message in dialog
+					showErrorMessage(primaryStage);
+				}
+			};
+
+			// Show progress of task in dialog
+			new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+			// Execute task on background thread
+			executeTask(task);
+		});
+	}
+
+	//------------------------------------------------------------------
+
+	private void onWriteManifest()
+	{
+		// Display dialog to choose manifest file
+		String title = WRITE_MANIFEST_STR;
+		LocationChooser fileChooser = LocationChooser.forFiles();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setDialogStateKey();
+		Path file = fileChooser.showSaveDialog(primaryStage);
+		if ((file == null) || !IOUtils.replaceExistingFile(file, primaryStage, title))
+			return;
+
+		// Log title of task
+		Fat32Volume volume = getVolume();
+		Logger.INSTANCE.info(title + " : " + Utils.volumeDisplayName(volume) + " -> " + file);
 
-		// Create task to erase deleted entries in current directory and, optionally, subdirectories
-		Task<Integer> task = new AbstractTask<>()
+		// Create task to write manifest
+		Task<HashManifest.Result> task = new AbstractTask<>()
 		{
 			{
 				// Initialise task
 				updateTitle(title);
-				updateMessage(SEARCHING_ENTRIES_STR);
-				updateProgress(-1, 1);
 			}
 
 			@Override
-			protected Integer call()
+			protected HashManifest.Result call()
 				throws Exception
 			{
-				return eraseDeletedEntries(getDirectory());
+				// Write manifest
+				HashManifest.Result result = HashManifest.write(volume, file, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
 			}
 
 			@Override
 			protected void succeeded()
 			{
-				// Get result of task
-				int erasedEntryCount = getValue();
+				// Create message
+				HashManifest.Result result = getValue();
+				StringBuilder buffer = new StringBuilder(256);
+				buffer.append(file);
+				buffer.append(MessageConstants.LABEL_SEPARATOR);
+				buffer.append(String.format(MANIFEST_WRITTEN_STR, result.numFiles(), result.numBytes(),
+											(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond()));
+				if (!result.unreadableFiles().isEmpty())
+				{
+					buffer.append("\n\n");
+					appendPathnames(buffer, UNREADABLE_FILES_STR,
+									result.unreadableFiles().stream().map(Fat32Directory.Entry::getPathname).toList());
+				}
+				String message = buffer.toString().strip();
 
-				// Report result
-				NotificationDialog.show(primaryStage, ERASE_DELETED_ENTRIES_STR, MessageIcon32.INFORMATION.get(),
-										(erasedEntryCount == 0) ? NO_DELETED_ENTRIES_STR
-																: NUM_ENTRIES_ERASED_STR + erasedEntryCount);
+				// Log message
+				Logger.INSTANCE.info(message);
+
+				// Display message in dialog
+				showMessageDialog(getTitle(), message, MessageIcon32.INFORMATION);
 			}
 
 			@Override
@@ -2129,24 +3694,10 @@ public class Fat32ManagerApp
 				// Display error message in dialog
 				showErrorMessage(primaryStage);
 			}
-
-			private int eraseDeletedEntries(
-				Fat32Directory	directory)
-				throws VolumeException
-			{
-				int erasedEntryCount = 0;
-				if (recursive)
-				{
-					for (Fat32Directory subdirectory : directory.getChildren())
-						erasedEntryCount += eraseDeletedEntries(subdirectory);
-				}
-				erasedEntryCount += directory.eraseDeletedEntries();
-				return erasedEntryCount;
-			}
 		};
 
 		// Show progress of task in dialog
-		new SimpleProgressDialog(primaryStage, task);
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
 
 		// Execute task on background thread
 		executeTask(task);
@@ -2154,117 +3705,60 @@ public class Fat32ManagerApp
 
 	//------------------------------------------------------------------
 
-	private void onDefragmentFiles()
+	private void onVerifyManifest(
+		boolean	deep)
 	{
-		// Display dialog for recursive directory operation
-		Boolean recursive = DirectoryRecursionDialog.show(primaryStage, DialogKey.DEFRAGMENT_FILES,
-														  DEFRAGMENT_FILES_STR, DEFRAGMENT_STR);
-		if (recursive == null)
+		// Display dialog to choose manifest file
+		String title = deep ? VERIFY_MANIFEST_DEEP_STR : VERIFY_MANIFEST_STR;
+		LocationChooser fileChooser = LocationChooser.forFiles();
+		fileChooser.setDialogTitle(title);
+		fileChooser.setDialogStateKey();
+		Path file = fileChooser.showOpenDialog(primaryStage);
+		if (file == null)
 			return;
 
 		// Log title of task
-		Logger.INSTANCE.info(DEFRAGMENT_FILES_STR + " : " + SEARCHING_FOR_FILES_STR);
-
-		// Declare record for result of task
-		record Result(
-			List<Fat32Directory.Entry>			entries,
-			List<Fat32Volume.InvalidCluster>	invalidClusters)
-		{ }
+		Fat32Volume volume = getVolume();
+		Logger.INSTANCE.info(title + " : " + Utils.volumeDisplayName(volume) + " <- " + file);
 
-		// Create task to create list of fragmented files
-		Task<Result> task = new AbstractTask<>()
+		// Create task to verify volume against manifest
+		Task<HashManifest.VerifyResult> task = new AbstractTask<>()
 		{
 			{
 				// Initialise task
-				updateTitle(DEFRAGMENT_FILES_STR);
-				updateMessage(SEARCHING_FOR_FILES_STR);
-				updateProgress(-1, 1);
+				updateTitle(title);
 			}
 
 			@Override
-			protected Result call()
+			protected HashManifest.VerifyResult call()
 				throws Exception
 			{
-				// Initialise list of directory entries for files
-				List<Fat32Directory.Entry> entries = new ArrayList<>();
-
-				// Get current volume
-				Fat32Volume volume = getVolume();
-
-				// Create procedure to add fragmented files to list of directory entries
-				IProcedure1<Fat32Directory> addFiles = directory ->
-				{
-					for (Fat32Directory.Entry entry : directory.getEntries())
-					{
-						try
-						{
-							if (entry.isFile() && volume.isEntryFragmented(entry))
-								entries.add(entry);
-						}
-						catch (VolumeException e)
-						{
-							entries.add(entry);
-						}
-					}
-				};
-
-				// Populate list of directory entries for files
-				if (recursive)
-				{
-					TreeUtils.visitDepthFirst(getDirectory(), true, true, directory ->
-					{
-						addFiles.invoke(directory);
-						return true;
-					});
-				}
-				else
-					addFiles.invoke(getDirectory());
-
-				// Validate cluster chains
-				List<Fat32Volume.InvalidCluster> invalidClusters = new ArrayList<>();
-				volume.validateClusterChains(entries, invalidClusters, createTaskStatus());
+				// Verify volume against manifest
+				HashManifest.VerifyResult result = HashManifest.verify(volume, file, deep, createTaskStatus());
 
-				// Sort directory entries in descending order of number of clusters
-				entries.sort(Comparator.comparing(Fat32Directory.Entry::getNumClusters).reversed());
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
 
 				// Return result
-				return new Result(entries, invalidClusters);
+				return result;
 			}
 
 			@Override
 			protected void succeeded()
 			{
-				// Get result
-				Result result = getValue();
-
-				// Case: all clusters were valid
-				if (result.invalidClusters.isEmpty())
-				{
-					// If no files, report and stop ...
-					if (result.entries.isEmpty())
-					{
-						NotificationDialog.show(primaryStage, getTitle(), MessageIcon32.INFORMATION.get(),
-												NO_FILES_TO_DEFRAGMENT_STR);
-					}
-
-					// ... otherwise, defragment files
-					else
-					{
-						// Count total number of clusters in entries
-						int totalNumClusters =
-								result.entries.stream().mapToInt(Fat32Directory.Entry::getNumClusters).sum();
-
-						// Defragment files
-						defragmentFiles(result.entries.iterator(), new ArrayList<>(), 0, totalNumClusters);
-					}
-				}
+				// Create report
+				HashManifest.VerifyResult result = getValue();
+				String report = manifestReport(result);
 
-				// Case: invalid clusters
+				// Log report
+				if (result.isValid())
+					Logger.INSTANCE.info(title + "\n" + report);
 				else
-				{
-					InvalidClusterDialog.show(primaryStage, getTitle() + " : " + INVALID_CLUSTERS_STR,
-											  result.invalidClusters);
-				}
+					Logger.INSTANCE.error(title + "\n" + report);
+
+				// Display report in dialog
+				TextAreaDialog.show(primaryStage, DialogKey.HASH_MANIFEST,
+									title + " - " + Utils.volumeDisplayName(volume), report);
 			}
 
 			@Override
@@ -2276,7 +3770,7 @@ public class Fat32ManagerApp
 		};
 
 		// Show progress of task in dialog
-		new SimpleProgressDialog(primaryStage, task);
+		new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
 
 		// Execute task on background thread
 		executeTask(task);
@@ -2284,6 +3778,161 @@ public class Fat32ManagerApp
 
 	//------------------------------------------------------------------
 
+	private String manifestReport(
+		HashManifest.VerifyResult	result)
+	{
+		// Initialise buffer
+		StringBuilder buffer = new StringBuilder(4096);
+
+		// Append summary
+		buffer.append(String.format(MANIFEST_SUMMARY_STR, result.numFiles(), result.numFilesHashed(),
+									result.numBytes(), result.numTouchedFiles(),
+									(double)result.nanoseconds() * 1.0e-9));
+		buffer.append("\n\n");
+
+		// Append outcome
+		if (result.isValid())
+		{
+			buffer.append(MANIFEST_MATCHED_STR);
+			buffer.append('\n');
+		}
+
+		// Append lists of files
+		appendPathnames(buffer, CORRUPT_FILES_STR,
+						result.corruptFiles().stream().map(Fat32Directory.Entry::getPathname).toList());
+		appendPathnames(buffer, MODIFIED_FILES_STR,
+						result.modifiedFiles().stream().map(Fat32Directory.Entry::getPathname).toList());
+		appendPathnames(buffer, MISSING_FILES_STR, result.missingFiles());
+		appendPathnames(buffer, NEW_FILES_STR,
+						result.newFiles().stream().map(Fat32Directory.Entry::getPathname).toList());
+
+		// Return report
+		return buffer.toString();
+	}
+
+	//------------------------------------------------------------------
+
+	private void appendPathnames(
+		StringBuilder	buffer,
+		String			heading,
+		List<String>	pathnames)
+	{
+		if (!pathnames.isEmpty())
+		{
+			buffer.append(String.format(heading, pathnames.size()));
+			buffer.append('\n');
+			for (String pathname : pathnames)
+			{
+				buffer.append(INDENT_STR);
+				buffer.append(pathname);
+				buffer.append('\n');
+			}
+			buffer.append('\n');
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private void onCloneVolume()
+	{
+		// Get source volume
+		Fat32Volume source = getVolume();
+
+		// Select target volumes and clone source to them
+		String title = CLONE_VOLUME_STR;
+		findTargetVolumes(title, NO_VOLUMES_TO_CLONE_TO_STR, volumeNames ->
+		{
+			// Display dialog to select targets
+			CloneTargetsDialog.Result selection = CloneTargetsDialog.show(primaryStage, title, volumeNames);
+			if (selection == null)
+				return;
+
+			// Confirm cloning
+			String targetNames = String.join(", ", selection.volumeNames());
+			if (!ConfirmationDialog.show(primaryStage, title, MessageIcon32.QUESTION.get(),
+										 String.format(CONFIRM_CLONE_STR, targetNames), CLONE_STR))
+				return;
+
+			// Log title of task
+			Logger.INSTANCE.info(title + " " + source.getName() + " -> " + targetNames);
+
+			// Create task to clone volume
+			Task<VolumeCloner.Result> task = new AbstractTask<>()
+			{
+				{
+					// Initialise task
+					updateTitle(title);
+				}
+
+				@Override
+				protected VolumeCloner.Result call()
+					throws Exception
+				{
+					// Clone volume
+					VolumeCloner.Result result =
+							VolumeCloner.cloneVolume(source, selection.volumeNames(), selection.unbufferedIO(),
+													 selection.verify(), createTaskStatus());
+
+					// If task has been cancelled, change state to 'cancelled'
+					hardCancel(false);
+
+					// Return result
+					return result;
+				}
+
+				@Override
+				protected void succeeded()
+				{
+					// Create message
+					VolumeCloner.Result result = getValue();
+					StringBuilder buffer = new StringBuilder(256);
+					buffer.append(String.format(CLONED_STR, result.numBytes(), (double)result.nanoseconds() * 1.0e-9,
+												result.readMegabytesPerSecond()));
+					boolean verified = true;
+					for (VolumeCloner.TargetResult target : result.targets())
+					{
+						buffer.append('\n');
+						buffer.append(String.format(CLONE_TARGET_STR, target.name(),
+													(double)target.writeNanoseconds() * 1.0e-9,
+													target.writeMegabytesPerSecond()));
+						if (target.verified() != null)
+						{
+							buffer.append(String.format(CLONE_TARGET_VERIFIED_STR,
+														target.verified() ? VERIFIED_STR : VERIFICATION_FAILED_STR,
+														target.verifyMegabytesPerSecond()));
+							verified &= target.verified();
+						}
+					}
+					String message = buffer.toString();
+
+					// Log message
+					if (verified)
+						Logger.INSTANCE.info(message);
+					else
+						Logger.INSTANCE.error(message);
+
+					// Display message in dialog
+					showMessageDialog(getTitle(), message, verified ? MessageIcon32.INFORMATION : MessageIcon32.ERROR);
+				}
+
+				@Override
+				protected void failed()
+				{
+					// Display error message in dialog
+					showErrorMessage(primaryStage);
+				}
+			};
+
+			// Show progress of task in dialog
+			new SimpleProgressDialog(primaryStage, task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+			// Execute task on background thread
+			executeTask(task);
+		});
+	}
+
+	//------------------------------------------------------------------
+
 	private void onSelectTableColumns()
 	{
 		getTableView().selectColumns();
@@ -2293,12 +3942,41 @@ public class Fat32ManagerApp
 
 	private void onFormat()
 	{
-		// Create task to get names of volumes that are eligible to be formatted
+		selectTargetVolume(FORMAT_VOLUME_STR, NO_VOLUMES_TO_FORMAT_STR,
+						   result -> formatVolume1(result.volumeName(), result.unbufferedIO()));
+	}
+
+	//------------------------------------------------------------------
+
+	private void selectTargetVolume(
+		String										title,
+		String										noVolumesMessage,
+		IProcedure1<VolumeSelectionDialog.Result>	action)
+	{
+		findTargetVolumes(title, noVolumesMessage, volumeNames ->
+		{
+			// Select volume
+			VolumeSelectionDialog.Result result = VolumeSelectionDialog.show(primaryStage, title, volumeNames, null);
+
+			// If volume was selected, proceed
+			if (result != null)
+				action.invoke(result);
+		});
+	}
+
+	//------------------------------------------------------------------
+
+	private void findTargetVolumes(
+		String						title,
+		String						noVolumesMessage,
+		IProcedure1<List<String>>	action)
+	{
+		// Create task to get names of volumes that are eligible to be overwritten
 		Task<List<String>> task = new AbstractTask<>()
 		{
 			{
 				// Initialise task
-				updateTitle(FORMAT_VOLUME_STR);
+				updateTitle(title);
 				updateMessage(SEARCHING_FOR_VOLUMES_STR);
 				updateProgress(-1, 1);
 			}
@@ -2324,7 +4002,7 @@ public class Fat32ManagerApp
 							BlockVolume blockVolume = new BlockVolume(name, volumeAccessor);
 							blockVolume.updateInfo();
 
-							// If volume is eligible to be formatted, add its name to list
+							// If volume is eligible to be overwritten, add its name to list
 							if (!preferences.isFormatRemovableMediaOnly()
 									|| (blockVolume.getMediumKind() == Volume.MediumKind.REMOVABLE))
 								volumeNames.add(name);
@@ -2349,21 +4027,12 @@ public class Fat32ManagerApp
 				// If no volume names, report and stop ...
 				if (volumeNames.isEmpty())
 				{
-					NotificationDialog.show(primaryStage, getTitle(), MessageIcon32.ALERT.get(),
-											NO_VOLUMES_TO_FORMAT_STR);
+					NotificationDialog.show(primaryStage, getTitle(), MessageIcon32.ALERT.get(), noVolumesMessage);
 				}
 
-				// ... otherwise, display dialog for selecting volume
+				// ... otherwise, proceed
 				else
-				{
-					// Select volume
-					VolumeSelectionDialog.Result result =
-							VolumeSelectionDialog.show(primaryStage, getTitle(), volumeNames, null);
-
-					// If volume was selected, proceed
-					if (result != null)
-						formatVolume1(result.volumeName(), result.unbufferedIO());
-				}
+					action.invoke(volumeNames);
 			}
 
 			@Override
@@ -192,6 +192,7 @@ public class Fat32Volume
 	private static final	int		FORMAT_ROOT_DIR_CLUSTER_INDEX	= 2;
 	private static final	int		FORMAT_FS_INFO_SECTOR_INDEX		= 1;
 	private static final	int		FORMAT_BOOT_SECTOR_COPY_INDEX	= 6;
+	private static final	int		FORMAT_BUFFER_SIZE				= 1 << 22;	// 4 MiB
 
 	private static final	byte[]	JUMP_CODE	=
 	{
@@ -248,6 +249,24 @@ public class Fat32Volume
 	private static final	int		ERASURE_NUM_PASSES	= 4;
 	private static final	int		ERASURE_RANDOM_PASS	= 2;
 
+	private static final	int		SCAN_BLOCK_SIZE		= 1 << 20;	// 1 MiB
+	private static final	int		SCAN_NUM_REGIONS	= 32;
+	private static final	int		SCAN_NUM_RETRIES	= 2;
+
+	public static final		long[]	SCAN_LATENCY_BOUNDS	=
+	{
+		    1_000_000L,		//    1 ms
+		    2_000_000L,		//    2 ms
+		    5_000_000L,		//    5 ms
+		   10_000_000L,		//   10 ms
+		   20_000_000L,		//   20 ms
+		   50_000_000L,		//   50 ms
+		  100_000_000L,		//  100 ms
+		  200_000_000L,		//  200 ms
+		  500_000_000L,		//  500 ms
+		1_000_000_000L		// 1000 ms
+	};
+
 	private static final	String	PRNG_NAME	= "L128X256MixRandom";
 
 	private static final	char	MIN_VOLUME_LABEL_CHAR		= '\u0021';
@@ -284,6 +303,14 @@ public class Fat32Volume
 	private static final	String	UPDATING_FATS_STR				= "Updating FATs";
 	private static final	String	OPENING_STR						= "Opening";
 	private static final	String	FORMATTING_STR					= "Formatting";
+	private static final	String	RESERVED_SECTORS_STR			= "Reserved sectors";
+	private static final	String	FATS_STR						= "FATs";
+	private static final	String	ROOT_DIRECTORY_STR				= "Root directory";
+	private static final	String	ZEROING_DATA_AREA_STR			= "Zeroing of data area";
+	private static final	String	VERIFYING_DATA_AREA_STR			= "Verification of data area";
+	private static final	String	SCANNING_SURFACE_STR			= "Scanning surface";
+	private static final	String	MARKING_BAD_CLUSTERS_STR		= "Marking bad clusters";
+	private static final	String	FINDING_AFFECTED_FILES_STR		= "Finding affected files";
 	private static final	String	READING_BOOT_SECTOR_STR			= "Reading boot sector";
 	private static final	String	WRITING_BOOT_SECTOR_STR			= "Writing boot sector";
 	private static final	String	COPY_STR						= " copy";
@@ -329,6 +356,9 @@ public class Fat32Volume
 		String	FAILED_TO_VERIFY_LAST_SECTOR =
 				"Failed to verify the last sector of the volume.";
 
+		String	FAILED_TO_VERIFY_SECTOR =
+				"Failed to verify sector %d of the volume.";
+
 		String	FAILED_TO_FIND_DIRECTORY_IN_PARENT =
 				"%s\nFailed to find the directory in its parent directory.";
 
@@ -709,7 +739,7 @@ public class Fat32Volume
 
 	//------------------------------------------------------------------
 
-	public static void format(
+	public static List<FormatPhase> format(
 		String			name,
 		int				volumeId,
 		String			volumeLabel,
@@ -720,20 +750,26 @@ public class Fat32Volume
 		int				numReservedSectors,
 		int				sectorsPerCluster,
 		int				sectorsPerFat,
+		FormatMode		mode,
 		IVolumeAccessor	accessor,
 		boolean			unbufferedIO,
 		ITaskStatus		taskStatus)
 		throws VolumeException
 	{
-		final	int	BUFFER_NUM_SECTORS	= 128;
-
 		// Get number of available sectors
 		int numHeaderSectors = numReservedSectors + FORMAT_NUM_FATS * sectorsPerFat;
 		int numClusters = (numSectors - numHeaderSectors) / sectorsPerCluster;
 		int numAvailableSectors = numHeaderSectors + numClusters * sectorsPerCluster;
 
+		// Get index and number of sectors of the part of the data area that follows the root directory
+		int dataStartSectorIndex = numHeaderSectors + sectorsPerCluster;
+		int numDataSectors = mode.isZeroDataArea() ? numAvailableSectors - dataStartSectorIndex : 0;
+
 		// Allocate buffer for sector data
-		byte[] buffer = new byte[BUFFER_NUM_SECTORS * bytesPerSector];
+		byte[] buffer = new byte[FORMAT_BUFFER_SIZE / bytesPerSector * bytesPerSector];
+
+		// Initialise list of phases
+		List<FormatPhase> phases = new ArrayList<>();
 
 		// Create volume
 		Fat32Volume volume = new Fat32Volume(name, accessor);
@@ -752,106 +788,61 @@ public class Fat32Volume
 			taskStatus.setMessage(FORMATTING_STR + " " + name);
 			taskStatus.setProgress(0.0);
 
-			// Initialise loop variables
-			int sectorsWritten = 0;
-			int sectorsRemaining = 0;
-			int numSectorsToWrite = numReservedSectors + FORMAT_NUM_FATS * sectorsPerFat + sectorsPerCluster;
-			int maxProgress = numSectorsToWrite + 4;
-			int index = 0;
-
-			// Write boot sectors and other reserved sectors, FATs and root directory
-			while (index < numSectorsToWrite)
+			// Initialise progress variables
+			long numSectorsToWrite = numHeaderSectors + sectorsPerCluster + numDataSectors;
+			long maxProgress = numSectorsToWrite + (mode.isVerifyDataArea() ? numDataSectors : 0) + 4;
+			long[] progress = new long[1];
+
+			// Section: boot sectors and other reserved sectors
+			int offset = 0;
+			createBootSector1(bytesPerSector, startSector, numAvailableSectors, numReservedSectors, sectorsPerCluster,
+							  sectorsPerFat, volumeId, volumeLabel, formatterName, buffer, offset);
+			offset += bytesPerSector;
+			createBootSector2(buffer, offset);
+			offset += bytesPerSector;
+			createBootSector3(buffer, offset);
+			offset += bytesPerSector;
+			System.arraycopy(buffer, 0, buffer, FORMAT_BOOT_SECTOR_COPY_INDEX * bytesPerSector, offset);
+
+			long startTime = System.nanoTime();
+			if (!writeFormatSection(volume, buffer, (FORMAT_BOOT_SECTOR_COPY_INDEX + NUM_BOOT_SECTORS) * bytesPerSector,
+									bytesPerSector, numReservedSectors, progress, maxProgress, taskStatus))
+				return phases;
+			phases.add(new FormatPhase(RESERVED_SECTORS_STR, (long)numReservedSectors * bytesPerSector,
+									   System.nanoTime() - startTime));
+
+			// Section: FATs
+			startTime = System.nanoTime();
+			for (int i = 0; i < FORMAT_NUM_FATS; i++)
 			{
-				// Test whether task has been cancelled
-				if (taskStatus.isCancelled())
-					break;
-
-				// Section: boot sectors and other reserved sectors
-				if (index == 0)
-				{
-					// Create boot sectors
-					int offset = 0;
-					createBootSector1(bytesPerSector, startSector, numAvailableSectors, numReservedSectors,
-									  sectorsPerCluster, sectorsPerFat, volumeId, volumeLabel, formatterName, buffer,
-									  offset);
-					offset += bytesPerSector;
-					createBootSector2(buffer, offset);
-					offset += bytesPerSector;
-					createBootSector3(buffer, offset);
-					offset += bytesPerSector;
-
-					// Create copy of boot sectors
-					System.arraycopy(buffer, 0, buffer, FORMAT_BOOT_SECTOR_COPY_INDEX * bytesPerSector, offset);
-
-					// Initialise sector counts
-					sectorsWritten = 0;
-					sectorsRemaining = numReservedSectors;
-				}
-
-				// Section: first FAT
-				else if (index == numReservedSectors)
-				{
-					// Clear previous section from buffer
-					int offset = 0;
-					int length = NUM_BOOT_SECTORS * bytesPerSector;
-					Arrays.fill(buffer, offset, offset + length, (byte)0);
-					offset = FORMAT_BOOT_SECTOR_COPY_INDEX * bytesPerSector;
-					Arrays.fill(buffer, offset, offset + length, (byte)0);
-
-					// Create FAT sector
-					createFatSector(buffer, 0);
-
-					// Initialise sector counts
-					sectorsWritten = 0;
-					sectorsRemaining = sectorsPerFat;
-				}
-
-				// Section: second FAT
-				else if (index == numReservedSectors + sectorsPerFat)
-				{
-					// Clear previous section from buffer
-					Arrays.fill(buffer, 0, bytesPerSector, (byte)0);
-
-					// Create FAT sector
-					createFatSector(buffer, 0);
-
-					// Initialise sector counts
-					sectorsWritten = 0;
-					sectorsRemaining = sectorsPerFat;
-				}
-
-				// Section: root directory
-				else if (index == numReservedSectors + FORMAT_NUM_FATS * sectorsPerFat)
-				{
-					// Clear previous section from buffer
-					Arrays.fill(buffer, 0, bytesPerSector, (byte)0);
-
-					// Create root directory
-					if (!StringUtils.isNullOrEmpty(volumeLabel))
-						createRootDirectorySector(volumeLabel, buffer, 0);
-
-					// Initialise sector counts
-					sectorsWritten = 0;
-					sectorsRemaining = sectorsPerCluster;
-				}
-
-				// Clear first sector of buffer before writing second block of section
-				if (sectorsWritten == BUFFER_NUM_SECTORS)
-					Arrays.fill(buffer, 0, bytesPerSector, (byte)0);
-
-				// Get number of sectors to write
-				int blockNumSectors = Math.min(sectorsRemaining, BUFFER_NUM_SECTORS);
-
-				// Write sectors
-				volume.write(buffer, 0, blockNumSectors * bytesPerSector);
-
-				// Update sector counts and index
-				sectorsWritten += blockNumSectors;
-				sectorsRemaining -= blockNumSectors;
-				index += blockNumSectors;
-
-				// Update progress
-				taskStatus.setProgress((double)index / (double)maxProgress);
+				createFatSector(buffer, 0);
+				if (!writeFormatSection(volume, buffer, bytesPerSector, bytesPerSector, sectorsPerFat, progress,
+										maxProgress, taskStatus))
+					return phases;
+			}
+			phases.add(new FormatPhase(FATS_STR, (long)FORMAT_NUM_FATS * sectorsPerFat * bytesPerSector,
+									   System.nanoTime() - startTime));
+
+			// Section: root directory
+			if (!StringUtils.isNullOrEmpty(volumeLabel))
+				createRootDirectorySector(volumeLabel, buffer, 0);
+
+			startTime = System.nanoTime();
+			if (!writeFormatSection(volume, buffer, bytesPerSector, bytesPerSector, sectorsPerCluster, progress,
+									maxProgress, taskStatus))
+				return phases;
+			phases.add(new FormatPhase(ROOT_DIRECTORY_STR, (long)sectorsPerCluster * bytesPerSector,
+									   System.nanoTime() - startTime));
+
+			// Section: remainder of data area
+			if (numDataSectors > 0)
+			{
+				startTime = System.nanoTime();
+				if (!writeFormatSection(volume, buffer, 0, bytesPerSector, numDataSectors, progress, maxProgress,
+										taskStatus))
+					return phases;
+				phases.add(new FormatPhase(ZEROING_DATA_AREA_STR, (long)numDataSectors * bytesPerSector,
+										   System.nanoTime() - startTime));
 			}
 
 			// Close volume
@@ -860,6 +851,44 @@ public class Fat32Volume
 			// Open volume for reading and writing
 			volume.open(Access.READ_WRITE, unbufferedIO);
 
+			// Verify data area
+			if (mode.isVerifyDataArea() && (numDataSectors > 0))
+			{
+				// Allocate buffer for data that is read
+				byte[] readBuffer = new byte[buffer.length];
+
+				// Read data area and compare it with zeroed buffer
+				startTime = System.nanoTime();
+				volume.seek((long)dataStartSectorIndex * bytesPerSector);
+				int sectorsRemaining = numDataSectors;
+				while (sectorsRemaining > 0)
+				{
+					// Test whether task has been cancelled
+					if (taskStatus.isCancelled())
+						return phases;
+
+					// Read block of sectors
+					int blockNumSectors = Math.min(sectorsRemaining, buffer.length / bytesPerSector);
+					int length = blockNumSectors * bytesPerSector;
+					volume.read(readBuffer, 0, length);
+
+					// Verify data
+					int index = Arrays.mismatch(readBuffer, 0, length, buffer, 0, length);
+					if (index >= 0)
+					{
+						throw new VolumeException(ErrorMsg.FAILED_TO_VERIFY_SECTOR,
+												  numAvailableSectors - sectorsRemaining + index / bytesPerSector);
+					}
+
+					// Update sector count and progress
+					sectorsRemaining -= blockNumSectors;
+					progress[0] += blockNumSectors;
+					taskStatus.setProgress((double)progress[0] / (double)maxProgress);
+				}
+				phases.add(new FormatPhase(VERIFYING_DATA_AREA_STR, (long)numDataSectors * bytesPerSector,
+										   System.nanoTime() - startTime));
+			}
+
 			// Get index of last sector of last cluster
 			int lastSectorIndex = numAvailableSectors - 1;
 
@@ -878,7 +907,7 @@ public class Fat32Volume
 				volume.write(buffer, 0, bytesPerSector);
 
 				// Update progress
-				taskStatus.setProgress((double)++index / (double)maxProgress);
+				taskStatus.setProgress((double)++progress[0] / (double)maxProgress);
 
 				// Read last sector
 				volume.seek((long)lastSectorIndex * bytesPerSector);
@@ -892,7 +921,7 @@ public class Fat32Volume
 				}
 
 				// Update progress
-				taskStatus.setProgress((double)++index / (double)maxProgress);
+				taskStatus.setProgress((double)++progress[0] / (double)maxProgress);
 			}
 		}
 		finally
@@ -901,6 +930,9 @@ public class Fat32Volume
 			if (volume.isOpen())
 				volume.close();
 		}
+
+		// Return phases of format
+		return phases;
 	}
 
 	//------------------------------------------------------------------
@@ -1109,6 +1141,51 @@ public class Fat32Volume
 
 	//------------------------------------------------------------------
 
+	private static boolean writeFormatSection(
+		Volume		volume,
+		byte[]		buffer,
+		int			headerLength,
+		int			bytesPerSector,
+		int			numSectors,
+		long[]		progress,
+		long		maxProgress,
+		ITaskStatus	taskStatus)
+		throws VolumeException
+	{
+		int sectorsRemaining = numSectors;
+		while (sectorsRemaining > 0)
+		{
+			// Test whether task has been cancelled
+			if (taskStatus.isCancelled())
+				return false;
+
+			// Write block of sectors
+			int blockNumSectors = Math.min(sectorsRemaining, buffer.length / bytesPerSector);
+			volume.write(buffer, 0, blockNumSectors * bytesPerSector);
+
+			// Clear header from buffer after first block
+			if (headerLength > 0)
+			{
+				Arrays.fill(buffer, 0, headerLength, (byte)0);
+				headerLength = 0;
+			}
+
+			// Update sector count and progress
+			sectorsRemaining -= blockNumSectors;
+			progress[0] += blockNumSectors;
+			taskStatus.setProgress((double)progress[0] / (double)maxProgress);
+		}
+
+		// Clear header from buffer if no sectors were written
+		if (headerLength > 0)
+			Arrays.fill(buffer, 0, headerLength, (byte)0);
+
+		// Indicate success
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
 	private static void createFatSector(
 		byte[]	buffer,
 		int		offset)
@@ -1144,6 +1221,49 @@ public class Fat32Volume
 	public void init(
 		boolean	unbufferedIO)
 		throws VolumeException
+	{
+		// Read volume parameters and FATs
+		readParamsAndFats(unbufferedIO);
+
+		// Initialise root directory
+		rootDir = new Fat32Directory(this, null, null);
+	}
+
+	//------------------------------------------------------------------
+
+	public boolean reinit(
+		boolean	unbufferedIO)
+		throws VolumeException
+	{
+		// Save layout of volume
+		int oldId = id;
+		int oldBytesPerSector = bytesPerSector;
+		int oldSectorsPerCluster = sectorsPerCluster;
+		long oldNumSectors = numSectors;
+		int oldNumReservedSectors = numReservedSectors;
+		int oldNumFats = numFats;
+		int oldSectorsPerFat = sectorsPerFat;
+		int oldRootDirClusterIndex = rootDirClusterIndex;
+
+		// Read volume parameters and FATs
+		readParamsAndFats(unbufferedIO);
+
+		// Keep root directory and its loaded subtree if layout of volume is unchanged
+		boolean keepRootDir = (rootDir != null) && (id == oldId) && (bytesPerSector == oldBytesPerSector)
+								&& (sectorsPerCluster == oldSectorsPerCluster) && (numSectors == oldNumSectors)
+								&& (numReservedSectors == oldNumReservedSectors) && (numFats == oldNumFats)
+								&& (sectorsPerFat == oldSectorsPerFat)
+								&& (rootDirClusterIndex == oldRootDirClusterIndex);
+		if (!keepRootDir)
+			rootDir = new Fat32Directory(this, null, null);
+		return keepRootDir;
+	}
+
+	//------------------------------------------------------------------
+
+	private void readParamsAndFats(
+		boolean	unbufferedIO)
+		throws VolumeException
 	{
 		try
 		{
@@ -1202,9 +1322,6 @@ public class Fat32Volume
 
 			// Set number of clusters in root directory
 			rootDirNumClusters = fat.clusterCount(rootDirClusterIndex);
-
-			// Initialise root directory
-			rootDir = new Fat32Directory(this, null, null);
 		}
 		finally
 		{
@@ -1223,6 +1340,38 @@ public class Fat32Volume
 
 	//------------------------------------------------------------------
 
+	public Params getParams()
+	{
+		return new Params(volumeLabel, id, mediaDescriptor, formatterName, bytesPerSector, sectorsPerCluster,
+						  numSectors, numHiddenSectors, numReservedSectors, numFats, sectorsPerFat,
+						  bootSectorCopyIndex, rootDirClusterIndex);
+	}
+
+	//------------------------------------------------------------------
+
+	public List<SectorExtent> getUsedExtents()
+	{
+		// Initialise list of extents with reserved sectors and FATs
+		List<SectorExtent> extents = new ArrayList<>();
+		extents.add(new SectorExtent(0, numReservedSectors + (long)numFats * sectorsPerFat));
+
+		// Add runs of used clusters
+		BitSet usedClusters = fat.getUsedClusters();
+		int index = usedClusters.nextSetBit(0);
+		while (index >= 0)
+		{
+			int endIndex = usedClusters.nextClearBit(index);
+			extents.add(new SectorExtent(clusterIndexToSectorIndex(index),
+										 (long)(endIndex - index) * sectorsPerCluster));
+			index = usedClusters.nextSetBit(endIndex);
+		}
+
+		// Return extents
+		return extents;
+	}
+
+	//------------------------------------------------------------------
+
 	public int getBytesPerSector()
 	{
 		return bytesPerSector;
@@ -1793,6 +1942,184 @@ public class Fat32Volume
 
 	//------------------------------------------------------------------
 
+	public SurfaceScanResult scanSurface(
+		boolean		markBadClusters,
+		ITaskStatus	taskStatus)
+		throws VolumeException
+	{
+		// Check that volume has been initialised
+		if (bytesPerSector == 0)
+			throw new IllegalStateException(VOLUME_NOT_INITIALISED_STR);
+
+		// Allocate buffer for block of clusters
+		int numClusters = getNumClusters();
+		int bytesPerCluster = getBytesPerCluster();
+		int clustersPerBlock = Math.max(1, SCAN_BLOCK_SIZE / bytesPerCluster);
+		byte[] buffer = new byte[clustersPerBlock * bytesPerCluster];
+
+		// Divide clusters into regions
+		int clustersPerRegion = Math.max(1, (numClusters + SCAN_NUM_REGIONS - 1) / SCAN_NUM_REGIONS);
+		int numRegions = (numClusters + clustersPerRegion - 1) / clustersPerRegion;
+		long[][] latencyCounts = new long[numRegions][SCAN_LATENCY_BOUNDS.length + 1];
+		long[] maxLatencies = new long[numRegions];
+		long[] totalLatencies = new long[numRegions];
+
+		// Update task message; reset progress
+		taskStatus.setMessage(SCANNING_SURFACE_STR);
+		taskStatus.setProgress(0.0);
+
+		// Read all clusters
+		List<UnreadableCluster> unreadableClusters = new ArrayList<>();
+		int numClustersScanned = 0;
+		long startTime = System.nanoTime();
+		try
+		{
+			// Open volume for reading
+			open(Access.READ, unbufferedIO);
+
+			// Read blocks of clusters
+			DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+			int endIndex = Fat32Fat.MIN_CLUSTER_INDEX + numClusters;
+			int index = Fat32Fat.MIN_CLUSTER_INDEX;
+			while (index < endIndex)
+			{
+				// Test whether task has been cancelled
+				if (taskStatus.isCancelled())
+					break;
+
+				// Get number of clusters in block; a block does not extend beyond the end of its region
+				int region = (index - Fat32Fat.MIN_CLUSTER_INDEX) / clustersPerRegion;
+				int regionEndIndex = Math.min(Fat32Fat.MIN_CLUSTER_INDEX + (region + 1) * clustersPerRegion, endIndex);
+				int blockNumClusters = Math.min(clustersPerBlock, regionEndIndex - index);
+
+				// Read block of clusters and measure latency
+				long blockStartTime = System.nanoTime();
+				boolean blockRead = readSectorsForScan(clusterIndexToSectorIndex(index),
+													   blockNumClusters * sectorsPerCluster, buffer, 1);
+				long latency = System.nanoTime() - blockStartTime;
+
+				// Update latency histogram of region
+				int bucket = 0;
+				while ((bucket < SCAN_LATENCY_BOUNDS.length) && (latency >= SCAN_LATENCY_BOUNDS[bucket]))
+					++bucket;
+				++latencyCounts[region][bucket];
+				maxLatencies[region] = Math.max(latency, maxLatencies[region]);
+				totalLatencies[region] += latency;
+
+				// If block could not be read, retry at cluster granularity and then at sector granularity
+				if (!blockRead)
+				{
+					for (int i = index; i < index + blockNumClusters; i++)
+					{
+						// Retry cluster
+						long sectorIndex = clusterIndexToSectorIndex(i);
+						if (readSectorsForScan(sectorIndex, sectorsPerCluster, buffer, SCAN_NUM_RETRIES))
+							continue;
+
+						// Retry sectors of cluster
+						int numUnreadableSectors = 0;
+						for (int j = 0; j < sectorsPerCluster; j++)
+						{
+							if (!readSectorsForScan(sectorIndex + j, 1, buffer, SCAN_NUM_RETRIES))
+								++numUnreadableSectors;
+						}
+
+						// Add cluster to list of unreadable clusters
+						if (numUnreadableSectors > 0)
+							unreadableClusters.add(new UnreadableCluster(i, numUnreadableSectors, fat.get(i)));
+					}
+				}
+
+				// Increment cluster counts
+				numClustersScanned += blockNumClusters;
+				index += blockNumClusters;
+
+				// Update progress
+				double progress = (double)numClustersScanned / (double)numClusters;
+				if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+					taskStatus.setProgress(progress);
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (isOpen())
+				close();
+		}
+		long scanTime = System.nanoTime() - startTime;
+
+		// Create list of regions
+		List<ScanRegion> regions = new ArrayList<>();
+		for (int i = 0; i < numRegions; i++)
+		{
+			int regionStartIndex = Fat32Fat.MIN_CLUSTER_INDEX + i * clustersPerRegion;
+			int regionEndIndex =
+					Math.min(regionStartIndex + clustersPerRegion, Fat32Fat.MIN_CLUSTER_INDEX + numClusters);
+			regions.add(new ScanRegion(regionStartIndex, regionEndIndex,
+									   (long)(regionEndIndex - regionStartIndex) * bytesPerCluster, latencyCounts[i],
+									   maxLatencies[i], totalLatencies[i]));
+		}
+
+		// Divide unreadable clusters into unused clusters and those that are allocated to files or directories
+		BitSet unusedClusters = new BitSet();
+		BitSet allocatedClusters = new BitSet();
+		for (UnreadableCluster cluster : unreadableClusters)
+		{
+			if (cluster.fatEntry() == 0)
+				unusedClusters.set(cluster.index());
+			else if (!Fat32Fat.isBadCluster(cluster.fatEntry()))
+				allocatedClusters.set(cluster.index());
+		}
+
+		// Mark unreadable unused clusters as bad in all FATs
+		int numClustersMarked = 0;
+		if (markBadClusters && !unusedClusters.isEmpty() && !taskStatus.isCancelled())
+		{
+			// Update task message; set indeterminate progress
+			taskStatus.setMessage(MARKING_BAD_CLUSTERS_STR);
+			taskStatus.setProgress(-1.0);
+
+			// Update FATs
+			try
+			{
+				// Open volume for reading and writing
+				open(Access.READ_WRITE, unbufferedIO);
+
+				// Set entries of unreadable unused clusters in FATs
+				setFatEntries(unusedClusters, Fat32Fat.BAD_CLUSTER_INDEX);
+				numClustersMarked = unusedClusters.cardinality();
+			}
+			finally
+			{
+				// Close volume
+				if (isOpen())
+					close();
+			}
+		}
+
+		// Find files and directories that contain unreadable clusters
+		List<String> affectedPathnames = new ArrayList<>();
+		if (!allocatedClusters.isEmpty() && !taskStatus.isCancelled())
+		{
+			// Update task message; set indeterminate progress
+			taskStatus.setMessage(FINDING_AFFECTED_FILES_STR);
+			taskStatus.setProgress(-1.0);
+
+			// Test clusters of root directory
+			if (chainIntersects(rootDirClusterIndex, allocatedClusters))
+				affectedPathnames.add(rootDir.getPathname());
+
+			// Test clusters of files and directories
+			findAffectedEntries(rootDir, allocatedClusters, affectedPathnames, taskStatus);
+		}
+
+		// Return result
+		return new SurfaceScanResult(numClustersScanned, scanTime, unreadableClusters, numClustersMarked,
+									 affectedPathnames, regions);
+	}
+
+	//------------------------------------------------------------------
+
 	public boolean eraseFile(
 		Fat32Directory.Entry	entry,
 		byte					fillerValue,
@@ -1954,19 +2281,8 @@ public class Fat32Volume
 		if (entry.isFile() && (entry.getFileLength() == 0))
 			return false;
 
-		// Search cluster chain for non-consecutive indices
-		int prevIndex = -1;
-		Fat32Fat.IndexIterator it = fat.indexIterator(entry.getClusterIndex());
-		while (it.hasNext())
-		{
-			int index = it.next();
-			if ((prevIndex >= 0) && (index - prevIndex != 1))
-				return true;
-			prevIndex = index;
-		}
-
-		// Cluster indices are consecutive
-		return false;
+		// Test for more than one run of consecutive clusters in cluster chain
+		return (fat.fragmentCount(entry.getClusterIndex()) > 1);
 	}
 
 	//------------------------------------------------------------------
@@ -2237,6 +2553,71 @@ public class Fat32Volume
 
 	//------------------------------------------------------------------
 
+	public void writeClusterChains(
+		List<Fat32Fat.Run>		runs,
+		Map<Integer, Integer>	links)
+		throws VolumeException
+	{
+		for (int fatIndex = 0; fatIndex < numFats; fatIndex++)
+		{
+			// Initialise 'last FAT' flag
+			boolean lastFat = (fatIndex == numFats - 1);
+
+			// Read sectors of FAT
+			byte[] fatData = fat.read(fatIndex);
+
+			// Set entries for runs of unused clusters
+			for (Fat32Fat.Run run : runs)
+			{
+				int endIndex = run.endIndex();
+				for (int i = run.startIndex(); i < endIndex; i++)
+				{
+					// Get offset of FAT entry
+					int offset = i * Fat32Fat.ENTRY_SIZE;
+
+					// Test current value of FAT entry
+					if ((Fat32Fat.getIndex(fatData, offset) != fat.get(i)) || (fat.get(i) != 0))
+						throw new VolumeException(ErrorMsg.UNEXPECTED_FAT_ENTRY);
+
+					// Set new value in FAT
+					int value = (i == endIndex - 1) ? Fat32Fat.MAX_END_OF_CHAIN_INDEX : i + 1;
+					Fat32Fat.setIndex(value, fatData, offset);
+
+					// Update FAT array
+					if (lastFat)
+						fat.set(i, value);
+				}
+			}
+
+			// Link ends of existing chains to new runs
+			for (Map.Entry<Integer, Integer> link : links.entrySet())
+			{
+				// Get offset of FAT entry
+				int index = link.getKey();
+				int offset = index * Fat32Fat.ENTRY_SIZE;
+
+				// Test current value of FAT entry
+				if ((Fat32Fat.getIndex(fatData, offset) != fat.get(index)) || !Fat32Fat.isEndOfChain(fat.get(index)))
+					throw new VolumeException(ErrorMsg.UNEXPECTED_FAT_ENTRY);
+
+				// Set new value in FAT
+				Fat32Fat.setIndex(link.getValue(), fatData, offset);
+
+				// Update FAT array
+				if (lastFat)
+					fat.set(index, link.getValue());
+			}
+
+			// Seek sector
+			seekSector(numReservedSectors + fatIndex * sectorsPerFat);
+
+			// Write sectors of FAT
+			write(fatData);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 	private boolean eraseClusters(
 		Fat32Directory			directory,
 		BitSet					clusters,
@@ -2465,6 +2846,127 @@ public class Fat32Volume
 
 	//------------------------------------------------------------------
 
+	private boolean readSectorsForScan(
+		long	sectorIndex,
+		int		numSectors,
+		byte[]	buffer,
+		int		numAttempts)
+	{
+		for (int i = 0; i < numAttempts; i++)
+		{
+			try
+			{
+				seekSector(sectorIndex);
+				read(buffer, 0, numSectors * bytesPerSector);
+				return true;
+			}
+			catch (VolumeException e)
+			{
+				// ignore
+			}
+		}
+		return false;
+	}
+
+	//------------------------------------------------------------------
+
+	private void setFatEntries(
+		BitSet	clusters,
+		int		value)
+		throws VolumeException
+	{
+		for (int fatIndex = 0; fatIndex < numFats; fatIndex++)
+		{
+			// Initialise 'last FAT' flag
+			boolean lastFat = (fatIndex == numFats - 1);
+
+			// Read sectors of FAT
+			byte[] fatData = fat.read(fatIndex);
+
+			// Update FAT
+			for (int i = clusters.nextSetBit(0); i >= 0; i = clusters.nextSetBit(i + 1))
+			{
+				// Get offset of FAT entry
+				int offset = i * Fat32Fat.ENTRY_SIZE;
+
+				// Test current value of FAT entry
+				if (Fat32Fat.getIndex(fatData, offset) != fat.get(i))
+					throw new VolumeException(ErrorMsg.UNEXPECTED_FAT_ENTRY);
+
+				// Set new value in FAT
+				Fat32Fat.setIndex(value, fatData, offset);
+
+				// Update FAT array
+				if (lastFat)
+					fat.set(i, value);
+			}
+
+			// Seek sector
+			seekSector(numReservedSectors + fatIndex * sectorsPerFat);
+
+			// Write sectors of FAT
+			write(fatData);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private boolean chainIntersects(
+		int		index,
+		BitSet	clusters)
+	{
+		int count = 0;
+		while ((index >= Fat32Fat.MIN_CLUSTER_INDEX) && (index < fat.getLength()) && !Fat32Fat.isEndOfChain(index)
+				&& !Fat32Fat.isBadCluster(index) && (count++ < fat.getLength()))
+		{
+			if (clusters.get(index))
+				return true;
+			index = fat.get(index);
+		}
+		return false;
+	}
+
+	//------------------------------------------------------------------
+
+	private void findAffectedEntries(
+		Fat32Directory	directory,
+		BitSet			clusters,
+		List<String>	pathnames,
+		ITaskStatus		taskStatus)
+	{
+		// Test clusters of files and directories
+		for (Fat32Directory.Entry entry : directory.getEntries())
+		{
+			if ((entry.isFile() || entry.isRegularDirectory()) && chainIntersects(entry.getClusterIndex(), clusters))
+				pathnames.add(entry.getPathname());
+		}
+
+		// Get subdirectories; if they cannot be read, stop
+		List<Fat32Directory> children = null;
+		try
+		{
+			children = directory.getChildren();
+		}
+		catch (WrappedVolumeException e)
+		{
+			return;
+		}
+
+		// Process subdirectories
+		for (Fat32Directory subdirectory : children)
+		{
+			// Test whether task has been cancelled
+			if (taskStatus.isCancelled())
+				break;
+
+			// Process subdirectory
+			if (subdirectory.getEntryInParent().isRegularDirectory())
+				findAffectedEntries(subdirectory, clusters, pathnames, taskStatus);
+		}
+	}
+
+	//------------------------------------------------------------------
+
 ////////////////////////////////////////////////////////////////////////
 //  Member records
 ////////////////////////////////////////////////////////////////////////
@@ -2641,6 +3143,97 @@ public class Fat32Volume
 
 	//==================================================================
 
+
+	// RECORD: FORMAT PHASE
+
+
+	public record FormatPhase(
+		String	name,
+		long	numBytes,
+		long	nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: UNREADABLE CLUSTER
+
+
+	public record UnreadableCluster(
+		int	index,
+		int	numUnreadableSectors,
+		int	fatEntry)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: SURFACE-SCAN REGION
+
+
+	public record ScanRegion(
+		int		startClusterIndex,
+		int		endClusterIndex,
+		long	numBytes,
+		long[]	latencyCounts,
+		long	maxLatency,
+		long	totalLatency)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, totalLatency);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: RESULT OF SURFACE SCAN
+
+
+	public record SurfaceScanResult(
+		int						numClustersScanned,
+		long					nanoseconds,
+		List<UnreadableCluster>	unreadableClusters,
+		int						numClustersMarked,
+		List<String>			affectedPathnames,
+		List<ScanRegion>		regions)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: EXTENT OF SECTORS
+
+
+	public record SectorExtent(
+		long	startIndex,
+		long	numSectors)
+	{ }
+
+	//==================================================================
+
 }
 
 //----------------------------------------------------------------------
@@ -0,0 +1,816 @@
+/*====================================================================*\
+
+FileExtractor.java
+
+Class: extractor of files and directories from a volume to the host file system.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: EXTRACTOR OF FILES AND DIRECTORIES FROM A VOLUME TO THE HOST FILE SYSTEM
+
+
+/**
+ * This class provides a method that copies files and directory trees from a FAT32 volume to a directory of the host
+ * file system.
+ * <p>
+ * The cluster chain of each file is resolved into extents of consecutive clusters before any data are read.  The
+ * extents are then read from the volume on the calling thread, in ascending order of file and in pieces of up to
+ * {@link #BUFFER_SIZE} bytes, into a fixed pool of reusable buffers.  Each piece is passed to a pool of writer threads
+ * that write it at its offset in the output file, so that several files are written to the host concurrently while the
+ * volume is read sequentially.  When the last piece of a file has been written, the file is closed and its timestamps
+ * are set from its directory entry.
+ * </p>
+ */
+
+public class FileExtractor
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The maximum length of a piece of a file that is read from the volume. */
+	private static final	int		BUFFER_SIZE	= 1 << 22;	// 4 MiB
+
+	/** The maximum number of writer threads. */
+	private static final	int		MAX_NUM_WRITER_THREADS	= 4;
+
+	/** The interval (in milliseconds) between successive checks for cancellation while waiting for a buffer. */
+	private static final	long	QUEUE_POLL_INTERVAL	= 100;
+
+	/** The suffix of the name of a writer thread. */
+	private static final	String	WRITER_THREAD_NAME_SUFFIX	= "extractWriter";
+
+	/** Miscellaneous strings. */
+	private static final	String	RESOLVING_CLUSTER_CHAINS_STR	= "Resolving cluster chains";
+	private static final	String	EXTRACTING_STR					= "Extracting";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	PREMATURE_END_OF_CHAIN =
+				"The cluster chain of '%s' ends before the end of the file.";
+
+		String	FAILED_TO_CREATE_DIRECTORY =
+				"Failed to create the directory.";
+
+		String	FAILED_TO_OPEN_FILE =
+				"Failed to open the file.";
+
+		String	ERROR_WRITING_FILE =
+				"An error occurred when writing the file.";
+
+		String	FAILED_TO_SET_TIMESTAMPS =
+				"Failed to set the timestamps of the file.";
+
+		String	LOCATION_OUTSIDE_OUTPUT_DIRECTORY =
+				"The location of the file is outside the output directory.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private FileExtractor()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Copies the specified files and directories, including the subtrees of the directories, from the specified volume
+	 * to the specified directory of the host file system, and returns the result.  Existing files are replaced.
+	 *
+	 * @param  volume
+	 *           the volume from which the files and directories will be copied.
+	 * @param  entries
+	 *           the entries of the files and directories that will be copied.  Entries that are neither files nor
+	 *           regular directories are ignored.
+	 * @param  outDirectory
+	 *           the directory of the host file system to which the files and directories will be copied.
+	 * @param  taskStatus
+	 *           the status of the task that is extracting the files.
+	 * @return the result of the extraction, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing a file or creating a directory.
+	 */
+
+	public static Result extract(
+		Fat32Volume					volume,
+		List<Fat32Directory.Entry>	entries,
+		Path						outDirectory,
+		ITaskStatus					taskStatus)
+		throws VolumeException, FileException
+	{
+		// Update task message
+		taskStatus.setMessage(RESOLVING_CLUSTER_CHAINS_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Resolve entries into directories and files with their extents
+		List<DirectoryItem> directories = new ArrayList<>();
+		List<FileItem> files = new ArrayList<>();
+		try
+		{
+			for (Fat32Directory.Entry entry : entries)
+			{
+				if (taskStatus.isCancelled())
+					return null;
+				addItems(volume, entry, outDirectory, outDirectory.normalize(), directories, files);
+			}
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+
+		// Extract directories and files
+		return extract(volume, directories, files, taskStatus);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Copies the specified runs of clusters from the specified volume to the specified files of the host file system,
+	 * and returns the result.  The length of each file is the lesser of the file length of its entry and the total
+	 * length of its runs.  This method may be used to copy files whose cluster chains are no longer recorded in the
+	 * FAT, such as deleted files.  Existing files are replaced.
+	 *
+	 * @param  volume
+	 *           the volume from which the files will be copied.
+	 * @param  files
+	 *           the files that will be copied.
+	 * @param  taskStatus
+	 *           the status of the task that is extracting the files.
+	 * @return the result of the extraction, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing a file or creating a directory.
+	 */
+
+	public static Result extractRuns(
+		Fat32Volume		volume,
+		List<RunFile>	files,
+		ITaskStatus		taskStatus)
+		throws VolumeException, FileException
+	{
+		// Convert runs of clusters to extents
+		List<FileItem> fileItems = new ArrayList<>();
+		for (RunFile file : files)
+		{
+			List<Extent> extents = new ArrayList<>();
+			for (Fat32Fat.Run run : file.runs())
+				extents.add(new Extent(volume.clusterIndexToSectorIndex(run.startIndex()), run.length()));
+			fileItems.add(new FileItem(file.entry(), file.location(), extents));
+		}
+
+		// Create parent directories of files
+		for (FileItem file : fileItems)
+		{
+			Path directory = file.location().getParent();
+			try
+			{
+				if (directory != null)
+					Files.createDirectories(directory);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.FAILED_TO_CREATE_DIRECTORY, e, directory);
+			}
+		}
+
+		// Extract files
+		return extract(volume, List.of(), fileItems, taskStatus);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates the specified directories, copies the specified files from the specified volume, and returns the result.
+	 *
+	 * @param  volume
+	 *           the volume from which the files will be copied.
+	 * @param  directories
+	 *           the directories that will be created, in depth-first order.
+	 * @param  files
+	 *           the files that will be copied.
+	 * @param  taskStatus
+	 *           the status of the task that is extracting the files.
+	 * @return the result of the extraction, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing a file or creating a directory.
+	 */
+
+	private static Result extract(
+		Fat32Volume			volume,
+		List<DirectoryItem>	directories,
+		List<FileItem>		files,
+		ITaskStatus			taskStatus)
+		throws VolumeException, FileException
+	{
+		// Create directories
+		for (DirectoryItem directory : directories)
+		{
+			try
+			{
+				Files.createDirectories(directory.location());
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.FAILED_TO_CREATE_DIRECTORY, e, directory.location());
+			}
+		}
+
+		// Get total number of bytes to extract
+		int bytesPerCluster = volume.getBytesPerCluster();
+		long totalNumBytes = 0;
+		for (FileItem file : files)
+		{
+			long length = 0;
+			for (Extent extent : file.extents())
+				length += (long)extent.numClusters() * bytesPerCluster;
+			totalNumBytes += Math.min(length, file.entry().getFileLength());
+		}
+
+		// Update task message; reset progress
+		taskStatus.setMessage(EXTRACTING_STR);
+		taskStatus.setProgress(0.0);
+
+		// Create pool of buffers
+		int numThreads = Math.min(MAX_NUM_WRITER_THREADS, Runtime.getRuntime().availableProcessors());
+		int numBuffers = 2 * numThreads + 2;
+		BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(numBuffers);
+		for (int i = 0; i < numBuffers; i++)
+			freeBuffers.add(new byte[BUFFER_SIZE]);
+
+		// Create writer threads
+		int[] threadIndex = { 0 };
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads, runnable ->
+				DaemonFactory.create(FileExtractor.class.getSimpleName() + "-" + WRITER_THREAD_NAME_SUFFIX + "-"
+										+ ++threadIndex[0], runnable));
+
+		// Read files from volume and pass their pieces to writers
+		AtomicReference<FileException> writeException = new AtomicReference<>();
+		long startTime = System.nanoTime();
+		long numBytesRead = 0;
+		boolean cancelled = false;
+		try
+		{
+			// Open volume for reading
+			volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+			// Read files
+			DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+			int bytesPerSector = volume.getBytesPerSector();
+			for (FileItem file : files)
+			{
+				// Test for error in writer
+				if (writeException.get() != null)
+					break;
+
+				// Open output file
+				FileJob job = null;
+				try
+				{
+					job = new FileJob(file, FileChannel.open(file.location(), StandardOpenOption.CREATE,
+															 StandardOpenOption.WRITE,
+															 StandardOpenOption.TRUNCATE_EXISTING),
+									  writeException);
+				}
+				catch (IOException e)
+				{
+					throw new FileException(ErrorMsg.FAILED_TO_OPEN_FILE, e, file.location());
+				}
+
+				// Read extents of file
+				try
+				{
+					long fileLength = file.entry().getFileLength();
+					long filePosition = 0;
+					for (Extent extent : file.extents())
+					{
+						long sectorIndex = extent.sectorIndex();
+						long remaining = Math.min((long)extent.numClusters() * bytesPerCluster,
+												  fileLength - filePosition);
+						while (remaining > 0)
+						{
+							// Get free buffer
+							byte[] buffer = null;
+							while (buffer == null)
+							{
+								if (taskStatus.isCancelled() || (writeException.get() != null))
+								{
+									cancelled = true;
+									break;
+								}
+								buffer = freeBuffers.poll(QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+							}
+							if (buffer == null)
+								break;
+
+							// Read piece of file; round length up to whole number of sectors
+							int length = (int)Math.min(remaining, BUFFER_SIZE);
+							int readLength = (length + bytesPerSector - 1) / bytesPerSector * bytesPerSector;
+							volume.seekSector(sectorIndex);
+							try
+							{
+								volume.read(buffer, 0, readLength);
+							}
+							catch (VolumeException e)
+							{
+								freeBuffers.add(buffer);
+								throw e;
+							}
+
+							// Pass piece to writer
+							byte[] data = buffer;
+							long position = filePosition;
+							FileJob job0 = job;
+							job.addPiece();
+							executor.execute(() ->
+							{
+								try
+								{
+									job0.write(data, length, position);
+								}
+								finally
+								{
+									freeBuffers.add(data);
+									job0.pieceDone();
+								}
+							});
+
+							// Increment position
+							sectorIndex += readLength / bytesPerSector;
+							filePosition += length;
+							remaining -= length;
+							numBytesRead += length;
+
+							// Update progress
+							double progress = (double)numBytesRead / (double)totalNumBytes;
+							if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+								taskStatus.setProgress(progress);
+						}
+						if (cancelled)
+							break;
+					}
+				}
+				finally
+				{
+					// Release file from reader
+					job.pieceDone();
+				}
+				if (cancelled)
+					break;
+			}
+		}
+		catch (InterruptedException e)
+		{
+			cancelled = true;
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+
+			// Wait for writers to finish
+			executor.shutdown();
+			try
+			{
+				while (!executor.awaitTermination(QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS))
+				{
+					// do nothing
+				}
+			}
+			catch (InterruptedException e)
+			{
+				executor.shutdownNow();
+			}
+		}
+
+		// Throw any exception from writer
+		if (writeException.get() != null)
+			throw writeException.get();
+
+		// Stop if task was cancelled
+		if (cancelled)
+			return null;
+
+		// Set timestamps of directories, deepest first
+		for (int i = directories.size() - 1; i >= 0; i--)
+		{
+			DirectoryItem directory = directories.get(i);
+			setTimestamps(directory.location(), directory.entry());
+		}
+
+		// Return result
+		return new Result(files.size(), directories.size(), numBytesRead, System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Adds the file or directory of the specified entry, and the contents of a directory, to the specified lists.
+	 *
+	 * @param  volume
+	 *           the volume that contains the entry.
+	 * @param  entry
+	 *           the entry of the file or directory.
+	 * @param  parentLocation
+	 *           the location of the host directory to which the file or directory will be copied.
+	 * @param  outDirectory
+	 *           the normalised location of the output directory, which must contain the file or directory.
+	 * @param  directories
+	 *           the list to which directories will be added.
+	 * @param  files
+	 *           the list to which files will be added.
+	 * @throws VolumeException
+	 *           if the cluster chain of a file is invalid.
+	 * @throws FileException
+	 *           if the host location of the file or directory is outside the output directory.
+	 */
+
+	private static void addItems(
+		Fat32Volume				volume,
+		Fat32Directory.Entry	entry,
+		Path					parentLocation,
+		Path					outDirectory,
+		List<DirectoryItem>		directories,
+		List<FileItem>			files)
+		throws VolumeException, FileException
+	{
+		Path location = parentLocation.resolve(Utils.toHostFilename(entry.getName()));
+		if (!location.normalize().startsWith(outDirectory))
+			throw new FileException(ErrorMsg.LOCATION_OUTSIDE_OUTPUT_DIRECTORY, location);
+		if (entry.isFile())
+			files.add(new FileItem(entry, location, extents(volume, entry)));
+		else if (entry.isRegularDirectory())
+		{
+			directories.add(new DirectoryItem(entry, location));
+			Fat32Directory directory = entry.getDirectory().findChild(entry);
+			if (directory != null)
+			{
+				for (Fat32Directory.Entry child : directory.getEntries())
+					addItems(volume, child, location, outDirectory, directories, files);
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the extents of consecutive clusters that contain the data of the specified file.
+	 *
+	 * @param  volume
+	 *           the volume that contains the file.
+	 * @param  entry
+	 *           the entry of the file.
+	 * @return the extents of the file.
+	 * @throws VolumeException
+	 *           if the cluster chain of the file is invalid or ends before the end of the file.
+	 */
+
+	private static List<Extent> extents(
+		Fat32Volume				volume,
+		Fat32Directory.Entry	entry)
+		throws VolumeException
+	{
+		// Get number of clusters in file
+		int bytesPerCluster = volume.getBytesPerCluster();
+		long numClusters = (entry.getFileLength() + bytesPerCluster - 1) / bytesPerCluster;
+
+		// Coalesce runs of consecutive clusters into extents
+		List<Extent> extents = new ArrayList<>();
+		if (numClusters > 0)
+		{
+			int numChainClusters = volume.getFat().forEachExtent(entry.getClusterIndex(), (int)numClusters,
+					(startIndex, length) ->
+							extents.add(new Extent(volume.clusterIndexToSectorIndex(startIndex), length)));
+			if (numChainClusters < numClusters)
+				throw new VolumeException(ErrorMsg.PREMATURE_END_OF_CHAIN, entry.getPathname());
+		}
+		return extents;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Sets the creation, last-modification and last-access times of the specified host file from the specified
+	 * directory entry.
+	 *
+	 * @param  location
+	 *           the location of the host file.
+	 * @param  entry
+	 *           the directory entry from which the timestamps will be taken.
+	 * @throws FileException
+	 *           if an error occurred when setting the timestamps.
+	 */
+
+	private static void setTimestamps(
+		Path					location,
+		Fat32Directory.Entry	entry)
+		throws FileException
+	{
+		try
+		{
+			Files.getFileAttributeView(location, BasicFileAttributeView.class)
+					.setTimes(toFileTime(entry.getLastModificationTime()),
+							  (entry.getAccessDate() == null) ? null : toFileTime(entry.getAccessDate().atStartOfDay()),
+							  toFileTime(entry.getCreationTime()));
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.FAILED_TO_SET_TIMESTAMPS, e, location);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private static FileTime toFileTime(
+		LocalDateTime	dateTime)
+	{
+		return (dateTime == null) ? null : FileTime.from(dateTime.atZone(ZoneId.systemDefault()).toInstant());
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of an extraction.
+	 *
+	 * @param numFiles
+	 *          the number of files that were extracted.
+	 * @param numDirectories
+	 *          the number of directories that were created.
+	 * @param numBytes
+	 *          the number of bytes of file data that were copied.
+	 * @param nanoseconds
+	 *          the time taken by the extraction.
+	 */
+
+	public record Result(
+		int		numFiles,
+		int		numDirectories,
+		long	numBytes,
+		long	nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: FILE AS RUNS OF CLUSTERS
+
+
+	/**
+	 * This record encapsulates a file that is to be copied from explicit runs of clusters.
+	 *
+	 * @param entry
+	 *          the directory entry of the file, from which its length and timestamps are taken.
+	 * @param location
+	 *          the location of the host file to which the file will be copied.
+	 * @param runs
+	 *          the runs of clusters that contain the data of the file, in order.
+	 */
+
+	public record RunFile(
+		Fat32Directory.Entry	entry,
+		Path					location,
+		List<Fat32Fat.Run>		runs)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: EXTENT
+
+
+	/**
+	 * This record encapsulates a run of consecutive clusters of a file.
+	 *
+	 * @param sectorIndex
+	 *          the index of the first sector of the run.
+	 * @param numClusters
+	 *          the number of clusters in the run.
+	 */
+
+	private record Extent(
+		long	sectorIndex,
+		int		numClusters)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: DIRECTORY ITEM
+
+
+	private record DirectoryItem(
+		Fat32Directory.Entry	entry,
+		Path					location)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: FILE ITEM
+
+
+	private record FileItem(
+		Fat32Directory.Entry	entry,
+		Path					location,
+		List<Extent>			extents)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: FILE JOB
+
+
+	/**
+	 * This class tracks the pieces of an output file that have yet to be written.  The file is closed and its
+	 * timestamps are set when the reader has released it and all its pieces have been written.
+	 */
+
+	private static class FileJob
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	FileItem						file;
+		private	FileChannel						channel;
+		private	AtomicInteger					numPending;
+		private	AtomicReference<FileException>	exception;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private FileJob(
+			FileItem						file,
+			FileChannel						channel,
+			AtomicReference<FileException>	exception)
+		{
+			// Initialise instance variables
+			this.file = file;
+			this.channel = channel;
+			this.exception = exception;
+			numPending = new AtomicInteger(1);
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private void addPiece()
+		{
+			numPending.incrementAndGet();
+		}
+
+		//--------------------------------------------------------------
+
+		private void write(
+			byte[]	data,
+			int		length,
+			long	position)
+		{
+			try
+			{
+				ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+				while (buffer.hasRemaining())
+					position += channel.write(buffer, position);
+			}
+			catch (IOException e)
+			{
+				exception.compareAndSet(null, new FileException(ErrorMsg.ERROR_WRITING_FILE, e, file.location()));
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		private void pieceDone()
+		{
+			if (numPending.decrementAndGet() == 0)
+			{
+				try
+				{
+					channel.close();
+					setTimestamps(file.location(), file.entry());
+				}
+				catch (IOException e)
+				{
+					exception.compareAndSet(null, new FileException(ErrorMsg.ERROR_WRITING_FILE, e,
+																	file.location()));
+				}
+				catch (FileException e)
+				{
+					exception.compareAndSet(null, e);
+				}
+			}
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
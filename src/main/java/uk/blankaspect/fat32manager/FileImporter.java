@@ -0,0 +1,918 @@
+/*====================================================================*\
+
+FileImporter.java
+
+Class: importer of files and directories from the host file system to a volume.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import java.util.stream.Stream;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: IMPORTER OF FILES AND DIRECTORIES FROM THE HOST FILE SYSTEM TO A VOLUME
+
+
+/**
+ * This class provides a method that copies files and directory trees from the host file system to a directory of a
+ * FAT32 volume.
+ * <p>
+ * The whole import is planned before anything is written.  Each file and each new directory is allocated a single run
+ * of consecutive clusters from the unused runs of the FAT, largest first and best fit, so that no imported file is
+ * fragmented; the import fails before the volume is modified if a run cannot be found for every item.  The data of the
+ * files are then read from the host by a background thread, in pieces of up to {@link #BUFFER_SIZE} bytes, and written
+ * to the volume in ascending order of cluster index, so that the volume is written sequentially.  The clusters of the
+ * new directories are written next, then each FAT is updated in a single pass and, finally, the entries of the
+ * top-level items are appended to the target directory.
+ * </p>
+ * <p>
+ * Because the entries in the FATs and the target directory are written last, the volume remains consistent if the
+ * import is cancelled or fails while the data are being written: the clusters that have been written are still
+ * unused.
+ * </p>
+ */
+
+public class FileImporter
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The maximum length of a piece of a file that is written to the volume. */
+	private static final	int		BUFFER_SIZE	= 1 << 22;	// 4 MiB
+
+	/** The number of buffers that are shared by the reader thread and the writer. */
+	private static final	int		NUM_BUFFERS	= 4;
+
+	/** The maximum length of a file on a FAT32 volume. */
+	private static final	long	MAX_FILE_LENGTH	= 0xFFFFFFFFL;
+
+	/** The number of special entries ("." and "..") at the start of a directory other than the root directory. */
+	private static final	int		NUM_SPECIAL_ENTRIES	= 2;
+
+	/** The interval (in milliseconds) between successive checks for cancellation while waiting for a buffer. */
+	private static final	long	QUEUE_POLL_INTERVAL	= 100;
+
+	/** The suffix of the name of the reader thread. */
+	private static final	String	READER_THREAD_NAME_SUFFIX	= "importReader";
+
+	/** Miscellaneous strings. */
+	private static final	String	PLANNING_STR					= "Planning import";
+	private static final	String	WRITING_FILES_STR				= "Writing files";
+	private static final	String	WRITING_DIRECTORIES_STR			= "Writing directories";
+	private static final	String	UPDATING_FATS_STR				= "Updating FATs";
+	private static final	String	UPDATING_TARGET_DIRECTORY_STR	= "Updating target directory";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	FAILED_TO_READ_ATTRIBUTES =
+				"Failed to read the attributes of the file.";
+
+		String	FAILED_TO_LIST_DIRECTORY =
+				"Failed to list the entries of the directory.";
+
+		String	NAME_TOO_LONG =
+				"The name of the file is longer than %d characters.";
+
+		String	FILE_TOO_LARGE =
+				"The file is too large for a FAT32 volume.";
+
+		String	NAME_CONFLICT =
+				"The name of the file conflicts with the name of another entry in the target directory.";
+
+		String	TOO_MANY_ENTRIES =
+				"%s\nThe directory would contain more than the maximum number of entries.";
+
+		String	NOT_ENOUGH_CONTIGUOUS_SPACE =
+				"%s\nThere is no run of %d unused clusters on the volume.";
+
+		String	ERROR_READING_FILE =
+				"An error occurred when reading the file.";
+
+		String	FILE_LENGTH_CHANGED =
+				"The length of the file changed during the import.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private FileImporter()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Copies the specified files and directories of the host file system, including the subtrees of the directories,
+	 * to the specified directory of a volume, and returns the result.  The target directory is re-read after the
+	 * import.
+	 *
+	 * @param  directory
+	 *           the directory of the volume to which the files and directories will be copied.
+	 * @param  locations
+	 *           the locations of the files and directories that will be copied.  Locations that are neither regular
+	 *           files nor directories are ignored.
+	 * @param  taskStatus
+	 *           the status of the task that is importing the files.
+	 * @return the result of the import, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if there is not enough contiguous space on the volume, or if an error occurred when reading or writing
+	 *           the volume.
+	 * @throws FileException
+	 *           if a file cannot be imported or an error occurred when reading a file.
+	 */
+
+	public static Result importFiles(
+		Fat32Directory	directory,
+		List<Path>		locations,
+		ITaskStatus		taskStatus)
+		throws VolumeException, FileException
+	{
+		// Update task message
+		taskStatus.setMessage(PLANNING_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Get volume parameters
+		Fat32Volume volume = directory.getVolume();
+		Fat32Fat fat = volume.getFat();
+		int bytesPerCluster = volume.getBytesPerCluster();
+
+		// Get names and short names of existing entries of target directory
+		Set<String> names = new HashSet<>();
+		Set<String> shortNames = new HashSet<>();
+		for (Fat32Directory.Entry entry : directory.getEntries())
+		{
+			names.add(entry.getName().toUpperCase());
+			shortNames.add(entry.getShortName());
+		}
+
+		// Create items for files and directories
+		List<Item> topItems = new ArrayList<>();
+		List<Item> items = new ArrayList<>();
+		for (Path location : locations)
+		{
+			if (taskStatus.isCancelled())
+				return null;
+			Item item = createItem(location, names, shortNames, items, taskStatus);
+			if (item != null)
+				topItems.add(item);
+		}
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Calculate number of clusters of each item
+		for (Item item : items)
+		{
+			if (item.directory)
+			{
+				int numEntries = NUM_SPECIAL_ENTRIES;
+				for (Item child : item.children)
+					numEntries += child.numEntries();
+				if (numEntries > Fat32Directory.MAX_NUM_ENTRIES)
+					throw new VolumeException(ErrorMsg.TOO_MANY_ENTRIES, item.location);
+				item.numClusters = roundUpQuotient(numEntries * Fat32Directory.Entry.SIZE, bytesPerCluster);
+			}
+			else
+				item.numClusters = roundUpQuotient(item.length, bytesPerCluster);
+		}
+
+		// Read clusters of target directory and calculate number of clusters by which it must be extended
+		byte[] targetData = directory.readData();
+		int targetEndIndex = Fat32Directory.findEndOfEntries(targetData);
+		int targetNumEntries = targetEndIndex;
+		for (Item item : topItems)
+			targetNumEntries += item.numEntries();
+		if (targetNumEntries > Fat32Directory.MAX_NUM_ENTRIES)
+			throw new VolumeException(ErrorMsg.TOO_MANY_ENTRIES, directory.getPathname());
+		int targetNumClusters = roundUpQuotient(targetNumEntries * Fat32Directory.Entry.SIZE, bytesPerCluster);
+		int extensionNumClusters = Math.max(0, targetNumClusters - targetData.length / bytesPerCluster);
+
+		// Allocate runs of unused clusters, largest first, by best fit
+		TreeMap<Integer, ArrayDeque<Integer>> freeRuns = new TreeMap<>();
+		for (Fat32Fat.Run run : fat.getUnusedRuns())
+			freeRuns.computeIfAbsent(run.length(), key -> new ArrayDeque<>()).add(run.startIndex());
+		List<Item> allocatedItems = new ArrayList<>(items.stream().filter(item -> item.numClusters > 0).toList());
+		allocatedItems.sort(Comparator.comparingInt((Item item) -> item.numClusters).reversed());
+		for (Item item : allocatedItems)
+			item.clusterIndex = allocate(freeRuns, item.numClusters, item.location.toString());
+		int extensionIndex = (extensionNumClusters == 0)
+									? 0
+									: allocate(freeRuns, extensionNumClusters, directory.getPathname());
+
+		// Set cluster indices in directory entries of items
+		for (Item item : items)
+			Fat32Directory.setClusterIndex(item.clusterIndex, item.entryData,
+										   item.entryData.length - Fat32Directory.Entry.SIZE);
+
+		// Sort allocated items by cluster index, so that the volume is written sequentially
+		allocatedItems.sort(Comparator.comparingInt(item -> item.clusterIndex));
+
+		// Get total number of bytes to write
+		long totalNumBytes = (long)extensionNumClusters * bytesPerCluster;
+		for (Item item : allocatedItems)
+			totalNumBytes += item.directory ? (long)item.numClusters * bytesPerCluster : item.length;
+
+		// Create reader thread
+		ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+				DaemonFactory.create(FileImporter.class.getSimpleName() + "-" + READER_THREAD_NAME_SUFFIX, runnable));
+
+		// Write items to volume
+		long startTime = System.nanoTime();
+		Progress progress = new Progress(taskStatus, totalNumBytes);
+		AtomicBoolean stopped = new AtomicBoolean();
+		AtomicReference<FileException> readException = new AtomicReference<>();
+		try
+		{
+			// Open volume for reading and writing
+			volume.open(Volume.Access.READ_WRITE, volume.isUnbufferedIO());
+
+			// Update task message
+			taskStatus.setMessage(WRITING_FILES_STR);
+			taskStatus.setProgress(0.0);
+
+			// Start reading files on background thread
+			List<Item> files = allocatedItems.stream().filter(item -> !item.directory).toList();
+			BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(NUM_BUFFERS);
+			for (int i = 0; i < NUM_BUFFERS; i++)
+				freeBuffers.add(new byte[BUFFER_SIZE]);
+			BlockingQueue<Piece> pieces = new ArrayBlockingQueue<>(NUM_BUFFERS + 1);
+			executor.execute(() -> readFiles(files, freeBuffers, pieces, stopped, readException));
+
+			// Write pieces of files to volume
+			int bytesPerSector = volume.getBytesPerSector();
+			Item currentFile = null;
+			long sectorIndex = 0;
+			while (true)
+			{
+				// Get next piece
+				Piece piece = null;
+				while (piece == null)
+				{
+					if (taskStatus.isCancelled())
+						return null;
+					piece = pieces.poll(QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+				}
+
+				// Stop at end of files or after error in reader
+				if (piece.item() == null)
+					break;
+
+				// Seek start of file
+				if (piece.item() != currentFile)
+				{
+					currentFile = piece.item();
+					sectorIndex = volume.clusterIndexToSectorIndex(currentFile.clusterIndex);
+					volume.seekSector(sectorIndex);
+				}
+
+				// Write piece, padded to a whole number of sectors
+				int writeLength = roundUpQuotient(piece.length(), bytesPerSector) * bytesPerSector;
+				Arrays.fill(piece.buffer(), piece.length(), writeLength, (byte)0);
+				try
+				{
+					volume.write(piece.buffer(), 0, writeLength);
+				}
+				finally
+				{
+					freeBuffers.add(piece.buffer());
+				}
+
+				// Update progress
+				progress.add(piece.length());
+			}
+
+			// Throw any exception from reader
+			if (readException.get() != null)
+				throw readException.get();
+
+			// Write clusters of new directories
+			taskStatus.setMessage(WRITING_DIRECTORIES_STR);
+			int parentIndex = directory.isRoot() ? 0 : directory.getClusterIndex();
+			for (Item item : allocatedItems)
+			{
+				if (taskStatus.isCancelled())
+					return null;
+				if (item.directory)
+				{
+					byte[] data = createDirectoryData(item, (item.parent == null) ? parentIndex
+																				   : item.parent.clusterIndex,
+													  bytesPerCluster);
+					volume.seekSector(volume.clusterIndexToSectorIndex(item.clusterIndex));
+					volume.write(data);
+					progress.add(data.length);
+				}
+			}
+
+			// Collect runs of allocated clusters; link last cluster of target directory to its extension
+			Map<Integer, Integer> links = new HashMap<>();
+			List<Fat32Fat.Run> runs = new ArrayList<>();
+			for (Item item : allocatedItems)
+				runs.add(new Fat32Fat.Run(item.clusterIndex, item.numClusters));
+			if (extensionNumClusters > 0)
+			{
+				int lastIndex = 0;
+				Fat32Fat.IndexIterator it = fat.indexIterator(directory.getClusterIndex());
+				while (it.hasNext())
+					lastIndex = it.next();
+				runs.add(new Fat32Fat.Run(extensionIndex, extensionNumClusters));
+				links.put(lastIndex, extensionIndex);
+			}
+
+			// Stop if task was cancelled
+			if (taskStatus.isCancelled())
+				return null;
+
+			// Update FATs
+			taskStatus.setMessage(UPDATING_FATS_STR);
+			volume.writeClusterChains(runs, links);
+
+			// Append entries of top-level items to target directory
+			taskStatus.setMessage(UPDATING_TARGET_DIRECTORY_STR);
+			byte[] data = Arrays.copyOf(targetData, targetData.length + extensionNumClusters * bytesPerCluster);
+			int offset = targetEndIndex * Fat32Directory.Entry.SIZE;
+			for (Item item : topItems)
+			{
+				System.arraycopy(item.entryData, 0, data, offset, item.entryData.length);
+				offset += item.entryData.length;
+			}
+			directory.writeData(data, 0, false);
+			progress.add((long)extensionNumClusters * bytesPerCluster);
+		}
+		catch (InterruptedException e)
+		{
+			return null;
+		}
+		finally
+		{
+			// Stop reader
+			stopped.set(true);
+			executor.shutdownNow();
+
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+
+		// Re-read target directory
+		directory.read(null);
+
+		// Return result
+		int numDirectories = (int)items.stream().filter(item -> item.directory).count();
+		long numBytes = items.stream().filter(item -> !item.directory).mapToLong(item -> item.length).sum();
+		return new Result(items.size() - numDirectories, numDirectories, numBytes, System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates an item for the file or directory at the specified location, and items for the contents of a directory.
+	 * The directory entry of each item is created with a cluster index of 0.
+	 *
+	 * @param  location
+	 *           the location of the file or directory.
+	 * @param  names
+	 *           the upper-case names of the entries of the directory that will contain the item.
+	 * @param  shortNames
+	 *           the short names of the entries of the directory that will contain the item.
+	 * @param  items
+	 *           the list to which the new items will be added.
+	 * @param  taskStatus
+	 *           the status of the task that is importing the files.
+	 * @return the item for {@code location}, or {@code null} if the location is neither a regular file nor a directory.
+	 * @throws FileException
+	 *           if the file cannot be imported or an error occurred when reading its attributes.
+	 */
+
+	private static Item createItem(
+		Path		location,
+		Set<String>	names,
+		Set<String>	shortNames,
+		List<Item>	items,
+		ITaskStatus	taskStatus)
+		throws FileException
+	{
+		// Read attributes of file
+		BasicFileAttributes attrs = null;
+		try
+		{
+			attrs = Files.readAttributes(location, BasicFileAttributes.class);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.FAILED_TO_READ_ATTRIBUTES, e, location);
+		}
+		if (!attrs.isRegularFile() && !attrs.isDirectory())
+			return null;
+
+		// Validate name and length
+		String name = location.getFileName().toString();
+		if (name.length() > Fat32Directory.MAX_NAME_LENGTH)
+			throw new FileException(ErrorMsg.NAME_TOO_LONG, location, Fat32Directory.MAX_NAME_LENGTH);
+		if (!names.add(name.toUpperCase()))
+			throw new FileException(ErrorMsg.NAME_CONFLICT, location);
+		if (attrs.size() > MAX_FILE_LENGTH)
+			throw new FileException(ErrorMsg.FILE_TOO_LARGE, location);
+
+		// Create item
+		Item item = new Item(location, attrs);
+		String shortName = Fat32Directory.createShortName(name, shortNames);
+		shortNames.add(shortName);
+		item.entryData = Fat32Directory.createEntry(name, shortName, item.attributes(), 0, item.length,
+													item.creationTime, item.lastModificationTime,
+													item.accessTime.toLocalDate());
+		items.add(item);
+
+		// Create items for contents of directory
+		if (item.directory)
+		{
+			// List entries of directory
+			List<Path> children = null;
+			try (Stream<Path> stream = Files.list(location))
+			{
+				children = stream.sorted().toList();
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.FAILED_TO_LIST_DIRECTORY, e, location);
+			}
+
+			// Create items for entries
+			Set<String> childNames = new HashSet<>();
+			Set<String> childShortNames = new HashSet<>();
+			childShortNames.add(Fat32Directory.SPECIAL_DIRECTORY_NAME_THIS);
+			childShortNames.add(Fat32Directory.SPECIAL_DIRECTORY_NAME_PARENT);
+			for (Path child : children)
+			{
+				if (taskStatus.isCancelled())
+					break;
+				Item childItem = createItem(child, childNames, childShortNames, items, taskStatus);
+				if (childItem != null)
+				{
+					childItem.parent = item;
+					item.children.add(childItem);
+				}
+			}
+		}
+
+		// Return item
+		return item;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Removes a run of the specified number of clusters from the best-fitting run of the specified unused runs, and
+	 * returns the index of its first cluster.
+	 *
+	 * @param  freeRuns
+	 *           the start indices of the unused runs of clusters, keyed by the length of the run.
+	 * @param  numClusters
+	 *           the number of clusters that are required.
+	 * @param  name
+	 *           the name of the item for which the clusters are required, for use in an error message.
+	 * @return the index of the first cluster of the allocated run.
+	 * @throws VolumeException
+	 *           if there is no unused run of {@code numClusters} clusters.
+	 */
+
+	private static int allocate(
+		TreeMap<Integer, ArrayDeque<Integer>>	freeRuns,
+		int										numClusters,
+		String									name)
+		throws VolumeException
+	{
+		// Find shortest run that is long enough
+		Map.Entry<Integer, ArrayDeque<Integer>> entry = freeRuns.ceilingEntry(numClusters);
+		if (entry == null)
+			throw new VolumeException(ErrorMsg.NOT_ENOUGH_CONTIGUOUS_SPACE, name, numClusters);
+
+		// Remove run
+		int length = entry.getKey();
+		int startIndex = entry.getValue().removeFirst();
+		if (entry.getValue().isEmpty())
+			freeRuns.remove(length);
+
+		// Return remainder of run to free runs
+		if (length > numClusters)
+			freeRuns.computeIfAbsent(length - numClusters, key -> new ArrayDeque<>()).add(startIndex + numClusters);
+
+		// Return start index of allocated run
+		return startIndex;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the specified files, in order, into the free buffers and adds the pieces to the specified queue.  A piece
+	 * with a {@code null} item is added when all the files have been read or an error has occurred.
+	 *
+	 * @param files
+	 *          the files that will be read.
+	 * @param freeBuffers
+	 *          the buffers that are available to the reader.
+	 * @param pieces
+	 *          the queue to which pieces of files will be added.
+	 * @param stopped
+	 *          the flag that is set when the reader should stop.
+	 * @param exception
+	 *          the reference that is set to any exception that occurs.
+	 */
+
+	private static void readFiles(
+		List<Item>						files,
+		BlockingQueue<byte[]>			freeBuffers,
+		BlockingQueue<Piece>			pieces,
+		AtomicBoolean					stopped,
+		AtomicReference<FileException>	exception)
+	{
+		try
+		{
+			for (Item file : files)
+			{
+				try (FileChannel channel = FileChannel.open(file.location, StandardOpenOption.READ))
+				{
+					long remaining = file.length;
+					while (remaining > 0)
+					{
+						// Get free buffer
+						byte[] buffer = null;
+						while (buffer == null)
+						{
+							if (stopped.get())
+								return;
+							buffer = freeBuffers.poll(QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+						}
+
+						// Read piece of file
+						int length = (int)Math.min(remaining, BUFFER_SIZE);
+						ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+						while (byteBuffer.hasRemaining())
+						{
+							if (channel.read(byteBuffer) < 0)
+							{
+								exception.set(new FileException(ErrorMsg.FILE_LENGTH_CHANGED, file.location));
+								return;
+							}
+						}
+
+						// Add piece to queue
+						pieces.put(new Piece(file, buffer, length));
+						remaining -= length;
+					}
+				}
+				catch (IOException e)
+				{
+					exception.set(new FileException(ErrorMsg.ERROR_READING_FILE, e, file.location));
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e)
+		{
+			// stop reading
+		}
+		finally
+		{
+			// Signal end of files
+			pieces.offer(new Piece(null, null, 0));
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the contents of the clusters of the specified new directory: the special entries followed by the entries
+	 * of its children.
+	 *
+	 * @param  item
+	 *           the item of the directory.
+	 * @param  parentClusterIndex
+	 *           the index of the first cluster of the parent of the directory, or 0 if the parent is the root
+	 *           directory.
+	 * @param  bytesPerCluster
+	 *           the number of bytes per cluster of the volume.
+	 * @return the contents of the clusters of the directory.
+	 */
+
+	private static byte[] createDirectoryData(
+		Item	item,
+		int		parentClusterIndex,
+		int		bytesPerCluster)
+	{
+		// Allocate buffer for clusters
+		byte[] data = new byte[item.numClusters * bytesPerCluster];
+
+		// Create special entries
+		byte[] thisEntry = Fat32Directory.createEntry(Fat32Directory.SPECIAL_DIRECTORY_NAME_THIS,
+													  Fat32Directory.SPECIAL_DIRECTORY_NAME_THIS, item.attributes(),
+													  item.clusterIndex, 0, item.creationTime,
+													  item.lastModificationTime, item.accessTime.toLocalDate());
+		byte[] parentEntry = Fat32Directory.createEntry(Fat32Directory.SPECIAL_DIRECTORY_NAME_PARENT,
+														Fat32Directory.SPECIAL_DIRECTORY_NAME_PARENT,
+														item.attributes(), parentClusterIndex, 0, item.creationTime,
+														item.lastModificationTime, item.accessTime.toLocalDate());
+		System.arraycopy(thisEntry, 0, data, 0, thisEntry.length);
+		System.arraycopy(parentEntry, 0, data, thisEntry.length, parentEntry.length);
+
+		// Append entries of children
+		int offset = NUM_SPECIAL_ENTRIES * Fat32Directory.Entry.SIZE;
+		for (Item child : item.children)
+		{
+			System.arraycopy(child.entryData, 0, data, offset, child.entryData.length);
+			offset += child.entryData.length;
+		}
+
+		// Return data
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	private static int roundUpQuotient(
+		long	dividend,
+		int		divisor)
+	{
+		return (int)((dividend + divisor - 1) / divisor);
+	}
+
+	//------------------------------------------------------------------
+
+	private static LocalDateTime toLocalDateTime(
+		FileTime	time)
+	{
+		return LocalDateTime.ofInstant(time.toInstant(), ZoneId.systemDefault());
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of an import.
+	 *
+	 * @param numFiles
+	 *          the number of files that were imported.
+	 * @param numDirectories
+	 *          the number of directories that were created.
+	 * @param numBytes
+	 *          the number of bytes of file data that were copied.
+	 * @param nanoseconds
+	 *          the time taken by the import.
+	 */
+
+	public record Result(
+		int		numFiles,
+		int		numDirectories,
+		long	numBytes,
+		long	nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: PIECE OF FILE
+
+
+	/**
+	 * This record encapsulates a piece of a file that has been read from the host and is to be written to the volume.
+	 *
+	 * @param item
+	 *          the item of the file, or {@code null} to signal the end of the files.
+	 * @param buffer
+	 *          the buffer that contains the piece.
+	 * @param length
+	 *          the length of the piece.
+	 */
+
+	private record Piece(
+		Item	item,
+		byte[]	buffer,
+		int		length)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: ITEM
+
+
+	/**
+	 * This class encapsulates a file or directory that is to be imported.
+	 */
+
+	private static class Item
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	Path			location;
+		private	boolean			directory;
+		private	long			length;
+		private	LocalDateTime	creationTime;
+		private	LocalDateTime	lastModificationTime;
+		private	LocalDateTime	accessTime;
+		private	Item			parent;
+		private	List<Item>		children;
+		private	byte[]			entryData;
+		private	int				clusterIndex;
+		private	int				numClusters;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Item(
+			Path				location,
+			BasicFileAttributes	attrs)
+		{
+			// Initialise instance variables
+			this.location = location;
+			directory = attrs.isDirectory();
+			length = directory ? 0 : attrs.size();
+			creationTime = toLocalDateTime(attrs.creationTime());
+			lastModificationTime = toLocalDateTime(attrs.lastModifiedTime());
+			accessTime = toLocalDateTime(attrs.lastAccessTime());
+			children = new ArrayList<>();
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private EnumSet<Fat32Directory.Attr> attributes()
+		{
+			return EnumSet.of(directory ? Fat32Directory.Attr.DIRECTORY : Fat32Directory.Attr.ARCHIVE);
+		}
+
+		//--------------------------------------------------------------
+
+		private int numEntries()
+		{
+			return entryData.length / Fat32Directory.Entry.SIZE;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: PROGRESS
+
+
+	/**
+	 * This class updates the progress of the task that is importing files from the number of bytes that have been
+	 * written.
+	 */
+
+	private static class Progress
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	ITaskStatus			taskStatus;
+		private	long				totalNumBytes;
+		private	long				numBytes;
+		private	DiscretisedValue	discreteProgress;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Progress(
+			ITaskStatus	taskStatus,
+			long		totalNumBytes)
+		{
+			// Initialise instance variables
+			this.taskStatus = taskStatus;
+			this.totalNumBytes = totalNumBytes;
+			discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private void add(
+			long	deltaNumBytes)
+		{
+			numBytes += deltaNumBytes;
+			double progress = (totalNumBytes == 0) ? 1.0 : (double)numBytes / (double)totalNumBytes;
+			if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+				taskStatus.setProgress(progress);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
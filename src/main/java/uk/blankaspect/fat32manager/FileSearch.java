@@ -0,0 +1,393 @@
+/*====================================================================*\
+
+FileSearch.java
+
+Class: search for directory entries that match a set of criteria.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import uk.blankaspect.common.function.IProcedure1;
+
+import uk.blankaspect.common.matcher.SimpleWildcardPatternMatcher;
+
+import uk.blankaspect.common.task.ICancellable;
+
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: SEARCH FOR DIRECTORY ENTRIES
+
+
+/**
+ * This class implements a search of a tree of directories of a FAT32 volume for the entries of files and directories
+ * that match a set of {@linkplain Criteria criteria}.
+ * <p>
+ * Any subdirectories of the tree that have not been read are first read with a {@link DirectoryTreeLoader}.  The tree
+ * is then walked in memory on the common work-stealing {@link ForkJoinPool}, one task per directory, and the matching
+ * entries of each directory are passed to a handler as soon as the directory has been searched.  Because a tree that
+ * has been read remains attached to its volume, a repeated search of the same tree does not access the volume.
+ * </p>
+ */
+
+public class FileSearch
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	/** The criteria of this search. */
+	private	Criteria	criteria;
+
+	/** The regular-expression pattern that is matched against the names of entries, or {@code null} if any name
+		matches. */
+	private	Pattern		namePattern;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a search for directory entries that match the specified criteria.
+	 *
+	 * @param  criteria
+	 *           the criteria of the search.
+	 * @throws PatternSyntaxException
+	 *           if the name pattern of {@code criteria} is a regular expression whose syntax is invalid.
+	 */
+
+	public FileSearch(
+		Criteria	criteria)
+	{
+		// Validate arguments
+		if (criteria == null)
+			throw new IllegalArgumentException("Null criteria");
+
+		// Initialise instance variables
+		this.criteria = criteria;
+		String pattern = criteria.namePattern();
+		if ((pattern != null) && !pattern.isEmpty())
+		{
+			int flags = criteria.ignoreCase() ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+			namePattern = criteria.regex()
+					? Pattern.compile(pattern, flags)
+					: Pattern.compile(SimpleWildcardPatternMatcher
+											.wildcardPatternToRegex(pattern, SimpleWildcardPatternMatcher.Mode.ALL),
+									  flags);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Searches the specified directory and all its subdirectories for entries that match the criteria of this search,
+	 * and returns the number of matching entries.  The matching entries of each directory are passed to the specified
+	 * handler as a batch.  The handler may be invoked concurrently on several threads.
+	 *
+	 * @param  directory
+	 *           the directory at the root of the tree that will be searched.
+	 * @param  resultHandler
+	 *           the handler to which the matching entries of each directory will be passed.
+	 * @param  cancellable
+	 *           the object that is polled to determine whether the search has been cancelled.
+	 * @return the number of entries that matched the criteria of this search.
+	 * @throws VolumeException
+	 *           if an error occurred when reading a directory from the volume.
+	 */
+
+	public int search(
+		Fat32Directory							directory,
+		IProcedure1<List<Fat32Directory.Entry>>	resultHandler,
+		ICancellable							cancellable)
+		throws VolumeException
+	{
+		// Read unread subdirectories of tree
+		DirectoryTreeLoader.load(directory, null, cancellable);
+		if (cancellable.isCancelled())
+			return 0;
+
+		// Search tree
+		return ForkJoinPool.commonPool().invoke(new DirectorySearch(directory, resultHandler, cancellable));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns {@code true} if the specified directory entry matches the criteria of this search.  The entries of
+	 * special directories and volume labels never match.
+	 *
+	 * @param  entry
+	 *           the entry that will be tested.
+	 * @return {@code true} if {@code entry} matches the criteria of this search.
+	 */
+
+	public boolean matches(
+		Fat32Directory.Entry	entry)
+	{
+		// Exclude special directories and volume labels
+		if (entry.isSpecialDirectory() || entry.isVolumeLabel())
+			return false;
+
+		// Test kind of entry
+		boolean file = entry.isFile();
+		if (!file && !criteria.includeDirectories())
+			return false;
+
+		// Test length of file; a directory has no length
+		if ((criteria.minLength() != null) || (criteria.maxLength() != null))
+		{
+			if (!file)
+				return false;
+			long length = entry.getFileLength();
+			if ((criteria.minLength() != null) && (length < criteria.minLength()))
+				return false;
+			if ((criteria.maxLength() != null) && (length > criteria.maxLength()))
+				return false;
+		}
+
+		// Test date of last modification
+		if ((criteria.earliestModificationDate() != null) || (criteria.latestModificationDate() != null))
+		{
+			LocalDateTime time = entry.getLastModificationTime();
+			if (time == null)
+				return false;
+			LocalDate date = time.toLocalDate();
+			if ((criteria.earliestModificationDate() != null) && date.isBefore(criteria.earliestModificationDate()))
+				return false;
+			if ((criteria.latestModificationDate() != null) && date.isAfter(criteria.latestModificationDate()))
+				return false;
+		}
+
+		// Test attributes
+		for (Fat32Directory.Attr attr : criteria.attributes())
+		{
+			if (!entry.hasAttribute(attr))
+				return false;
+		}
+
+		// Test name; a wildcard pattern must match the whole name, a regular expression any part of it
+		if (namePattern != null)
+		{
+			String name = entry.getName();
+			return criteria.regex() ? namePattern.matcher(name).find() : namePattern.matcher(name).matches();
+		}
+
+		// All criteria were met
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: CRITERIA OF A SEARCH
+
+
+	/**
+	 * This record encapsulates the criteria of a search for directory entries.  An entry matches if it meets all the
+	 * criteria; a criterion whose value is {@code null} (or, for the name pattern, empty) is ignored.
+	 *
+	 * @param namePattern
+	 *          the pattern that is matched against the name of an entry.
+	 * @param regex
+	 *          if {@code true}, {@code namePattern} is a regular expression that may match any part of a name;
+	 *          otherwise, it is a wildcard pattern that must match the whole name.
+	 * @param ignoreCase
+	 *          if {@code true}, letter case is ignored when {@code namePattern} is matched against a name.
+	 * @param minLength
+	 *          the minimum length of a file.
+	 * @param maxLength
+	 *          the maximum length of a file.
+	 * @param earliestModificationDate
+	 *          the earliest date of last modification.
+	 * @param latestModificationDate
+	 *          the latest date of last modification.
+	 * @param attributes
+	 *          the attributes that an entry must have.
+	 * @param includeDirectories
+	 *          if {@code true}, the entries of directories may match; otherwise, only the entries of files may match.
+	 */
+
+	public record Criteria(
+		String						namePattern,
+		boolean						regex,
+		boolean						ignoreCase,
+		Long						minLength,
+		Long						maxLength,
+		LocalDate					earliestModificationDate,
+		LocalDate					latestModificationDate,
+		Set<Fat32Directory.Attr>	attributes,
+		boolean						includeDirectories)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a set of search criteria.
+		 */
+
+		public Criteria
+		{
+			attributes = (attributes == null) ? EnumSet.noneOf(Fat32Directory.Attr.class) : EnumSet.copyOf(attributes);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: SEARCH OF A DIRECTORY
+
+
+	/**
+	 * This class implements a task that searches a directory for matching entries and forks a task for each of its
+	 * subdirectories.  The result of the task is the number of matching entries in the subtree of the directory.
+	 */
+
+	private class DirectorySearch
+		extends RecursiveTask<Integer>
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/** The serial version identifier. */
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The directory that is searched by this task. */
+		private	Fat32Directory							directory;
+
+		/** The handler to which matching entries are passed. */
+		private	IProcedure1<List<Fat32Directory.Entry>>	resultHandler;
+
+		/** The object that is polled to determine whether the search has been cancelled. */
+		private	ICancellable							cancellable;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a task that searches the specified directory and its subdirectories.
+		 *
+		 * @param directory
+		 *          the directory that will be searched.
+		 * @param resultHandler
+		 *          the handler to which matching entries will be passed.
+		 * @param cancellable
+		 *          the object that is polled to determine whether the search has been cancelled.
+		 */
+
+		private DirectorySearch(
+			Fat32Directory							directory,
+			IProcedure1<List<Fat32Directory.Entry>>	resultHandler,
+			ICancellable							cancellable)
+		{
+			// Initialise instance variables
+			this.directory = directory;
+			this.resultHandler = resultHandler;
+			this.cancellable = cancellable;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * {@inheritDoc}
+		 */
+
+		@Override
+		protected Integer compute()
+		{
+			// Stop if search has been cancelled
+			if (cancellable.isCancelled())
+				return 0;
+
+			// Fork tasks to search subdirectories
+			List<DirectorySearch> tasks = new ArrayList<>();
+			for (Fat32Directory child : directory.getChildren())
+			{
+				DirectorySearch task = new DirectorySearch(child, resultHandler, cancellable);
+				task.fork();
+				tasks.add(task);
+			}
+
+			// Search entries of directory
+			List<Fat32Directory.Entry> matches = new ArrayList<>();
+			for (Fat32Directory.Entry entry : directory.getEntries())
+			{
+				if (matches(entry))
+					matches.add(entry);
+			}
+			if (!matches.isEmpty())
+				resultHandler.invoke(matches);
+
+			// Wait for subdirectories to be searched
+			int numMatches = matches.size();
+			for (DirectorySearch task : tasks)
+				numMatches += task.join();
+
+			// Return number of matching entries
+			return numMatches;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,714 @@
+/*====================================================================*\
+
+FileSearchDialog.java
+
+Class: file-search dialog.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.lang.invoke.MethodHandles;
+
+import java.time.LocalDate;
+
+import java.time.format.DateTimeParseException;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import java.util.regex.PatternSyntaxException;
+
+import javafx.application.Platform;
+
+import javafx.beans.property.SimpleBooleanProperty;
+
+import javafx.concurrent.Task;
+
+import javafx.geometry.HPos;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TextFormatter;
+
+import javafx.scene.layout.ColumnConstraints;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.VBox;
+
+import javafx.stage.Window;
+
+import uk.blankaspect.common.comparator.CompoundStringComparator;
+
+import uk.blankaspect.common.logging.Logger;
+
+import uk.blankaspect.common.regex.RegexUtils;
+
+import uk.blankaspect.common.string.StringUtils;
+
+import uk.blankaspect.ui.jfx.button.Buttons;
+
+import uk.blankaspect.ui.jfx.dialog.SimpleModalDialog;
+
+import uk.blankaspect.ui.jfx.label.Labels;
+
+import uk.blankaspect.ui.jfx.tableview.SimpleTableView;
+
+import uk.blankaspect.ui.jfx.text.TextUtils;
+
+import uk.blankaspect.ui.jfx.textfield.FilterFactory;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: FILE-SEARCH DIALOG
+
+
+public class FileSearchDialog
+	extends SimpleModalDialog<Void>
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The horizontal gap between adjacent columns of the control pane. */
+	private static final	double	CONTROL_PANE_H_GAP	= 6.0;
+
+	/** The vertical gap between adjacent rows of the control pane. */
+	private static final	double	CONTROL_PANE_V_GAP	= 6.0;
+
+	/** The horizontal gap between adjacent components of a row of the control pane. */
+	private static final	double	CONTROL_H_GAP	= 8.0;
+
+	/** The spacing between adjacent children of the main pane. */
+	private static final	double	MAIN_PANE_GAP	= 6.0;
+
+	/** The padding around the main pane. */
+	private static final	Insets	MAIN_PANE_PADDING	= new Insets(4.0, 2.0, 0.0, 2.0);
+
+	/** The preferred height of the table view. */
+	private static final	double	TABLE_VIEW_HEIGHT	= 360.0;
+
+	/** The number of columns of the <i>name</i> field. */
+	private static final	int		NAME_FIELD_NUM_COLUMNS	= 32;
+
+	/** The maximum number of digits of a <i>length</i> field. */
+	private static final	int		LENGTH_FIELD_MAX_NUM_DIGITS	= 12;
+
+	/** The number of columns of a <i>date</i> field. */
+	private static final	int		DATE_FIELD_NUM_COLUMNS	= 10;
+
+	/** The attributes that may be selected as criteria. */
+	private static final	List<Fat32Directory.Attr>	SEARCH_ATTRS	=
+			List.of(Fat32Directory.Attr.READ_ONLY, Fat32Directory.Attr.HIDDEN, Fat32Directory.Attr.SYSTEM,
+					Fat32Directory.Attr.ARCHIVE);
+
+	/** Miscellaneous strings. */
+	private static final	String	NAME_STR				= "Name";
+	private static final	String	REGEX_STR				= "Regular expression";
+	private static final	String	IGNORE_CASE_STR			= "Ignore case";
+	private static final	String	LENGTH_STR				= "Length";
+	private static final	String	MODIFIED_STR			= "Modified";
+	private static final	String	ATTRIBUTES_STR			= "Attributes";
+	private static final	String	ATTRS_STR				= "Attrs";
+	private static final	String	INCLUDE_DIRECTORIES_STR	= "Include directories";
+	private static final	String	PATHNAME_STR			= "Pathname";
+	private static final	String	DATE_PROMPT_STR			= "yyyy-mm-dd";
+	private static final	String	SEARCH_STR				= "Search";
+	private static final	String	STOP_STR				= "Stop";
+	private static final	String	SEARCHING_STR			= "Searching ...";
+	private static final	String	FOUND_STR				= "%,d entries found in %,d ms";
+	private static final	String	STOPPED_STR				= "Search stopped : %,d entries found";
+	private static final	String	INVALID_PATTERN_STR		= "The regular expression is invalid.";
+	private static final	String	INVALID_DATE_STR		= "The date '%s' is invalid.";
+	private static final	String	INVALID_LENGTH_RANGE_STR	=
+			"The minimum length is greater than the maximum length.";
+
+	/** Identifiers of the columns of the table view. */
+	private interface ColumnId
+	{
+		String	ATTRIBUTES	= "attributes";
+		String	LENGTH		= "length";
+		String	MODIFIED	= "modified";
+		String	PATHNAME	= "pathname";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Class variables
+////////////////////////////////////////////////////////////////////////
+
+	private static	String						namePattern		= "";
+	private static	boolean						regex;
+	private static	boolean						ignoreCase		= true;
+	private static	String						minLength		= "";
+	private static	String						maxLength		= "";
+	private static	String						earliestDate	= "";
+	private static	String						latestDate		= "";
+	private static	Set<Fat32Directory.Attr>	attributes		= EnumSet.noneOf(Fat32Directory.Attr.class);
+	private static	boolean						includeDirectories;
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	Fat32Directory							directory;
+	private	SimpleTableView<Fat32Directory.Entry>	tableView;
+	private	Label									statusLabel;
+	private	SimpleBooleanProperty					searching;
+	private	Task<Integer>							task;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private FileSearchDialog(
+		Window			owner,
+		String			title,
+		Fat32Directory	directory)
+	{
+		// Call superclass constructor
+		super(owner, MethodHandles.lookup().lookupClass().getName(), title);
+
+		// Initialise instance variables
+		this.directory = directory;
+		searching = new SimpleBooleanProperty();
+
+		// Set properties
+		setResizable(true);
+
+		// Create control pane
+		GridPane controlPane = new GridPane();
+		controlPane.setHgap(CONTROL_PANE_H_GAP);
+		controlPane.setVgap(CONTROL_PANE_V_GAP);
+		controlPane.setAlignment(Pos.CENTER_LEFT);
+		controlPane.disableProperty().bind(searching);
+
+		// Initialise column constraints
+		ColumnConstraints column = new ColumnConstraints();
+		column.setMinWidth(Region.USE_PREF_SIZE);
+		column.setHalignment(HPos.RIGHT);
+		column.setHgrow(Priority.NEVER);
+		controlPane.getColumnConstraints().add(column);
+
+		column = new ColumnConstraints();
+		column.setHalignment(HPos.LEFT);
+		column.setHgrow(Priority.ALWAYS);
+		controlPane.getColumnConstraints().add(column);
+
+		// Initialise row index
+		int row = 0;
+
+		// Create field and check boxes: name
+		TextField nameField = new TextField(namePattern);
+		nameField.setPrefColumnCount(NAME_FIELD_NUM_COLUMNS);
+		CheckBox regexCheckBox = new CheckBox(REGEX_STR);
+		regexCheckBox.setSelected(regex);
+		CheckBox ignoreCaseCheckBox = new CheckBox(IGNORE_CASE_STR);
+		ignoreCaseCheckBox.setSelected(ignoreCase);
+		HBox namePane = new HBox(CONTROL_H_GAP, nameField, regexCheckBox, ignoreCaseCheckBox);
+		namePane.setAlignment(Pos.CENTER_LEFT);
+		controlPane.addRow(row++, new Label(NAME_STR), namePane);
+
+		// Create fields: length
+		TextField minLengthField = createLengthField(minLength);
+		TextField maxLengthField = createLengthField(maxLength);
+		HBox lengthPane = new HBox(CONTROL_H_GAP, minLengthField, Labels.hNoShrink("\u2013"), maxLengthField);
+		lengthPane.setAlignment(Pos.CENTER_LEFT);
+		controlPane.addRow(row++, new Label(LENGTH_STR), lengthPane);
+
+		// Create fields: date of last modification
+		TextField earliestDateField = createDateField(earliestDate);
+		TextField latestDateField = createDateField(latestDate);
+		HBox datePane = new HBox(CONTROL_H_GAP, earliestDateField, Labels.hNoShrink("\u2013"), latestDateField);
+		datePane.setAlignment(Pos.CENTER_LEFT);
+		controlPane.addRow(row++, new Label(MODIFIED_STR), datePane);
+
+		// Create check boxes: attributes
+		Map<Fat32Directory.Attr, CheckBox> attrCheckBoxes = new EnumMap<>(Fat32Directory.Attr.class);
+		HBox attrPane = new HBox(CONTROL_H_GAP);
+		attrPane.setAlignment(Pos.CENTER_LEFT);
+		for (Fat32Directory.Attr attr : SEARCH_ATTRS)
+		{
+			CheckBox checkBox =
+					new CheckBox(StringUtils.firstCharToUpperCase(attr.name().toLowerCase().replace('_', '-')));
+			checkBox.setSelected(attributes.contains(attr));
+			attrCheckBoxes.put(attr, checkBox);
+			attrPane.getChildren().add(checkBox);
+		}
+		controlPane.addRow(row++, new Label(ATTRIBUTES_STR), attrPane);
+
+		// Create check box: include directories
+		CheckBox includeDirectoriesCheckBox = new CheckBox(INCLUDE_DIRECTORIES_STR);
+		includeDirectoriesCheckBox.setSelected(includeDirectories);
+		controlPane.add(includeDirectoriesCheckBox, 1, row);
+
+		// Create table view
+		List<SimpleTableView.IColumn<Fat32Directory.Entry, ?>> columns =
+				List.of(pathnameColumn(), attributesColumn(), lengthColumn(), modifiedColumn());
+		tableView = new SimpleTableView<>(columns);
+		tableView.setPrefHeight(TABLE_VIEW_HEIGHT);
+		VBox.setVgrow(tableView, Priority.ALWAYS);
+
+		// Create status label
+		statusLabel = new Label();
+
+		// Create main pane
+		VBox mainPane = new VBox(MAIN_PANE_GAP, controlPane, tableView, statusLabel);
+		mainPane.setPadding(MAIN_PANE_PADDING);
+
+		// Set main pane as content of dialog
+		setContent(mainPane);
+
+		// Create button: search
+		Button searchButton = Buttons.hNoShrink(SEARCH_STR);
+		searchButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		searchButton.disableProperty().bind(searching);
+		searchButton.setOnAction(event ->
+		{
+			// Parse lengths and dates
+			Long minLength0 = minLengthField.getText().isEmpty() ? null : Long.valueOf(minLengthField.getText());
+			Long maxLength0 = maxLengthField.getText().isEmpty() ? null : Long.valueOf(maxLengthField.getText());
+			if ((minLength0 != null) && (maxLength0 != null) && (minLength0 > maxLength0))
+			{
+				Utils.showErrorMessage(this, SEARCH_STR, INVALID_LENGTH_RANGE_STR);
+				return;
+			}
+			LocalDate earliestDate0 = null;
+			LocalDate latestDate0 = null;
+			String text = null;
+			try
+			{
+				text = earliestDateField.getText().trim();
+				earliestDate0 = text.isEmpty() ? null : LocalDate.parse(text);
+				text = latestDateField.getText().trim();
+				latestDate0 = text.isEmpty() ? null : LocalDate.parse(text);
+			}
+			catch (DateTimeParseException e)
+			{
+				Utils.showErrorMessage(this, SEARCH_STR, String.format(INVALID_DATE_STR, text));
+				return;
+			}
+
+			// Get selected attributes
+			Set<Fat32Directory.Attr> attrs = EnumSet.noneOf(Fat32Directory.Attr.class);
+			for (Fat32Directory.Attr attr : attrCheckBoxes.keySet())
+			{
+				if (attrCheckBoxes.get(attr).isSelected())
+					attrs.add(attr);
+			}
+
+			// Create search
+			FileSearch search = null;
+			try
+			{
+				search = new FileSearch(new FileSearch.Criteria(nameField.getText(), regexCheckBox.isSelected(),
+																ignoreCaseCheckBox.isSelected(), minLength0,
+																maxLength0, earliestDate0, latestDate0, attrs,
+																includeDirectoriesCheckBox.isSelected()));
+			}
+			catch (PatternSyntaxException e)
+			{
+				Utils.showErrorMessage(this, SEARCH_STR,
+									   INVALID_PATTERN_STR + "\n" + RegexUtils.getExceptionMessage(e));
+				return;
+			}
+
+			// Perform search
+			search(search);
+		});
+		addButton(searchButton, HPos.RIGHT);
+
+		// Create button: stop
+		Button stopButton = Buttons.hNoShrink(STOP_STR);
+		stopButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		stopButton.disableProperty().bind(searching.not());
+		stopButton.setOnAction(event ->
+		{
+			if (task != null)
+				task.cancel();
+		});
+		addButton(stopButton, HPos.RIGHT);
+
+		// Create button: close
+		Button closeButton = Buttons.hNoShrink(CLOSE_STR);
+		closeButton.getProperties().put(BUTTON_GROUP_KEY, BUTTON_GROUP1);
+		closeButton.setOnAction(event -> requestClose());
+		addButton(closeButton, HPos.RIGHT);
+
+		// Fire 'close' button if Escape key is pressed
+		setKeyFireButton(closeButton, null);
+
+		// Request focus on 'name' field when dialog is shown
+		setOnShown(event -> nameField.requestFocus());
+
+		// Stop search and save state when dialog is closed
+		setOnHiding(event ->
+		{
+			// Stop search
+			if (task != null)
+				task.cancel();
+
+			// Save state
+			namePattern = nameField.getText();
+			regex = regexCheckBox.isSelected();
+			ignoreCase = ignoreCaseCheckBox.isSelected();
+			minLength = minLengthField.getText();
+			maxLength = maxLengthField.getText();
+			earliestDate = earliestDateField.getText();
+			latestDate = latestDateField.getText();
+			attributes.clear();
+			for (Fat32Directory.Attr attr : attrCheckBoxes.keySet())
+			{
+				if (attrCheckBoxes.get(attr).isSelected())
+					attributes.add(attr);
+			}
+			includeDirectories = includeDirectoriesCheckBox.isSelected();
+		});
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static void show(
+		Window			owner,
+		String			title,
+		Fat32Directory	directory)
+	{
+		new FileSearchDialog(owner, title, directory).showDialog();
+	}
+
+	//------------------------------------------------------------------
+
+	private static TextField createLengthField(
+		String	text)
+	{
+		TextField field = new TextField(text);
+		field.setPrefColumnCount(LENGTH_FIELD_MAX_NUM_DIGITS);
+		field.setTextFormatter(new TextFormatter<>(FilterFactory.decInteger(LENGTH_FIELD_MAX_NUM_DIGITS, false)));
+		return field;
+	}
+
+	//------------------------------------------------------------------
+
+	private static TextField createDateField(
+		String	text)
+	{
+		TextField field = new TextField(text);
+		field.setPrefColumnCount(DATE_FIELD_NUM_COLUMNS);
+		field.setPromptText(DATE_PROMPT_STR);
+		return field;
+	}
+
+	//------------------------------------------------------------------
+
+	private static SimpleTableView.IColumn<Fat32Directory.Entry, String> pathnameColumn()
+	{
+		return new SimpleTableView.IColumn<>()
+		{
+			@Override
+			public String getId()
+			{
+				return ColumnId.PATHNAME;
+			}
+
+			@Override
+			public String getTitle()
+			{
+				return PATHNAME_STR;
+			}
+
+			@Override
+			public double getPrefWidth()
+			{
+				return TextUtils.textHeightCeil(30.0);
+			}
+
+			@Override
+			public TableColumn<Fat32Directory.Entry, String> createColumn(
+				SimpleTableView<Fat32Directory.Entry>	tableView)
+			{
+				TableColumn<Fat32Directory.Entry, String> column =
+						SimpleTableView.IColumn.super.createColumn(tableView);
+				column.setComparator(CompoundStringComparator.ignoreCase(Fat32Directory.NAME_SEPARATOR_CHAR));
+				return column;
+			}
+
+			@Override
+			public String getValue(
+				Fat32Directory.Entry	entry)
+			{
+				return entry.getPathname();
+			}
+
+			@Override
+			public String getText(
+				String	pathname)
+			{
+				return pathname;
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+	private static SimpleTableView.IColumn<Fat32Directory.Entry, String> attributesColumn()
+	{
+		return new SimpleTableView.IColumn<>()
+		{
+			@Override
+			public String getId()
+			{
+				return ColumnId.ATTRIBUTES;
+			}
+
+			@Override
+			public String getTitle()
+			{
+				return ATTRS_STR;
+			}
+
+			@Override
+			public HPos getHAlignment()
+			{
+				return HPos.CENTER;
+			}
+
+			@Override
+			public double getPrefWidth()
+			{
+				return TextUtils.textWidthCeil("W".repeat(Fat32Directory.Attr.values().length));
+			}
+
+			@Override
+			public String getValue(
+				Fat32Directory.Entry	entry)
+			{
+				return entry.getAttributeString();
+			}
+
+			@Override
+			public String getText(
+				String	attrs)
+			{
+				return attrs;
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+	private static SimpleTableView.IColumn<Fat32Directory.Entry, Long> lengthColumn()
+	{
+		return new SimpleTableView.IColumn<>()
+		{
+			@Override
+			public String getId()
+			{
+				return ColumnId.LENGTH;
+			}
+
+			@Override
+			public String getTitle()
+			{
+				return LENGTH_STR;
+			}
+
+			@Override
+			public HPos getHAlignment()
+			{
+				return HPos.RIGHT;
+			}
+
+			@Override
+			public double getPrefWidth()
+			{
+				return TextUtils.textWidthCeil(Utils.formatDecimal(0xFF_FFFF_FFFFL));
+			}
+
+			@Override
+			public Long getValue(
+				Fat32Directory.Entry	entry)
+			{
+				return entry.isFile() ? entry.getFileLength() : null;
+			}
+
+			@Override
+			public String getText(
+				Long	length)
+			{
+				return (length == null) ? "" : Utils.formatDecimal(length);
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+	private static SimpleTableView.IColumn<Fat32Directory.Entry, String> modifiedColumn()
+	{
+		return new SimpleTableView.IColumn<>()
+		{
+			@Override
+			public String getId()
+			{
+				return ColumnId.MODIFIED;
+			}
+
+			@Override
+			public String getTitle()
+			{
+				return MODIFIED_STR;
+			}
+
+			@Override
+			public double getPrefWidth()
+			{
+				return TextUtils.textWidthCeil("0000-00-00  00:00:00");
+			}
+
+			@Override
+			public String getValue(
+				Fat32Directory.Entry	entry)
+			{
+				return entry.getLastModificationTimeString();
+			}
+
+			@Override
+			public String getText(
+				String	time)
+			{
+				return time;
+			}
+		};
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	private void search(
+		FileSearch	search)
+	{
+		// Clear results of previous search
+		tableView.getItemList().clear();
+		statusLabel.setText(SEARCHING_STR);
+
+		// Initialise queue of matching entries that have not yet been added to the table view
+		ConcurrentLinkedQueue<Fat32Directory.Entry> pendingEntries = new ConcurrentLinkedQueue<>();
+		AtomicBoolean flushPending = new AtomicBoolean();
+
+		// Create task to search for entries
+		task = new AbstractTask<>()
+		{
+			long	startTime;
+
+			{
+				// Initialise task
+				updateTitle(SEARCH_STR);
+			}
+
+			@Override
+			protected Integer call()
+				throws Exception
+			{
+				// Search directory tree; add matching entries to table view in batches on the FX application thread
+				startTime = System.nanoTime();
+				return search.search(directory, entries ->
+				{
+					pendingEntries.addAll(entries);
+					if (flushPending.compareAndSet(false, true))
+					{
+						Platform.runLater(() ->
+						{
+							flushPending.set(false);
+							addEntries(pendingEntries);
+						});
+					}
+				}, this::isCancelled);
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Add remaining entries to table view
+				addEntries(pendingEntries);
+
+				// Update status
+				searching.set(false);
+				statusLabel.setText(isCancelled()
+										? String.format(STOPPED_STR, tableView.getItemList().size())
+										: String.format(FOUND_STR, getValue(),
+														(System.nanoTime() - startTime) / 1_000_000));
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Update status
+				searching.set(false);
+				statusLabel.setText(null);
+
+				// Display error message in dialog
+				showErrorMessage(FileSearchDialog.this);
+			}
+		};
+
+		// Log description of task
+		Logger.INSTANCE.info(SEARCH_STR + " : " + directory.getPathname());
+
+		// Execute task on background thread
+		searching.set(true);
+		Fat32ManagerApp.executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	private void addEntries(
+		ConcurrentLinkedQueue<Fat32Directory.Entry>	pendingEntries)
+	{
+		List<Fat32Directory.Entry> entries = new ArrayList<>();
+		Fat32Directory.Entry entry = pendingEntries.poll();
+		while (entry != null)
+		{
+			entries.add(entry);
+			entry = pendingEntries.poll();
+		}
+		if (!entries.isEmpty())
+			tableView.getItemList().addAll(entries);
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -137,6 +137,7 @@ public class FormatDialog
 	private static final	String	CLUSTER_ALIGNMENT_STR			= "Cluster alignment";
 	private static final	String	ALIGN_FATS_TO_CLUSTERS_STR		= "Align FATs to clusters";
 	private static final	String	SECTORS_PER_CLUSTER_STR			= "Sectors per cluster";
+	private static final	String	FORMAT_MODE_STR					= "Format mode";
 	private static final	String	BYTES_STR						= " bytes";
 	private static final	String	FORMAT_STR						= "Format";
 	private static final	String	CONFIRM_FORMAT_STR				=
@@ -315,6 +316,11 @@ public class FormatDialog
 		GridPane.setMargin(alignFatsCheckBox, CHECK_BOX_MARGINS);
 		controlPane.add(alignFatsCheckBox, 1, row++);
 
+		// Create spinner: format mode
+		CollectionSpinner<FormatMode> formatModeSpinner =
+				CollectionSpinner.leftRightH(HPos.LEFT, true, FormatMode.class, params.getFormatMode(), null, null);
+		controlPane.addRow(row++, new Label(FORMAT_MODE_STR), formatModeSpinner);
+
 		// Create label: sectors per cluster
 		Label sectorsPerClusterLabel = Labels.hNoShrink();
 		sectorsPerClusterLabel.setAlignment(Pos.CENTER_RIGHT);
@@ -391,7 +397,8 @@ public class FormatDialog
 				int volumeId = text.isEmpty() ? prng.nextInt() : NumberUtils.parseIntHex(text);
 				result = new Result(volumeId, volumeLabelField.getText(), formatterNameField.getText(),
 									bytesPerSector, getMinNumReservedSectors.invoke(), getSectorsPerCluster.invoke(),
-									getClusterAlignment.invoke(), alignFatsCheckBox.isSelected());
+									getClusterAlignment.invoke(), alignFatsCheckBox.isSelected(),
+									formatModeSpinner.getItem());
 			}
 
 			// Hide dialog
@@ -425,7 +432,7 @@ public class FormatDialog
 		// Save state when dialog is closed
 		setOnHiding(event -> params = new FormatParams(bytesPerSector, getMinNumReservedSectors.invoke(),
 													   getClusterAlignment.invoke(), alignFatsCheckBox.isSelected(),
-													   formatterNameField.getText()));
+													   formatModeSpinner.getItem(), formatterNameField.getText()));
 
 		// Request focus on volume label
 		volumeLabelField.requestFocus();
@@ -540,10 +547,11 @@ public class FormatDialog
 			int					numReservedSectors,
 			int					sectorsPerCluster,
 			ClusterAlignment	clusterAlignment,
-			boolean				alignFats)
+			boolean				alignFats,
+			FormatMode			formatMode)
 		{
 			// Call superclass constructor
-			super(bytesPerSector, numReservedSectors, clusterAlignment, alignFats, formatterName);
+			super(bytesPerSector, numReservedSectors, clusterAlignment, alignFats, formatMode, formatterName);
 
 			// Initialise instance variables
 			this.volumeId = volumeId;
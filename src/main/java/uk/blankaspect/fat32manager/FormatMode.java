@@ -0,0 +1,135 @@
+/*====================================================================*\
+
+FormatMode.java
+
+Enumeration: format mode.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.Arrays;
+
+import uk.blankaspect.common.string.StringUtils;
+
+//----------------------------------------------------------------------
+
+
+// ENUMERATION: FORMAT MODE
+
+
+public enum FormatMode
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	QUICK
+	(
+		"Quick",
+		false,
+		false
+	),
+
+	FULL
+	(
+		"Full (zero data area)",
+		true,
+		false
+	),
+
+	FULL_VERIFY
+	(
+		"Full (zero and verify data area)",
+		true,
+		true
+	);
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	private	String	text;
+	private	boolean	zeroDataArea;
+	private	boolean	verifyDataArea;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	private FormatMode(
+		String	text,
+		boolean	zeroDataArea,
+		boolean	verifyDataArea)
+	{
+		// Initialise instance variables
+		this.text = text;
+		this.zeroDataArea = zeroDataArea;
+		this.verifyDataArea = verifyDataArea;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	public static FormatMode forKey(
+		String	key)
+	{
+		return Arrays.stream(values()).filter(value -> value.getKey().equals(key)).findFirst().orElse(null);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods : overriding methods
+////////////////////////////////////////////////////////////////////////
+
+	@Override
+	public String toString()
+	{
+		return text;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	public String getKey()
+	{
+		return StringUtils.toCamelCase(name());
+	}
+
+	//------------------------------------------------------------------
+
+	public boolean isZeroDataArea()
+	{
+		return zeroDataArea;
+	}
+
+	//------------------------------------------------------------------
+
+	public boolean isVerifyDataArea()
+	{
+		return verifyDataArea;
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -48,10 +48,14 @@ public class FormatParams
 	/** The default cluster alignment. */
 	private static final	ClusterAlignment	DEFAULT_CLUSTER_ALIGNMENT	= ClusterAlignment.INTEGRAL_MULTIPLE;
 
+	/** The default format mode. */
+	private static final	FormatMode	DEFAULT_FORMAT_MODE	= FormatMode.QUICK;
+
 	private interface PropertyKey
 	{
 		String	ALIGN_FATS_TO_CLUSTERS		= "alignFatsToClusters";
 		String	CLUSTER_ALIGNMENT			= "clusterAlignment";
+		String	FORMAT_MODE					= "formatMode";
 		String	FORMATTER_NAME				= "formatterName";
 		String	MIN_NUM_RESERVED_SECTORS	= "minNumReservedSectors";
 		String	MIN_NUM_SECTORS				= "minNumSectors";
@@ -67,6 +71,7 @@ public class FormatParams
 	private	int					minNumReservedSectors;
 	private	ClusterAlignment	clusterAlignment;
 	private	boolean				alignFatsToClusters;
+	private	FormatMode			formatMode;
 	private	boolean				removableMediaOnly;
 	private	String				formatterName;
 
@@ -82,6 +87,7 @@ public class FormatParams
 		minNumReservedSectors = DEFAULT_MIN_NUM_RESERVED_SECTORS;
 		clusterAlignment = DEFAULT_CLUSTER_ALIGNMENT;
 		alignFatsToClusters = true;
+		formatMode = DEFAULT_FORMAT_MODE;
 		formatterName = DEFAULT_FORMATTER_NAME;
 	}
 
@@ -92,6 +98,7 @@ public class FormatParams
 		int					minNumReservedSectors,
 		ClusterAlignment	clusterAlignment,
 		boolean				alignFatsToClusters,
+		FormatMode			formatMode,
 		String				formatterName)
 	{
 		// Initialise instance variables
@@ -99,6 +106,7 @@ public class FormatParams
 		this.minNumReservedSectors = minNumReservedSectors;
 		this.clusterAlignment = clusterAlignment;
 		this.alignFatsToClusters = alignFatsToClusters;
+		this.formatMode = formatMode;
 		this.formatterName = formatterName;
 	}
 
@@ -151,6 +159,13 @@ public class FormatParams
 
 	//------------------------------------------------------------------
 
+	public FormatMode getFormatMode()
+	{
+		return formatMode;
+	}
+
+	//------------------------------------------------------------------
+
 	public boolean isRemovableMediaOnly()
 	{
 		return removableMediaOnly;
@@ -199,6 +214,9 @@ public class FormatParams
 		// Encode 'align FATs to clusters' flag
 		rootNode.addBoolean(PropertyKey.ALIGN_FATS_TO_CLUSTERS, alignFatsToClusters);
 
+		// Encode format mode
+		rootNode.addString(PropertyKey.FORMAT_MODE, formatMode.getKey());
+
 		// Encode 'removable media only' flag
 		rootNode.addBoolean(PropertyKey.REMOVABLE_MEDIA_ONLY, removableMediaOnly);
 
@@ -228,6 +246,11 @@ public class FormatParams
 		// Decode 'align FATs to clusters' flag
 		alignFatsToClusters = rootNode.getBoolean(PropertyKey.ALIGN_FATS_TO_CLUSTERS, false);
 
+		// Decode format mode
+		formatMode = FormatMode.forKey(rootNode.getString(PropertyKey.FORMAT_MODE, null));
+		if (formatMode == null)
+			formatMode = DEFAULT_FORMAT_MODE;
+
 		// Decode 'removable media only' flag
 		removableMediaOnly = rootNode.getBoolean(PropertyKey.REMOVABLE_MEDIA_ONLY, false);
 
@@ -0,0 +1,564 @@
+/*====================================================================*\
+
+FragmentationAnalyser.java
+
+Class: analyser of the fragmentation of a FAT32 volume.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import uk.blankaspect.common.task.ICancellable;
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: ANALYSER OF THE FRAGMENTATION OF A FAT32 VOLUME
+
+
+/**
+ * This class provides a method that computes statistics about the fragmentation of the files and directories of a
+ * tree of directories of a FAT32 volume and about the fragmentation of the free space of the volume.
+ * <p>
+ * Any subdirectories of the tree that have not been read are first read with a {@link DirectoryTreeLoader}.  The
+ * cluster chain of every file and directory is then followed once in the in-memory copy of the FAT, on the common
+ * work-stealing {@link ForkJoinPool}, one task per directory.  The statistics of the subtrees are merged as the tasks
+ * complete, so the volume is not accessed after the tree has been read.
+ * </p>
+ */
+
+public class FragmentationAnalyser
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The number of buckets of the histogram of the number of fragments per file.  The first bucket contains the
+		files that have one fragment; bucket <i>i</i> (for <i>i</i> &gt; 0) contains the files that have between
+		2<sup><i>i</i>&minus;1</sup>+1 and 2<sup><i>i</i></sup> fragments; the last bucket is unbounded. */
+	public static final		int		NUM_HISTOGRAM_BUCKETS	= 12;
+
+	/** The maximum number of the most fragmented files that are reported. */
+	public static final		int		MAX_NUM_WORST_FILES		= 20;
+
+	/** Miscellaneous strings. */
+	private static final	String	READING_DIRECTORIES_STR		= "Reading directories";
+	private static final	String	ANALYSING_CHAINS_STR		= "Analysing cluster chains";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private FragmentationAnalyser()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Computes statistics about the fragmentation of the files and directories of the specified directory and all its
+	 * subdirectories, and about the fragmentation of the free space of its volume.
+	 *
+	 * @param  directory
+	 *           the directory at the root of the tree that will be analysed.
+	 * @param  taskStatus
+	 *           the status of the task that is analysing the tree.
+	 * @return the statistics, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading a directory from the volume.
+	 */
+
+	public static Report analyse(
+		Fat32Directory	directory,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Update task message
+		taskStatus.setMessage(READING_DIRECTORIES_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Read unread subdirectories of tree
+		long startTime = System.nanoTime();
+		DirectoryTreeLoader.load(directory, null, taskStatus);
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Follow cluster chains of files and directories of tree
+		taskStatus.setMessage(ANALYSING_CHAINS_STR);
+		Stats stats = null;
+		try
+		{
+			stats = ForkJoinPool.commonPool().invoke(new AnalysisTask(directory, taskStatus));
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Analyse free space
+		Fat32Fat fat = directory.getVolume().getFat();
+		List<Fat32Fat.Run> freeRuns = fat.getUnusedRuns();
+		long numFreeClusters = 0;
+		int largestFreeRun = 0;
+		for (Fat32Fat.Run run : freeRuns)
+		{
+			numFreeClusters += run.length();
+			largestFreeRun = Math.max(largestFreeRun, run.length());
+		}
+
+		// Sort most fragmented files in descending order of number of fragments
+		List<FragmentedFile> worstFiles = new ArrayList<>(stats.worstFiles);
+		worstFiles.sort(Comparator.comparingInt(FragmentedFile::numFragments).reversed());
+
+		// Return statistics
+		return new Report(stats.numFiles, stats.numFragmentedFiles, stats.numFileFragments, stats.histogram, worstFiles,
+						  stats.numDirectories, stats.numFragmentedDirectories, stats.numInvalidChains, numFreeClusters,
+						  freeRuns.size(), largestFreeRun, System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the index of the bucket of the histogram of fragments per file that contains the specified number of
+	 * fragments.
+	 *
+	 * @param  numFragments
+	 *           the number of fragments, which must be positive.
+	 * @return the index of the bucket that contains {@code numFragments}.
+	 */
+
+	public static int histogramBucket(
+		int	numFragments)
+	{
+		return Math.min(Integer.SIZE - Integer.numberOfLeadingZeros(numFragments - 1), NUM_HISTOGRAM_BUCKETS - 1);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the smallest number of fragments that belongs to the specified bucket of the histogram of fragments per
+	 * file.
+	 *
+	 * @param  bucket
+	 *           the index of the bucket.
+	 * @return the smallest number of fragments that belongs to {@code bucket}.
+	 */
+
+	public static int histogramBucketMin(
+		int	bucket)
+	{
+		return (bucket == 0) ? 1 : (1 << (bucket - 1)) + 1;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the largest number of fragments that belongs to the specified bucket of the histogram of fragments per
+	 * file, or -1 if the bucket is unbounded.
+	 *
+	 * @param  bucket
+	 *           the index of the bucket.
+	 * @return the largest number of fragments that belongs to {@code bucket}, or -1 if {@code bucket} is the last
+	 *         bucket.
+	 */
+
+	public static int histogramBucketMax(
+		int	bucket)
+	{
+		return (bucket < NUM_HISTOGRAM_BUCKETS - 1) ? 1 << bucket : -1;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: FRAGMENTED FILE
+
+
+	/**
+	 * This record associates the directory entry of a file with the number of fragments of its cluster chain.
+	 *
+	 * @param entry
+	 *          the directory entry of the file.
+	 * @param numFragments
+	 *          the number of runs of consecutive clusters in the cluster chain of the file.
+	 */
+
+	public record FragmentedFile(
+		Fat32Directory.Entry	entry,
+		int						numFragments)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: FRAGMENTATION STATISTICS
+
+
+	/**
+	 * This record encapsulates statistics about the fragmentation of a tree of directories and the free space of its
+	 * volume.
+	 *
+	 * @param numFiles
+	 *          the number of non-empty files in the tree.
+	 * @param numFragmentedFiles
+	 *          the number of files that have more than one fragment.
+	 * @param numFileFragments
+	 *          the total number of fragments of the files.
+	 * @param histogram
+	 *          the number of files in each bucket of the histogram of fragments per file.
+	 * @param worstFiles
+	 *          the most fragmented files, in descending order of number of fragments.
+	 * @param numDirectories
+	 *          the number of directories in the tree, including the directory at its root.
+	 * @param numFragmentedDirectories
+	 *          the number of directories that have more than one fragment.
+	 * @param numInvalidChains
+	 *          the number of files and directories whose cluster chains are invalid and were not analysed.
+	 * @param numFreeClusters
+	 *          the number of unused clusters on the volume.
+	 * @param numFreeRuns
+	 *          the number of runs of consecutive unused clusters on the volume.
+	 * @param largestFreeRun
+	 *          the length (in clusters) of the longest run of consecutive unused clusters on the volume.
+	 * @param nanoseconds
+	 *          the time taken to compute the statistics.
+	 */
+
+	public record Report(
+		int						numFiles,
+		int						numFragmentedFiles,
+		long					numFileFragments,
+		int[]					histogram,
+		List<FragmentedFile>	worstFiles,
+		int						numDirectories,
+		int						numFragmentedDirectories,
+		int						numInvalidChains,
+		long					numFreeClusters,
+		int						numFreeRuns,
+		int						largestFreeRun,
+		long					nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the mean number of fragments per non-empty file.
+		 *
+		 * @return the mean number of fragments per non-empty file.
+		 */
+
+		public double meanFragmentsPerFile()
+		{
+			return (numFiles == 0) ? 0.0 : (double)numFileFragments / (double)numFiles;
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the free-space fragmentation index of the volume, which is the proportion of the free space that
+		 * lies outside the longest run of unused clusters.  It is 0 when the free space is contiguous, and approaches
+		 * 1 as the free space is divided into many small runs.
+		 *
+		 * @return the free-space fragmentation index of the volume, in the interval [0, 1).
+		 */
+
+		public double freeSpaceFragmentationIndex()
+		{
+			return (numFreeClusters == 0) ? 0.0 : 1.0 - (double)largestFreeRun / (double)numFreeClusters;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: STATISTICS OF A SUBTREE
+
+
+	/**
+	 * This class accumulates the fragmentation statistics of a subtree of directories.
+	 */
+
+	private static class Stats
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The number of non-empty files. */
+		private	int								numFiles;
+
+		/** The number of files that have more than one fragment. */
+		private	int								numFragmentedFiles;
+
+		/** The total number of fragments of the files. */
+		private	long							numFileFragments;
+
+		/** The histogram of fragments per file. */
+		private	int[]							histogram;
+
+		/** The most fragmented files, with the least fragmented of them at the head of the queue. */
+		private	PriorityQueue<FragmentedFile>	worstFiles;
+
+		/** The number of directories. */
+		private	int								numDirectories;
+
+		/** The number of directories that have more than one fragment. */
+		private	int								numFragmentedDirectories;
+
+		/** The number of invalid cluster chains. */
+		private	int								numInvalidChains;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of an empty set of statistics.
+		 */
+
+		private Stats()
+		{
+			// Initialise instance variables
+			histogram = new int[NUM_HISTOGRAM_BUCKETS];
+			worstFiles = new PriorityQueue<>(MAX_NUM_WORST_FILES + 1,
+											 Comparator.comparingInt(FragmentedFile::numFragments));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Adds the specified fragmented file to the most fragmented files if it is more fragmented than the least
+		 * fragmented of them.
+		 *
+		 * @param file
+		 *          the file that will be considered.
+		 */
+
+		private void offerWorstFile(
+			FragmentedFile	file)
+		{
+			if (worstFiles.size() < MAX_NUM_WORST_FILES)
+				worstFiles.add(file);
+			else if (file.numFragments() > worstFiles.peek().numFragments())
+			{
+				worstFiles.poll();
+				worstFiles.add(file);
+			}
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Adds the specified statistics to these statistics.
+		 *
+		 * @param stats
+		 *          the statistics that will be added.
+		 */
+
+		private void add(
+			Stats	stats)
+		{
+			numFiles += stats.numFiles;
+			numFragmentedFiles += stats.numFragmentedFiles;
+			numFileFragments += stats.numFileFragments;
+			for (int i = 0; i < histogram.length; i++)
+				histogram[i] += stats.histogram[i];
+			for (FragmentedFile file : stats.worstFiles)
+				offerWorstFile(file);
+			numDirectories += stats.numDirectories;
+			numFragmentedDirectories += stats.numFragmentedDirectories;
+			numInvalidChains += stats.numInvalidChains;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: ANALYSIS TASK
+
+
+	/**
+	 * This class implements a task that follows the cluster chains of a directory and its files, and forks a task for
+	 * each of its subdirectories.  The result of the task is the statistics of the subtree of the directory.
+	 */
+
+	private static class AnalysisTask
+		extends RecursiveTask<Stats>
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/** The serial version identifier. */
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The directory that is analysed by this task. */
+		private	Fat32Directory	directory;
+
+		/** The object that is polled to determine whether the analysis has been cancelled. */
+		private	ICancellable	cancellable;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a task that analyses the specified directory and its subdirectories.
+		 *
+		 * @param directory
+		 *          the directory that will be analysed.
+		 * @param cancellable
+		 *          the object that is polled to determine whether the analysis has been cancelled.
+		 */
+
+		private AnalysisTask(
+			Fat32Directory	directory,
+			ICancellable	cancellable)
+		{
+			// Initialise instance variables
+			this.directory = directory;
+			this.cancellable = cancellable;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * {@inheritDoc}
+		 */
+
+		@Override
+		protected Stats compute()
+		{
+			// Initialise statistics
+			Stats stats = new Stats();
+
+			// Stop if analysis has been cancelled
+			if (cancellable.isCancelled())
+				return stats;
+
+			// Fork tasks to analyse subdirectories
+			List<AnalysisTask> tasks = new ArrayList<>();
+			for (Fat32Directory child : directory.getChildren())
+			{
+				AnalysisTask task = new AnalysisTask(child, cancellable);
+				task.fork();
+				tasks.add(task);
+			}
+
+			// Analyse cluster chain of directory
+			Fat32Fat fat = directory.getVolume().getFat();
+			++stats.numDirectories;
+			try
+			{
+				if (fat.fragmentCount(directory.getClusterIndex()) > 1)
+					++stats.numFragmentedDirectories;
+			}
+			catch (VolumeException e)
+			{
+				++stats.numInvalidChains;
+			}
+
+			// Analyse cluster chains of files of directory
+			for (Fat32Directory.Entry entry : directory.getEntries())
+			{
+				int clusterIndex = entry.getClusterIndex();
+				if (entry.isFile() && (clusterIndex >= Fat32Fat.MIN_CLUSTER_INDEX) && (clusterIndex < fat.getLength()))
+				{
+					try
+					{
+						int numFragments = fat.fragmentCount(clusterIndex);
+						++stats.numFiles;
+						stats.numFileFragments += numFragments;
+						++stats.histogram[histogramBucket(numFragments)];
+						if (numFragments > 1)
+						{
+							++stats.numFragmentedFiles;
+							stats.offerWorstFile(new FragmentedFile(entry, numFragments));
+						}
+					}
+					catch (VolumeException e)
+					{
+						++stats.numInvalidChains;
+					}
+				}
+			}
+
+			// Add statistics of subdirectories
+			for (AnalysisTask task : tasks)
+				stats.add(task.join());
+
+			// Return statistics
+			return stats;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
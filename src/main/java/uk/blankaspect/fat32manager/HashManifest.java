@@ -0,0 +1,642 @@
+/*====================================================================*\
+
+HashManifest.java
+
+Class: manifest of the hashes of the contents of files.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.LocalDateTime;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: MANIFEST OF THE HASHES OF THE CONTENTS OF FILES
+
+
+/**
+ * This class provides methods that write a manifest of the files of a FAT32 volume and verify the files of a volume
+ * against a manifest.
+ * <p>
+ * A manifest is a UTF-8 text file.  Its first line is a header that identifies the format; each subsequent line
+ * describes one file with five fields that are separated by tab characters:
+ * </p>
+ * <ol>
+ *   <li>the SHA-256 hash of the content of the file, in hexadecimal,</li>
+ *   <li>the length of the file,</li>
+ *   <li>the time at which the file was last modified,</li>
+ *   <li>the time at which the file was created, and</li>
+ *   <li>the absolute pathname of the file.</li>
+ * </ol>
+ * <p>
+ * The contents of files are hashed by {@link ContentHasher}, and each line is written as soon as the hash of its file
+ * is available, so a manifest is never held in memory.  When a volume is verified, the manifest is likewise read one
+ * line at a time.  Only the files whose length or timestamps differ from those in the manifest are read and hashed,
+ * unless a <i>deep</i> verification is requested, in which case every file in the manifest is hashed.
+ * </p>
+ */
+
+public class HashManifest
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The first line of a manifest. */
+	private static final	String	HEADER	= "# fat32Manager hash manifest 1";
+
+	/** The prefix of a comment line. */
+	private static final	String	COMMENT_PREFIX	= "#";
+
+	/** The separator between the fields of a line. */
+	private static final	char	FIELD_SEPARATOR	= '\t';
+
+	/** The number of fields of a line. */
+	private static final	int		NUM_FIELDS	= 5;
+
+	/** The length of a SHA-256 hash. */
+	private static final	int		HASH_LENGTH	= 32;
+
+	/** The representation of a missing timestamp. */
+	private static final	String	NO_TIME_STR	= "-";
+
+	/** Miscellaneous strings. */
+	private static final	String	COLLECTING_FILES_STR	= "Collecting files";
+	private static final	String	HASHING_FILES_STR		= "Hashing files";
+	private static final	String	READING_MANIFEST_STR	= "Reading manifest";
+	private static final	String	VERIFYING_FILES_STR		= "Verifying files";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	FAILED_TO_OPEN_FILE =
+				"Failed to open the file.";
+
+		String	FAILED_TO_CLOSE_FILE =
+				"Failed to close the file.";
+
+		String	ERROR_READING_FILE =
+				"An error occurred when reading the file.";
+
+		String	ERROR_WRITING_FILE =
+				"An error occurred when writing the file.";
+
+		String	NOT_A_MANIFEST =
+				"The file is not a hash manifest.";
+
+		String	MALFORMED_LINE =
+				"Line %d of the manifest is malformed.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private HashManifest()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Writes a manifest of all the files of the specified volume to the specified file, and returns the result.
+	 *
+	 * @param  volume
+	 *           the volume whose files will be hashed.
+	 * @param  file
+	 *           the location of the manifest.
+	 * @param  taskStatus
+	 *           the status of the task that is writing the manifest.
+	 * @return the result of writing the manifest, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing the manifest.
+	 */
+
+	public static Result write(
+		Fat32Volume	volume,
+		Path		file,
+		ITaskStatus	taskStatus)
+		throws VolumeException, FileException
+	{
+		// Collect files of volume
+		long startTime = System.nanoTime();
+		List<Fat32Directory.Entry> files = collectFiles(volume.getRootDir(), taskStatus);
+		if (files == null)
+			return null;
+
+		// Open file
+		Writer writer = null;
+		try
+		{
+			writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.FAILED_TO_OPEN_FILE, e, file);
+		}
+
+		// Write manifest
+		try
+		{
+			// Write header
+			writer.write(HEADER);
+			writer.write('\n');
+
+			// Hash files; write line for each file as its hash becomes available; omit files that cannot be read
+			Writer writer0 = writer;
+			List<Fat32Directory.Entry> unreadableFiles = new ArrayList<>();
+			long numBytes = ContentHasher.hash(volume, files, (entry, hash) ->
+			{
+				try
+				{
+					if (hash == null)
+						unreadableFiles.add(entry);
+					else
+						writer0.write(createLine(entry, hash));
+				}
+				catch (IOException e)
+				{
+					throw new UncheckedIOException(e);
+				}
+			}, HASHING_FILES_STR, taskStatus);
+			if (numBytes < 0)
+				return null;
+
+			// Close file
+			try
+			{
+				writer.close();
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.FAILED_TO_CLOSE_FILE, e, file);
+			}
+			finally
+			{
+				writer = null;
+			}
+
+			// Return result
+			unreadableFiles.sort(Comparator.comparing(Fat32Directory.Entry::getPathname));
+			return new Result(files.size() - unreadableFiles.size(), numBytes, unreadableFiles,
+							  System.nanoTime() - startTime);
+		}
+		catch (UncheckedIOException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_WRITING_FILE, e.getCause(), file);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_WRITING_FILE, e, file);
+		}
+		finally
+		{
+			// Close file after an error or cancellation
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Verifies the files of the specified volume against the specified manifest, and returns the result.
+	 *
+	 * @param  volume
+	 *           the volume whose files will be verified.
+	 * @param  file
+	 *           the location of the manifest.
+	 * @param  deep
+	 *           if {@code true}, every file that is listed in the manifest will be hashed; otherwise, only the files
+	 *           whose length or timestamps differ from those in the manifest will be hashed.
+	 * @param  taskStatus
+	 *           the status of the task that is verifying the files.
+	 * @return the result of the verification, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when reading the manifest, or if the file is not a valid manifest.
+	 */
+
+	public static VerifyResult verify(
+		Fat32Volume	volume,
+		Path		file,
+		boolean		deep,
+		ITaskStatus	taskStatus)
+		throws VolumeException, FileException
+	{
+		// Collect files of volume
+		long startTime = System.nanoTime();
+		Fat32Directory rootDir = volume.getRootDir();
+		List<Fat32Directory.Entry> files = collectFiles(rootDir, taskStatus);
+		if (files == null)
+			return null;
+
+		// Update task message
+		taskStatus.setMessage(READING_MANIFEST_STR);
+
+		// Read manifest; compare metadata of each listed file with that of the file on the volume
+		Set<Fat32Directory.Entry> listedFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+		Set<Fat32Directory.Entry> changedFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+		Map<Fat32Directory.Entry, byte[]> expectedHashes = new IdentityHashMap<>();
+		List<String> missingFiles = new ArrayList<>();
+		int numFiles = 0;
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8))
+		{
+			// Read header
+			String line = reader.readLine();
+			if (!HEADER.equals(line))
+				throw new FileException(ErrorMsg.NOT_A_MANIFEST, file);
+
+			// Read lines
+			int lineIndex = 1;
+			while ((line = reader.readLine()) != null)
+			{
+				// Test whether task has been cancelled
+				if (taskStatus.isCancelled())
+					return null;
+
+				// Ignore empty lines and comments
+				++lineIndex;
+				if (line.isEmpty() || line.startsWith(COMMENT_PREFIX))
+					continue;
+
+				// Split line into fields
+				String[] fields = line.split(Character.toString(FIELD_SEPARATOR), NUM_FIELDS);
+				if (fields.length < NUM_FIELDS)
+					throw new FileException(ErrorMsg.MALFORMED_LINE, file, lineIndex);
+
+				// Parse hash
+				byte[] hash = null;
+				try
+				{
+					hash = HexFormat.of().parseHex(fields[0]);
+				}
+				catch (IllegalArgumentException e)
+				{
+					// ignore
+				}
+				if ((hash == null) || (hash.length != HASH_LENGTH))
+					throw new FileException(ErrorMsg.MALFORMED_LINE, file, lineIndex);
+
+				// Find file on volume
+				++numFiles;
+				String pathname = fields[4];
+				Fat32Directory.Entry entry = findFile(rootDir, pathname);
+				if ((entry == null) || !listedFiles.add(entry))
+				{
+					missingFiles.add(pathname);
+					continue;
+				}
+
+				// Compare metadata; schedule file for hashing if metadata changed or verification is deep
+				boolean changed = !fields[1].equals(Long.toString(entry.getFileLength()))
+										|| !fields[2].equals(timeToString(entry.getLastModificationTime()))
+										|| !fields[3].equals(timeToString(entry.getCreationTime()));
+				if (changed)
+					changedFiles.add(entry);
+				if (changed || deep)
+					expectedHashes.put(entry, hash);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_READING_FILE, e, file);
+		}
+
+		// Hash scheduled files; classify files whose hashes differ from those in manifest
+		List<Fat32Directory.Entry> modifiedFiles = new ArrayList<>();
+		List<Fat32Directory.Entry> corruptFiles = new ArrayList<>();
+		int[] numTouchedFiles = new int[1];
+		long numBytes = ContentHasher.hash(volume, new ArrayList<>(expectedHashes.keySet()), (entry, hash) ->
+		{
+			boolean changed = changedFiles.contains(entry);
+			if (hash == null)
+				corruptFiles.add(entry);
+			else if (Arrays.equals(hash, expectedHashes.get(entry)))
+			{
+				if (changed)
+					++numTouchedFiles[0];
+			}
+			else if (changed)
+				modifiedFiles.add(entry);
+			else
+				corruptFiles.add(entry);
+		}, VERIFYING_FILES_STR, taskStatus);
+		if (numBytes < 0)
+			return null;
+
+		// Find files that are not listed in manifest
+		List<Fat32Directory.Entry> newFiles = new ArrayList<>();
+		for (Fat32Directory.Entry entry : files)
+		{
+			if (!listedFiles.contains(entry))
+				newFiles.add(entry);
+		}
+
+		// Sort lists of files by pathname
+		Comparator<Fat32Directory.Entry> comparator = Comparator.comparing(Fat32Directory.Entry::getPathname);
+		missingFiles.sort(null);
+		newFiles.sort(comparator);
+		modifiedFiles.sort(comparator);
+		corruptFiles.sort(comparator);
+
+		// Return result
+		return new VerifyResult(numFiles, expectedHashes.size(), numBytes, numTouchedFiles[0], missingFiles, newFiles,
+								modifiedFiles, corruptFiles, System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the unread subdirectories of the tree of the specified directory, and returns a list of the files in the
+	 * tree.
+	 *
+	 * @param  directory
+	 *           the directory at the root of the tree.
+	 * @param  taskStatus
+	 *           the status of the task.
+	 * @return a list of the files in the tree of {@code directory}, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading a directory.
+	 */
+
+	private static List<Fat32Directory.Entry> collectFiles(
+		Fat32Directory	directory,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Update task message
+		taskStatus.setMessage(COLLECTING_FILES_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Read unread subdirectories of tree
+		DirectoryTreeLoader.load(directory, null, taskStatus);
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Collect files
+		List<Fat32Directory.Entry> files = new ArrayList<>();
+		Deque<Fat32Directory> stack = new ArrayDeque<>();
+		stack.push(directory);
+		try
+		{
+			while (!stack.isEmpty())
+			{
+				Fat32Directory dir = stack.pop();
+				for (Fat32Directory.Entry entry : dir.getEntries())
+				{
+					if (entry.isFile())
+						files.add(entry);
+				}
+				for (Fat32Directory child : dir.getChildren())
+					stack.push(child);
+			}
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+		return files;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the entry of the file that has the specified absolute pathname.
+	 *
+	 * @param  rootDir
+	 *           the root directory of the volume.
+	 * @param  pathname
+	 *           the pathname of the file.
+	 * @return the entry of the file whose pathname is {@code pathname}, or {@code null} if there is no such file.
+	 */
+
+	private static Fat32Directory.Entry findFile(
+		Fat32Directory	rootDir,
+		String			pathname)
+	{
+		// Find parent directory
+		int index = pathname.lastIndexOf(Fat32Directory.NAME_SEPARATOR_CHAR);
+		Fat32Directory directory = (index < 0) ? rootDir : rootDir.resolvePath(pathname.substring(0, index + 1));
+		if (directory == null)
+			return null;
+
+		// Find file in directory
+		Fat32Directory.Entry entry = directory.findEntry(pathname.substring(index + 1));
+		return ((entry == null) || !entry.isFile()) ? null : entry;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the line of a manifest for the specified file.
+	 *
+	 * @param  entry
+	 *           the entry of the file.
+	 * @param  hash
+	 *           the hash of the content of the file.
+	 * @return the line of a manifest for {@code entry}, including the line terminator.
+	 */
+
+	private static String createLine(
+		Fat32Directory.Entry	entry,
+		byte[]					hash)
+	{
+		return HexFormat.of().formatHex(hash) + FIELD_SEPARATOR + entry.getFileLength() + FIELD_SEPARATOR
+				+ timeToString(entry.getLastModificationTime()) + FIELD_SEPARATOR
+				+ timeToString(entry.getCreationTime()) + FIELD_SEPARATOR + entry.getPathname() + '\n';
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the string representation of the specified timestamp in a manifest.
+	 *
+	 * @param  time
+	 *           the timestamp, which may be {@code null}.
+	 * @return the string representation of {@code time} in a manifest.
+	 */
+
+	private static String timeToString(
+		LocalDateTime	time)
+	{
+		return (time == null) ? NO_TIME_STR : time.toString();
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT OF WRITING A MANIFEST
+
+
+	/**
+	 * This record encapsulates the result of writing a manifest.
+	 *
+	 * @param numFiles
+	 *          the number of files that are listed in the manifest.
+	 * @param numBytes
+	 *          the number of bytes of file data that were hashed.
+	 * @param unreadableFiles
+	 *          the files that were omitted from the manifest because their cluster chains are broken, sorted by
+	 *          pathname.
+	 * @param nanoseconds
+	 *          the time taken to write the manifest.
+	 */
+
+	public record Result(
+		int							numFiles,
+		long						numBytes,
+		List<Fat32Directory.Entry>	unreadableFiles,
+		long						nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns the rate at which file data were hashed, in megabytes per second.
+		 *
+		 * @return the rate at which file data were hashed, in megabytes per second.
+		 */
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: RESULT OF VERIFYING A VOLUME AGAINST A MANIFEST
+
+
+	/**
+	 * This record encapsulates the result of verifying the files of a volume against a manifest.
+	 *
+	 * @param numFiles
+	 *          the number of files that are listed in the manifest.
+	 * @param numFilesHashed
+	 *          the number of files that were hashed.
+	 * @param numBytes
+	 *          the number of bytes of file data that were hashed.
+	 * @param numTouchedFiles
+	 *          the number of files whose length or timestamps differ from those in the manifest but whose contents
+	 *          are unchanged.
+	 * @param missingFiles
+	 *          the pathnames of the files that are listed in the manifest but are not on the volume.
+	 * @param newFiles
+	 *          the files of the volume that are not listed in the manifest.
+	 * @param modifiedFiles
+	 *          the files whose metadata and contents both differ from those in the manifest.
+	 * @param corruptFiles
+	 *          the files whose contents differ from those in the manifest although their metadata are unchanged.
+	 * @param nanoseconds
+	 *          the time taken by the verification.
+	 */
+
+	public record VerifyResult(
+		int							numFiles,
+		int							numFilesHashed,
+		long						numBytes,
+		int							numTouchedFiles,
+		List<String>				missingFiles,
+		List<Fat32Directory.Entry>	newFiles,
+		List<Fat32Directory.Entry>	modifiedFiles,
+		List<Fat32Directory.Entry>	corruptFiles,
+		long						nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns {@code true} if the files of the volume match the manifest.
+		 *
+		 * @return {@code true} if the files of the volume match the manifest.
+		 */
+
+		public boolean isValid()
+		{
+			return missingFiles.isEmpty() && newFiles.isEmpty() && modifiedFiles.isEmpty() && corruptFiles.isEmpty();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
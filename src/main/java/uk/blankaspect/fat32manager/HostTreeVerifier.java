@@ -0,0 +1,656 @@
+/*====================================================================*\
+
+HostTreeVerifier.java
+
+Class: verifier of a tree of directories against a directory of the host file system.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+
+import java.nio.file.attribute.BasicFileAttributes;
+
+import java.security.MessageDigest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: VERIFIER OF A TREE OF DIRECTORIES AGAINST A DIRECTORY OF THE HOST FILE SYSTEM
+
+
+/**
+ * This class provides a method that compares the files in a tree of directories of a FAT32 volume with the files in a
+ * tree of directories of the host file system, such as a copy that was made by {@link FileExtractor}.
+ * <p>
+ * Files are matched by their pathnames relative to the roots of the two trees.  The lengths of matching files are
+ * compared first, from the directory entries and the attributes of the host files, so files whose lengths differ
+ * are not read at all.  The contents of the remaining files are compared by their SHA-256 hashes:
+ * </p>
+ * <ul>
+ *   <li>the files of the volume are read and hashed by {@link ContentHasher}, which coalesces the extents of nearby
+ *       files into large read requests and hashes files in parallel, and</li>
+ *   <li>the files of the host file system are read in large blocks and hashed in parallel on a pool of worker threads,
+ *       at most a fixed number of files ahead of the volume.</li>
+ * </ul>
+ */
+
+public class HostTreeVerifier
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The length of the buffer with which a host file is read. */
+	private static final	int		BUFFER_SIZE	= 1 << 20;	// 1 MiB
+
+	/** The maximum number of host files per worker thread whose hashes may be pending. */
+	private static final	int		NUM_PENDING_FILES_PER_THREAD	= 4;
+
+	/** The suffix of the name of a worker thread. */
+	private static final	String	WORKER_THREAD_NAME_SUFFIX	= "verifierWorker";
+
+	/** The read buffer of each worker thread. */
+	private static final	ThreadLocal<byte[]>	BUFFERS	= ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+	/** Miscellaneous strings. */
+	private static final	String	COLLECTING_FILES_STR	= "Collecting files";
+	private static final	String	READING_HOST_FILES_STR	= "Reading host directory";
+	private static final	String	COMPARING_CONTENTS_STR	= "Comparing contents";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	ERROR_READING_DIRECTORY =
+				"An error occurred when reading the directory.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private HostTreeVerifier()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Compares the files in the tree of the specified directory of a volume with the files in the tree of the
+	 * specified directory of the host file system, and returns the result.
+	 *
+	 * @param  directory
+	 *           the directory of the volume at the root of the tree that will be verified.
+	 * @param  hostDirectory
+	 *           the directory of the host file system at the root of the tree against which {@code directory} will be
+	 *           verified.
+	 * @param  taskStatus
+	 *           the status of the task that is verifying the tree.
+	 * @return the result of the verification, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when reading the tree of {@code hostDirectory}.
+	 */
+
+	public static Result verify(
+		Fat32Directory	directory,
+		Path			hostDirectory,
+		ITaskStatus		taskStatus)
+		throws VolumeException, FileException
+	{
+		// Collect files of volume
+		long startTime = System.nanoTime();
+		Map<String, Fat32Directory.Entry> files = collectFiles(directory, taskStatus);
+		if (files == null)
+			return null;
+
+		// Collect files of host
+		Map<String, HostFile> hostFiles = collectHostFiles(hostDirectory, taskStatus);
+		if (hostFiles == null)
+			return null;
+
+		// Match files; compare lengths
+		List<String> missingFiles = new ArrayList<>();
+		List<Difference> differences = new ArrayList<>();
+		List<Pair> pairs = new ArrayList<>();
+		for (Map.Entry<String, Fat32Directory.Entry> mapEntry : files.entrySet())
+		{
+			String pathname = mapEntry.getKey();
+			Fat32Directory.Entry entry = mapEntry.getValue();
+			HostFile hostFile = hostFiles.remove(pathname);
+			if (hostFile == null)
+				missingFiles.add(pathname);
+			else if (entry.getFileLength() != hostFile.length())
+				differences.add(new Difference(pathname, Reason.LENGTH));
+			else
+				pairs.add(new Pair(pathname, entry, hostFile.location()));
+		}
+		List<String> extraFiles = new ArrayList<>(hostFiles.keySet());
+
+		// Sort pairs of files in the order in which the files of the volume will be hashed
+		pairs.sort(Comparator.comparingInt(pair -> pair.entry().getClusterIndex()));
+		List<Fat32Directory.Entry> entries = pairs.stream().map(Pair::entry).toList();
+
+		// Compare contents of pairs of files; hash host files a limited number of files ahead of volume
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int maxNumPendingFiles = numThreads * NUM_PENDING_FILES_PER_THREAD;
+		ExecutorService executor = createExecutor(numThreads);
+		try
+		{
+			Deque<Future<byte[]>> pendingHashes = new ArrayDeque<>();
+			int[] numSubmitted = { 0 };
+			Runnable submitter = () ->
+			{
+				while ((numSubmitted[0] < pairs.size()) && (pendingHashes.size() < maxNumPendingFiles))
+				{
+					Path location = pairs.get(numSubmitted[0]++).location();
+					pendingHashes.addLast(executor.submit(() -> hashHostFile(location)));
+				}
+			};
+			submitter.run();
+			int[] numCompared = { 0 };
+			long numBytes = ContentHasher.hash(directory.getVolume(), entries, (entry, hash) ->
+			{
+				// Get hash of host file
+				Pair pair = pairs.get(numCompared[0]++);
+				byte[] hostHash = null;
+				try
+				{
+					hostHash = pendingHashes.removeFirst().get();
+				}
+				catch (ExecutionException e)
+				{
+					// ignore
+				}
+				catch (InterruptedException e)
+				{
+					throw new RuntimeException(e);
+				}
+				submitter.run();
+
+				// Compare hashes
+				if (hash == null)
+					differences.add(new Difference(pair.pathname(), Reason.CORRUPT));
+				else if (hostHash == null)
+					differences.add(new Difference(pair.pathname(), Reason.UNREADABLE));
+				else if (!Arrays.equals(hash, hostHash))
+					differences.add(new Difference(pair.pathname(), Reason.CONTENT));
+			}, COMPARING_CONTENTS_STR, taskStatus);
+			if (numBytes < 0)
+				return null;
+
+			// Sort lists of files by pathname
+			missingFiles.sort(null);
+			extraFiles.sort(null);
+			differences.sort(Comparator.comparing(Difference::pathname));
+
+			// Return result
+			return new Result(files.size(), pairs.size(), numBytes, missingFiles, extraFiles, differences,
+							  System.nanoTime() - startTime);
+		}
+		finally
+		{
+			// Stop worker threads
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the unread subdirectories of the tree of the specified directory, and returns the files in the tree mapped
+	 * to their pathnames relative to the directory.
+	 *
+	 * @param  directory
+	 *           the directory at the root of the tree.
+	 * @param  taskStatus
+	 *           the status of the task.
+	 * @return the files in the tree of {@code directory} mapped to their relative pathnames, or {@code null} if the
+	 *         task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading a directory.
+	 */
+
+	private static Map<String, Fat32Directory.Entry> collectFiles(
+		Fat32Directory	directory,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Update task message
+		taskStatus.setMessage(COLLECTING_FILES_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Read unread subdirectories of tree
+		DirectoryTreeLoader.load(directory, null, taskStatus);
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Collect files
+		Map<String, Fat32Directory.Entry> files = new HashMap<>();
+		int prefixLength = directory.getPathname().length();
+		if (!directory.isRoot())
+			++prefixLength;
+		Deque<Fat32Directory> stack = new ArrayDeque<>();
+		stack.push(directory);
+		try
+		{
+			while (!stack.isEmpty())
+			{
+				Fat32Directory dir = stack.pop();
+				for (Fat32Directory.Entry entry : dir.getEntries())
+				{
+					if (entry.isFile())
+						files.put(entry.getPathname().substring(prefixLength), entry);
+				}
+				for (Fat32Directory child : dir.getChildren())
+					stack.push(child);
+			}
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+		return files;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the regular files in the tree of the specified directory of the host file system mapped to their
+	 * pathnames relative to the directory.  The elements of a relative pathname are separated by {@link
+	 * Fat32Directory#NAME_SEPARATOR}.
+	 *
+	 * @param  directory
+	 *           the directory at the root of the tree.
+	 * @param  taskStatus
+	 *           the status of the task.
+	 * @return the regular files in the tree of {@code directory} mapped to their relative pathnames, or {@code null}
+	 *         if the task was cancelled.
+	 * @throws FileException
+	 *           if an error occurred when reading the tree.
+	 */
+
+	private static Map<String, HostFile> collectHostFiles(
+		Path		directory,
+		ITaskStatus	taskStatus)
+		throws FileException
+	{
+		// Update task message
+		taskStatus.setMessage(READING_HOST_FILES_STR);
+
+		// Walk tree; collect regular files
+		Map<String, HostFile> files = new HashMap<>();
+		try
+		{
+			Files.walkFileTree(directory, new SimpleFileVisitor<>()
+			{
+				@Override
+				public FileVisitResult visitFile(
+					Path				file,
+					BasicFileAttributes	attrs)
+				{
+					// Test whether task has been cancelled
+					if (taskStatus.isCancelled())
+						return FileVisitResult.TERMINATE;
+
+					// Add regular file
+					if (attrs.isRegularFile())
+					{
+						StringBuilder pathname = new StringBuilder(64);
+						for (Path name : directory.relativize(file))
+						{
+							if (!pathname.isEmpty())
+								pathname.append(Fat32Directory.NAME_SEPARATOR_CHAR);
+							pathname.append(name);
+						}
+						files.put(pathname.toString(), new HostFile(file, attrs.size()));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_READING_DIRECTORY, e, directory);
+		}
+		return taskStatus.isCancelled() ? null : files;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the specified file of the host file system and returns the hash of its content.
+	 *
+	 * @param  file
+	 *           the location of the file.
+	 * @return the SHA-256 hash of the content of {@code file}.
+	 * @throws VolumeException
+	 *           if the digest algorithm is not supported.
+	 * @throws IOException
+	 *           if an error occurred when reading the file.
+	 */
+
+	private static byte[] hashHostFile(
+		Path	file)
+		throws VolumeException, IOException
+	{
+		MessageDigest digest = ContentHasher.createDigest();
+		byte[] buffer = BUFFERS.get();
+		try (InputStream inStream = Files.newInputStream(file))
+		{
+			int length = 0;
+			while ((length = inStream.read(buffer)) >= 0)
+				digest.update(buffer, 0, length);
+		}
+		return digest.digest();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a pool of the specified number of worker threads.
+	 *
+	 * @param  numThreads
+	 *           the number of threads.
+	 * @return a pool of {@code numThreads} daemon threads.
+	 */
+
+	private static ExecutorService createExecutor(
+		int	numThreads)
+	{
+		int[] threadIndex = { 0 };
+		return Executors.newFixedThreadPool(numThreads, runnable ->
+				DaemonFactory.create(HostTreeVerifier.class.getSimpleName() + "-" + WORKER_THREAD_NAME_SUFFIX + "-"
+										+ ++threadIndex[0], runnable));
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Enumerated types
+////////////////////////////////////////////////////////////////////////
+
+
+	// ENUMERATION: REASON FOR A DIFFERENCE BETWEEN FILES
+
+
+	/**
+	 * This is an enumeration of the ways in which a file of a volume may differ from the corresponding file of the
+	 * host file system.
+	 */
+
+	public enum Reason
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * The lengths of the files differ.
+		 */
+		LENGTH
+		(
+			"length"
+		),
+
+		/**
+		 * The contents of the files differ.
+		 */
+		CONTENT
+		(
+			"content"
+		),
+
+		/**
+		 * The file of the host file system could not be read.
+		 */
+		UNREADABLE
+		(
+			"unreadable"
+		),
+
+		/**
+		 * The file of the volume could not be read because its cluster chain is invalid or ends before the end of the
+		 * file.
+		 */
+		CORRUPT
+		(
+			"corrupt"
+		);
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The text representation of this reason. */
+		private	String	text;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a reason for a difference between files.
+		 *
+		 * @param text
+		 *          the text representation of the reason.
+		 */
+
+		private Reason(
+			String	text)
+		{
+			// Initialise instance variables
+			this.text = text;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * {@inheritDoc}
+		 */
+
+		@Override
+		public String toString()
+		{
+			return text;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of verifying a tree of directories against a directory of the host file
+	 * system.
+	 *
+	 * @param numFiles
+	 *          the number of files in the tree of the volume.
+	 * @param numFilesCompared
+	 *          the number of files whose contents were compared.
+	 * @param numBytes
+	 *          the number of bytes of file data of the volume that were compared.
+	 * @param missingFiles
+	 *          the relative pathnames of the files of the volume that are not in the host tree.
+	 * @param extraFiles
+	 *          the relative pathnames of the files of the host tree that are not on the volume.
+	 * @param differences
+	 *          the files whose lengths or contents differ, in order of pathname.
+	 * @param nanoseconds
+	 *          the time taken by the verification.
+	 */
+
+	public record Result(
+		int					numFiles,
+		int					numFilesCompared,
+		long				numBytes,
+		List<String>		missingFiles,
+		List<String>		extraFiles,
+		List<Difference>	differences,
+		long				nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Returns {@code true} if the two trees contain the same files with the same contents.
+		 *
+		 * @return {@code true} if the two trees contain the same files with the same contents.
+		 */
+
+		public boolean isMatch()
+		{
+			return missingFiles.isEmpty() && extraFiles.isEmpty() && differences.isEmpty();
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the rate at which file data were compared, in megabytes per second.
+		 *
+		 * @return the rate at which file data were compared, in megabytes per second.
+		 */
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: DIFFERENCE BETWEEN FILES
+
+
+	/**
+	 * This record encapsulates a difference between a file of a volume and the corresponding file of the host file
+	 * system.
+	 *
+	 * @param pathname
+	 *          the relative pathname of the files.
+	 * @param reason
+	 *          the way in which the files differ.
+	 */
+
+	public record Difference(
+		String	pathname,
+		Reason	reason)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: FILE OF THE HOST FILE SYSTEM
+
+
+	/**
+	 * This record encapsulates a regular file of the host file system.
+	 *
+	 * @param location
+	 *          the location of the file.
+	 * @param length
+	 *          the length of the file.
+	 */
+
+	private record HostFile(
+		Path	location,
+		long	length)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: PAIR OF CORRESPONDING FILES
+
+
+	/**
+	 * This record encapsulates a file of a volume and the corresponding file of the host file system.
+	 *
+	 * @param pathname
+	 *          the relative pathname of the files.
+	 * @param entry
+	 *          the entry of the file of the volume.
+	 * @param location
+	 *          the location of the file of the host file system.
+	 */
+
+	private record Pair(
+		String					pathname,
+		Fat32Directory.Entry	entry,
+		Path					location)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -20,6 +20,8 @@ package uk.blankaspect.fat32manager;
 
 import java.lang.invoke.MethodHandles;
 
+import java.nio.file.Path;
+
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.EnumMap;
@@ -83,6 +85,8 @@ import uk.blankaspect.ui.jfx.dialog.SimpleProgressDialog;
 
 import uk.blankaspect.ui.jfx.image.MessageIcon32;
 
+import uk.blankaspect.ui.jfx.locationchooser.LocationChooser;
+
 import uk.blankaspect.ui.jfx.observer.ChangeNotifier;
 
 //----------------------------------------------------------------------
@@ -146,6 +150,12 @@ public class MainDirectoryTableView
 	private static final	String	FILE_ERASED_STR			= "The file was erased successfully.";
 	private static final	String	ERASE_DIRECTORY_STR		= "Erase directory";
 	private static final	String	DIRECTORY_ERASED_STR	= "The directory was erased successfully.";
+	private static final	String	EXTRACT_FILE_STR		= "Extract file";
+	private static final	String	EXTRACT_DIRECTORY_STR	= "Extract directory";
+	private static final	String	EXTRACTED_STR			=
+			"Files extracted : %,d\nDirectories created : %,d\nBytes copied : %,d\nTime : %.1f s (%.1f MB/s)";
+	private static final	String	IMPORTED_STR			=
+			"Files imported : %,d\nDirectories created : %,d\nBytes copied : %,d\nTime : %.1f s (%.1f MB/s)";
 	private static final	String	REOPEN_UNBUFFERED_STR	=
 			"You should reopen the volume with unbuffered I/O to erase a file or directory.";
 	private static final	String	WARN_CANCEL_STR			=
@@ -357,6 +367,14 @@ public class MainDirectoryTableView
 					}
 					menuItem.setOnAction(event0 -> defragmentFile(entry));
 					menu.getItems().add(menuItem);
+
+					// Add separator
+					menu.getItems().add(new SeparatorMenuItem());
+
+					// Add menu item: extract file
+					menuItem = new MenuItem(EXTRACT_FILE_STR + ELLIPSIS_STR);
+					menuItem.setOnAction(event0 -> extractEntries(EXTRACT_FILE_STR, List.of(entry)));
+					menu.getItems().add(menuItem);
 				}
 
 				// Case: regular directory
@@ -370,6 +388,14 @@ public class MainDirectoryTableView
 					MenuItem menuItem = new MenuItem(ERASE_DIRECTORY_STR, Images.icon(Images.ImageId.ERASER));
 					menuItem.setOnAction(event0 -> eraseDirectory(entry));
 					menu.getItems().add(menuItem);
+
+					// Add separator
+					menu.getItems().add(new SeparatorMenuItem());
+
+					// Add menu item: extract directory
+					menuItem = new MenuItem(EXTRACT_DIRECTORY_STR + ELLIPSIS_STR);
+					menuItem.setOnAction(event0 -> extractEntries(EXTRACT_DIRECTORY_STR, List.of(entry)));
+					menu.getItems().add(menuItem);
 				}
 				break;
 			}
@@ -562,23 +588,30 @@ public class MainDirectoryTableView
 			protected Result call()
 				throws Exception
 			{
-				// Initialise volume
+				// Reinitialise volume, keeping loaded directories if layout of volume is unchanged
 				updateMessage(READING_FATS_STR);
+				boolean treeKept = false;
 				try
 				{
-					volume.init(volume.isUnbufferedIO());
+					treeKept = volume.reinit(volume.isUnbufferedIO());
 				}
 				catch (VolumeException e)
 				{
-					Fat32ManagerApp.instance().closeVolume();
+					Fat32ManagerApp.instance().closeVolume(false);
 					throw e;
 				}
 
 				// Initialise list of messages
 				List<String> messages = new ArrayList<>();
 
-				// Read directories
+				// Refresh loaded directories; parse only directories whose clusters have changed
 				updateMessage(READING_DIRECTORY_STR);
+				if (treeKept)
+					volume.getRootDir().refreshTree(messages);
+				else
+					volume.getRootDir().read(messages);
+
+				// Find directories from root to current directory
 				for (int i = 0; i < names.size(); i++)
 				{
 					// Get directory from its name
@@ -595,9 +628,6 @@ public class MainDirectoryTableView
 						}
 						vars.directory = vars.directory.getSubdirectory(entry);
 					}
-
-					// Read directory
-					vars.directory.read(messages);
 				}
 
 				// Return list of messages
@@ -855,13 +885,13 @@ public class MainDirectoryTableView
 					directory = getDirectory().getVolume().getRootDir();
 				else
 				{
-					Fat32Directory.Entry entry = (directory == null) ? null : directory.findEntry(name);
-					if ((entry == null) || !entry.isDirectory())
+					Fat32Directory subdirectory = (directory == null) ? null : directory.resolvePath(name);
+					if (subdirectory == null)
 					{
 						errorPathname = StringUtils.join(Fat32Directory.NAME_SEPARATOR_CHAR, names.subList(0, i + 1));
 						break;
 					}
-					directory = directory.getDirectory(entry);
+					directory = subdirectory;
 				}
 			}
 		}
@@ -933,6 +963,178 @@ public class MainDirectoryTableView
 
 	//------------------------------------------------------------------
 
+	public void extractEntries(
+		String						title,
+		List<Fat32Directory.Entry>	entries)
+	{
+		// Display dialog to choose output directory
+		LocationChooser directoryChooser = LocationChooser.forDirectories();
+		directoryChooser.setDialogTitle(title);
+		directoryChooser.setDialogStateKey();
+		Path outDirectory = directoryChooser.showSelectDialog(window());
+		if (outDirectory == null)
+			return;
+
+		// Log description of task
+		Logger.INSTANCE.info(title + " " + entries.stream().map(Fat32Directory.Entry::getPathname).toList() + " -> "
+								+ outDirectory);
+
+		// Create task to extract files and directories
+		Task<FileExtractor.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected FileExtractor.Result call()
+				throws Exception
+			{
+				// Extract files and directories
+				FileExtractor.Result result =
+						FileExtractor.extract(getDirectory().getVolume(), entries, outDirectory, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Create message
+				FileExtractor.Result result = getValue();
+				String message = outDirectory + MessageConstants.LABEL_SEPARATOR
+						+ String.format(EXTRACTED_STR, result.numFiles(), result.numDirectories(), result.numBytes(),
+										(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond());
+
+				// Log message
+				Logger.INSTANCE.info(message);
+
+				// Report result
+				NotificationDialog.show(window(), getTitle(), MessageIcon32.INFORMATION.get(), message);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Display error message in dialog
+				showErrorMessage(window());
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(window(), task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		Fat32ManagerApp.executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
+	public void importFiles(
+		String	title,
+		boolean	directory)
+	{
+		// Display dialog to choose files or directory
+		List<Path> locations = null;
+		if (directory)
+		{
+			LocationChooser directoryChooser = LocationChooser.forDirectories();
+			directoryChooser.setDialogTitle(title);
+			directoryChooser.setDialogStateKey();
+			Path location = directoryChooser.showSelectDialog(window());
+			if (location != null)
+				locations = List.of(location);
+		}
+		else
+		{
+			LocationChooser fileChooser = LocationChooser.forFiles();
+			fileChooser.setDialogTitle(title);
+			fileChooser.setDialogStateKey();
+			locations = fileChooser.showSelectMultipleDialog(window());
+		}
+		if ((locations == null) || locations.isEmpty())
+			return;
+
+		// Log description of task
+		Fat32Directory targetDirectory = getDirectory();
+		Logger.INSTANCE.info(title + " " + locations + " -> " + targetDirectory.getPathname());
+
+		// Create task to import files and directories
+		List<Path> locations0 = locations;
+		Task<FileImporter.Result> task = new AbstractTask<>()
+		{
+			{
+				// Initialise task
+				updateTitle(title);
+				updateProgress(-1, 1);
+			}
+
+			@Override
+			protected FileImporter.Result call()
+				throws Exception
+			{
+				// Import files and directories
+				FileImporter.Result result = FileImporter.importFiles(targetDirectory, locations0, createTaskStatus());
+
+				// If task has been cancelled, change state to 'cancelled'
+				hardCancel(false);
+
+				// Return result
+				return result;
+			}
+
+			@Override
+			protected void succeeded()
+			{
+				// Refresh directory
+				refreshDirectory();
+
+				// Create message
+				FileImporter.Result result = getValue();
+				String message = targetDirectory.getPathname() + MessageConstants.LABEL_SEPARATOR
+						+ String.format(IMPORTED_STR, result.numFiles(), result.numDirectories(), result.numBytes(),
+										(double)result.nanoseconds() * 1.0e-9, result.megabytesPerSecond());
+
+				// Log message
+				Logger.INSTANCE.info(message);
+
+				// Report result
+				NotificationDialog.show(window(), getTitle(), MessageIcon32.INFORMATION.get(), message);
+			}
+
+			@Override
+			protected void failed()
+			{
+				// Refresh directory
+				refreshDirectory();
+
+				// Display error message in dialog
+				showErrorMessage(window());
+			}
+
+			@Override
+			protected void cancelled()
+			{
+				// Refresh directory
+				refreshDirectory();
+			}
+		};
+
+		// Show progress of task in dialog
+		new SimpleProgressDialog(window(), task, SimpleProgressDialog.CancelMode.NO_INTERRUPT);
+
+		// Execute task on background thread
+		Fat32ManagerApp.executeTask(task);
+	}
+
+	//------------------------------------------------------------------
+
 	private void eraseFile(
 		Fat32Directory.Entry	entry)
 	{
@@ -1621,9 +1823,7 @@ public class MainDirectoryTableView
 	//  Constants
 	////////////////////////////////////////////////////////////////////
 
-		private static final	String	COUNTING_DIRECTORIES_STR	= "Counting directories";
-		private static final	String	SORTING_DIRECTORY_STR		= "Sorting directory entries";
-		private static final	String	SORTING_STR					= "Sorting";
+		private static final	String	SORTING_DIRECTORY_STR	= "Sorting directory entries";
 
 	////////////////////////////////////////////////////////////////////
 	//  Instance variables
@@ -1631,8 +1831,6 @@ public class MainDirectoryTableView
 
 		private	boolean	recursive;
 		private	boolean	ignoreCase;
-		private	int		numDirectories;
-		private	int		numDirectoriesSorted;
 
 	////////////////////////////////////////////////////////////////////
 	//  Constructors
@@ -1660,19 +1858,8 @@ public class MainDirectoryTableView
 		protected Void call()
 			throws Exception
 		{
-			// Set message and indeterminate progress while counting directories
-			updateMessage(COUNTING_DIRECTORIES_STR);
-			updateProgress(-1, 1);
-
-			// Count directories
-			Fat32Directory directory = getDirectory();
-			countDirectories(directory);
-
-			// Reset progress
-			updateProgress(0, numDirectories);
-
 			// Sort directory entries
-			sortByName(directory);
+			DirectorySorter.sort(getDirectory(), recursive, ignoreCase, createTaskStatus());
 
 			// If task has been cancelled, change state to 'cancelled'
 			hardCancel(false);
@@ -1683,74 +1870,6 @@ public class MainDirectoryTableView
 
 		//--------------------------------------------------------------
 
-	////////////////////////////////////////////////////////////////////
-	//  Instance methods
-	////////////////////////////////////////////////////////////////////
-
-		private void countDirectories(
-			Fat32Directory	directory)
-			throws VolumeException
-		{
-			// Test whether task has been cancelled
-			if (isCancelled())
-				return;
-
-			// Increment number of directories
-			++numDirectories;
-
-			// Count subdirectories
-			if (recursive)
-			{
-				for (Fat32Directory subdirectory : directory.getChildren())
-				{
-					// Test whether task has been cancelled
-					if (isCancelled())
-						break;
-
-					// Process subdirectory
-					if (subdirectory.getEntryInParent().isRegularDirectory())
-						countDirectories(subdirectory);
-				}
-			}
-		}
-
-		//--------------------------------------------------------------
-
-		private void sortByName(
-			Fat32Directory	directory)
-			throws VolumeException
-		{
-			// Test whether task has been cancelled
-			if (isCancelled())
-				return;
-
-			// Update message with pathname of directory
-			updateMessage(SORTING_STR + MessageConstants.SPACE_SEPARATOR + directory.getPathname());
-
-			// Sort directory entries
-			directory.sortByName(ignoreCase);
-
-			// Update progress
-			updateProgress(++numDirectoriesSorted, numDirectories);
-
-			// Sort subdirectories
-			if (recursive)
-			{
-				for (Fat32Directory subdirectory : directory.getChildren())
-				{
-					// Test whether task has been cancelled
-					if (isCancelled())
-						break;
-
-					// Sort subdirectory
-					if (subdirectory.getEntryInParent().isRegularDirectory())
-						sortByName(subdirectory);
-				}
-			}
-		}
-
-		//--------------------------------------------------------------
-
 	}
 
 	//==================================================================
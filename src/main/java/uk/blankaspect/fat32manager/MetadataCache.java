@@ -0,0 +1,571 @@
+/*====================================================================*\
+
+MetadataCache.java
+
+Class: cache of snapshots of the metadata of FAT32 volumes.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.nio.file.attribute.FileTime;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import java.util.stream.Stream;
+
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import uk.blankaspect.common.logging.Logger;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: CACHE OF SNAPSHOTS OF THE METADATA OF FAT32 VOLUMES
+
+
+/**
+ * This class implements a cache of snapshots of the directory trees of FAT32 volumes.  The cache is a directory of the
+ * local file system that contains one snapshot file for each volume ID.
+ * <p>
+ * A snapshot contains the raw entries and cluster checksums of each directory of a volume that was loaded when the
+ * snapshot was saved, and it is keyed by the ID and label of the volume and a digest of its FAT.  When a volume is
+ * opened, the FATs are read as usual; if the key of the snapshot of the volume matches, the loaded directories are
+ * restored from the snapshot instead of being read from the volume.  If the key does not match or the snapshot cannot
+ * be read, the root directory is read from the volume in the usual way.
+ * </p>
+ * <p>
+ * The total size of the snapshot files is limited.  When a snapshot is saved, the least recently used snapshots are
+ * deleted until the total size is within the limit.
+ * </p>
+ * <p>
+ * A snapshot of a large directory tree may take some time to write, so snapshots can be saved in the background on a
+ * single thread, in the order in which they were requested.  A snapshot is loaded only when all pending saves have
+ * finished, so a volume that is reopened immediately after it was closed is restored from its latest snapshot.
+ * </p>
+ * <p>
+ * A change to the contents of a directory that does not change the FAT (for example, renaming a file on another
+ * system) is not detected when a snapshot is loaded, but it is detected by a subsequent refresh, which compares the
+ * checksums of the clusters of each loaded directory with those on the volume.
+ * </p>
+ */
+
+public class MetadataCache
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The identifier of a snapshot file. */
+	private static final	int		MAGIC	= 0x46334D53;
+
+	/** The version of the format of a snapshot file. */
+	private static final	int		VERSION	= 1;
+
+	/** The value of the number of children of a directory whose children were not loaded. */
+	private static final	int		CHILDREN_NOT_LOADED	= -1;
+
+	/** The filename extension of a snapshot file. */
+	private static final	String	FILENAME_EXTENSION	= ".snapshot";
+
+	/** The filename extension of a temporary snapshot file. */
+	private static final	String	TEMPORARY_FILENAME_EXTENSION	= ".tmp";
+
+	/** The format of the filename of a snapshot file. */
+	private static final	String	FILENAME_FORMAT	= "%08X" + FILENAME_EXTENSION;
+
+	/** The suffix of the name of the thread on which snapshots are saved in the background. */
+	private static final	String	SAVER_THREAD_NAME_SUFFIX	= "saver";
+
+	/** Miscellaneous strings. */
+	private static final	String	FAILED_TO_LOAD_SNAPSHOT_STR		= "Failed to load metadata snapshot";
+	private static final	String	FAILED_TO_SAVE_SNAPSHOT_STR		= "Failed to save metadata snapshot";
+	private static final	String	FAILED_TO_DELETE_SNAPSHOT_STR	= "Failed to delete metadata snapshot";
+	private static final	String	LOADED_SNAPSHOT_STR				= "Loaded metadata snapshot";
+	private static final	String	SAVED_SNAPSHOT_STR				= "Saved metadata snapshot";
+	private static final	String	DIRECTORIES_STR					= "directories";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	NOT_A_SNAPSHOT_FILE =
+				"The file is not a metadata snapshot.";
+
+		String	UNSUPPORTED_VERSION =
+				"The version of the snapshot (%d) is not supported.";
+
+		String	INCONSISTENT_DIRECTORY =
+				"The snapshot of the directory %s is inconsistent with its entries.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Instance variables
+////////////////////////////////////////////////////////////////////////
+
+	/** The location of the directory of the cache. */
+	private	Path				directory;
+
+	/** The maximum total size (in bytes) of the snapshot files. */
+	private	long				maxSize;
+
+	/** The executor that saves snapshots in the background. */
+	private	ExecutorService		saveExecutor;
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Creates a new instance of a cache of snapshots of the metadata of FAT32 volumes.
+	 *
+	 * @param directory
+	 *          the location of the directory of the cache.  The directory is created when the first snapshot is saved.
+	 * @param maxSize
+	 *          the maximum total size (in bytes) of the snapshot files.
+	 */
+
+	public MetadataCache(
+		Path	directory,
+		long	maxSize)
+	{
+		// Validate arguments
+		if (directory == null)
+			throw new IllegalArgumentException("Null directory");
+		if (maxSize < 0)
+			throw new IllegalArgumentException("Maximum size out of bounds: " + maxSize);
+
+		// Initialise instance variables
+		this.directory = directory;
+		this.maxSize = maxSize;
+		saveExecutor = Executors.newSingleThreadExecutor(runnable ->
+				DaemonFactory.create(getClass().getSimpleName() + "-" + SAVER_THREAD_NAME_SUFFIX, runnable));
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Instance methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Restores the directory tree of the specified volume from its snapshot, if the snapshot matches the volume.  The
+	 * FATs of the volume must have been read.  Any pending background saves are waited for first.
+	 *
+	 * @param  volume
+	 *           the volume whose directory tree will be restored.
+	 * @param  messages
+	 *           the list to which messages about invalid directory entries will be added.
+	 * @return {@code true} if the directory tree was restored from the snapshot; {@code false} otherwise, in which
+	 *         case the directory tree of the volume is unchanged.
+	 */
+
+	public boolean load(
+		Fat32Volume		volume,
+		List<String>	messages)
+	{
+		// Wait for pending saves
+		awaitSaves();
+
+		// Test for snapshot file
+		Path file = getFile(volume);
+		if (!Files.isRegularFile(file))
+			return false;
+
+		// Read snapshot
+		Fat32Directory rootDir = volume.getRootDir();
+		List<String> messages0 = new ArrayList<>();
+		try (DataInputStream inStream = new DataInputStream(new InflaterInputStream(
+				new BufferedInputStream(Files.newInputStream(file)))))
+		{
+			// Read and validate header
+			if (inStream.readInt() != MAGIC)
+				throw new IOException(ErrorMsg.NOT_A_SNAPSHOT_FILE);
+			int version = inStream.readInt();
+			if (version != VERSION)
+				throw new IOException(String.format(ErrorMsg.UNSUPPORTED_VERSION, version));
+
+			// Test key of snapshot
+			if ((inStream.readInt() != volume.getId())
+					|| !inStream.readUTF().equals(Objects.toString(volume.getVolumeLabel(), ""))
+					|| (inStream.readLong() != volume.getFat().getDigest())
+					|| (inStream.readInt() != volume.getBytesPerCluster()))
+				return false;
+
+			// Read directories
+			int numDirectories = readDirectory(inStream, rootDir, messages0);
+
+			// Mark snapshot as recently used
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+
+			// Log result
+			Logger.INSTANCE.info(LOADED_SNAPSHOT_STR + " : " + file + " : " + numDirectories + " " + DIRECTORIES_STR);
+		}
+		catch (IOException | VolumeException e)
+		{
+			// Discard partially restored tree
+			rootDir.setChildren(null);
+
+			// Log error
+			Logger.INSTANCE.error(FAILED_TO_LOAD_SNAPSHOT_STR + " : " + file, e);
+			return false;
+		}
+
+		// Add messages to list
+		if (messages != null)
+			messages.addAll(messages0);
+
+		// Indicate success
+		return true;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Saves a snapshot of the loaded directories of the specified volume.  Directories that have been modified since
+	 * they were last read are omitted.  Any error is written to the log.
+	 *
+	 * @param volume
+	 *          the volume whose directory tree will be saved.
+	 */
+
+	public void save(
+		Fat32Volume	volume)
+	{
+		// Test whether root directory is in a state that can be saved
+		if (!volume.isInitialised() || (volume.getRootDir().getClusterChecksums() == null))
+			return;
+
+		// Write snapshot to temporary file
+		Path file = getFile(volume);
+		Path tempFile = file.resolveSibling(file.getFileName() + TEMPORARY_FILENAME_EXTENSION);
+		try
+		{
+			// Create directory
+			Files.createDirectories(directory);
+
+			// Write snapshot
+			int numDirectories = 0;
+			try (DataOutputStream outStream = new DataOutputStream(new DeflaterOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tempFile)))))
+			{
+				// Write header
+				outStream.writeInt(MAGIC);
+				outStream.writeInt(VERSION);
+
+				// Write key
+				outStream.writeInt(volume.getId());
+				outStream.writeUTF(Objects.toString(volume.getVolumeLabel(), ""));
+				outStream.writeLong(volume.getFat().getDigest());
+				outStream.writeInt(volume.getBytesPerCluster());
+
+				// Write directories
+				numDirectories = writeDirectory(outStream, volume.getRootDir());
+			}
+
+			// Replace snapshot file
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+
+			// Log result
+			Logger.INSTANCE.info(SAVED_SNAPSHOT_STR + " : " + file + " : " + numDirectories + " " + DIRECTORIES_STR);
+		}
+		catch (IOException e)
+		{
+			Logger.INSTANCE.error(FAILED_TO_SAVE_SNAPSHOT_STR + " : " + file, e);
+			delete(tempFile);
+			return;
+		}
+
+		// Delete least recently used snapshots
+		evict();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Saves a snapshot of the loaded directories of the specified volume on a background thread.  Snapshots are saved
+	 * in the order in which this method is called.  The directory tree of the volume must not be modified after this
+	 * method is called.
+	 *
+	 * @param volume
+	 *          the volume whose directory tree will be saved.
+	 */
+
+	public void saveInBackground(
+		Fat32Volume	volume)
+	{
+		saveExecutor.execute(() -> save(volume));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for all the snapshots that were requested by {@link #saveInBackground(Fat32Volume)} to be saved.  If the
+	 * calling thread is interrupted while it is waiting, this method returns with the interrupt status of the thread
+	 * set.
+	 */
+
+	public void awaitSaves()
+	{
+		try
+		{
+			saveExecutor.submit(() -> { }).get();
+		}
+		catch (ExecutionException e)
+		{
+			// ignore
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the location of the snapshot file of the specified volume.
+	 *
+	 * @param  volume
+	 *           the volume of interest.
+	 * @return the location of the snapshot file of {@code volume}.
+	 */
+
+	private Path getFile(
+		Fat32Volume	volume)
+	{
+		return directory.resolve(String.format(FILENAME_FORMAT, volume.getId()));
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads a directory and, recursively, its loaded subdirectories from the specified input stream.
+	 *
+	 * @param  inStream
+	 *           the input stream from which the directory will be read.
+	 * @param  directory
+	 *           the directory whose entries will be restored.
+	 * @param  messages
+	 *           the list to which messages about invalid directory entries will be added.
+	 * @return the number of directories that were read.
+	 * @throws IOException
+	 *           if an error occurred when reading the input stream, or if the snapshot is inconsistent.
+	 * @throws VolumeException
+	 *           if an error occurred when parsing the entries of a directory.
+	 */
+
+	private int readDirectory(
+		DataInputStream	inStream,
+		Fat32Directory	directory,
+		List<String>	messages)
+		throws IOException, VolumeException
+	{
+		// Read entries and checksums of clusters
+		byte[] entryData = new byte[inStream.readInt()];
+		inStream.readFully(entryData);
+		int[] clusterChecksums = new int[inStream.readInt()];
+		for (int i = 0; i < clusterChecksums.length; i++)
+			clusterChecksums[i] = inStream.readInt();
+
+		// Restore directory
+		directory.read(entryData, clusterChecksums, messages);
+		int numDirectories = 1;
+
+		// Read subdirectories
+		int numChildren = inStream.readInt();
+		if (numChildren != CHILDREN_NOT_LOADED)
+		{
+			List<Fat32Directory> children = directory.createChildren();
+			if (children.size() != numChildren)
+				throw new IOException(String.format(ErrorMsg.INCONSISTENT_DIRECTORY, directory.getPathname()));
+			for (Fat32Directory child : children)
+				numDirectories += readDirectory(inStream, child, messages);
+			directory.setChildren(children);
+		}
+
+		// Return number of directories
+		return numDirectories;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes a directory and, recursively, its loaded subdirectories to the specified output stream.  The children of
+	 * a directory are written only if all of them can be written.
+	 *
+	 * @param  outStream
+	 *           the output stream to which the directory will be written.
+	 * @param  directory
+	 *           the directory that will be written.
+	 * @return the number of directories that were written.
+	 * @throws IOException
+	 *           if an error occurred when writing the output stream.
+	 */
+
+	private int writeDirectory(
+		DataOutputStream	outStream,
+		Fat32Directory		directory)
+		throws IOException
+	{
+		// Write entries
+		byte[] entryData = directory.getEntryData();
+		outStream.writeInt(entryData.length);
+		outStream.write(entryData);
+
+		// Write checksums of clusters
+		int[] clusterChecksums = directory.getClusterChecksums();
+		outStream.writeInt(clusterChecksums.length);
+		for (int checksum : clusterChecksums)
+			outStream.writeInt(checksum);
+		int numDirectories = 1;
+
+		// Write subdirectories if all of them are unmodified since they were read
+		List<Fat32Directory> children = directory.areChildrenRead() ? directory.getChildren() : null;
+		if ((children == null) || children.stream().anyMatch(child -> child.getClusterChecksums() == null))
+			outStream.writeInt(CHILDREN_NOT_LOADED);
+		else
+		{
+			outStream.writeInt(children.size());
+			for (Fat32Directory child : children)
+				numDirectories += writeDirectory(outStream, child);
+		}
+
+		// Return number of directories
+		return numDirectories;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Deletes the least recently used snapshot files until the total size of the snapshot files does not exceed the
+	 * maximum size.
+	 */
+
+	private void evict()
+	{
+		// Get snapshot files, least recently used first
+		List<Path> files = null;
+		try (Stream<Path> stream = Files.list(directory))
+		{
+			files = stream
+					.filter(file -> file.getFileName().toString().endsWith(FILENAME_EXTENSION))
+					.sorted(Comparator.comparing(file ->
+					{
+						try
+						{
+							return Files.getLastModifiedTime(file);
+						}
+						catch (IOException e)
+						{
+							return FileTime.fromMillis(0);
+						}
+					}))
+					.toList();
+		}
+		catch (IOException e)
+		{
+			Logger.INSTANCE.error(FAILED_TO_DELETE_SNAPSHOT_STR + " : " + directory, e);
+			return;
+		}
+
+		// Calculate total size of snapshot files
+		long totalSize = 0;
+		for (Path file : files)
+			totalSize += size(file);
+
+		// Delete least recently used snapshot files
+		for (Path file : files)
+		{
+			if (totalSize <= maxSize)
+				break;
+			long size = size(file);
+			if (delete(file))
+				totalSize -= size;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns the size of the specified file.
+	 *
+	 * @param  file
+	 *           the file of interest.
+	 * @return the size of {@code file}, or 0 if it cannot be determined.
+	 */
+
+	private static long size(
+		Path	file)
+	{
+		try
+		{
+			return Files.size(file);
+		}
+		catch (IOException e)
+		{
+			return 0;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Deletes the specified file, if it exists.  Any error is written to the log.
+	 *
+	 * @param  file
+	 *           the file that will be deleted.
+	 * @return {@code true} if the file was deleted; {@code false} otherwise.
+	 */
+
+	private static boolean delete(
+		Path	file)
+	{
+		try
+		{
+			return Files.deleteIfExists(file);
+		}
+		catch (IOException e)
+		{
+			Logger.INSTANCE.error(FAILED_TO_DELETE_SNAPSHOT_STR + " : " + file, e);
+			return false;
+		}
+	}
+
+	//------------------------------------------------------------------
+
+}
+
+//----------------------------------------------------------------------
@@ -0,0 +1,482 @@
+/*====================================================================*\
+
+SlackEraser.java
+
+Class: eraser of the slack space of the files of a FAT32 volume.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ICancellable;
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: ERASER OF THE SLACK SPACE OF FILES
+
+
+/**
+ * This class provides a method that overwrites the slack space of the files of a FAT32 volume with a filler value.
+ * The slack space of a file is the part of its last cluster that lies beyond the end of the file, where data from an
+ * earlier use of the cluster may persist.
+ * <p>
+ * The operation has two phases:
+ * </p>
+ * <ol>
+ *   <li>The directory tree of the volume is read with a {@link DirectoryTreeLoader}, and the last cluster of each file
+ *       and the offset of its slack space are found by following the cluster chain of the file in the in-memory copy
+ *       of the FAT, on the common work-stealing {@link ForkJoinPool}, one task per directory.</li>
+ *   <li>The last clusters are sorted by index and processed in a single session of the volume as one ascending
+ *       sweep.  Clusters that are separated by a small gap are read with a single request; the slack space of each
+ *       cluster is overwritten in memory, and each run of consecutive modified clusters is written back with a single
+ *       request.  A cluster whose slack space already consists entirely of the filler value is not written.</li>
+ * </ol>
+ */
+
+public class SlackEraser
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** Miscellaneous strings. */
+	private static final	String	READING_DIRECTORIES_STR		= "Reading directories";
+	private static final	String	FINDING_LAST_CLUSTERS_STR	= "Finding last clusters of files";
+	private static final	String	ERASING_SLACK_SPACE_STR		= "Erasing slack space";
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private SlackEraser()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Overwrites the slack space of all the files of the specified volume with the specified filler value, and returns
+	 * the result.
+	 *
+	 * @param  volume
+	 *           the volume whose slack space will be erased.
+	 * @param  fillerValue
+	 *           the value with which the slack space will be overwritten.
+	 * @param  taskStatus
+	 *           the status of the task that is erasing the slack space.
+	 * @return the result of the operation, or {@code null} if the task was cancelled before any cluster was written.
+	 * @throws VolumeException
+	 *           if an error occurred when reading or writing the volume.
+	 */
+
+	public static Result erase(
+		Fat32Volume	volume,
+		byte		fillerValue,
+		ITaskStatus	taskStatus)
+		throws VolumeException
+	{
+		// Read directory tree of volume
+		taskStatus.setMessage(READING_DIRECTORIES_STR);
+		taskStatus.setProgress(-1.0);
+		long startTime = System.nanoTime();
+		DirectoryTreeLoader.load(volume.getRootDir(), null, taskStatus);
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Find last clusters of files
+		taskStatus.setMessage(FINDING_LAST_CLUSTERS_STR);
+		Plan plan = null;
+		try
+		{
+			plan = ForkJoinPool.commonPool().invoke(new PlanningTask(volume.getRootDir(), taskStatus));
+		}
+		catch (WrappedVolumeException e)
+		{
+			throw (VolumeException)e.getCause();
+		}
+		if (taskStatus.isCancelled())
+			return null;
+
+		// Sort last clusters by index; if a cluster is the last cluster of more than one file (ie, chains are
+		// cross-linked), keep the tail that preserves most data
+		List<Tail> tails = new ArrayList<>(plan.tails);
+		tails.sort(Comparator.comparingInt(Tail::clusterIndex).thenComparingInt(Tail::offset));
+		List<Tail> uniqueTails = new ArrayList<>(tails.size());
+		for (Tail tail : tails)
+		{
+			int last = uniqueTails.size() - 1;
+			if ((last >= 0) && (uniqueTails.get(last).clusterIndex() == tail.clusterIndex()))
+				uniqueTails.set(last, tail);
+			else
+				uniqueTails.add(tail);
+		}
+
+		// Calculate total length of slack space
+		int bytesPerCluster = volume.getBytesPerCluster();
+		long numSlackBytes = 0;
+		for (Tail tail : uniqueTails)
+			numSlackBytes += bytesPerCluster - tail.offset();
+
+		// Erase slack space
+		taskStatus.setMessage(ERASING_SLACK_SPACE_STR);
+		taskStatus.setProgress(0.0);
+		int bufferLength = Math.max(ClusterRunCoalescer.MAX_READ_LENGTH, bytesPerCluster);
+		byte[] buffer = new byte[bufferLength];
+		boolean[] modified = new boolean[bufferLength / bytesPerCluster];
+		int numTails = uniqueTails.size();
+		int numClustersWritten = 0;
+		long numBytesErased = 0;
+		try
+		{
+			// Open volume for reading and writing
+			volume.open(Volume.Access.READ_WRITE, volume.isUnbufferedIO());
+
+			// Process runs of last clusters
+			DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+			int i = 0;
+			while ((i < numTails) && !taskStatus.isCancelled())
+			{
+				// Find extent of read request
+				int start = i;
+				i = ClusterRunCoalescer.requestEnd(start, numTails, j -> uniqueTails.get(j).clusterIndex(),
+												   bytesPerCluster, bufferLength);
+				int firstIndex = uniqueTails.get(start).clusterIndex();
+				int lastIndex = uniqueTails.get(i - 1).clusterIndex();
+
+				// Read extent
+				volume.seekSector(volume.clusterIndexToSectorIndex(firstIndex));
+				volume.read(buffer, 0, (lastIndex - firstIndex + 1) * bytesPerCluster);
+
+				// Overwrite slack space of clusters of extent
+				for (int j = start; j < i; j++)
+				{
+					Tail tail = uniqueTails.get(j);
+					int offset = (tail.clusterIndex() - firstIndex) * bytesPerCluster;
+					int from = offset + tail.offset();
+					int to = offset + bytesPerCluster;
+					boolean erased = true;
+					for (int k = from; k < to; k++)
+					{
+						if (buffer[k] != fillerValue)
+						{
+							erased = false;
+							break;
+						}
+					}
+					modified[j - start] = !erased;
+					if (!erased)
+					{
+						Arrays.fill(buffer, from, to, fillerValue);
+						numBytesErased += to - from;
+					}
+				}
+
+				// Write runs of consecutive modified clusters
+				int j = start;
+				while (j < i)
+				{
+					if (modified[j - start])
+					{
+						int runStart = j;
+						while ((j + 1 < i) && modified[j + 1 - start]
+								&& (uniqueTails.get(j + 1).clusterIndex() == uniqueTails.get(j).clusterIndex() + 1))
+							++j;
+						int index = uniqueTails.get(runStart).clusterIndex();
+						int numClusters = j - runStart + 1;
+						volume.seekSector(volume.clusterIndexToSectorIndex(index));
+						volume.write(buffer, (index - firstIndex) * bytesPerCluster, numClusters * bytesPerCluster);
+						numClustersWritten += numClusters;
+					}
+					++j;
+				}
+
+				// Update progress
+				double progress = (double)i / (double)numTails;
+				if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+					taskStatus.setProgress(progress);
+			}
+		}
+		finally
+		{
+			// Close volume
+			if (volume.isOpen())
+				volume.close();
+		}
+
+		// Return result
+		return new Result(numTails, numSlackBytes, numBytesErased, numClustersWritten, plan.numInvalidChains,
+						  System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: LAST CLUSTER OF A FILE
+
+
+	/**
+	 * This record encapsulates the last cluster of a file and the offset of the slack space within it.
+	 *
+	 * @param clusterIndex
+	 *          the index of the last cluster of the file.
+	 * @param offset
+	 *          the offset (in bytes) of the end of the file within its last cluster.
+	 */
+
+	private record Tail(
+		int	clusterIndex,
+		int	offset)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: RESULT OF ERASURE
+
+
+	/**
+	 * This record encapsulates the result of erasing the slack space of a volume.
+	 *
+	 * @param numClusters
+	 *          the number of distinct last clusters of files that have slack space.
+	 * @param numSlackBytes
+	 *          the total length (in bytes) of the slack space of the files.
+	 * @param numBytesErased
+	 *          the number of bytes of slack space that were overwritten.  Slack space that already consisted entirely
+	 *          of the filler value is not included.
+	 * @param numClustersWritten
+	 *          the number of clusters that were written to the volume.
+	 * @param numInvalidChains
+	 *          the number of files whose cluster chains were invalid and whose slack space was not erased.
+	 * @param nanoseconds
+	 *          the time taken by the operation.
+	 */
+
+	public record Result(
+		int		numClusters,
+		long	numSlackBytes,
+		long	numBytesErased,
+		int		numClustersWritten,
+		int		numInvalidChains,
+		long	nanoseconds)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: PLAN OF A SUBTREE
+
+
+	/**
+	 * This class accumulates the last clusters of the files of a subtree of directories.
+	 */
+
+	private static class Plan
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The last clusters of files that have slack space. */
+		private	List<Tail>	tails;
+
+		/** The number of files whose cluster chains are invalid. */
+		private	int			numInvalidChains;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of an empty plan.
+		 */
+
+		private Plan()
+		{
+			// Initialise instance variables
+			tails = new ArrayList<>();
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// CLASS: PLANNING TASK
+
+
+	/**
+	 * This class implements a task that finds the last clusters of the files of a directory, and forks a task for each
+	 * of its subdirectories.  The result of the task is the plan of the subtree of the directory.
+	 */
+
+	private static class PlanningTask
+		extends RecursiveTask<Plan>
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		/** The serial version identifier. */
+		private static final	long	serialVersionUID	= 1L;
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		/** The directory that is processed by this task. */
+		private	Fat32Directory	directory;
+
+		/** The object that is polled to determine whether the operation has been cancelled. */
+		private	ICancellable	cancellable;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * Creates a new instance of a task that processes the specified directory and its subdirectories.
+		 *
+		 * @param directory
+		 *          the directory that will be processed.
+		 * @param cancellable
+		 *          the object that is polled to determine whether the operation has been cancelled.
+		 */
+
+		private PlanningTask(
+			Fat32Directory	directory,
+			ICancellable	cancellable)
+		{
+			// Initialise instance variables
+			this.directory = directory;
+			this.cancellable = cancellable;
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods : overriding methods
+	////////////////////////////////////////////////////////////////////
+
+		/**
+		 * {@inheritDoc}
+		 */
+
+		@Override
+		protected Plan compute()
+		{
+			// Initialise plan
+			Plan plan = new Plan();
+
+			// Stop if operation has been cancelled
+			if (cancellable.isCancelled())
+				return plan;
+
+			// Fork tasks to process subdirectories
+			List<PlanningTask> tasks = new ArrayList<>();
+			for (Fat32Directory child : directory.getChildren())
+			{
+				PlanningTask task = new PlanningTask(child, cancellable);
+				task.fork();
+				tasks.add(task);
+			}
+
+			// Find last clusters of files that have slack space
+			Fat32Fat fat = directory.getVolume().getFat();
+			int bytesPerCluster = directory.getVolume().getBytesPerCluster();
+			int[] lastIndex = new int[1];
+			for (Fat32Directory.Entry entry : directory.getEntries())
+			{
+				// Ignore empty files and files that fill their last cluster
+				if (!entry.isFile())
+					continue;
+				long length = entry.getFileLength();
+				int offset = (int)(length % bytesPerCluster);
+				if ((length == 0) || (offset == 0))
+					continue;
+
+				// Follow cluster chain to last cluster of file
+				int numClusters = (int)((length + bytesPerCluster - 1) / bytesPerCluster);
+				try
+				{
+					int numChainClusters = fat.forEachExtent(entry.getClusterIndex(), numClusters,
+							(startIndex, extentLength) -> lastIndex[0] = startIndex + extentLength - 1);
+					if (numChainClusters < numClusters)
+						++plan.numInvalidChains;
+					else
+						plan.tails.add(new Tail(lastIndex[0], offset));
+				}
+				catch (VolumeException | IllegalArgumentException e)
+				{
+					++plan.numInvalidChains;
+				}
+			}
+
+			// Add plans of subdirectories
+			for (PlanningTask task : tasks)
+			{
+				Plan childPlan = task.join();
+				plan.tails.addAll(childPlan.tails);
+				plan.numInvalidChains += childPlan.numInvalidChains;
+			}
+
+			// Return plan
+			return plan;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
@@ -64,6 +64,12 @@ public class Utils
 	/** The initial part of pathname of a device under Linux. */
 	private static final	String	LINUX_DEVICE_PATHNAME_PREFIX	= "/dev/";
 
+	/** The character that replaces a character of a filename that is not valid on the host. */
+	private static final	char	FILENAME_REPLACEMENT_CHAR	= '_';
+
+	/** The characters that are not valid in a filename on common host file systems. */
+	private static final	String	INVALID_FILENAME_CHARS	= "?*<>:\"/\\|";
+
 ////////////////////////////////////////////////////////////////////////
 //  Static initialiser
 ////////////////////////////////////////////////////////////////////////
@@ -143,6 +149,26 @@ public class Utils
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns the rate at which the specified number of bytes were transferred in the specified time, in megabytes per
+	 * second.
+	 *
+	 * @param  numBytes
+	 *           the number of bytes that were transferred.
+	 * @param  nanoseconds
+	 *           the time (in nanoseconds) taken to transfer the bytes.
+	 * @return the transfer rate in megabytes per second, or 0 if {@code nanoseconds} is 0.
+	 */
+
+	public static double megabytesPerSecond(
+		long	numBytes,
+		long	nanoseconds)
+	{
+		return (nanoseconds == 0) ? 0.0 : (double)numBytes * 1.0e9 / ((double)nanoseconds * (double)(1 << 20));
+	}
+
+	//------------------------------------------------------------------
+
 	public static Throwable getException(
 		Throwable	exception)
 	{
@@ -217,6 +243,34 @@ public class Utils
 
 	//------------------------------------------------------------------
 
+	/**
+	 * Returns a copy of the specified name of a file or directory of a volume in which each character that is not valid
+	 * in a filename of the host file system is replaced by an underscore.  An empty name or a name that consists only of
+	 * dots is also replaced, so that the result cannot refer to the directory that contains it or to its parent.
+	 *
+	 * @param  name
+	 *           the name of a file or directory of a volume.
+	 * @return a copy of {@code name} that may be used as the name of a file or directory of the host file system.
+	 */
+
+	public static String toHostFilename(
+		String	name)
+	{
+		char[] chars = name.toCharArray();
+		boolean dotsOnly = true;
+		for (int i = 0; i < chars.length; i++)
+		{
+			if ((chars[i] < ' ') || (INVALID_FILENAME_CHARS.indexOf(chars[i]) >= 0))
+				chars[i] = FILENAME_REPLACEMENT_CHAR;
+			if (chars[i] != '.')
+				dotsOnly = false;
+		}
+		return dotsOnly ? String.valueOf(FILENAME_REPLACEMENT_CHAR).repeat(Math.max(chars.length, 1))
+						: new String(chars);
+	}
+
+	//------------------------------------------------------------------
+
 	public static String volumeDisplayName(
 		Fat32Volume	volume)
 	{
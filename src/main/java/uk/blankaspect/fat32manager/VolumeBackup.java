@@ -0,0 +1,1289 @@
+/*====================================================================*\
+
+VolumeBackup.java
+
+Class: compressed backup of the used parts of a volume.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.BlockVolume;
+import uk.blankaspect.driveio.IVolumeAccessor;
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: COMPRESSED BACKUP OF THE USED PARTS OF A VOLUME
+
+
+/**
+ * This class provides methods that write, verify and restore a compressed backup of a FAT32 volume.
+ * <p>
+ * A backup file consists of
+ * </p>
+ * <ul>
+ *   <li>a header that contains the {@linkplain Fat32Volume.Params parameters} of the volume, the size of a chunk and
+ *       a bitmap of the used clusters,</li>
+ *   <li>a sequence of chunks, each of which contains up to {@link #CHUNK_SIZE} bytes of the data of the reserved
+ *       sectors, the FATs and the used clusters of the volume, compressed independently of the other chunks,</li>
+ *   <li>an index of the chunks, and</li>
+ *   <li>a trailer that contains the offset of the index.</li>
+ * </ul>
+ * <p>
+ * Each chunk and each entry of the index includes a CRC-32C checksum of the uncompressed data.  Because the chunks
+ * are independent, they are compressed and decompressed in parallel on a pool of worker threads, each of which has
+ * its own {@link Deflater} or {@link Inflater}.  The volume itself is read and written sequentially.
+ * </p>
+ */
+
+public class VolumeBackup
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The filename extension of a backup file. */
+	public static final		String	FILENAME_EXTENSION	= ".f32bak";
+
+	/** The value that identifies a backup file. */
+	private static final	long	MAGIC	= 0x4633_324D_4241_4B31L;	// "F32MBAK1"
+
+	/** The version of the file format. */
+	private static final	int		VERSION	= 1;
+
+	/** The maximum length of the uncompressed data of a chunk. */
+	private static final	int		CHUNK_SIZE	= 1 << 20;	// 1 MiB
+
+	/** The length of the trailer of a backup file. */
+	private static final	int		TRAILER_LENGTH	= 2 * Long.BYTES;
+
+	/** The length of the header of a chunk. */
+	private static final	int		CHUNK_HEADER_LENGTH	= 3 * Integer.BYTES;
+
+	/** The number of chunks per worker thread that may be pending at any time. */
+	private static final	int		NUM_PENDING_CHUNKS_PER_THREAD	= 2;
+
+	/** The suffix of the name of a worker thread. */
+	private static final	String	WORKER_THREAD_NAME_SUFFIX	= "backupWorker";
+
+	/** The compressor of each worker thread. */
+	private static final	ThreadLocal<Deflater>	DEFLATERS	=
+			ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION));
+
+	/** The decompressor of each worker thread. */
+	private static final	ThreadLocal<Inflater>	INFLATERS	= ThreadLocal.withInitial(Inflater::new);
+
+	/** Miscellaneous strings. */
+	private static final	String	WRITING_BACKUP_STR		= "Writing backup";
+	private static final	String	VERIFYING_BACKUP_STR	= "Verifying backup";
+	private static final	String	RESTORING_BACKUP_STR	= "Restoring backup";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	FAILED_TO_OPEN_FILE =
+				"Failed to open the file.";
+
+		String	FAILED_TO_CLOSE_FILE =
+				"Failed to close the file.";
+
+		String	ERROR_READING_FILE =
+				"An error occurred when reading the file.";
+
+		String	ERROR_WRITING_FILE =
+				"An error occurred when writing the file.";
+
+		String	NOT_A_BACKUP_FILE =
+				"The file is not a backup of a FAT32 volume.";
+
+		String	UNSUPPORTED_VERSION =
+				"The version of the backup file (%d) is not supported.";
+
+		String	MALFORMED_BACKUP_FILE =
+				"The backup file is malformed.";
+
+		String	INVALID_CHUNK =
+				"Chunk %d of the backup file is invalid.";
+
+		String	SECTOR_SIZES_DIFFER =
+				"The sector size of the volume (%d) differs from that of the backup (%d).";
+
+		String	VOLUME_TOO_SMALL =
+				"The volume has fewer sectors (%d) than the volume from which the backup was made (%d).";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private VolumeBackup()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Writes a compressed backup of the reserved sectors, the FATs and the used clusters of the specified volume to the
+	 * specified file, and returns the result.
+	 *
+	 * @param  volume
+	 *           the volume that will be backed up.
+	 * @param  file
+	 *           the location of the backup file.
+	 * @param  taskStatus
+	 *           the status of the task that is writing the backup.
+	 * @return the result of writing the backup, or {@code null} if the task was cancelled.  If the task was cancelled or
+	 *         an error occurred, the partially written file is deleted.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing the file.
+	 */
+
+	public static Result write(
+		Fat32Volume	volume,
+		Path		file,
+		ITaskStatus	taskStatus)
+		throws VolumeException, FileException
+	{
+		// Create header
+		Header header = new Header(volume.getParams(), CHUNK_SIZE, volume.getFat().getUsedClusters());
+
+		// Get extents of volume that will be backed up
+		List<Extent> extents = header.extents();
+		long streamLength = header.streamLength();
+
+		// Update task message; reset progress
+		taskStatus.setMessage(WRITING_BACKUP_STR);
+		taskStatus.setProgress(0.0);
+
+		// Open file
+		OutputStream outStream = null;
+		try
+		{
+			outStream = new BufferedOutputStream(Files.newOutputStream(file), CHUNK_SIZE);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.FAILED_TO_OPEN_FILE, e, file);
+		}
+
+		// Write backup
+		long startTime = System.nanoTime();
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = createExecutor(numThreads);
+		boolean completed = false;
+		try
+		{
+			// Write header
+			DataOutputStream dataOutStream = new DataOutputStream(outStream);
+			byte[] headerData = header.toByteArray();
+			dataOutStream.write(headerData);
+			long fileOffset = headerData.length;
+
+			// Read chunks from volume, compress them in parallel and write them in order
+			List<IndexEntry> index = new ArrayList<>();
+			Deque<Future<Chunk>> pendingChunks = new ArrayDeque<>();
+			try
+			{
+				// Open volume for reading
+				volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+				// Read chunks
+				DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+				byte[] data = new byte[CHUNK_SIZE];
+				int dataLength = 0;
+				long streamOffset = 0;
+				for (Extent extent : extents)
+				{
+					long offset = extent.offset();
+					long remaining = extent.length();
+					while (remaining > 0)
+					{
+						// Test whether task has been cancelled
+						if (taskStatus.isCancelled())
+							return null;
+
+						// Read as much of extent as will fit in chunk
+						int length = (int)Math.min(remaining, CHUNK_SIZE - dataLength);
+						volume.seek(offset);
+						volume.read(data, dataLength, length);
+						dataLength += length;
+						offset += length;
+						remaining -= length;
+
+						// If chunk is full, submit it for compression
+						if (dataLength == CHUNK_SIZE)
+						{
+							byte[] chunkData = data;
+							long chunkOffset = streamOffset;
+							pendingChunks.addLast(executor.submit(() -> compress(chunkOffset, chunkData, CHUNK_SIZE)));
+							streamOffset += CHUNK_SIZE;
+							data = new byte[CHUNK_SIZE];
+							dataLength = 0;
+
+							// Write compressed chunks while too many are pending
+							while (pendingChunks.size() >= numThreads * NUM_PENDING_CHUNKS_PER_THREAD)
+								fileOffset = writeChunk(pendingChunks.removeFirst(), dataOutStream, fileOffset, index);
+
+							// Update progress
+							double progress = (double)streamOffset / (double)streamLength;
+							if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+								taskStatus.setProgress(progress);
+						}
+					}
+				}
+
+				// Submit last chunk for compression
+				if (dataLength > 0)
+				{
+					byte[] chunkData = data;
+					long chunkOffset = streamOffset;
+					int chunkLength = dataLength;
+					pendingChunks.addLast(executor.submit(() -> compress(chunkOffset, chunkData, chunkLength)));
+				}
+			}
+			finally
+			{
+				// Close volume
+				if (volume.isOpen())
+					volume.close();
+			}
+
+			// Write remaining compressed chunks
+			while (!pendingChunks.isEmpty())
+				fileOffset = writeChunk(pendingChunks.removeFirst(), dataOutStream, fileOffset, index);
+
+			// Write index
+			long indexOffset = fileOffset;
+			dataOutStream.writeInt(index.size());
+			for (IndexEntry entry : index)
+				entry.write(dataOutStream);
+
+			// Write trailer
+			dataOutStream.writeLong(indexOffset);
+			dataOutStream.writeLong(MAGIC);
+
+			// Close file
+			try
+			{
+				dataOutStream.close();
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.FAILED_TO_CLOSE_FILE, e, file);
+			}
+			finally
+			{
+				outStream = null;
+			}
+
+			// Return result
+			Result result = new Result(streamLength, Files.size(file), index.size(), System.nanoTime() - startTime);
+			completed = true;
+			return result;
+		}
+		catch (ExecutionException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_WRITING_FILE, e.getCause(), file);
+		}
+		catch (IOException | InterruptedException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_WRITING_FILE, e, file);
+		}
+		finally
+		{
+			// Stop worker threads
+			executor.shutdownNow();
+
+			// Close file after an error
+			if (outStream != null)
+			{
+				try
+				{
+					outStream.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+
+			// Delete partially written file after cancellation or an error
+			if (!completed)
+			{
+				try
+				{
+					Files.deleteIfExists(file);
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Verifies the chunks of the specified backup file against their checksums, and returns the result.  The chunks
+	 * are read and decompressed in parallel.
+	 *
+	 * @param  file
+	 *           the location of the backup file.
+	 * @param  taskStatus
+	 *           the status of the task that is verifying the backup.
+	 * @return the result of the verification, or {@code null} if the task was cancelled.
+	 * @throws FileException
+	 *           if an error occurred when reading the file, or if the file is not a valid backup file.
+	 */
+
+	public static VerifyResult verify(
+		Path		file,
+		ITaskStatus	taskStatus)
+		throws FileException
+	{
+		// Update task message; reset progress
+		taskStatus.setMessage(VERIFYING_BACKUP_STR);
+		taskStatus.setProgress(0.0);
+
+		// Verify chunks
+		long startTime = System.nanoTime();
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = createExecutor(numThreads);
+		try (FileChannel channel = openChannel(file))
+		{
+			// Read header and index
+			Header header = readHeader(channel, file);
+			List<IndexEntry> index = readIndex(channel, file);
+
+			// Test index against header
+			validateIndex(header, index, file);
+
+			// Decompress chunks in parallel and compare their checksums
+			List<Integer> invalidChunks = new ArrayList<>();
+			Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+			DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+			int numChunksVerified = 0;
+			for (int i = 0; i <= index.size(); i++)
+			{
+				// Test whether task has been cancelled
+				if (taskStatus.isCancelled())
+					return null;
+
+				// Submit chunk for verification
+				if (i < index.size())
+				{
+					IndexEntry entry = index.get(i);
+					pendingChunks.addLast(executor.submit(() -> readChunk(channel, entry, header.chunkSize())));
+				}
+
+				// Collect results of verification while too many are pending or all chunks have been submitted
+				while (!pendingChunks.isEmpty()
+						&& ((i == index.size())
+								|| (pendingChunks.size() >= numThreads * NUM_PENDING_CHUNKS_PER_THREAD)))
+				{
+					try
+					{
+						pendingChunks.removeFirst().get();
+					}
+					catch (ExecutionException e)
+					{
+						if (!(e.getCause() instanceof DataFormatException))
+							throw new FileException(ErrorMsg.ERROR_READING_FILE, e.getCause(), file);
+						invalidChunks.add(numChunksVerified);
+					}
+					++numChunksVerified;
+
+					// Update progress
+					double progress = (double)numChunksVerified / (double)index.size();
+					if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+						taskStatus.setProgress(progress);
+				}
+			}
+
+			// Return result
+			return new VerifyResult(header.params(), header.streamLength(), index.size(), invalidChunks,
+									System.nanoTime() - startTime);
+		}
+		catch (IOException | InterruptedException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_READING_FILE, e, file);
+		}
+		finally
+		{
+			// Stop worker threads
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Restores the specified backup file to the specified volume, and returns the result.  The chunks are read and
+	 * decompressed in parallel, and their data are written to the volume in order.
+	 *
+	 * @param  file
+	 *           the location of the backup file.
+	 * @param  volumeName
+	 *           the name of the volume to which the backup will be restored.
+	 * @param  accessor
+	 *           the accessor of the volume.
+	 * @param  unbufferedIO
+	 *           if {@code true}, the volume will be opened for unbuffered I/O.
+	 * @param  taskStatus
+	 *           the status of the task that is restoring the backup.
+	 * @return the result of restoring the backup, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when writing the volume, or if the volume is not compatible with the backup.
+	 * @throws FileException
+	 *           if an error occurred when reading the file, or if the file is not a valid backup file.
+	 */
+
+	public static Result restore(
+		Path			file,
+		String			volumeName,
+		IVolumeAccessor	accessor,
+		boolean			unbufferedIO,
+		ITaskStatus		taskStatus)
+		throws VolumeException, FileException
+	{
+		// Update task message; set indeterminate progress
+		taskStatus.setMessage(RESTORING_BACKUP_STR);
+		taskStatus.setProgress(-1.0);
+
+		// Restore backup
+		long startTime = System.nanoTime();
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		ExecutorService executor = createExecutor(numThreads);
+		Fat32Volume volume = new Fat32Volume(volumeName, accessor);
+		try (FileChannel channel = openChannel(file))
+		{
+			// Read header and index
+			Header header = readHeader(channel, file);
+			List<IndexEntry> index = readIndex(channel, file);
+			Fat32Volume.Params params = header.params();
+
+			// Test index against header before anything is written to volume
+			validateIndex(header, index, file);
+
+			// Test whether volume is compatible with backup
+			BlockVolume blockVolume = new BlockVolume(volumeName, accessor);
+			blockVolume.updateInfo();
+			if (blockVolume.getBytesPerSector() != params.bytesPerSector())
+			{
+				throw new VolumeException(ErrorMsg.SECTOR_SIZES_DIFFER, blockVolume.getBytesPerSector(),
+										  params.bytesPerSector());
+			}
+			if (blockVolume.getNumSectors() < params.numSectors())
+				throw new VolumeException(ErrorMsg.VOLUME_TOO_SMALL, blockVolume.getNumSectors(), params.numSectors());
+
+			// Get extents of volume to which data will be written
+			List<Extent> extents = header.extents();
+			long streamLength = header.streamLength();
+
+			// Reset progress
+			taskStatus.setProgress(0.0);
+
+			// Decompress chunks in parallel and write them to volume in order
+			try
+			{
+				// Open volume for writing
+				volume.open(Volume.Access.WRITE, unbufferedIO);
+
+				// Initialise extent cursor
+				int extentIndex = 0;
+				long extentOffset = 0;
+
+				// Process chunks
+				Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+				DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+				long numBytesWritten = 0;
+				int numChunksWritten = 0;
+				for (int i = 0; i <= index.size(); i++)
+				{
+					// Test whether task has been cancelled
+					if (taskStatus.isCancelled())
+						return null;
+
+					// Submit chunk for decompression
+					if (i < index.size())
+					{
+						IndexEntry entry = index.get(i);
+						pendingChunks.addLast(executor.submit(() -> readChunk(channel, entry, header.chunkSize())));
+					}
+
+					// Write decompressed chunks while too many are pending or all chunks have been submitted
+					while (!pendingChunks.isEmpty()
+							&& ((i == index.size())
+									|| (pendingChunks.size() >= numThreads * NUM_PENDING_CHUNKS_PER_THREAD)))
+					{
+						// Get decompressed data of chunk
+						byte[] data = null;
+						try
+						{
+							data = pendingChunks.removeFirst().get();
+						}
+						catch (ExecutionException e)
+						{
+							if (e.getCause() instanceof DataFormatException)
+								throw new FileException(ErrorMsg.INVALID_CHUNK, e.getCause(), file, numChunksWritten);
+							throw new FileException(ErrorMsg.ERROR_READING_FILE, e.getCause(), file);
+						}
+
+						// Write data of chunk to extents of volume
+						int dataOffset = 0;
+						int dataLength = index.get(numChunksWritten).length();
+						while (dataOffset < dataLength)
+						{
+							Extent extent = extents.get(extentIndex);
+							int length = (int)Math.min(dataLength - dataOffset, extent.length() - extentOffset);
+							volume.seek(extent.offset() + extentOffset);
+							volume.write(data, dataOffset, length);
+							dataOffset += length;
+							extentOffset += length;
+							if (extentOffset == extent.length())
+							{
+								++extentIndex;
+								extentOffset = 0;
+							}
+						}
+						numBytesWritten += dataLength;
+						++numChunksWritten;
+
+						// Update progress
+						double progress = (double)numBytesWritten / (double)streamLength;
+						if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+							taskStatus.setProgress(progress);
+					}
+				}
+
+				// Return result
+				return new Result(numBytesWritten, Files.size(file), index.size(), System.nanoTime() - startTime);
+			}
+			finally
+			{
+				// Close volume
+				if (volume.isOpen())
+					volume.close();
+			}
+		}
+		catch (IOException | InterruptedException | IndexOutOfBoundsException e)
+		{
+			throw new FileException(ErrorMsg.ERROR_READING_FILE, e, file);
+		}
+		finally
+		{
+			// Stop worker threads
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a pool of the specified number of worker threads.
+	 *
+	 * @param  numThreads
+	 *           the number of threads.
+	 * @return a pool of {@code numThreads} daemon threads.
+	 */
+
+	private static ExecutorService createExecutor(
+		int	numThreads)
+	{
+		int[] threadIndex = { 0 };
+		return Executors.newFixedThreadPool(numThreads, runnable ->
+				DaemonFactory.create(VolumeBackup.class.getSimpleName() + "-" + WORKER_THREAD_NAME_SUFFIX + "-"
+										+ ++threadIndex[0], runnable));
+	}
+
+	//------------------------------------------------------------------
+
+	private static FileChannel openChannel(
+		Path	file)
+		throws FileException
+	{
+		try
+		{
+			return FileChannel.open(file, StandardOpenOption.READ);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.FAILED_TO_OPEN_FILE, e, file);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Compresses the specified data with the compressor of the current thread, and returns the resulting chunk.
+	 *
+	 * @param  streamOffset
+	 *           the offset of the data in the stream of backed-up data.
+	 * @param  data
+	 *           the data that will be compressed.
+	 * @param  length
+	 *           the length of the data.
+	 * @return a chunk that contains the compressed data.
+	 */
+
+	private static Chunk compress(
+		long	streamOffset,
+		byte[]	data,
+		int		length)
+	{
+		// Calculate checksum of uncompressed data
+		CRC32C crc = new CRC32C();
+		crc.update(data, 0, length);
+
+		// Compress data
+		Deflater deflater = DEFLATERS.get();
+		deflater.reset();
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		byte[] output = new byte[length / 2 + 64];
+		int outLength = 0;
+		while (!deflater.finished())
+		{
+			if (outLength == output.length)
+				output = Arrays.copyOf(output, output.length * 2);
+			outLength += deflater.deflate(output, outLength, output.length - outLength);
+		}
+
+		// Return chunk
+		return new Chunk(streamOffset, length, (int)crc.getValue(), output, outLength);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Waits for the specified chunk to be compressed, writes it to the specified stream and adds an entry for it to the
+	 * specified index.
+	 *
+	 * @param  futureChunk
+	 *           the chunk.
+	 * @param  outStream
+	 *           the stream to which the chunk will be written.
+	 * @param  fileOffset
+	 *           the offset in the file at which the chunk will be written.
+	 * @param  index
+	 *           the list of index entries to which the entry for the chunk will be added.
+	 * @return the offset in the file after the chunk.
+	 */
+
+	private static long writeChunk(
+		Future<Chunk>		futureChunk,
+		DataOutputStream	outStream,
+		long				fileOffset,
+		List<IndexEntry>	index)
+		throws ExecutionException, InterruptedException, IOException
+	{
+		// Wait for chunk
+		Chunk chunk = futureChunk.get();
+
+		// Add entry to index
+		index.add(new IndexEntry(fileOffset, chunk.compressedLength(), chunk.length(), chunk.streamOffset(),
+								 chunk.checksum()));
+
+		// Write chunk
+		outStream.writeInt(chunk.length());
+		outStream.writeInt(chunk.compressedLength());
+		outStream.writeInt(chunk.checksum());
+		outStream.write(chunk.data(), 0, chunk.compressedLength());
+
+		// Return offset after chunk
+		return fileOffset + CHUNK_HEADER_LENGTH + chunk.compressedLength();
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the chunk that corresponds to the specified index entry from the specified channel, decompresses it with
+	 * the decompressor of the current thread, verifies it and returns the decompressed data.  The channel is read at an
+	 * absolute position, so this method may be called concurrently on the same channel.
+	 *
+	 * @param  channel
+	 *           the channel of the backup file.
+	 * @param  entry
+	 *           the index entry of the chunk.
+	 * @param  chunkSize
+	 *           the maximum length of the uncompressed data of a chunk.
+	 * @return the decompressed data of the chunk.
+	 * @throws IOException
+	 *           if an error occurred when reading the channel.
+	 * @throws DataFormatException
+	 *           if the chunk is not consistent with its index entry or its checksum.
+	 */
+
+	private static byte[] readChunk(
+		FileChannel	channel,
+		IndexEntry	entry,
+		int			chunkSize)
+		throws IOException, DataFormatException
+	{
+		// Validate index entry
+		if ((entry.length() <= 0) || (entry.length() > chunkSize) || (entry.compressedLength() < 0))
+			throw new DataFormatException();
+
+		// Read chunk
+		ByteBuffer buffer = ByteBuffer.allocate(CHUNK_HEADER_LENGTH + entry.compressedLength());
+		long position = entry.fileOffset();
+		while (buffer.hasRemaining())
+		{
+			int length = channel.read(buffer, position);
+			if (length < 0)
+				throw new DataFormatException();
+			position += length;
+		}
+		buffer.flip();
+
+		// Compare header of chunk with index entry
+		if ((buffer.getInt() != entry.length()) || (buffer.getInt() != entry.compressedLength())
+				|| (buffer.getInt() != entry.checksum()))
+			throw new DataFormatException();
+
+		// Decompress data
+		Inflater inflater = INFLATERS.get();
+		inflater.reset();
+		inflater.setInput(buffer.array(), CHUNK_HEADER_LENGTH, entry.compressedLength());
+		byte[] data = new byte[entry.length()];
+		int length = 0;
+		while ((length < data.length) && !inflater.finished())
+		{
+			int n = inflater.inflate(data, length, data.length - length);
+			if ((n == 0) && (inflater.needsInput() || inflater.needsDictionary()))
+				throw new DataFormatException();
+			length += n;
+		}
+		if ((length != data.length) || !inflater.finished())
+			throw new DataFormatException();
+
+		// Compare checksum
+		CRC32C crc = new CRC32C();
+		crc.update(data);
+		if ((int)crc.getValue() != entry.checksum())
+			throw new DataFormatException();
+
+		// Return data
+		return data;
+	}
+
+	//------------------------------------------------------------------
+
+	private static Header readHeader(
+		FileChannel	channel,
+		Path		file)
+		throws IOException, FileException
+	{
+		DataInputStream inStream = new DataInputStream(Channels.newInputStream(channel.position(0)));
+		try
+		{
+			return Header.read(inStream);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new FileException(e.getMessage(), file);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, e, file);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	private static List<IndexEntry> readIndex(
+		FileChannel	channel,
+		Path		file)
+		throws IOException, FileException
+	{
+		// Read trailer
+		long fileLength = channel.size();
+		if (fileLength < TRAILER_LENGTH)
+			throw new FileException(ErrorMsg.NOT_A_BACKUP_FILE, file);
+		ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+		long position = fileLength - TRAILER_LENGTH;
+		while (trailer.hasRemaining())
+		{
+			int length = channel.read(trailer, position);
+			if (length < 0)
+				throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, file);
+			position += length;
+		}
+		trailer.flip();
+		long indexOffset = trailer.getLong();
+		if (trailer.getLong() != MAGIC)
+			throw new FileException(ErrorMsg.NOT_A_BACKUP_FILE, file);
+		if ((indexOffset < 0) || (indexOffset > fileLength - TRAILER_LENGTH))
+			throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, file);
+
+		// Read index
+		try
+		{
+			DataInputStream inStream = new DataInputStream(Channels.newInputStream(channel.position(indexOffset)));
+			int numEntries = inStream.readInt();
+			if ((numEntries < 0) || ((long)numEntries * IndexEntry.SIZE > fileLength - TRAILER_LENGTH - indexOffset))
+				throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, file);
+			List<IndexEntry> index = new ArrayList<>(numEntries);
+			for (int i = 0; i < numEntries; i++)
+				index.add(IndexEntry.read(inStream));
+			return index;
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, e, file);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Tests whether the specified index is consistent with the specified header: the chunks of the index must cover
+	 * the stream of backed-up data contiguously and in order, and their total length must be the length of the stream.
+	 *
+	 * @param  header
+	 *           the header of the backup file.
+	 * @param  index
+	 *           the index of the backup file.
+	 * @param  file
+	 *           the location of the backup file.
+	 * @throws FileException
+	 *           if the index is not consistent with the header.
+	 */
+
+	private static void validateIndex(
+		Header				header,
+		List<IndexEntry>	index,
+		Path				file)
+		throws FileException
+	{
+		long streamOffset = 0;
+		for (IndexEntry entry : index)
+		{
+			if ((entry.length() <= 0) || (entry.streamOffset() != streamOffset))
+				throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, file);
+			streamOffset += entry.length();
+		}
+		if (streamOffset != header.streamLength())
+			throw new FileException(ErrorMsg.MALFORMED_BACKUP_FILE, file);
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of writing or restoring a backup.
+	 *
+	 * @param numBytes
+	 *          the number of bytes of volume data that were backed up or restored.
+	 * @param fileLength
+	 *          the length of the backup file.
+	 * @param numChunks
+	 *          the number of chunks in the backup file.
+	 * @param nanoseconds
+	 *          the time taken by the operation.
+	 */
+
+	public record Result(
+		long	numBytes,
+		long	fileLength,
+		int		numChunks,
+		long	nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+		public double compressionRatio()
+		{
+			return (fileLength == 0) ? 0.0 : (double)numBytes / (double)fileLength;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: RESULT OF VERIFICATION
+
+
+	/**
+	 * This record encapsulates the result of verifying a backup.
+	 *
+	 * @param params
+	 *          the parameters of the volume from which the backup was made.
+	 * @param numBytes
+	 *          the number of bytes of volume data in the backup.
+	 * @param numChunks
+	 *          the number of chunks in the backup file.
+	 * @param invalidChunks
+	 *          the indices of the chunks that failed verification.
+	 * @param nanoseconds
+	 *          the time taken by the verification.
+	 */
+
+	public record VerifyResult(
+		Fat32Volume.Params	params,
+		long				numBytes,
+		int					numChunks,
+		List<Integer>		invalidChunks,
+		long				nanoseconds)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: EXTENT
+
+
+	/**
+	 * This record encapsulates a contiguous extent of a volume.
+	 *
+	 * @param offset
+	 *          the byte offset of the extent on the volume.
+	 * @param length
+	 *          the length of the extent in bytes.
+	 */
+
+	private record Extent(
+		long	offset,
+		long	length)
+	{ }
+
+	//==================================================================
+
+
+	// RECORD: HEADER
+
+
+	/**
+	 * This record encapsulates the header of a backup file.
+	 *
+	 * @param params
+	 *          the parameters of the volume.
+	 * @param chunkSize
+	 *          the maximum length of the uncompressed data of a chunk.
+	 * @param usedClusters
+	 *          the used clusters of the volume.
+	 */
+
+	private record Header(
+		Fat32Volume.Params	params,
+		int					chunkSize,
+		BitSet				usedClusters)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		private static Header read(
+			DataInputStream	inStream)
+			throws IOException
+		{
+			// Read and test magic number and version
+			if (inStream.readLong() != MAGIC)
+				throw new IllegalArgumentException(ErrorMsg.NOT_A_BACKUP_FILE);
+			int version = inStream.readInt();
+			if (version != VERSION)
+				throw new IllegalArgumentException(String.format(ErrorMsg.UNSUPPORTED_VERSION, version));
+
+			// Read volume parameters
+			Fat32Volume.Params params = new Fat32Volume.Params(inStream.readUTF(), inStream.readInt(),
+															   inStream.readInt(), inStream.readUTF(),
+															   inStream.readInt(), inStream.readInt(),
+															   inStream.readLong(), inStream.readInt(),
+															   inStream.readInt(), inStream.readInt(),
+															   inStream.readInt(), inStream.readInt(),
+															   inStream.readInt());
+
+			// Read chunk size
+			int chunkSize = inStream.readInt();
+			if ((chunkSize <= 0) || (chunkSize > CHUNK_SIZE))
+				throw new IllegalArgumentException(ErrorMsg.MALFORMED_BACKUP_FILE);
+
+			// Read bitmap of used clusters
+			int numWords = inStream.readInt();
+			if ((numWords < 0) || (numWords > Fat32Fat.MAX_CLUSTER_INDEX / Long.SIZE + 1))
+				throw new IllegalArgumentException(ErrorMsg.MALFORMED_BACKUP_FILE);
+			long[] words = new long[numWords];
+			for (int i = 0; i < numWords; i++)
+				words[i] = inStream.readLong();
+
+			// Return header
+			return new Header(params, chunkSize, BitSet.valueOf(words));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private byte[] toByteArray()
+			throws IOException
+		{
+			ByteArrayOutputStream outStream = new ByteArrayOutputStream();
+			DataOutputStream dataOutStream = new DataOutputStream(outStream);
+
+			// Write magic number and version
+			dataOutStream.writeLong(MAGIC);
+			dataOutStream.writeInt(VERSION);
+
+			// Write volume parameters
+			dataOutStream.writeUTF((params.volumeLabel() == null) ? "" : params.volumeLabel());
+			dataOutStream.writeInt(params.id());
+			dataOutStream.writeInt(params.mediaDescriptor());
+			dataOutStream.writeUTF((params.formatterName() == null) ? "" : params.formatterName());
+			dataOutStream.writeInt(params.bytesPerSector());
+			dataOutStream.writeInt(params.sectorsPerCluster());
+			dataOutStream.writeLong(params.numSectors());
+			dataOutStream.writeInt(params.numHiddenSectors());
+			dataOutStream.writeInt(params.numReservedSectors());
+			dataOutStream.writeInt(params.numFats());
+			dataOutStream.writeInt(params.sectorsPerFat());
+			dataOutStream.writeInt(params.bootSectorCopyIndex());
+			dataOutStream.writeInt(params.rootDirClusterIndex());
+
+			// Write chunk size
+			dataOutStream.writeInt(chunkSize);
+
+			// Write bitmap of used clusters
+			long[] words = usedClusters.toLongArray();
+			dataOutStream.writeInt(words.length);
+			for (long word : words)
+				dataOutStream.writeLong(word);
+
+			// Return header data
+			dataOutStream.flush();
+			return outStream.toByteArray();
+		}
+
+		//--------------------------------------------------------------
+
+		/**
+		 * Returns the extents of the volume that are backed up: the reserved sectors and FATs, followed by the runs of
+		 * consecutive used clusters.
+		 *
+		 * @return the extents of the volume that are backed up.
+		 */
+
+		private List<Extent> extents()
+		{
+			List<Extent> extents = new ArrayList<>();
+			int bytesPerSector = params.bytesPerSector();
+			long dataOffset = ((long)params.numReservedSectors() + (long)params.numFats() * params.sectorsPerFat())
+									* bytesPerSector;
+			extents.add(new Extent(0, dataOffset));
+
+			int bytesPerCluster = params.bytesPerCluster();
+			int index = usedClusters.nextSetBit(Fat32Fat.MIN_CLUSTER_INDEX);
+			while (index >= 0)
+			{
+				int endIndex = usedClusters.nextClearBit(index);
+				extents.add(new Extent(dataOffset + (long)(index - Fat32Fat.MIN_CLUSTER_INDEX) * bytesPerCluster,
+									   (long)(endIndex - index) * bytesPerCluster));
+				index = usedClusters.nextSetBit(endIndex);
+			}
+			return extents;
+		}
+
+		//--------------------------------------------------------------
+
+		private long streamLength()
+		{
+			long length = 0;
+			for (Extent extent : extents())
+				length += extent.length();
+			return length;
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: INDEX ENTRY
+
+
+	/**
+	 * This record encapsulates an entry of the index of the chunks of a backup file.
+	 *
+	 * @param fileOffset
+	 *          the offset of the chunk in the file.
+	 * @param compressedLength
+	 *          the length of the compressed data of the chunk.
+	 * @param length
+	 *          the length of the uncompressed data of the chunk.
+	 * @param streamOffset
+	 *          the offset of the uncompressed data of the chunk in the stream of backed-up data.
+	 * @param checksum
+	 *          the CRC-32C checksum of the uncompressed data of the chunk.
+	 */
+
+	private record IndexEntry(
+		long	fileOffset,
+		int		compressedLength,
+		int		length,
+		long	streamOffset,
+		int		checksum)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Constants
+	////////////////////////////////////////////////////////////////////
+
+		private static final	int	SIZE	= 2 * Long.BYTES + 3 * Integer.BYTES;
+
+	////////////////////////////////////////////////////////////////////
+	//  Class methods
+	////////////////////////////////////////////////////////////////////
+
+		private static IndexEntry read(
+			DataInputStream	inStream)
+			throws IOException
+		{
+			return new IndexEntry(inStream.readLong(), inStream.readInt(), inStream.readInt(), inStream.readLong(),
+								  inStream.readInt());
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private void write(
+			DataOutputStream	outStream)
+			throws IOException
+		{
+			outStream.writeLong(fileOffset);
+			outStream.writeInt(compressedLength);
+			outStream.writeInt(length);
+			outStream.writeLong(streamOffset);
+			outStream.writeInt(checksum);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: CHUNK
+
+
+	/**
+	 * This record encapsulates a compressed chunk.
+	 *
+	 * @param streamOffset
+	 *          the offset of the uncompressed data of the chunk in the stream of backed-up data.
+	 * @param length
+	 *          the length of the uncompressed data.
+	 * @param checksum
+	 *          the CRC-32C checksum of the uncompressed data.
+	 * @param data
+	 *          the buffer that contains the compressed data.
+	 * @param compressedLength
+	 *          the length of the compressed data.
+	 */
+
+	private record Chunk(
+		long	streamOffset,
+		int		length,
+		int		checksum,
+		byte[]	data,
+		int		compressedLength)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
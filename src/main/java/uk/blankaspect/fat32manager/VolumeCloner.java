@@ -0,0 +1,631 @@
+/*====================================================================*\
+
+VolumeCloner.java
+
+Class: cloner of the used parts of a volume to other volumes.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.BlockVolume;
+import uk.blankaspect.driveio.IVolumeAccessor;
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: CLONER OF THE USED PARTS OF A VOLUME TO OTHER VOLUMES
+
+
+/**
+ * This class provides a method that clones a FAT32 volume to one or more target volumes.  Only the reserved sectors,
+ * the FATs and the clusters that are allocated to files and directories are copied.
+ * <p>
+ * The source volume is read once, in batches of large blocks, and each batch is written to every target before the
+ * next batch is read, so that the number of reads of the source does not depend on the number of targets.  Because
+ * the native volume accessor has a single handle, the targets are written in turn rather than simultaneously; the
+ * SHA-256 digest of each batch is computed on a worker thread while the batch is being written to the targets.  The
+ * time taken to write each target is measured separately.
+ * </p>
+ * <p>
+ * If verification is requested, the cloned sectors of each target are read back after all the targets have been
+ * written, and their digest is compared with that of the source.
+ * </p>
+ */
+
+public class VolumeCloner
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The maximum length of a block of data that is read from the source volume. */
+	private static final	int		BLOCK_SIZE	= 1 << 22;	// 4 MiB
+
+	/** The number of blocks in a batch. */
+	private static final	int		BATCH_NUM_BLOCKS	= 16;
+
+	/** The name of the digest algorithm. */
+	private static final	String	DIGEST_NAME	= "SHA-256";
+
+	/** The suffix of the name of the digest thread. */
+	private static final	String	DIGEST_THREAD_NAME_SUFFIX	= "cloneDigest";
+
+	/** Miscellaneous strings. */
+	private static final	String	CLONING_STR		= "Cloning %s to %d volume(s)";
+	private static final	String	VERIFYING_STR	= "Verifying %s";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	NO_TARGETS =
+				"No target volumes were specified.";
+
+		String	TARGET_IS_SOURCE =
+				"The source volume '%s' cannot be a target.";
+
+		String	SECTOR_SIZES_DIFFER =
+				"The sector size of '%s' (%d) differs from that of the source volume (%d).";
+
+		String	TARGET_TOO_SMALL =
+				"'%s' has fewer sectors (%d) than the source volume (%d).";
+
+		String	DIGEST_NOT_SUPPORTED =
+				"The '%s' digest algorithm is not supported by this version of Java.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private VolumeCloner()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Copies the reserved sectors, the FATs and the used clusters of the specified source volume to each of the
+	 * specified target volumes, optionally verifies the copies, and returns the result.
+	 *
+	 * @param  source
+	 *           the volume that will be cloned.
+	 * @param  targetNames
+	 *           the names of the volumes to which {@code source} will be cloned.
+	 * @param  unbufferedIO
+	 *           if {@code true}, the target volumes will be opened for unbuffered I/O.
+	 * @param  verify
+	 *           if {@code true}, the cloned sectors of each target will be read back and compared with those of the
+	 *           source.
+	 * @param  taskStatus
+	 *           the status of the task that is cloning the volume.
+	 * @return the result of the cloning, or {@code null} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if a target is not compatible with the source, or if an error occurred when reading or writing a
+	 *           volume.
+	 */
+
+	public static Result cloneVolume(
+		Fat32Volume		source,
+		List<String>	targetNames,
+		boolean			unbufferedIO,
+		boolean			verify,
+		ITaskStatus		taskStatus)
+		throws VolumeException
+	{
+		// Validate arguments
+		if (targetNames.isEmpty())
+			throw new VolumeException(ErrorMsg.NO_TARGETS);
+
+		// Create target volumes and test their compatibility with source
+		IVolumeAccessor accessor = source.getAccessor();
+		List<BlockVolume> targets = new ArrayList<>();
+		for (String name : targetNames)
+		{
+			if (name.equals(source.getName()))
+				throw new VolumeException(ErrorMsg.TARGET_IS_SOURCE, name);
+
+			BlockVolume target = new BlockVolume(name, accessor);
+			target.updateInfo();
+			if (target.getBytesPerSector() != source.getBytesPerSector())
+			{
+				throw new VolumeException(ErrorMsg.SECTOR_SIZES_DIFFER, name, target.getBytesPerSector(),
+										  source.getBytesPerSector());
+			}
+			if (target.getNumSectors() < source.getNumSectors())
+			{
+				throw new VolumeException(ErrorMsg.TARGET_TOO_SMALL, name, target.getNumSectors(),
+										  source.getNumSectors());
+			}
+			targets.add(target);
+		}
+		int numTargets = targets.size();
+
+		// Create list of blocks of used sectors
+		List<Block> blocks = usedBlocks(source);
+		long numBytes = 0;
+		for (Block block : blocks)
+			numBytes += block.length();
+
+		// Initialise progress
+		long totalWork = numBytes * (verify ? 2 * numTargets + 1 : numTargets + 1);
+		Progress progress = new Progress(totalWork, taskStatus);
+		taskStatus.setMessage(String.format(CLONING_STR, source.getName(), numTargets));
+		taskStatus.setProgress(0.0);
+
+		// Allocate buffers
+		byte[][] buffers = new byte[BATCH_NUM_BLOCKS][BLOCK_SIZE];
+
+		// Clone source to targets
+		long startTime = System.nanoTime();
+		long readNanoseconds = 0;
+		long[] writeNanoseconds = new long[numTargets];
+		MessageDigest digest = createDigest();
+		ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+				DaemonFactory.create(VolumeCloner.class.getSimpleName() + "-" + DIGEST_THREAD_NAME_SUFFIX, runnable));
+		try
+		{
+			for (int batchStart = 0; batchStart < blocks.size(); batchStart += BATCH_NUM_BLOCKS)
+			{
+				List<Block> batch = blocks.subList(batchStart, Math.min(batchStart + BATCH_NUM_BLOCKS, blocks.size()));
+
+				// Read batch from source
+				long time = System.nanoTime();
+				if (!readBatch(source, source.isUnbufferedIO(), batch, buffers, progress))
+					return null;
+				readNanoseconds += System.nanoTime() - time;
+
+				// Update digest on worker thread
+				Future<?> digestFuture = executor.submit(() ->
+				{
+					for (int i = 0; i < batch.size(); i++)
+						digest.update(buffers[i], 0, batch.get(i).length());
+				});
+
+				// Write batch to each target
+				for (int i = 0; i < numTargets; i++)
+				{
+					time = System.nanoTime();
+					if (!writeBatch(targets.get(i), unbufferedIO, batch, buffers, progress))
+						return null;
+					writeNanoseconds[i] += System.nanoTime() - time;
+				}
+
+				// Wait for digest to be updated before buffers are reused
+				digestFuture.get();
+			}
+			byte[] sourceDigest = digest.digest();
+
+			// Create results for targets
+			List<TargetResult> targetResults = new ArrayList<>();
+			for (int i = 0; i < numTargets; i++)
+			{
+				// Verify target
+				Boolean verified = null;
+				long verifyNanoseconds = 0;
+				if (verify)
+				{
+					BlockVolume target = targets.get(i);
+					taskStatus.setMessage(String.format(VERIFYING_STR, target.getName()));
+					long time = System.nanoTime();
+					for (int batchStart = 0; batchStart < blocks.size(); batchStart += BATCH_NUM_BLOCKS)
+					{
+						List<Block> batch =
+								blocks.subList(batchStart, Math.min(batchStart + BATCH_NUM_BLOCKS, blocks.size()));
+						if (!readBatch(target, unbufferedIO, batch, buffers, progress))
+							return null;
+						for (int j = 0; j < batch.size(); j++)
+							digest.update(buffers[j], 0, batch.get(j).length());
+					}
+					verified = MessageDigest.isEqual(sourceDigest, digest.digest());
+					verifyNanoseconds = System.nanoTime() - time;
+				}
+
+				// Add result for target
+				targetResults.add(new TargetResult(targets.get(i).getName(), numBytes, writeNanoseconds[i], verified,
+												   verifyNanoseconds));
+			}
+
+			// Return result
+			return new Result(numBytes, sourceDigest, readNanoseconds, targetResults, System.nanoTime() - startTime);
+		}
+		catch (ExecutionException | InterruptedException e)
+		{
+			throw new VolumeException(e.getMessage(), e);
+		}
+		finally
+		{
+			// Stop digest thread
+			executor.shutdownNow();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Creates and returns a message digest.
+	 *
+	 * @return a new message digest.
+	 * @throws VolumeException
+	 *           if the digest algorithm is not supported.
+	 */
+
+	private static MessageDigest createDigest()
+		throws VolumeException
+	{
+		try
+		{
+			return MessageDigest.getInstance(DIGEST_NAME);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new VolumeException(ErrorMsg.DIGEST_NOT_SUPPORTED, e, DIGEST_NAME);
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns a list of the blocks of the specified volume that contain the reserved sectors, the FATs and the used
+	 * clusters.  Each block covers consecutive sectors and is no longer than {@link #BLOCK_SIZE}.
+	 *
+	 * @param  volume
+	 *           the volume of interest.
+	 * @return a list of the blocks of the used sectors of {@code volume}.
+	 */
+
+	private static List<Block> usedBlocks(
+		Fat32Volume	volume)
+	{
+		int bytesPerSector = volume.getBytesPerSector();
+		int sectorsPerBlock = BLOCK_SIZE / bytesPerSector;
+		List<Block> blocks = new ArrayList<>();
+		for (Fat32Volume.SectorExtent extent : volume.getUsedExtents())
+		{
+			long sectorIndex = extent.startIndex();
+			long sectorsRemaining = extent.numSectors();
+			while (sectorsRemaining > 0)
+			{
+				int numSectors = (int)Math.min(sectorsRemaining, sectorsPerBlock);
+				blocks.add(new Block(sectorIndex * bytesPerSector, numSectors * bytesPerSector));
+				sectorIndex += numSectors;
+				sectorsRemaining -= numSectors;
+			}
+		}
+		return blocks;
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Reads the specified batch of blocks from the specified volume into the specified buffers.
+	 *
+	 * @param  volume
+	 *           the volume that will be read.
+	 * @param  unbufferedIO
+	 *           if {@code true}, the volume will be opened for unbuffered I/O.
+	 * @param  batch
+	 *           the blocks that will be read.
+	 * @param  buffers
+	 *           the buffers into which the blocks will be read.
+	 * @param  progress
+	 *           the progress of the cloning.
+	 * @return {@code true} if the batch was read; {@code false} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 */
+
+	private static boolean readBatch(
+		Volume		volume,
+		boolean		unbufferedIO,
+		List<Block>	batch,
+		byte[][]	buffers,
+		Progress	progress)
+		throws VolumeException
+	{
+		try
+		{
+			volume.open(Volume.Access.READ, unbufferedIO);
+			for (int i = 0; i < batch.size(); i++)
+			{
+				// Test whether task has been cancelled
+				if (progress.isCancelled())
+					return false;
+
+				// Read block
+				Block block = batch.get(i);
+				volume.seek(block.offset());
+				volume.read(buffers[i], 0, block.length());
+
+				// Update progress
+				progress.increment(block.length());
+			}
+			return true;
+		}
+		finally
+		{
+			if (volume.isOpen())
+				volume.close();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Writes the specified batch of blocks from the specified buffers to the specified volume.
+	 *
+	 * @param  volume
+	 *           the volume that will be written.
+	 * @param  unbufferedIO
+	 *           if {@code true}, the volume will be opened for unbuffered I/O.
+	 * @param  batch
+	 *           the blocks that will be written.
+	 * @param  buffers
+	 *           the buffers that contain the data of the blocks.
+	 * @param  progress
+	 *           the progress of the cloning.
+	 * @return {@code true} if the batch was written; {@code false} if the task was cancelled.
+	 * @throws VolumeException
+	 *           if an error occurred when writing the volume.
+	 */
+
+	private static boolean writeBatch(
+		Volume		volume,
+		boolean		unbufferedIO,
+		List<Block>	batch,
+		byte[][]	buffers,
+		Progress	progress)
+		throws VolumeException
+	{
+		try
+		{
+			volume.open(Volume.Access.WRITE, unbufferedIO);
+			for (int i = 0; i < batch.size(); i++)
+			{
+				// Test whether task has been cancelled
+				if (progress.isCancelled())
+					return false;
+
+				// Write block
+				Block block = batch.get(i);
+				volume.seek(block.offset());
+				volume.write(buffers[i], 0, block.length());
+
+				// Update progress
+				progress.increment(block.length());
+			}
+			return true;
+		}
+		finally
+		{
+			if (volume.isOpen())
+				volume.close();
+		}
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT FOR A TARGET VOLUME
+
+
+	/**
+	 * This record encapsulates the result of cloning a volume to a single target.
+	 *
+	 * @param name
+	 *          the name of the target volume.
+	 * @param numBytes
+	 *          the number of bytes that were written to the target.
+	 * @param writeNanoseconds
+	 *          the time taken to write the target.
+	 * @param verified
+	 *          {@code true} if the target was verified successfully, {@code false} if verification failed, or
+	 *          {@code null} if the target was not verified.
+	 * @param verifyNanoseconds
+	 *          the time taken to verify the target.
+	 */
+
+	public record TargetResult(
+		String	name,
+		long	numBytes,
+		long	writeNanoseconds,
+		Boolean	verified,
+		long	verifyNanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double writeMegabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, writeNanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+		public double verifyMegabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, verifyNanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of cloning a volume.
+	 *
+	 * @param numBytes
+	 *          the number of bytes that were read from the source volume.
+	 * @param digest
+	 *          the SHA-256 digest of the data that were read from the source volume.
+	 * @param readNanoseconds
+	 *          the time taken to read the source volume.
+	 * @param targets
+	 *          the results for the target volumes.
+	 * @param nanoseconds
+	 *          the total time taken by the cloning.
+	 */
+
+	public record Result(
+		long				numBytes,
+		byte[]				digest,
+		long				readNanoseconds,
+		List<TargetResult>	targets,
+		long				nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double readMegabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytes, readNanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: BLOCK
+
+
+	/**
+	 * This record encapsulates a block of consecutive sectors of a volume.
+	 *
+	 * @param offset
+	 *          the byte offset of the block on the volume.
+	 * @param length
+	 *          the length of the block in bytes.
+	 */
+
+	private record Block(
+		long	offset,
+		int		length)
+	{ }
+
+	//==================================================================
+
+////////////////////////////////////////////////////////////////////////
+//  Member classes : non-inner classes
+////////////////////////////////////////////////////////////////////////
+
+
+	// CLASS: PROGRESS
+
+
+	/**
+	 * This class tracks the progress of a cloning operation and reports it to a task status.
+	 */
+
+	private static class Progress
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance variables
+	////////////////////////////////////////////////////////////////////
+
+		private	long				total;
+		private	long				count;
+		private	ITaskStatus			taskStatus;
+		private	DiscretisedValue	discreteValue;
+
+	////////////////////////////////////////////////////////////////////
+	//  Constructors
+	////////////////////////////////////////////////////////////////////
+
+		private Progress(
+			long		total,
+			ITaskStatus	taskStatus)
+		{
+			// Initialise instance variables
+			this.total = total;
+			this.taskStatus = taskStatus;
+			discreteValue = new DiscretisedValue(new LinearDiscretiser(400));
+		}
+
+		//--------------------------------------------------------------
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		private boolean isCancelled()
+		{
+			return taskStatus.isCancelled();
+		}
+
+		//--------------------------------------------------------------
+
+		private void increment(
+			long	delta)
+		{
+			count += delta;
+			double value = (total == 0) ? 1.0 : (double)count / (double)total;
+			if ((value == 1.0) || discreteValue.updateChanged(value))
+				taskStatus.setProgress(value);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------
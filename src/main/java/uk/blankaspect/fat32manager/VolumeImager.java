@@ -0,0 +1,456 @@
+/*====================================================================*\
+
+VolumeImager.java
+
+Class: writer of an image of the used parts of a volume to a sparse file.
+
+\*====================================================================*/
+
+
+// PACKAGE
+
+
+package uk.blankaspect.fat32manager;
+
+//----------------------------------------------------------------------
+
+
+// IMPORTS
+
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.FileChannel;
+
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import uk.blankaspect.common.exception2.FileException;
+
+import uk.blankaspect.common.number.DiscretisedValue;
+import uk.blankaspect.common.number.LinearDiscretiser;
+
+import uk.blankaspect.common.task.ITaskStatus;
+
+import uk.blankaspect.common.thread.DaemonFactory;
+
+import uk.blankaspect.driveio.Volume;
+import uk.blankaspect.driveio.VolumeException;
+
+//----------------------------------------------------------------------
+
+
+// CLASS: WRITER OF AN IMAGE OF THE USED PARTS OF A VOLUME TO A SPARSE FILE
+
+
+/**
+ * This class provides a method that writes an image of a FAT32 volume to a sparse file.  Only the reserved sectors,
+ * the FATs and the clusters that are allocated to files and directories are copied; the unused clusters are left as
+ * holes in the file.
+ * <p>
+ * The volume is read on the calling thread in large blocks, each of which covers a run of consecutive used sectors.
+ * The blocks are passed through a bounded queue to a writer thread, which writes them at their offsets in the file and
+ * updates a SHA-256 digest of the data that were copied.
+ * </p>
+ */
+
+public class VolumeImager
+{
+
+////////////////////////////////////////////////////////////////////////
+//  Constants
+////////////////////////////////////////////////////////////////////////
+
+	/** The maximum length of a block of data that is read from the volume. */
+	private static final	int		BLOCK_SIZE	= 1 << 22;	// 4 MiB
+
+	/** The number of block buffers that are shared by the reader and the writer. */
+	private static final	int		NUM_BUFFERS	= 4;
+
+	/** The interval (in milliseconds) between successive checks of the writer while waiting for a queue. */
+	private static final	long	QUEUE_POLL_INTERVAL	= 100;
+
+	/** The name of the digest algorithm. */
+	private static final	String	DIGEST_NAME	= "SHA-256";
+
+	/** The suffix of the name of the writer thread. */
+	private static final	String	WRITER_THREAD_NAME_SUFFIX	= "imageWriter";
+
+	/** Miscellaneous strings. */
+	private static final	String	WRITING_IMAGE_STR	= "Writing image";
+
+	/** Error messages. */
+	private interface ErrorMsg
+	{
+		String	FAILED_TO_OPEN_FILE =
+				"Failed to open the file.";
+
+		String	FAILED_TO_CLOSE_FILE =
+				"Failed to close the file.";
+
+		String	ERROR_WRITING_FILE =
+				"An error occurred when writing the file.";
+
+		String	DIGEST_NOT_SUPPORTED =
+				"The '%s' digest algorithm is not supported by this version of Java.";
+	}
+
+////////////////////////////////////////////////////////////////////////
+//  Constructors
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Prevents this class from being instantiated externally.
+	 */
+
+	private VolumeImager()
+	{
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Class methods
+////////////////////////////////////////////////////////////////////////
+
+	/**
+	 * Writes an image of the reserved sectors, the FATs and the used clusters of the specified volume to the specified
+	 * file, and returns the result.
+	 *
+	 * @param  volume
+	 *           the volume whose image will be written.
+	 * @param  file
+	 *           the location of the image file.
+	 * @param  taskStatus
+	 *           the status of the task that is writing the image.
+	 * @return the result of writing the image.
+	 * @throws VolumeException
+	 *           if an error occurred when reading the volume.
+	 * @throws FileException
+	 *           if an error occurred when writing the file.
+	 */
+
+	public static Result writeImage(
+		Fat32Volume	volume,
+		Path		file,
+		ITaskStatus	taskStatus)
+		throws VolumeException, FileException
+	{
+		// Create digest
+		MessageDigest digest = null;
+		try
+		{
+			digest = MessageDigest.getInstance(DIGEST_NAME);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			throw new FileException(ErrorMsg.DIGEST_NOT_SUPPORTED, e, file, DIGEST_NAME);
+		}
+
+		// Create list of blocks of used sectors
+		List<Block> blocks = usedBlocks(volume);
+		long totalNumBytes = 0;
+		for (Block block : blocks)
+			totalNumBytes += block.length;
+
+		// Get length of image
+		long imageLength = volume.getNumSectors() * volume.getBytesPerSector();
+
+		// Update task message; reset progress
+		taskStatus.setMessage(WRITING_IMAGE_STR);
+		taskStatus.setProgress(0.0);
+
+		// Open file
+		FileChannel channel = null;
+		try
+		{
+			channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+									   StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.SPARSE);
+		}
+		catch (IOException e)
+		{
+			throw new FileException(ErrorMsg.FAILED_TO_OPEN_FILE, e, file);
+		}
+
+		// Create queues of free and full buffers
+		BlockingQueue<byte[]> freeBuffers = new ArrayBlockingQueue<>(NUM_BUFFERS);
+		for (int i = 0; i < NUM_BUFFERS; i++)
+			freeBuffers.add(new byte[BLOCK_SIZE]);
+		BlockingQueue<Block> fullBlocks = new ArrayBlockingQueue<>(NUM_BUFFERS);
+
+		// Start writer
+		ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+				DaemonFactory.create(VolumeImager.class.getSimpleName() + "-" + WRITER_THREAD_NAME_SUFFIX, runnable));
+		FileChannel outChannel = channel;
+		MessageDigest outDigest = digest;
+		Future<Void> writer = executor.submit(() ->
+		{
+			while (true)
+			{
+				// Get next block; stop if it is the end-of-data marker
+				Block block = fullBlocks.take();
+				if (block.data == null)
+					break;
+
+				// Write block to file at its position
+				ByteBuffer buffer = ByteBuffer.wrap(block.data, 0, block.length);
+				long position = block.position;
+				while (buffer.hasRemaining())
+					position += outChannel.write(buffer, position);
+
+				// Update digest
+				outDigest.update(block.data, 0, block.length);
+
+				// Return buffer to pool
+				freeBuffers.put(block.data);
+			}
+			return null;
+		});
+		executor.shutdown();
+
+		// Read blocks from volume and pass them to writer
+		long startTime = System.nanoTime();
+		long numBytesCopied = 0;
+		boolean cancelled = false;
+		try
+		{
+			try
+			{
+				// Open volume for reading
+				volume.open(Volume.Access.READ, volume.isUnbufferedIO());
+
+				// Read blocks
+				DiscretisedValue discreteProgress = new DiscretisedValue(new LinearDiscretiser(400));
+				for (Block block : blocks)
+				{
+					// Test whether task has been cancelled
+					if (taskStatus.isCancelled())
+					{
+						cancelled = true;
+						break;
+					}
+
+					// Get free buffer
+					byte[] data = null;
+					while ((data == null) && !writer.isDone())
+						data = freeBuffers.poll(QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+					if (data == null)
+						break;
+
+					// Read block
+					volume.seek(block.position);
+					volume.read(data, 0, block.length);
+
+					// Pass block to writer
+					Block fullBlock = new Block(block.position, block.length, data);
+					while (!fullBlocks.offer(fullBlock, QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS))
+					{
+						if (writer.isDone())
+							break;
+					}
+					if (writer.isDone())
+						break;
+
+					// Update progress
+					numBytesCopied += block.length;
+					double progress = (double)numBytesCopied / (double)totalNumBytes;
+					if ((progress == 1.0) || discreteProgress.updateChanged(progress))
+						taskStatus.setProgress(progress);
+				}
+			}
+			catch (InterruptedException e)
+			{
+				cancelled = true;
+			}
+			finally
+			{
+				// Close volume
+				if (volume.isOpen())
+					volume.close();
+
+				// Signal end of data to writer
+				while (!writer.isDone() && !fullBlocks.offer(new Block(0, 0, null)))
+					Thread.onSpinWait();
+			}
+
+			// Wait for writer to finish
+			try
+			{
+				writer.get();
+			}
+			catch (ExecutionException e)
+			{
+				throw new FileException(ErrorMsg.ERROR_WRITING_FILE, e.getCause(), file);
+			}
+			catch (InterruptedException e)
+			{
+				cancelled = true;
+			}
+
+			// Extend file to length of volume
+			try
+			{
+				if (!cancelled && (channel.size() < imageLength))
+					channel.write(ByteBuffer.allocate(1), imageLength - 1);
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.ERROR_WRITING_FILE, e, file);
+			}
+
+			// Close file
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				throw new FileException(ErrorMsg.FAILED_TO_CLOSE_FILE, e, file);
+			}
+		}
+		finally
+		{
+			// Close file after an error
+			if (channel.isOpen())
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+
+		// Return result
+		return new Result(numBytesCopied, imageLength, cancelled ? null : digest.digest(),
+						  System.nanoTime() - startTime);
+	}
+
+	//------------------------------------------------------------------
+
+	/**
+	 * Returns a list of the blocks of the specified volume that contain the reserved sectors, the FATs and the used
+	 * clusters.  Each block covers consecutive sectors and is no longer than {@link #BLOCK_SIZE}.
+	 *
+	 * @param  volume
+	 *           the volume of interest.
+	 * @return a list of the blocks of the used sectors of {@code volume}.
+	 */
+
+	private static List<Block> usedBlocks(
+		Fat32Volume	volume)
+	{
+		// Get number of bytes per sector and per block
+		int bytesPerSector = volume.getBytesPerSector();
+		int sectorsPerBlock = BLOCK_SIZE / bytesPerSector;
+
+		// Divide extents into blocks
+		List<Block> blocks = new ArrayList<>();
+		for (Fat32Volume.SectorExtent extent : volume.getUsedExtents())
+		{
+			long sectorIndex = extent.startIndex();
+			long sectorsRemaining = extent.numSectors();
+			while (sectorsRemaining > 0)
+			{
+				int numSectors = (int)Math.min(sectorsRemaining, sectorsPerBlock);
+				blocks.add(new Block(sectorIndex * bytesPerSector, numSectors * bytesPerSector, null));
+				sectorIndex += numSectors;
+				sectorsRemaining -= numSectors;
+			}
+		}
+
+		// Return blocks
+		return blocks;
+	}
+
+	//------------------------------------------------------------------
+
+////////////////////////////////////////////////////////////////////////
+//  Member records
+////////////////////////////////////////////////////////////////////////
+
+
+	// RECORD: RESULT
+
+
+	/**
+	 * This record encapsulates the result of writing an image of a volume.
+	 *
+	 * @param numBytesCopied
+	 *          the number of bytes that were copied from the volume to the image file.
+	 * @param imageLength
+	 *          the length of the image file, including holes.
+	 * @param digest
+	 *          the SHA-256 digest of the bytes that were copied, or {@code null} if the operation was cancelled.
+	 * @param nanoseconds
+	 *          the time taken to write the image.
+	 */
+
+	public record Result(
+		long	numBytesCopied,
+		long	imageLength,
+		byte[]	digest,
+		long	nanoseconds)
+	{
+
+	////////////////////////////////////////////////////////////////////
+	//  Instance methods
+	////////////////////////////////////////////////////////////////////
+
+		public double megabytesPerSecond()
+		{
+			return Utils.megabytesPerSecond(numBytesCopied, nanoseconds);
+		}
+
+		//--------------------------------------------------------------
+
+	}
+
+	//==================================================================
+
+
+	// RECORD: BLOCK
+
+
+	/**
+	 * This record encapsulates a block of data at a position on a volume.  A block whose data is {@code null} marks
+	 * the end of the data that are passed to the writer.
+	 *
+	 * @param position
+	 *          the byte offset of the block on the volume and in the image file.
+	 * @param length
+	 *          the length of the block.
+	 * @param data
+	 *          the buffer that contains the data of the block.
+	 */
+
+	private record Block(
+		long	position,
+		int		length,
+		byte[]	data)
+	{ }
+
+	//==================================================================
+
+}
+
+//----------------------------------------------------------------------